@@ -11,6 +11,7 @@ import org.sagacity.sqltoy.config.model.SqlExecuteTrace;
 import org.sagacity.sqltoy.model.OverTimeSql;
 import org.sagacity.sqltoy.plugins.OverTimeSqlHandler;
 import org.sagacity.sqltoy.plugins.formater.SqlFormater;
+import org.sagacity.sqltoy.plugins.stats.SqlStatsCollector;
 import org.sagacity.sqltoy.utils.SqlUtil;
 import org.sagacity.sqltoy.utils.StringUtil;
 import org.slf4j.Logger;
@@ -25,6 +26,10 @@ import com.alibaba.ttl.TransmittableThreadLocal;
  * @version v1.0,Date:2015年6月12日
  * @modify {Date:2020-06-15,改进sql日志输出,将条件参数带入到sql中输出，便于开发调试}
  * @modify {Date:2020-08-12,为日志输出增加统一uid,便于辨别同一组执行语句}
+ * @modify {Date:2024-05-08,每次执行结束时登记sql执行统计(耗时分布、记录数、错误、连接等待)}
+ * @modify {Date:2024-05-10,线程内复用SqlExecuteTrace,非debug输出模式下不逐条记录日志,避免高频调用产生大量临时对象}
+ * @modify {Date:2024-06-01,登记sql执行统计异常时输出日志,不再静默忽略}
+ * @modify {Date:2024-06-01,嵌套执行(如缓存翻译加载多个缓存)记录外层日志,结束时恢复外层而不是清空,复用对象在最外层结束后才可再次复用}
  */
 public class SqlExecuteStat {
 	/**
@@ -48,6 +53,9 @@ public class SqlExecuteStat {
 	// 通过ThreadLocal 来保存线程数据
 	private static ThreadLocal<SqlExecuteTrace> threadLocal = new TransmittableThreadLocal<SqlExecuteTrace>();
 
+	// 线程内复用的执行日志对象(只在当前线程使用,不向子线程传递)
+	private static ThreadLocal<SqlExecuteTrace> reusedTrace = new ThreadLocal<SqlExecuteTrace>();
+
 	// sql执行超时处理器
 	public static OverTimeSqlHandler overTimeSqlHandler;
 
@@ -56,6 +64,11 @@ public class SqlExecuteStat {
 	 */
 	private static SqlFormater sqlFormater;
 
+	/**
+	 * sql执行统计(为null表示不统计)
+	 */
+	private static SqlStatsCollector sqlStatsCollector;
+
 	/**
 	 * @todo 登记开始执行
 	 * @param sqlId
@@ -63,7 +76,21 @@ public class SqlExecuteStat {
 	 * @param debugPrint
 	 */
 	public static void start(String sqlId, String type, Boolean debugPrint) {
-		threadLocal.set(new SqlExecuteTrace(sqlId, type, (debugPrint == null) ? debug : debugPrint.booleanValue()));
+		boolean isPrint = (debugPrint == null) ? debug : debugPrint.booleanValue();
+		SqlExecuteTrace sqlTrace = reusedTrace.get();
+		if (sqlTrace == null) {
+			sqlTrace = new SqlExecuteTrace(sqlId, type, isPrint);
+			reusedTrace.set(sqlTrace);
+		} // 复用对象正在使用中(嵌套执行,如缓存翻译加载、并行任务由调用线程执行),创建新的
+		else if (sqlTrace.getOwner() != null) {
+			sqlTrace = new SqlExecuteTrace(sqlId, type, isPrint);
+		} else {
+			sqlTrace.reset(sqlId, type, isPrint);
+		}
+		// 记录外层日志(可能是父线程传递过来的),结束时恢复
+		sqlTrace.setParent(threadLocal.get());
+		sqlTrace.setOwner(Thread.currentThread());
+		threadLocal.set(sqlTrace);
 	}
 
 	/**
@@ -71,8 +98,9 @@ public class SqlExecuteStat {
 	 * @param exception
 	 */
 	public static void error(Exception exception) {
-		if (threadLocal.get() != null) {
-			threadLocal.get().setError(exception.getMessage());
+		SqlExecuteTrace sqlTrace = threadLocal.get();
+		if (sqlTrace != null) {
+			sqlTrace.setError(exception.getMessage());
 		}
 	}
 
@@ -84,9 +112,9 @@ public class SqlExecuteStat {
 	 */
 	public static void showSql(String topic, String sql, Object[] paramValues) {
 		try {
-			// debug模式直接输出
-			if (threadLocal.get() != null) {
-				threadLocal.get().addSqlLog(topic, sql, paramValues);
+			SqlExecuteTrace sqlTrace = threadLocal.get();
+			if (sqlTrace != null) {
+				sqlTrace.addSqlLog(topic, sql, paramValues);
 			}
 		} catch (Exception e) {
 
@@ -94,8 +122,31 @@ public class SqlExecuteStat {
 	}
 
 	public static void setDialect(String dialect) {
-		if (threadLocal.get() != null) {
-			threadLocal.get().setDialect(dialect);
+		SqlExecuteTrace sqlTrace = threadLocal.get();
+		if (sqlTrace != null) {
+			sqlTrace.setDialect(dialect);
+		}
+	}
+
+	/**
+	 * @TODO 累加查询或影响的记录数量
+	 * @param rowCount
+	 */
+	public static void addRowCount(long rowCount) {
+		SqlExecuteTrace sqlTrace = threadLocal.get();
+		if (sqlTrace != null) {
+			sqlTrace.addRowCount(rowCount);
+		}
+	}
+
+	/**
+	 * @TODO 累加获取数据库连接的等待时长
+	 * @param waitNanos
+	 */
+	public static void addConnectionWait(long waitNanos) {
+		SqlExecuteTrace sqlTrace = threadLocal.get();
+		if (sqlTrace != null) {
+			sqlTrace.addConnectionWaitNanos(waitNanos);
 		}
 	}
 
@@ -107,8 +158,10 @@ public class SqlExecuteStat {
 	 */
 	public static void debug(String topic, String message, Object... args) {
 		try {
-			if (threadLocal.get() != null) {
-				threadLocal.get().addLog(topic, message, args);
+			SqlExecuteTrace sqlTrace = threadLocal.get();
+			// 非输出模式不记录过程日志
+			if (sqlTrace != null && sqlTrace.isCaptureLogs()) {
+				sqlTrace.addLog(topic, message, args);
 			}
 		} catch (Exception e) {
 
@@ -126,6 +179,10 @@ public class SqlExecuteStat {
 			}
 			long runTime = sqlTrace.getExecuteTime();
 			long overTime = runTime - printSqlTimeoutMillis;
+			// 无需输出日志(非debug、未超时、无错误)
+			if (overTime < 0 && !sqlTrace.isPrint() && !sqlTrace.isError()) {
+				return;
+			}
 			// sql执行超过阀值记录日志为软件优化提供依据
 			if (overTime >= 0) {
 				sqlTrace.setOverTime(true);
@@ -241,13 +298,32 @@ public class SqlExecuteStat {
 	}
 
 	/**
-	 * 清理线程中的数据
+	 * 结束当前线程中最内层的执行:登记统计、输出日志,嵌套执行则恢复外层日志,最外层结束才清理线程中的数据
+	 * <li>不是当前线程开始的日志(如父线程传递过来的或已经结束的)不做处理</li>
 	 */
 	public static void destroy() {
+		SqlExecuteTrace sqlTrace = threadLocal.get();
+		if (sqlTrace == null || sqlTrace.getOwner() != Thread.currentThread()) {
+			return;
+		}
+		// 登记执行统计
+		if (sqlStatsCollector != null) {
+			try {
+				sqlStatsCollector.record(sqlTrace);
+			} catch (Exception e) {
+				logger.warn("登记sql执行统计发生异常:{}", e.getMessage(), e);
+			}
+		}
 		// 执行完成时打印日志
 		destroyLog();
-		threadLocal.remove();
-		threadLocal.set(null);
+		SqlExecuteTrace parent = sqlTrace.getParent();
+		sqlTrace.setParent(null);
+		sqlTrace.setOwner(null);
+		if (parent == null) {
+			threadLocal.remove();
+		} else {
+			threadLocal.set(parent);
+		}
 	}
 
 	/**
@@ -272,6 +348,10 @@ public class SqlExecuteStat {
 		SqlExecuteStat.sqlFormater = sqlFormater;
 	}
 
+	public static void setSqlStatsCollector(SqlStatsCollector sqlStatsCollector) {
+		SqlExecuteStat.sqlStatsCollector = sqlStatsCollector;
+	}
+
 	/**
 	 * @TODO 将参数值拟合到sql中作为debug输出,便于开发进行调试(2020-06-15)
 	 * @param sql
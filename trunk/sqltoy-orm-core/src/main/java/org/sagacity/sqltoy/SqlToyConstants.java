@@ -284,6 +284,174 @@ public class SqlToyConstants {
 		return Integer.parseInt(getKeyValue("sqltoy.max.code.sql.count", "2500"));
 	}
 
+	/**
+	 * @todo 获取sql解析计划最大缓存数量
+	 * @return
+	 */
+	public static int getMaxSqlParsePlanCount() {
+		// 默认值为5000
+		return Integer.parseInt(getKeyValue("sqltoy.max.sql.parse.plan.count", "5000"));
+	}
+
+	/**
+	 * @todo 获取对象crud语句(insert、update、saveOrUpdate等)最大缓存数量
+	 * @return
+	 */
+	public static int getMaxCrudSqlCount() {
+		// 默认值为2000(对象数量*操作类型*强制修改字段组合)
+		return Integer.parseInt(getKeyValue("sqltoy.max.crud.sql.count", "2000"));
+	}
+
+	/**
+	 * @todo 获取分页count语句推导结果最大缓存数量
+	 * @return
+	 */
+	public static int getMaxCountSqlPlanCount() {
+		// 默认值为2000
+		return Integer.parseInt(getKeyValue("sqltoy.max.count.sql.plan.count", "2000"));
+	}
+
+	/**
+	 * @todo 获取对象属性转字段后的sql最大缓存数量
+	 * @return
+	 */
+	public static int getMaxConvertSqlCount() {
+		// 默认值为2000
+		return Integer.parseInt(getKeyValue("sqltoy.max.convert.sql.count", "2000"));
+	}
+
+	/**
+	 * @todo 获取@if()逻辑表达式编译结果最大缓存数量
+	 * @return
+	 */
+	public static int getMaxMacroExpressionCount() {
+		// 默认值为1000(表达式来源于sql配置,数量有限)
+		return Integer.parseInt(getKeyValue("sqltoy.max.macro.expression.count", "1000"));
+	}
+
+	/**
+	 * @todo 获取反射get、set方法缓存的最大类数量
+	 * @return
+	 */
+	public static int getMaxBeanMethodCount() {
+		// 默认值为1000
+		return Integer.parseInt(getKeyValue("sqltoy.max.bean.method.count", "1000"));
+	}
+
+	/**
+	 * @todo 获取租户条件插入位置的最大缓存数量
+	 * @return
+	 */
+	public static int getMaxTenantSplicePlanCount() {
+		// 默认值为2000
+		return Integer.parseInt(getKeyValue("sqltoy.max.tenant.splice.plan.count", "2000"));
+	}
+
+	/**
+	 * @todo 获取sql文本类缓存(代码中的sql、字段转换后的sql)的最大字符数量
+	 * @return
+	 */
+	public static long getMaxSqlCacheWeight() {
+		// 默认值为8M个字符
+		return Long.parseLong(getKeyValue("sqltoy.max.sql.cache.weight", "8388608"));
+	}
+
+	/**
+	 * @todo 并行执行器(并行查询、分库分表并行执行)全局最大线程数量
+	 * @return
+	 */
+	public static int getParallelMaxThreads() {
+		return Integer.parseInt(getKeyValue("sqltoy.parallel.max.threads", "64"));
+	}
+
+	/**
+	 * @todo 并行执行器等待队列长度
+	 * @return
+	 */
+	public static int getParallelQueueSize() {
+		return Integer.parseInt(getKeyValue("sqltoy.parallel.queue.size", "1024"));
+	}
+
+	/**
+	 * @todo 并行执行时单个数据源最大并发数量(<=0 表示不限制)
+	 * @return
+	 */
+	public static int getParallelDataSourceMaxConcurrents() {
+		return Integer.parseInt(getKeyValue("sqltoy.parallel.datasource.max.concurrents", "20"));
+	}
+
+	/**
+	 * @todo 未指定方言时是否在启动时预先获取各个dataSource对应的数据库类型(需获取每个数据库的连接,失败不影响启动)
+	 * @return
+	 */
+	public static boolean warmDataSourceMeta() {
+		return Boolean.parseBoolean(getKeyValue("sqltoy.datasource.meta.warm", "true"));
+	}
+
+	/**
+	 * @todo 是否按DataSource缓存数据库类型、方言、版本等信息(关闭后每次通过connection.getMetaData()判断)
+	 * @return
+	 */
+	public static boolean cacheDataSourceMeta() {
+		return Boolean.parseBoolean(getKeyValue("sqltoy.datasource.meta.cache", "true"));
+	}
+
+	/**
+	 * @todo 是否开启sql执行统计(耗时分布、记录数、错误次数),默认关闭
+	 * @return
+	 */
+	public static boolean sqlStatsEnabled() {
+		return Boolean.parseBoolean(getKeyValue("sqltoy.sql.stats.enabled", "false"));
+	}
+
+	/**
+	 * @todo sql执行统计最多统计的sql数量(sqlId+执行类型)
+	 * @return
+	 */
+	public static int getSqlStatsMaxKeys() {
+		return Integer.parseInt(getKeyValue("sqltoy.sql.stats.max.keys", "2000"));
+	}
+
+	/**
+	 * @todo 是否将sql执行统计注册到JMX
+	 * @return
+	 */
+	public static boolean sqlStatsJmxEnabled() {
+		return Boolean.parseBoolean(getKeyValue("sqltoy.sql.stats.jmx.enabled", "false"));
+	}
+
+	/**
+	 * @todo redis主键一次预留的号段大小,<=1表示每次从redis获取
+	 * @return
+	 */
+	public static int getRedisIdSegmentSize() {
+		return Integer.parseInt(getKeyValue("sqltoy.redis.id.segment.size", "1"));
+	}
+
+	/**
+	 * @todo 数据旋转记录数超过此阀值时分段并行分组,<=0 表示不并行
+	 * @return
+	 */
+	public static int getPivotParallelThreshold() {
+		return Integer.parseInt(getKeyValue("sqltoy.pivot.parallel.threshold", "200000"));
+	}
+
+	/**
+	 * @todo 分页第一页记录数不足一页时是否省去count查询
+	 * @return
+	 */
+	public static boolean pageFirstSkipCount() {
+		return Boolean.parseBoolean(getKeyValue("sqltoy.page.first.skip.count", "true"));
+	}
+
+	/**
+	 * @todo 字段信封加密的数据密钥(RSA公钥加密后的Base64)
+	 * @return
+	 */
+	public static String getSecureDataKey() {
+		return getKeyValue("sqltoy.secure.data.key");
+	}
+
 	/**
 	 * @todo 获取记录提取的最大阀值
 	 * @return
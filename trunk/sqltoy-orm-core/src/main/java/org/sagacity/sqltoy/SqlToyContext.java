@@ -2,9 +2,12 @@ package org.sagacity.sqltoy;
 
 import java.sql.Connection;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 
@@ -17,6 +20,7 @@ import org.sagacity.sqltoy.config.model.ElasticEndpoint;
 import org.sagacity.sqltoy.config.model.EntityMeta;
 import org.sagacity.sqltoy.config.model.SqlToyConfig;
 import org.sagacity.sqltoy.config.model.SqlType;
+import org.sagacity.sqltoy.dialect.executor.ParallelExecutor;
 import org.sagacity.sqltoy.integration.AppContext;
 import org.sagacity.sqltoy.integration.ConnectionFactory;
 import org.sagacity.sqltoy.model.IgnoreKeyCaseMap;
@@ -34,6 +38,7 @@ import org.sagacity.sqltoy.plugins.ddl.DialectDDLGenerator;
 import org.sagacity.sqltoy.plugins.formater.SqlFormater;
 import org.sagacity.sqltoy.plugins.function.FunctionUtils;
 import org.sagacity.sqltoy.plugins.overtime.DefaultOverTimeHandler;
+import org.sagacity.sqltoy.plugins.stats.SqlStatsCollector;
 import org.sagacity.sqltoy.plugins.secure.DesensitizeProvider;
 import org.sagacity.sqltoy.plugins.secure.FieldsSecureProvider;
 import org.sagacity.sqltoy.plugins.secure.impl.DesensitizeDefaultProvider;
@@ -44,6 +49,7 @@ import org.sagacity.sqltoy.translate.cache.TranslateCacheManager;
 import org.sagacity.sqltoy.utils.BeanUtil;
 import org.sagacity.sqltoy.utils.DataSourceUtils;
 import org.sagacity.sqltoy.utils.DataSourceUtils.Dialect;
+import org.sagacity.sqltoy.utils.HttpClientUtils;
 import org.sagacity.sqltoy.utils.QueryExecutorBuilder;
 import org.sagacity.sqltoy.utils.ReservedWordsUtil;
 import org.sagacity.sqltoy.utils.SqlUtil;
@@ -82,6 +88,12 @@ import com.alibaba.ttl.threadpool.TtlExecutors;
  * @modify {Date:2020-05-29,调整mongo的注入方式,剔除之前MongoDbFactory模式,直接使用MongoTemplate}
  * @modify {Date:2022-06-11,支持多个缓存翻译定义文件}
  * @modify {Date:2022-10-14,增加humpMapResultTypeLabel设置结果为Map时是否驼峰化处理属性}
+ * @modify {Date:2024-04-30,增加共享的并行执行器parallelExecutor,并行查询和分库分表并行执行不再每次创建线程池}
+ * @modify {Date:2024-05-08,增加sqlStatsCollector按sqlId统计每次执行的耗时分布、记录数和错误次数,可输出到JMX}
+ * @modify {Date:2024-05-25,未指定方言时启动预先获取各dataSource对应的数据库信息并缓存}
+ * @modify {Date:2024-06-01,sql中直接指定的es地址不再按url缓存,改为按服务地址共享连接池}
+ * @modify {Date:2024-06-01,启动时预先获取dataSource数据库信息可通过sqltoy.datasource.meta.warm关闭}
+ * @modify {Date:2024-06-01,替换默认dataSource和销毁时清除对应的数据库信息缓存}
  */
 public class SqlToyContext {
 	/**
@@ -149,6 +161,11 @@ public class SqlToyContext {
 	 */
 	private OverTimeSqlHandler overTimeSqlHandler = new DefaultOverTimeHandler();
 
+	/**
+	 * sql执行统计(耗时分布、记录数、错误次数、连接等待)
+	 */
+	private SqlStatsCollector sqlStatsCollector;
+
 	/**
 	 * @param unifyFieldsHandler the unifyFieldsHandler to set
 	 */
@@ -382,6 +399,11 @@ public class SqlToyContext {
 	 */
 	private Executor taskExecutor = TtlExecutors.getTtlExecutor(ForkJoinPool.commonPool());
 
+	/**
+	 * 并行查询、分库分表并行执行共享的执行器(首次使用时创建)
+	 */
+	private volatile ParallelExecutor parallelExecutor;
+
 	/**
 	 * 默认一页数据记录条数
 	 */
@@ -416,6 +438,11 @@ public class SqlToyContext {
 		}
 		// 初始化默认dataSource
 		initDefaultDataSource();
+		// 未指定方言时,预先获取各个dataSource对应的数据库类型(启动时需获取各个数据库的连接,失败不影响启动)
+		if (StringUtil.isBlank(this.dialect) && SqlToyConstants.cacheDataSourceMeta()
+				&& SqlToyConstants.warmDataSourceMeta()) {
+			warmDataSourceMetas();
+		}
 		// 设置workerId和dataCenterId,为使用snowflake主键ID产生算法服务
 		SqlToyConstants.setWorkerAndDataCenterId(workerId, dataCenterId, serverId);
 		// 初始化脚本加载器
@@ -439,6 +466,14 @@ public class SqlToyContext {
 		// 初始化sql执行统计的基本参数
 		SqlExecuteStat.setDebug(this.debug);
 		SqlExecuteStat.setOverTimeSqlHandler(overTimeSqlHandler);
+		// sql执行统计
+		if (sqlStatsCollector == null && SqlToyConstants.sqlStatsEnabled()) {
+			sqlStatsCollector = new SqlStatsCollector();
+		}
+		SqlExecuteStat.setSqlStatsCollector(sqlStatsCollector);
+		if (sqlStatsCollector != null && SqlToyConstants.sqlStatsJmxEnabled()) {
+			sqlStatsCollector.registerMBean(null);
+		}
 		SqlExecuteStat.setPrintSqlTimeoutMillis(this.printSqlTimeoutMillis);
 		// sql格式化
 		SqlExecuteStat.setSqlFormater(this.sqlFormater);
@@ -468,6 +503,37 @@ public class SqlToyContext {
 		logger.debug("sqltoy init complete!");
 	}
 
+	/**
+	 * @TODO 预先加载dataSource对应的数据库信息,避免首次执行时再判断
+	 */
+	private void warmDataSourceMetas() {
+		for (DataSource dataSource : getRegistDataSources()) {
+			DataSourceUtils.warmDataSourceMeta(this, dataSource);
+		}
+	}
+
+	/**
+	 * @TODO 获取默认dataSource和容器中注册的dataSource
+	 * @return
+	 */
+	private Set<DataSource> getRegistDataSources() {
+		Set<DataSource> dataSources = Collections.newSetFromMap(new IdentityHashMap<DataSource, Boolean>());
+		if (defaultDataSource != null) {
+			dataSources.add(defaultDataSource);
+		}
+		if (appContext != null) {
+			try {
+				Map<String, DataSource> dataSourceBeans = appContext.getBeansOfType(DataSource.class);
+				if (dataSourceBeans != null) {
+					dataSources.addAll(dataSourceBeans.values());
+				}
+			} catch (Exception e) {
+				logger.warn("获取DataSource实例失败:{}", e.getMessage());
+			}
+		}
+		return dataSources;
+	}
+
 	/**
 	 * @todo 获取service并调用其指定方法获取报表数据
 	 * @param beanName
@@ -923,7 +989,11 @@ public class SqlToyContext {
 		ElasticEndpoint result = elasticEndpoints.get(StringUtil.isBlank(id) ? defaultElastic : id.toLowerCase());
 		// 取不到,则可能sql中自定义url地址,自行构建模型，按指定的url进行查询
 		if (result == null) {
-			return new ElasticEndpoint(id);
+			result = new ElasticEndpoint(id);
+			// 按服务地址共享连接池,不按url缓存,避免url(含不同路径)无限增长
+			if (id != null) {
+				result.setSharedPool(true);
+			}
 		}
 		return result;
 	}
@@ -1004,6 +1074,25 @@ public class SqlToyContext {
 		try {
 			scriptLoader.destroy();
 			translateManager.destroy();
+			if (parallelExecutor != null) {
+				parallelExecutor.shutdown();
+			}
+			if (sqlStatsCollector != null) {
+				sqlStatsCollector.unregisterMBean();
+			}
+			// 清除dataSource对应的数据库信息缓存
+			for (DataSource dataSource : getRegistDataSources()) {
+				DataSourceUtils.removeDataSourceMeta(dataSource);
+			}
+			// 关闭es和rest请求的连接池
+			for (ElasticEndpoint endpoint : elasticEndpoints.values()) {
+				endpoint.close();
+			}
+			try {
+				HttpClientUtils.closeSharedPools();
+			} catch (NoClassDefFoundError e) {
+				// 未引入httpclient依赖
+			}
 		} catch (Exception e) {
 
 		}
@@ -1038,6 +1127,11 @@ public class SqlToyContext {
 	}
 
 	public void setDefaultDataSource(DataSource defaultDataSource) {
+		// 重新注册dataSource,清除之前缓存的数据库信息(被替换的dataSource一并清除)
+		if (this.defaultDataSource != defaultDataSource) {
+			DataSourceUtils.removeDataSourceMeta(this.defaultDataSource);
+		}
+		DataSourceUtils.removeDataSourceMeta(defaultDataSource);
 		this.defaultDataSource = defaultDataSource;
 	}
 
@@ -1121,6 +1215,18 @@ public class SqlToyContext {
 		this.overTimeSqlHandler = overTimeSqlHandler;
 	}
 
+	/**
+	 * @TODO 获取sql执行统计,通过getSnapshots()、getSlowest(size)获取每个sql的耗时分布(p50/p99/p999)等
+	 * @return
+	 */
+	public SqlStatsCollector getSqlStatsCollector() {
+		return sqlStatsCollector;
+	}
+
+	public void setSqlStatsCollector(SqlStatsCollector sqlStatsCollector) {
+		this.sqlStatsCollector = sqlStatsCollector;
+	}
+
 	/**
 	 * @TODO 获取执行最慢的sql
 	 * @param size     提取记录数量
@@ -1218,6 +1324,26 @@ public class SqlToyContext {
 		this.taskExecutor = taskExecutor;
 	}
 
+	/**
+	 * @TODO 获取并行执行器,未设置则按照sqltoy.parallel.*参数创建
+	 * @return
+	 */
+	public ParallelExecutor getParallelExecutor() {
+		if (parallelExecutor == null) {
+			synchronized (this) {
+				if (parallelExecutor == null) {
+					parallelExecutor = new ParallelExecutor(SqlToyConstants.getParallelMaxThreads(),
+							SqlToyConstants.getParallelQueueSize(), SqlToyConstants.getParallelDataSourceMaxConcurrents());
+				}
+			}
+		}
+		return parallelExecutor;
+	}
+
+	public void setParallelExecutor(ParallelExecutor parallelExecutor) {
+		this.parallelExecutor = parallelExecutor;
+	}
+
 	/**
 	 * @param sqlFormater the sqlFormater to set
 	 */
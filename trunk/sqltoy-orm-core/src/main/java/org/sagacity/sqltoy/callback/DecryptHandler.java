@@ -1,5 +1,7 @@
 package org.sagacity.sqltoy.callback;
 
+import java.util.List;
+
 import org.sagacity.sqltoy.model.IgnoreCaseSet;
 import org.sagacity.sqltoy.plugins.secure.FieldsSecureProvider;
 
@@ -8,6 +10,7 @@ import org.sagacity.sqltoy.plugins.secure.FieldsSecureProvider;
  * @description 查询时字段密文解密处理器
  * @author zhongxuchen
  * @version v1.0,Date:2021-11-8
+ * @modify Date:2024-05-14 {增加按列批量解密}
  */
 public class DecryptHandler {
 	/**
@@ -35,12 +38,7 @@ public class DecryptHandler {
 		if (value == null || fieldsSecureProvider == null || column == null) {
 			return value;
 		}
-		boolean exists = columns.contains(column);
-		// 去除下划线
-		if (!exists) {
-			exists = columns.contains(column.replace("_", ""));
-		}
-		if (exists) {
+		if (isDecryptColumn(column)) {
 			String content = value.toString();
 			if ("".equals(content.trim())) {
 				return value;
@@ -50,6 +48,50 @@ public class DecryptHandler {
 		return value;
 	}
 
+	/**
+	 * @TODO 对查询结果集按列批量解密(每列一次调用fieldsSecureProvider.decrypt(String[]))
+	 * @param rows
+	 * @param labelNames
+	 */
+	public void decrypt(List<List> rows, String[] labelNames) {
+		if (rows == null || rows.isEmpty() || fieldsSecureProvider == null || labelNames == null) {
+			return;
+		}
+		int size = rows.size();
+		String[] secureContents = null;
+		String[] result;
+		Object value;
+		String content;
+		for (int i = 0; i < labelNames.length; i++) {
+			if (labelNames[i] == null || !isDecryptColumn(labelNames[i])) {
+				continue;
+			}
+			if (secureContents == null) {
+				secureContents = new String[size];
+			}
+			for (int j = 0; j < size; j++) {
+				value = rows.get(j).get(i);
+				content = (value == null) ? null : value.toString();
+				// 空白内容不做解密
+				secureContents[j] = (content == null || "".equals(content.trim())) ? null : content;
+			}
+			result = fieldsSecureProvider.decrypt(secureContents);
+			for (int j = 0; j < size; j++) {
+				if (secureContents[j] != null) {
+					rows.get(j).set(i, result[j]);
+				}
+			}
+		}
+	}
+
+	private boolean isDecryptColumn(String column) {
+		if (columns.contains(column)) {
+			return true;
+		}
+		// 去除下划线
+		return columns.contains(column.replace("_", ""));
+	}
+
 	public IgnoreCaseSet getColumns() {
 		return columns;
 	}
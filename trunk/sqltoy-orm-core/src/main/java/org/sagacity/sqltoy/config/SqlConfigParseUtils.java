@@ -13,10 +13,13 @@ import java.util.regex.Pattern;
 import org.sagacity.sqltoy.SqlToyConstants;
 import org.sagacity.sqltoy.config.model.KeyAndIndex;
 import org.sagacity.sqltoy.config.model.SqlParamsModel;
+import org.sagacity.sqltoy.config.model.SqlParsePlan;
+import org.sagacity.sqltoy.config.model.SqlPseudoBlock;
 import org.sagacity.sqltoy.config.model.SqlToyConfig;
 import org.sagacity.sqltoy.config.model.SqlToyResult;
 import org.sagacity.sqltoy.config.model.SqlType;
 import org.sagacity.sqltoy.config.model.SqlWithAnalysis;
+import org.sagacity.sqltoy.model.BoundedCache;
 import org.sagacity.sqltoy.model.IgnoreKeyCaseMap;
 import org.sagacity.sqltoy.plugins.function.FunctionUtils;
 import org.sagacity.sqltoy.plugins.id.macro.AbstractMacro;
@@ -65,6 +68,8 @@ import org.slf4j.LoggerFactory;
  * @modify {Date:2023-08-25 支持itemList[0].fieldName或itemList[0].item.name 形式传参 }
  * @modify {Date:2024-03-22
  *         优化getSqlParamsName、processNamedParamsQuery方法，优化了参数名称匹配，设置了匹配偏移量 }
+ * @modify {Date:2024-04-18 增加sql解析计划缓存,与参数值无关的解析只执行一次,并按需执行#[]、@blank、like、in、@value处理 }
+ * @modify {Date:2024-05-31 #[]和@if()的位置、表达式等在解析计划中预编译,执行时只根据参数值判断取舍 }
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class SqlConfigParseUtils {
@@ -136,6 +141,10 @@ public class SqlConfigParseUtils {
 			.compile("^((order|group)\\s+by|(inner|left|right|full)\\s+join|having|union|limit)\\W");
 
 	public final static String DBL_QUESTMARK = "#sqltoy_dblqsmark_placeholder#";
+	// :named 模式下sql中原本存在的?号临时替换的特殊字符
+	public final static String QUESTMARK = "#sqltoy_qsmark_placeholder#";
+	// 宽松的in 匹配，用于解析计划判断是否需要做in 处理
+	public final static Pattern IN_LOOSE_PATTERN = Pattern.compile("(?i)\\sin\\s*\\(");
 	// field=? 判断等于号
 	public final static Pattern EQUAL_PATTERN = Pattern.compile("[^\\>\\<\\!\\:]\\=\\s*$");
 	// 常规数据库:update table set t.xxx=? ,t.xxx1=?
@@ -156,6 +165,10 @@ public class SqlConfigParseUtils {
 		macros.put("@loop-full", new SqlLoop(false));
 	}
 
+	// sql解析计划缓存
+	private static BoundedCache<String, SqlParsePlan> sqlParsePlans = new BoundedCache<String, SqlParsePlan>(
+			"sqlParsePlan", SqlToyConstants::getMaxSqlParsePlanCount);
+
 	// 避免实例化
 	private SqlConfigParseUtils() {
 
@@ -211,7 +224,8 @@ public class SqlConfigParseUtils {
 	public static SqlToyResult processSql(String queryStr, Map<String, Object> argMap, String dialect) {
 		// 转成key大小写不敏感map
 		IgnoreKeyCaseMap ignoreCaseMap = new IgnoreKeyCaseMap((argMap == null) ? new HashMap() : argMap);
-		String[] paramsNamed = getSqlParamsName(queryStr, true);
+		SqlParsePlan parsePlan = getSqlParsePlan(queryStr);
+		String[] paramsNamed = parsePlan.getDistinctParamsName();
 		Object[] paramsArg = null;
 		if (paramsNamed != null) {
 			paramsArg = new Object[paramsNamed.length];
@@ -219,7 +233,7 @@ public class SqlConfigParseUtils {
 				paramsArg[i] = ignoreCaseMap.get(paramsNamed[i]);
 			}
 		}
-		return processSql(queryStr, paramsNamed, paramsArg, dialect);
+		return processSql(queryStr, parsePlan, paramsNamed, paramsArg, dialect);
 	}
 
 	public static SqlToyResult processSql(String queryStr, String[] paramsNamed, Object[] paramsArg) {
@@ -236,6 +250,19 @@ public class SqlConfigParseUtils {
 	 * @return
 	 */
 	public static SqlToyResult processSql(String queryStr, String[] paramsNamed, Object[] paramsArg, String dialect) {
+		return processSql(queryStr, null, paramsNamed, paramsArg, dialect);
+	}
+
+	/**
+	 * @param queryStr
+	 * @param sqlParsePlan 已经获取的解析计划,为null则从缓存获取
+	 * @param paramsNamed
+	 * @param paramsArg
+	 * @param dialect
+	 * @return
+	 */
+	private static SqlToyResult processSql(String queryStr, SqlParsePlan sqlParsePlan, String[] paramsNamed,
+			Object[] paramsArg, String dialect) {
 		Object[] paramsValue = paramsArg;
 		if (paramsNamed != null && paramsNamed.length > 0) {
 			// 构造全是null的条件值，将全部条件去除
@@ -247,52 +274,296 @@ public class SqlConfigParseUtils {
 			return new SqlToyResult(queryStr, paramsArg);
 		}
 		SqlToyResult sqlToyResult = new SqlToyResult();
+		// update 2024-04-18 获取sql编译后的解析计划,避免每次重复正则扫描sql
+		SqlParsePlan parsePlan = (sqlParsePlan == null) ? getSqlParsePlan(queryStr) : sqlParsePlan;
 		// 是否:paramName 形式的参数模式
-		boolean isNamedArgs = StringUtil.matches(queryStr, SqlToyConstants.SQL_NAMED_PATTERN);
+		boolean isNamedArgs = parsePlan.isNamedArgs();
 		SqlParamsModel sqlParam;
-		// 将sql中的问号临时先替换成特殊字符
-		String questionMark = "#sqltoy_qsmark_placeholder#";
 		if (isNamedArgs) {
-			String sql = queryStr.replaceAll(ARG_REGEX, questionMark);
 			// update 2020-09-23 处理sql中的循环(提前处理循环，避免循环中存在其它条件参数)
-			sql = processLoop(sql, paramsNamed, paramsValue);
-			sqlParam = processNamedParamsQuery(sql);
+			if (parsePlan.isHasLoop()) {
+				String sql = processLoop(parsePlan.getPlaceholderSql(), paramsNamed, paramsValue);
+				sqlParam = processNamedParamsQuery(sql);
+			} else {
+				sqlParam = parsePlan.getSqlParams();
+			}
 		} else {
-			// 将sql中的??符号替换成特殊字符,?? 符号在json场景下有特殊含义
-			String sql = queryStr.replaceAll(ARG_DBL_REGEX, DBL_QUESTMARK);
 			// update 2022-7-18
-			int paramCnt = StringUtil.matchCnt(sql, ARG_NAME_PATTERN, 0);
 			// 只有单个? 参数、传递的参数长度大于1、且是 in (?),则将参数转成长度为1的二维数组new Object[]{Object[]} 模式
-			if (paramCnt == 1 && paramsValue.length > 1 && StringUtil.matches(sql, IN_PATTERN)) {
+			if (parsePlan.getArgCnt() == 1 && paramsValue.length > 1 && parsePlan.isArgInPattern()) {
 				paramsValue = new Object[] { paramsValue };
 			}
-			sqlParam = processNamedParamsQuery(sql);
+			sqlParam = parsePlan.getSqlParams();
 		}
 		sqlToyResult.setSql(sqlParam.getSql());
 		// 参数和参数值进行匹配
 		sqlToyResult.setParamsValue(matchNamedParam(sqlParam.getParamsName(), paramsNamed, paramsValue));
 		// 剔除查询条件为null的sql语句和对应的参数
-		processNullConditions(sqlToyResult);
+		if (parsePlan.isHasPseudo()) {
+			// 非@loop场景sql固定,直接使用预编译的#[]
+			if (parsePlan.getPseudoBlocks() != null) {
+				processNullConditions(sqlToyResult, parsePlan.getPseudoBlocks());
+			} else {
+				processNullConditions(sqlToyResult);
+			}
+		}
 		// 替换@blank(?)为空白,增强sql组织能力
-		processBlank(sqlToyResult);
+		if (parsePlan.isHasBlank()) {
+			processBlank(sqlToyResult);
+		}
 		// 检查 like 对应参数部分，如果参数中不存在%符合则自动两边增加%
-		processLike(sqlToyResult);
+		if (parsePlan.isHasLike()) {
+			processLike(sqlToyResult);
+		}
 		// in 处理策略2012-7-10 进行了修改，提供参数preparedStatement.setObject()机制，并同时兼容
 		// 用具体数据替换 in (?)中问号的处理机制
-		processIn(sqlToyResult);
+		if (parsePlan.isHasIn()) {
+			processIn(sqlToyResult);
+		}
 		// 参数为null的处理策略(用null直接代替变量)
 		replaceNull(sqlToyResult, 0);
 		// update 2021-4-29 放在最后，避免参数值中存在?号
 		// 替换@value(?) 为参数对应的数值
-		processValue(sqlToyResult, dialect);
+		if (parsePlan.isHasValue()) {
+			processValue(sqlToyResult, dialect);
+		}
 		// 将特殊字符替换回问号
+		if (parsePlan.isHasPlaceholder()) {
+			if (isNamedArgs) {
+				sqlToyResult.setSql(sqlToyResult.getSql().replace(QUESTMARK, ARG_NAME));
+			} else {
+				// 将代表json中的?? 符号换回
+				sqlToyResult.setSql(sqlToyResult.getSql().replace(DBL_QUESTMARK, ARG_DBL_NAME));
+			}
+		}
+		return sqlToyResult;
+	}
+
+	/**
+	 * @TODO 获取sql的解析计划(与参数值无关的部分只解析一次)
+	 * @param queryStr
+	 * @return
+	 */
+	public static SqlParsePlan getSqlParsePlan(String queryStr) {
+		SqlParsePlan parsePlan = sqlParsePlans.get(queryStr);
+		if (parsePlan != null) {
+			return parsePlan;
+		}
+		parsePlan = compileSqlParsePlan(queryStr);
+		// 有界缓存,代码中拼接的动态sql超出数量后淘汰最少使用的
+		sqlParsePlans.put(queryStr, parsePlan);
+		return parsePlan;
+	}
+
+	/**
+	 * @TODO 清空sql解析计划缓存(含@if表达式编译缓存)
+	 */
+	public static void clearSqlParsePlans() {
+		sqlParsePlans.clear();
+		MacroIfLogic.clearCompiledExpressions();
+	}
+
+	/**
+	 * @TODO 编译sql的解析计划,提取sql中跟参数值无关的信息
+	 * @param queryStr
+	 * @return
+	 */
+	private static SqlParsePlan compileSqlParsePlan(String queryStr) {
+		SqlParsePlan parsePlan = new SqlParsePlan();
+		boolean isNamedArgs = StringUtil.matches(queryStr, SqlToyConstants.SQL_NAMED_PATTERN);
+		parsePlan.setNamedArgs(isNamedArgs);
+		parsePlan.setDistinctParamsName(isNamedArgs ? getSqlParamsName(queryStr, true) : null);
+		String lowSql = queryStr.toLowerCase();
 		if (isNamedArgs) {
-			sqlToyResult.setSql(sqlToyResult.getSql().replaceAll(questionMark, ARG_NAME));
+			// 将sql中的问号临时先替换成特殊字符
+			String sql = queryStr.replace(ARG_NAME, QUESTMARK);
+			parsePlan.setPlaceholderSql(sql);
+			parsePlan.setHasPlaceholder(queryStr.indexOf(ARG_NAME) != -1);
+			// @loop 需要根据参数值展开后再处理
+			if (lowSql.contains("@loop")) {
+				parsePlan.setHasLoop(true);
+			} else {
+				parsePlan.setSqlParams(processNamedParamsQuery(sql));
+			}
 		} else {
-			// 将代表json中的?? 符号换回
-			sqlToyResult.setSql(sqlToyResult.getSql().replaceAll(DBL_QUESTMARK, ARG_DBL_NAME));
+			// 将sql中的??符号替换成特殊字符,?? 符号在json场景下有特殊含义
+			String sql = queryStr.replaceAll(ARG_DBL_REGEX, DBL_QUESTMARK);
+			parsePlan.setHasPlaceholder(sql.length() != queryStr.length());
+			parsePlan.setArgCnt(StringUtil.charCnt(sql, '?', 0, sql.length()));
+			parsePlan.setArgInPattern(StringUtil.matches(sql, IN_PATTERN));
+			SqlParamsModel sqlParams = new SqlParamsModel();
+			sqlParams.setSql(sql);
+			parsePlan.setSqlParams(sqlParams);
 		}
-		return sqlToyResult;
+		// @loop 展开的内容无法预知，全部按存在处理
+		boolean hasLoop = parsePlan.isHasLoop();
+		parsePlan.setHasPseudo(hasLoop || queryStr.contains(SQL_PSEUDO_START_MARK));
+		parsePlan.setHasBlank(hasLoop || lowSql.contains("@blank"));
+		parsePlan.setHasValue(hasLoop || lowSql.contains("@value"));
+		parsePlan.setHasLike(hasLoop || lowSql.contains("like"));
+		parsePlan.setHasIn(hasLoop || StringUtil.matches(queryStr, IN_LOOSE_PATTERN));
+		if (parsePlan.isHasPseudo() && !hasLoop) {
+			parsePlan.setPseudoBlocks(compilePseudoBlocks(parsePlan.getSqlParams().getSql()));
+		}
+		return parsePlan;
+	}
+
+	/**
+	 * @TODO 预编译sql中的#[],按执行顺序(从最后一个#[开始)排列
+	 *       <li>后面的#[]处理只改变其位置之后的sql,因此每个#[前面的sql、参数数量都可以预先确定</li>
+	 *       <li>不含内部#[]的内容也固定不变,@if()表达式、is条件判断都预先解析</li>
+	 * @param sql
+	 * @return 格式不规范(如缺少对称的])的返回null,执行时按原方式处理
+	 */
+	private static SqlPseudoBlock[] compilePseudoBlocks(String sql) {
+		List<Integer> starts = new ArrayList<Integer>();
+		int index = sql.indexOf(SQL_PSEUDO_START_MARK);
+		while (index != -1) {
+			starts.add(index);
+			index = sql.indexOf(SQL_PSEUDO_START_MARK, index + SQL_PSEUDO_START_MARK_LENGTH);
+		}
+		if (starts.isEmpty()) {
+			return null;
+		}
+		int size = starts.size();
+		SqlPseudoBlock[] result = new SqlPseudoBlock[size];
+		SqlPseudoBlock block;
+		String preSql;
+		int start;
+		int end;
+		try {
+			for (int i = size - 1; i >= 0; i--) {
+				start = starts.get(i);
+				end = StringUtil.getSymMarkIndex(SQL_PSEUDO_SYM_START_MARK, SQL_PSEUDO_END_MARK, sql, start);
+				if (end == -1) {
+					return null;
+				}
+				block = new SqlPseudoBlock();
+				block.setStart(start);
+				block.setEnd(end);
+				block.setNested(i + 1 < size && starts.get(i + 1) < end);
+				preSql = sql.substring(0, start).concat(BLANK);
+				block.setPreParamCnt(StringUtil.charCnt(preSql, '?', 0, preSql.length()));
+				block.setWhereEndIndex(StringUtil.matchIndex(preSql, WHERE_END_PATTERN));
+				block.setWhereOneEqualIndex(StringUtil.matchIndex(preSql, WHERE_ONE_EQUAL_PATTERN));
+				block.setUpdateSet(StringUtil.matches(preSql, UPDATE_SET_PATTERN));
+				if (!block.isNested()) {
+					compilePseudoContent(block, BLANK.concat(sql.substring(start + SQL_PSEUDO_START_MARK_LENGTH, end))
+							.concat(BLANK));
+				}
+				result[size - 1 - i] = block;
+			}
+		} catch (Exception e) {
+			// @if()格式等错误,执行时按原方式处理并抛出异常
+			logger.debug("sql中#[]预编译失败,执行时再解析:{}", e.getMessage());
+			return null;
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 解析#[]中的内容:参数数量、@if()表达式、每个参数是否is (not) ?条件
+	 * @param block
+	 * @param markContentSql
+	 * @return
+	 */
+	private static SqlPseudoBlock compilePseudoContent(SqlPseudoBlock block, String markContentSql) {
+		block.setMarkContentSql(markContentSql);
+		int paramCnt = StringUtil.charCnt(markContentSql, '?', 0, markContentSql.length());
+		block.setParamCnt(paramCnt);
+		// #[]中无参数,整体剔除
+		if (paramCnt == 0) {
+			return block;
+		}
+		String contentSql = markContentSql;
+		// 判断是否有@if(xx==value1||xx>=value2) 形式的逻辑判断
+		int ifStart = StringUtil.matchIndex(markContentSql, IF_PATTERN);
+		if (ifStart > -1) {
+			int ifEnd = StringUtil.getSymMarkIndex("(", ")", markContentSql, ifStart);
+			String evalStr = markContentSql.substring(markContentSql.indexOf("(", ifStart) + 1, ifEnd);
+			int logicParamCnt = StringUtil.charCnt(evalStr, '?', 0, evalStr.length());
+			block.setIfStart(ifStart);
+			block.setEvalStr(evalStr);
+			block.setLogicParamCnt(logicParamCnt);
+			contentSql = markContentSql.substring(0, ifStart).concat(markContentSql.substring(ifEnd + 1));
+			block.setIfRemovedSql(contentSql);
+			paramCnt = paramCnt - logicParamCnt;
+		}
+		// 按顺序判断#[]中sql的参数是否是is 条件
+		boolean[] isParams = new boolean[paramCnt];
+		int beginIndex = 0;
+		int endIndex = 0;
+		String iMarkSql;
+		for (int i = 0; i < paramCnt; i++) {
+			beginIndex = endIndex;
+			endIndex = contentSql.indexOf(ARG_NAME, beginIndex);
+			// 不是#[]中的最后一个参数
+			if (i + 1 < paramCnt) {
+				iMarkSql = contentSql.substring(beginIndex + 1, StringUtil.indexOrder(contentSql, ARG_NAME, i + 1));
+			} else {
+				iMarkSql = contentSql.substring(beginIndex + 1);
+			}
+			isParams[i] = StringUtil.matches(iMarkSql.toLowerCase(), IS_PATTERN);
+		}
+		block.setIsParams(isParams);
+		return block;
+	}
+
+	/**
+	 * @TODO 根据参数值判断#[]是否保留,剔除的同时删除对应的参数
+	 * @param block
+	 * @param preParamCnt
+	 * @param paramValuesList
+	 * @return 保留的sql内容,剔除则返回空白
+	 */
+	private static String evalPseudoBlock(SqlPseudoBlock block, int preParamCnt, List paramValuesList) {
+		int paramCnt = block.getParamCnt();
+		// #[]中无参数,整体剔除
+		if (paramCnt == 0) {
+			return BLANK;
+		}
+		String markContentSql = block.getMarkContentSql();
+		// sql中存在逻辑判断
+		if (block.getIfStart() > -1) {
+			int logicParamCnt = block.getLogicParamCnt();
+			// update 2019-10-11 修复@if(:name==null) 不参与逻辑判断bug
+			// update 2022-5-10 支持@if(1==1) 无参数场景
+			// 逻辑不成立,剔除sql和对应参数
+			if (!MacroIfLogic.evalLogic(block.getEvalStr(), paramValuesList, preParamCnt, logicParamCnt)) {
+				for (int k = paramCnt; k > 0; k--) {
+					paramValuesList.remove(k + preParamCnt - 1);
+				}
+				return BLANK;
+			}
+			// 逻辑成立,去除@if()部分sql和对应的参数,同时将剩余参数数量减掉@if()中的参数数量
+			markContentSql = block.getIfRemovedSql();
+			for (int k = 0; k < logicParamCnt; k++) {
+				paramValuesList.remove(preParamCnt);
+			}
+			paramCnt = paramCnt - logicParamCnt;
+		}
+		boolean[] isParams = block.getIsParams();
+		boolean sqlhasIs;
+		Object paramValue;
+		// @if() 条件成立继续判断内部是否有:paramName 为null
+		for (int i = 0; i < paramCnt; i++) {
+			sqlhasIs = isParams[i];
+			paramValue = paramValuesList.get(preParamCnt + i);
+			// 1、参数值为null且非is 条件sql语句
+			// 2、is 条件sql语句值非null、true、false 剔除#[]部分内容，同时将参数从数组中剔除
+			if ((null == paramValue && !sqlhasIs)
+					|| (null != paramValue && paramValue.getClass().isArray()
+							&& CollectionUtil.convertArray(paramValue).length == 0)
+					|| (null != paramValue && (paramValue instanceof Collection) && ((Collection) paramValue).isEmpty())
+					|| (sqlhasIs && null != paramValue && !(paramValue instanceof java.lang.Boolean))) {
+				// sql中剔除最后部分的#[]内容
+				for (int k = paramCnt; k > 0; k--) {
+					paramValuesList.remove(k + preParamCnt - 1);
+				}
+				return BLANK;
+			}
+		}
+		return markContentSql;
 	}
 
 	/**
@@ -496,17 +767,9 @@ public class SqlConfigParseUtils {
 		if (pseudoMarkStart == -1) {
 			return;
 		}
-		int beginIndex, endIndex, paramCnt, preParamCnt, beginMarkIndex, endMarkIndex;
-		String preSql, markContentSql, tailSql, iMarkSql;
+		int beginMarkIndex, endMarkIndex;
+		String preSql, markContentSql, tailSql;
 		List paramValuesList = CollectionUtil.arrayToList(sqlToyResult.getParamsValue());
-		boolean logicValue;
-		int ifStart;
-		int ifEnd;
-		Object paramValue;
-		// sql中是否存在is
-		boolean sqlhasIs;
-		String evalStr;
-		int logicParamCnt;
 		while (pseudoMarkStart != -1) {
 			// 始终从最后一个#[]进行处理
 			beginMarkIndex = queryStr.lastIndexOf(SQL_PSEUDO_START_MARK);
@@ -523,82 +786,41 @@ public class SqlConfigParseUtils {
 					.concat(queryStr.substring(beginMarkIndex + SQL_PSEUDO_START_MARK_LENGTH, endMarkIndex))
 					.concat(BLANK);
 			tailSql = queryStr.substring(endMarkIndex + SQL_PSEUDO_END_MARK_LENGTH);
-			// 获取#[]中的参数数量
-			paramCnt = StringUtil.matchCnt(markContentSql, ARG_NAME_PATTERN, 0);
-			// #[]中无参数，拼接preSql+markContentSql+tailSql
-			if (paramCnt == 0) {
-				queryStr = processWhereLinkAnd(preSql, BLANK, tailSql);
+			markContentSql = evalPseudoBlock(compilePseudoContent(new SqlPseudoBlock(), markContentSql),
+					StringUtil.charCnt(preSql, '?', 0, preSql.length()), paramValuesList);
+			queryStr = processWhereLinkAnd(preSql, markContentSql, tailSql);
+			pseudoMarkStart = queryStr.indexOf(SQL_PSEUDO_START_MARK);
+		}
+		sqlToyResult.setSql(queryStr);
+		sqlToyResult.setParamsValue(paramValuesList.toArray());
+	}
+
+	/**
+	 * @TODO 使用预编译的#[]剔除查询条件为null的sql和对应参数
+	 * @param sqlToyResult
+	 * @param pseudoBlocks
+	 */
+	private static void processNullConditions(SqlToyResult sqlToyResult, SqlPseudoBlock[] pseudoBlocks) {
+		String queryStr = sqlToyResult.getSql();
+		List paramValuesList = CollectionUtil.arrayToList(sqlToyResult.getParamsValue());
+		int endMarkIndex;
+		String markContentSql;
+		for (SqlPseudoBlock block : pseudoBlocks) {
+			if (block.isNested()) {
+				// 内部#[]已经处理,内容需重新解析
+				endMarkIndex = StringUtil.getSymMarkIndex(SQL_PSEUDO_SYM_START_MARK, SQL_PSEUDO_END_MARK, queryStr,
+						block.getStart());
+				markContentSql = evalPseudoBlock(compilePseudoContent(new SqlPseudoBlock(),
+						BLANK.concat(queryStr.substring(block.getStart() + SQL_PSEUDO_START_MARK_LENGTH, endMarkIndex))
+								.concat(BLANK)),
+						block.getPreParamCnt(), paramValuesList);
 			} else {
-				// 在#[前的参数个数
-				preParamCnt = StringUtil.matchCnt(preSql, ARG_NAME_PATTERN, 0);
-				// 判断是否有@if(xx==value1||xx>=value2) 形式的逻辑判断
-				logicValue = true;
-				ifStart = StringUtil.matchIndex(markContentSql, IF_PATTERN);
-				// sql中存在逻辑判断
-				if (ifStart > -1) {
-					ifEnd = StringUtil.getSymMarkIndex("(", ")", markContentSql, ifStart);
-					evalStr = markContentSql.substring(markContentSql.indexOf("(", ifStart) + 1, ifEnd);
-					logicParamCnt = StringUtil.matchCnt(evalStr, ARG_NAME_PATTERN, 0);
-					// update 2019-10-11 修复@if(:name==null) 不参与逻辑判断bug
-					// update 2022-5-10 支持@if(1==1) 无参数场景
-					logicValue = MacroIfLogic.evalLogic(evalStr, paramValuesList, preParamCnt, logicParamCnt);
-					// 逻辑不成立,剔除sql和对应参数
-					if (!logicValue) {
-						markContentSql = BLANK;
-						for (int k = paramCnt; k > 0; k--) {
-							paramValuesList.remove(k + preParamCnt - 1);
-						}
-					} else {
-						// 逻辑成立,去除@if()部分sql和对应的参数,同时将剩余参数数量减掉@if()中的参数数量
-						markContentSql = markContentSql.substring(0, ifStart)
-								.concat(markContentSql.substring(ifEnd + 1));
-						for (int k = 0; k < logicParamCnt; k++) {
-							paramValuesList.remove(preParamCnt);
-						}
-						paramCnt = paramCnt - logicParamCnt;
-					}
-				}
-				// @if() 条件成立继续判断内部是否有:paramName 为null
-				if (logicValue) {
-					beginIndex = 0;
-					endIndex = 0;
-					// 按顺序处理#[]中sql的参数
-					for (int i = preParamCnt; i < preParamCnt + paramCnt; i++) {
-						sqlhasIs = false;
-						beginIndex = endIndex;
-						endIndex = markContentSql.indexOf(ARG_NAME, beginIndex);
-						// 不是#[]中的最后一个参数
-						if (i - preParamCnt + 1 < paramCnt) {
-							iMarkSql = markContentSql.substring(beginIndex + 1,
-									StringUtil.indexOrder(markContentSql, ARG_NAME, i - preParamCnt + 1));
-						} else {
-							iMarkSql = markContentSql.substring(beginIndex + 1);
-						}
-						// 判断是否是is 条件
-						if (StringUtil.matches(iMarkSql.toLowerCase(), IS_PATTERN)) {
-							sqlhasIs = true;
-						}
-						paramValue = paramValuesList.get(i);
-						// 1、参数值为null且非is 条件sql语句
-						// 2、is 条件sql语句值非null、true、false 剔除#[]部分内容，同时将参数从数组中剔除
-						if ((null == paramValue && !sqlhasIs)
-								|| (null != paramValue && paramValue.getClass().isArray()
-										&& CollectionUtil.convertArray(paramValue).length == 0)
-								|| (null != paramValue && (paramValue instanceof Collection)
-										&& ((Collection) paramValue).isEmpty())
-								|| (sqlhasIs && null != paramValue && !(paramValue instanceof java.lang.Boolean))) {
-							// sql中剔除最后部分的#[]内容
-							markContentSql = BLANK;
-							for (int k = paramCnt; k > 0; k--) {
-								paramValuesList.remove(k + preParamCnt - 1);
-							}
-							break;
-						}
-					}
-				}
-				queryStr = processWhereLinkAnd(preSql, markContentSql, tailSql);
+				endMarkIndex = block.getEnd();
+				markContentSql = evalPseudoBlock(block, block.getPreParamCnt(), paramValuesList);
 			}
-			pseudoMarkStart = queryStr.indexOf(SQL_PSEUDO_START_MARK);
+			queryStr = processWhereLinkAnd(queryStr.substring(0, block.getStart()).concat(BLANK), markContentSql,
+					queryStr.substring(endMarkIndex + SQL_PSEUDO_END_MARK_LENGTH), block.getWhereEndIndex(),
+					block.getWhereOneEqualIndex(), block.isUpdateSet());
 		}
 		sqlToyResult.setSql(queryStr);
 		sqlToyResult.setParamsValue(paramValuesList.toArray());
@@ -623,7 +845,7 @@ public class SqlConfigParseUtils {
 				paramValueList = CollectionUtil.arrayToList(sqlToyResult.getParamsValue());
 			}
 			index = m.start();
-			paramCnt = StringUtil.matchCnt(queryStr.substring(0, index), ARG_NAME_PATTERN, 0);
+			paramCnt = StringUtil.charCnt(queryStr, '?', 0, index);
 			// 剔除参数@blank(?) 对应的参数值
 			paramValueList.remove(paramCnt - blankCnt);
 			blankCnt++;
@@ -660,7 +882,7 @@ public class SqlConfigParseUtils {
 			index = m.start();
 			// @value(?)
 			if (m.group().contains(ARG_NAME)) {
-				paramCnt = StringUtil.matchCnt(queryStr.substring(0, index), ARG_NAME_PATTERN, 0);
+				paramCnt = StringUtil.charCnt(queryStr, '?', 0, index);
 				// 用参数的值直接覆盖@value(:name)
 				paramValue = paramValueList.get(paramCnt - valueCnt);
 				// update 2024-03-03 强化对数组、枚举、日期等类型的输出
@@ -723,7 +945,7 @@ public class SqlConfigParseUtils {
 		String likeValStr;
 		while (m.find()) {
 			index = m.start();
-			paramCnt = StringUtil.matchCnt(queryStr.substring(0, index), ARG_NAME_PATTERN, 0);
+			paramCnt = StringUtil.charCnt(queryStr, '?', 0, index);
 			likeValStr = (sqlToyResult.getParamsValue()[paramCnt] == null) ? null
 					: sqlToyResult.getParamsValue()[paramCnt].toString();
 			// 不存在%符号时，前后增加%
@@ -769,7 +991,7 @@ public class SqlConfigParseUtils {
 		while (matched) {
 			end = m.end();
 			partSql = ARG_NAME;
-			parameterMarkCnt = StringUtil.matchCnt(queryStr, ARG_REGEX, 0, end);
+			parameterMarkCnt = StringUtil.charCnt(queryStr, '?', 0, end);
 			// (t.field1,t.feild2) in (:param1,:param2) 或 (t.field1,t.feild2) in
 			// ((:param1,:param2))模式
 			paramCnt = StringUtil.matchCnt(m.group(), ARG_REGEX);
@@ -970,9 +1192,24 @@ public class SqlConfigParseUtils {
 	 * @return
 	 */
 	public static String processWhereLinkAnd(String preSql, String markContentSql, String tailSql) {
+		return processWhereLinkAnd(preSql, markContentSql, tailSql, StringUtil.matchIndex(preSql, WHERE_END_PATTERN),
+				StringUtil.matchIndex(preSql, WHERE_ONE_EQUAL_PATTERN), StringUtil.matches(preSql, UPDATE_SET_PATTERN));
+	}
+
+	/**
+	 * @param preSql
+	 * @param markContentSql
+	 * @param tailSql
+	 * @param whereEndIndex      preSql中where 结尾的位置
+	 * @param whereOneEqualIndex preSql中where 1=1 结尾的位置
+	 * @param updateSet          preSql是否set 结尾
+	 * @return
+	 */
+	private static String processWhereLinkAnd(String preSql, String markContentSql, String tailSql,
+			int whereEndIndex, int whereOneEqualIndex, boolean updateSet) {
 		String subStr = markContentSql.concat(tailSql);
 		String tmp = subStr.trim();
-		int index = StringUtil.matchIndex(preSql, WHERE_END_PATTERN);
+		int index = whereEndIndex;
 		// 前部分sql以where 结尾，后部分sql以and 或 or 开头的拼接,剔除or 和and
 		if (index >= 0) {
 			// where 后面拼接的条件语句是空白,剔除where
@@ -1004,7 +1241,7 @@ public class SqlConfigParseUtils {
 		}
 		// update 2017-12-4
 		// where 1=1 结尾
-		index = StringUtil.matchIndex(preSql, WHERE_ONE_EQUAL_PATTERN);
+		index = whereOneEqualIndex;
 		if (index >= 0) {
 			// 剔除1=1 进行sql拼接
 			if (StringUtil.matches(tmp, AND_START_PATTERN)) {
@@ -1027,7 +1264,7 @@ public class SqlConfigParseUtils {
 		}
 		// update 语句 set 后面连接逗号"," 情况下去除逗号
 		// modify 2019-7-16
-		if (StringUtil.matches(preSql, UPDATE_SET_PATTERN) && tmp.startsWith(",")) {
+		if (updateSet && tmp.startsWith(",")) {
 			return preSql.concat(" ").concat(subStr.trim().substring(1)).concat(" ");
 		}
 		return preSql.concat(" ").concat(subStr);
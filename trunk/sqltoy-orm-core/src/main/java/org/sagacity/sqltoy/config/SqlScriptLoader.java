@@ -14,6 +14,7 @@ import org.sagacity.sqltoy.config.model.SqlToyConfig;
 import org.sagacity.sqltoy.config.model.SqlType;
 import org.sagacity.sqltoy.dialect.utils.PageOptimizeUtils;
 import org.sagacity.sqltoy.exception.DataAccessException;
+import org.sagacity.sqltoy.model.BoundedCache;
 import org.sagacity.sqltoy.plugins.function.FunctionUtils;
 import org.sagacity.sqltoy.plugins.id.macro.AbstractMacro;
 import org.sagacity.sqltoy.plugins.id.macro.MacroUtils;
@@ -48,7 +49,9 @@ public class SqlScriptLoader {
 	private ConcurrentHashMap<String, SqlToyConfig> sqlCache = new ConcurrentHashMap<String, SqlToyConfig>(256);
 
 	// 代码中编写的sql语句缓存
-	private ConcurrentHashMap<String, SqlToyConfig> codeSqlCache = new ConcurrentHashMap<String, SqlToyConfig>(128);
+	private BoundedCache<String, SqlToyConfig> codeSqlCache = new BoundedCache<String, SqlToyConfig>("codeSql",
+			SqlToyConstants::getMaxCodeSqlCount, SqlToyConstants::getMaxSqlCacheWeight,
+			(key, value) -> key.length());
 
 	/**
 	 * sql资源配置路径
@@ -314,8 +317,9 @@ public class SqlScriptLoader {
 					result.addFilter(new ParamFilterModel("blank", new String[] { "*" }));
 				}
 				// 限制数量的原因是存在部分代码中的sql会拼接条件参数值，导致不同的sql无限增加
+				// 有界缓存超出上限淘汰最少使用的,新的常用sql依然可以缓存
 				//非@include(:paramName)模式才可以缓存
-				if (!isParamInclude && codeSqlCache.size() < SqlToyConstants.getMaxCodeSqlCount()) {
+				if (!isParamInclude) {
 					codeSqlCache.put(sqlKey, result);
 				}
 			}
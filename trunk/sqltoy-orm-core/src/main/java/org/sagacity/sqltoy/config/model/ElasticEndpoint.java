@@ -21,12 +21,15 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.config.ConnectionConfig;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
-import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.ssl.SSLContexts;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
+import org.sagacity.sqltoy.model.HttpPoolStats;
 import org.sagacity.sqltoy.utils.FileUtil;
+import org.sagacity.sqltoy.utils.HttpClientUtils;
+import org.sagacity.sqltoy.utils.HttpConnectionPool;
 import org.sagacity.sqltoy.utils.StringUtil;
 
 /**
@@ -34,6 +37,8 @@ import org.sagacity.sqltoy.utils.StringUtil;
  * @description es配置
  * @author zhongxuchen
  * @version v1.0,Date:2018年2月5日
+ * @modify Date:2024-05-16 {增加连接池(按路由限制连接数、keep-alive)、请求gzip压缩配置,restClient不再每次请求后关闭}
+ * @modify Date:2024-06-01 {证书加载失败直接抛出异常;sql中直接指定的url按服务地址共享连接池;未创建连接池时返回空的使用情况}
  */
 public class ElasticEndpoint implements Serializable {
 
@@ -44,6 +49,16 @@ public class ElasticEndpoint implements Serializable {
 
 	private RestClient restClient;
 
+	/**
+	 * 单一地址时httpclient模式的连接池
+	 */
+	private transient volatile HttpConnectionPool httpPool;
+
+	/**
+	 * 是否使用按服务地址共享的连接池(sql中直接指定url时,避免每个url各自创建连接池)
+	 */
+	private boolean sharedPool = false;
+
 	public ElasticEndpoint(String url) {
 		this.url = url;
 	}
@@ -144,6 +159,26 @@ public class ElasticEndpoint implements Serializable {
 	 */
 	private boolean nativeSql = true;
 
+	/**
+	 * 连接池最大连接数
+	 */
+	private int maxConnections = 50;
+
+	/**
+	 * 单个路由(host)最大连接数
+	 */
+	private int maxConnectionsPerRoute = 20;
+
+	/**
+	 * 服务端未返回Keep-Alive时连接保持时长,默认60秒
+	 */
+	private long keepAlive = 60000;
+
+	/**
+	 * 请求内容是否gzip压缩(elasticsearch需支持Content-Encoding:gzip)
+	 */
+	private boolean gzipRequest = false;
+
 	public String getSqlPath() {
 		return sqlPath;
 	}
@@ -358,6 +393,127 @@ public class ElasticEndpoint implements Serializable {
 		this.authCaching = authCaching;
 	}
 
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+
+	public long getKeepAlive() {
+		return keepAlive;
+	}
+
+	public void setKeepAlive(long keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	public boolean isGzipRequest() {
+		return gzipRequest;
+	}
+
+	public void setGzipRequest(boolean gzipRequest) {
+		this.gzipRequest = gzipRequest;
+	}
+
+	/**
+	 * @TODO 获取httpclient模式的连接池(首次使用时创建)
+	 * @return
+	 */
+	public HttpConnectionPool getHttpPool() {
+		// 共享连接池由HttpClientUtils统一持有和关闭
+		if (sharedPool) {
+			return HttpClientUtils.getSharedPool(url, username, password);
+		}
+		HttpConnectionPool pool = httpPool;
+		if (pool == null) {
+			synchronized (this) {
+				pool = httpPool;
+				if (pool == null) {
+					SSLContext sslContext;
+					// 证书配置错误直接报错,不能退回使用jdk默认证书
+					try {
+						sslContext = createSSLContext();
+					} catch (Exception e) {
+						throw new IllegalArgumentException("elasticsearch:" + (StringUtil.isBlank(id) ? url : id)
+								+ " 证书配置keyStore=" + keyStore + " 加载失败:" + e.getMessage(), e);
+					}
+					pool = new HttpConnectionPool(StringUtil.isBlank(id) ? url : id, maxConnections,
+							maxConnectionsPerRoute, keepAlive, requestTimeout, connectTimeout, socketTimeout, username,
+							password, sslContext);
+					httpPool = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * @TODO 连接池使用情况,restClient模式或尚未使用时返回空的统计
+	 * @return
+	 */
+	public HttpPoolStats getHttpPoolStats() {
+		HttpConnectionPool pool = sharedPool ? null : httpPool;
+		if (pool != null) {
+			return pool.getStats();
+		}
+		HttpPoolStats result = new HttpPoolStats();
+		result.setName(StringUtil.isBlank(id) ? url : id);
+		result.setMax(maxConnections);
+		return result;
+	}
+
+	public boolean isSharedPool() {
+		return sharedPool;
+	}
+
+	public void setSharedPool(boolean sharedPool) {
+		this.sharedPool = sharedPool;
+	}
+
+	/**
+	 * @TODO 关闭restClient和连接池
+	 */
+	public synchronized void close() {
+		if (restClient != null) {
+			try {
+				restClient.close();
+			} catch (Exception e) {
+			}
+			restClient = null;
+		}
+		if (httpPool != null) {
+			httpPool.close();
+			httpPool = null;
+		}
+	}
+
+	/**
+	 * @TODO 根据证书配置构造SSLContext
+	 * @return 未配置证书返回null
+	 * @throws Exception
+	 */
+	private SSLContext createSSLContext() throws Exception {
+		if (StringUtil.isBlank(this.keyStore)) {
+			return null;
+		}
+		KeyStore truststore = KeyStore
+				.getInstance(StringUtil.isBlank(keyStoreType) ? KeyStore.getDefaultType() : keyStoreType);
+		truststore.load(FileUtil.getFileInputStream(keyStore),
+				(keyStorePass == null) ? null : keyStorePass.toCharArray());
+		return SSLContexts.custom()
+				.loadTrustMaterial(truststore, keyStoreSelfSign ? new TrustSelfSignedStrategy() : null).build();
+	}
+
 	public void initRestClient() {
 		if (StringUtil.isBlank(this.getUrl())) {
 			return;
@@ -385,6 +541,8 @@ public class ElasticEndpoint implements Serializable {
 				HttpHost[] hostAry = new HttpHost[hosts.size()];
 				hosts.toArray(hostAry);
 				RestClientBuilder builder = RestClient.builder(hostAry);
+				// 请求gzip压缩
+				builder.setCompressionEnabled(gzipRequest);
 				final ConnectionConfig connectionConfig = ConnectionConfig.custom()
 						.setCharset(Charset.forName(this.charset == null ? "UTF-8" : this.charset)).build();
 				RequestConfig requestConfig = RequestConfig.custom().setConnectionRequestTimeout(this.requestTimeout)
@@ -394,6 +552,9 @@ public class ElasticEndpoint implements Serializable {
 						&& StringUtil.isNotBlank(getPassword())) ? true : false;
 				// 是否ssl证书模式
 				final boolean hasSsl = StringUtil.isNotBlank(this.keyStore);
+				final int maxConnections = this.maxConnections;
+				final int maxConnectionsPerRoute = this.maxConnectionsPerRoute;
+				final long keepAlive = this.keepAlive;
 				// 凭据提供器
 				if (hasCrede) {
 					credsProvider.setCredentials(AuthScope.ANY,
@@ -401,23 +562,20 @@ public class ElasticEndpoint implements Serializable {
 							new UsernamePasswordCredentials(getUsername(), getPassword()));
 				}
 
-				SSLContextBuilder sslBuilder = null;
 				try {
-					if (hasSsl) {
-						KeyStore truststore = KeyStore.getInstance(
-								StringUtil.isBlank(keyStoreType) ? KeyStore.getDefaultType() : keyStoreType);
-						truststore.load(FileUtil.getFileInputStream(keyStore),
-								(keyStorePass == null) ? null : keyStorePass.toCharArray());
-						sslBuilder = SSLContexts.custom().loadTrustMaterial(truststore,
-								keyStoreSelfSign ? new TrustSelfSignedStrategy() : null);
-					}
-					final SSLContext sslContext = (sslBuilder == null) ? null : sslBuilder.build();
+					final SSLContext sslContext = createSSLContext();
 					final boolean disableAuthCaching = !authCaching;
 					builder.setHttpClientConfigCallback(new RestClientBuilder.HttpClientConfigCallback() {
 						@Override
 						public HttpAsyncClientBuilder customizeHttpClient(HttpAsyncClientBuilder httpClientBuilder) {
 							httpClientBuilder.setDefaultConnectionConfig(connectionConfig)
-									.setDefaultRequestConfig(requestConfig);
+									.setDefaultRequestConfig(requestConfig).setMaxConnTotal(maxConnections)
+									.setMaxConnPerRoute(maxConnectionsPerRoute)
+									.setKeepAliveStrategy((response, context) -> {
+										long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+												.getKeepAliveDuration(response, context);
+										return (duration > 0) ? duration : keepAlive;
+									});
 							// 禁用抢占式身份验证
 							if (disableAuthCaching) {
 								httpClientBuilder.disableAuthCaching();
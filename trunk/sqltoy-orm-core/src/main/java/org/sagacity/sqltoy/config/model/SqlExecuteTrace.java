@@ -4,6 +4,7 @@
 package org.sagacity.sqltoy.config.model;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -14,6 +15,9 @@ import org.sagacity.sqltoy.utils.IdUtil;
  * @description sql执行日志
  * @author zhongxuchen
  * @version v1.0,Date:2018年3月24日
+ * @modify Date:2024-05-08 {增加纳秒计时、记录数量和连接等待时长,用于sql执行统计}
+ * @modify Date:2024-05-10 {非输出模式下不再逐条记录日志,只保留首条和最后一条sql,uid延迟生成,支持reset复用}
+ * @modify Date:2024-06-01 {记录外层日志和开始执行的线程,嵌套执行结束后自动恢复外层日志}
  */
 public class SqlExecuteTrace implements Serializable {
 	/**
@@ -22,12 +26,35 @@ public class SqlExecuteTrace implements Serializable {
 	private static final long serialVersionUID = 6050450953137017285L;
 
 	public SqlExecuteTrace(String id, String type, boolean isPrint) {
+		reset(id, type, isPrint);
+	}
+
+	/**
+	 * @TODO 重置(线程内复用,避免每次执行都创建对象)
+	 * @param id
+	 * @param type
+	 * @param isPrint
+	 */
+	public void reset(String id, String type, boolean isPrint) {
 		this.id = id;
 		this.type = type;
 		this.start = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
 		this.isPrint = isPrint;
-		// 不需要体现年月日
-		this.uid = IdUtil.getDebugId();
+		// uid 在需要输出日志时再生成
+		this.uid = null;
+		this.rowCount = 0;
+		this.connectionWaitNanos = 0;
+		this.overTime = false;
+		this.error = false;
+		this.errorMsg = null;
+		this.dialect = null;
+		this.firstSql = null;
+		this.lastSqlTopic = null;
+		this.lastSql = null;
+		this.lastSqlParams = null;
+		// 输出模式才逐条记录日志
+		this.executeLogs = isPrint ? new CopyOnWriteArrayList<>() : null;
 	}
 
 	/**
@@ -35,6 +62,21 @@ public class SqlExecuteTrace implements Serializable {
 	 */
 	private Long start;
 
+	/**
+	 * 开始执行的纳秒时间(用于耗时统计)
+	 */
+	private long startNanos;
+
+	/**
+	 * 查询或影响的记录数量
+	 */
+	private long rowCount = 0;
+
+	/**
+	 * 获取数据库连接的等待时长(纳秒)
+	 */
+	private long connectionWaitNanos = 0;
+
 	/**
 	 * sqlid
 	 */
@@ -78,9 +120,38 @@ public class SqlExecuteTrace implements Serializable {
 	private boolean error = false;
 
 	/**
-	 * 执行的sql和参数
+	 * 错误信息
+	 */
+	private String errorMsg;
+
+	/**
+	 * 执行的sql和参数(仅输出模式下记录)
 	 */
-	private List<SqlExecuteLog> executeLogs = new CopyOnWriteArrayList<>();
+	private List<SqlExecuteLog> executeLogs;
+
+	/**
+	 * 第一条执行的sql(用于代码中直接写的sql做执行统计)
+	 */
+	private String firstSql;
+
+	/**
+	 * 非输出模式下只保留最后一条sql,在发生错误或执行超时需要输出时再组装日志
+	 */
+	private String lastSqlTopic;
+
+	private String lastSql;
+
+	private Object[] lastSqlParams;
+
+	/**
+	 * 开始执行时线程中的外层日志(嵌套执行结束后恢复)
+	 */
+	private transient SqlExecuteTrace parent;
+
+	/**
+	 * 开始执行的线程,为null表示已经结束(未在使用中)
+	 */
+	private transient Thread owner;
 
 	/**
 	 * @return the start
@@ -96,6 +167,26 @@ public class SqlExecuteTrace implements Serializable {
 		return System.currentTimeMillis() - start;
 	}
 
+	public long getExecuteNanos() {
+		return System.nanoTime() - startNanos;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public void addRowCount(long rowCount) {
+		this.rowCount += rowCount;
+	}
+
+	public long getConnectionWaitNanos() {
+		return connectionWaitNanos;
+	}
+
+	public void addConnectionWaitNanos(long waitNanos) {
+		this.connectionWaitNanos += waitNanos;
+	}
+
 	/**
 	 * @return the id
 	 */
@@ -125,10 +216,21 @@ public class SqlExecuteTrace implements Serializable {
 	}
 
 	/**
+	 * @TODO 获取执行日志,非输出模式下由最后一条sql和错误信息组装
 	 * @return the sqlToyResults
 	 */
 	public List<SqlExecuteLog> getExecuteLogs() {
-		return executeLogs;
+		if (executeLogs != null) {
+			return executeLogs;
+		}
+		List<SqlExecuteLog> result = new ArrayList<SqlExecuteLog>(2);
+		if (lastSql != null) {
+			result.add(new SqlExecuteLog(0, lastSqlTopic, lastSql, lastSqlParams));
+		}
+		if (error) {
+			result.add(new SqlExecuteLog(1, "错误信息", errorMsg, null));
+		}
+		return result;
 	}
 
 	/**
@@ -137,16 +239,40 @@ public class SqlExecuteTrace implements Serializable {
 	 * @param paramsValue
 	 */
 	public void addSqlLog(String topic, String sql, Object... paramsValue) {
-		executeLogs.add(new SqlExecuteLog(0, topic, sql, paramsValue));
+		if (firstSql == null) {
+			firstSql = sql;
+		}
+		if (executeLogs != null) {
+			executeLogs.add(new SqlExecuteLog(0, topic, sql, paramsValue));
+		} else {
+			lastSqlTopic = topic;
+			lastSql = sql;
+			lastSqlParams = paramsValue;
+		}
 	}
 
 	/**
+	 * @TODO 过程日志,非输出模式下不记录
 	 * @param topic
 	 * @param content
 	 * @param paramsValue
 	 */
 	public void addLog(String topic, String content, Object... paramsValue) {
-		executeLogs.add(new SqlExecuteLog(1, topic, content, paramsValue));
+		if (executeLogs != null) {
+			executeLogs.add(new SqlExecuteLog(1, topic, content, paramsValue));
+		}
+	}
+
+	/**
+	 * @TODO 是否逐条记录日志(输出模式)
+	 * @return
+	 */
+	public boolean isCaptureLogs() {
+		return executeLogs != null;
+	}
+
+	public String getFirstSql() {
+		return firstSql;
 	}
 
 	/**
@@ -161,13 +287,20 @@ public class SqlExecuteTrace implements Serializable {
 	 */
 	public void setError(String errorMsg) {
 		this.error = true;
-		executeLogs.add(new SqlExecuteLog(1, "错误信息", errorMsg, null));
+		this.errorMsg = errorMsg;
+		if (executeLogs != null) {
+			executeLogs.add(new SqlExecuteLog(1, "错误信息", errorMsg, null));
+		}
 	}
 
 	/**
 	 * @return the uid
 	 */
 	public String getUid() {
+		if (uid == null) {
+			// 不需要体现年月日
+			uid = IdUtil.getDebugId();
+		}
 		return uid;
 	}
 
@@ -193,4 +326,20 @@ public class SqlExecuteTrace implements Serializable {
 		this.dialect = dialect;
 	}
 
+	public SqlExecuteTrace getParent() {
+		return parent;
+	}
+
+	public void setParent(SqlExecuteTrace parent) {
+		this.parent = parent;
+	}
+
+	public Thread getOwner() {
+		return owner;
+	}
+
+	public void setOwner(Thread owner) {
+		this.owner = owner;
+	}
+
 }
@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package org.sagacity.sqltoy.config.model;
+
+import java.io.Serializable;
+
+/**
+ * @project sqltoy-orm
+ * @description sql解析计划:将sql中与参数值无关的解析结果(:named参数替换、参数名称、#[]、@blank、@value、@loop等标记是否存在)
+ *              一次性编译缓存,执行时只需根据参数值处理动态部分,避免每次都对sql进行正则扫描
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-04-18
+ */
+public class SqlParsePlan implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 6384719527043198756L;
+
+	/**
+	 * 是否:paramName 形式的参数模式
+	 */
+	private boolean namedArgs = false;
+
+	/**
+	 * 是否存在@loop()
+	 */
+	private boolean hasLoop = false;
+
+	/**
+	 * 完成预处理(?号或??号已替换成占位符)并将:name 替换成?后的sql和参数名称
+	 */
+	private SqlParamsModel sqlParams;
+
+	/**
+	 * ?号替换成占位符后的sql(@loop场景需要根据参数值展开后再做:name替换)
+	 */
+	private String placeholderSql;
+
+	/**
+	 * sql中的参数名称(去除重复)
+	 */
+	private String[] distinctParamsName;
+
+	/**
+	 * ?传参模式下?的数量
+	 */
+	private int argCnt = 0;
+
+	/**
+	 * ?传参模式下是否存在in (?)
+	 */
+	private boolean argInPattern = false;
+
+	/**
+	 * 是否存在#[]
+	 */
+	private boolean hasPseudo = false;
+
+	/**
+	 * 是否存在@blank
+	 */
+	private boolean hasBlank = false;
+
+	/**
+	 * 是否存在@value
+	 */
+	private boolean hasValue = false;
+
+	/**
+	 * 是否存在like
+	 */
+	private boolean hasLike = false;
+
+	/**
+	 * 是否存在in
+	 */
+	private boolean hasIn = false;
+
+	/**
+	 * 是否存在需要最终还原的?(:named模式)或??(?传参模式)
+	 */
+	private boolean hasPlaceholder = false;
+
+	/**
+	 * 按执行顺序(从后往前)排列的#[]解析结果,@loop等无法预先确定sql的为null
+	 */
+	private SqlPseudoBlock[] pseudoBlocks;
+
+	public boolean isNamedArgs() {
+		return namedArgs;
+	}
+
+	public void setNamedArgs(boolean namedArgs) {
+		this.namedArgs = namedArgs;
+	}
+
+	public boolean isHasLoop() {
+		return hasLoop;
+	}
+
+	public void setHasLoop(boolean hasLoop) {
+		this.hasLoop = hasLoop;
+	}
+
+	public SqlParamsModel getSqlParams() {
+		return sqlParams;
+	}
+
+	public void setSqlParams(SqlParamsModel sqlParams) {
+		this.sqlParams = sqlParams;
+	}
+
+	public String getPlaceholderSql() {
+		return placeholderSql;
+	}
+
+	public void setPlaceholderSql(String placeholderSql) {
+		this.placeholderSql = placeholderSql;
+	}
+
+	public String[] getDistinctParamsName() {
+		return distinctParamsName;
+	}
+
+	public void setDistinctParamsName(String[] distinctParamsName) {
+		this.distinctParamsName = distinctParamsName;
+	}
+
+	public int getArgCnt() {
+		return argCnt;
+	}
+
+	public void setArgCnt(int argCnt) {
+		this.argCnt = argCnt;
+	}
+
+	public boolean isArgInPattern() {
+		return argInPattern;
+	}
+
+	public void setArgInPattern(boolean argInPattern) {
+		this.argInPattern = argInPattern;
+	}
+
+	public boolean isHasPseudo() {
+		return hasPseudo;
+	}
+
+	public void setHasPseudo(boolean hasPseudo) {
+		this.hasPseudo = hasPseudo;
+	}
+
+	public boolean isHasBlank() {
+		return hasBlank;
+	}
+
+	public void setHasBlank(boolean hasBlank) {
+		this.hasBlank = hasBlank;
+	}
+
+	public boolean isHasValue() {
+		return hasValue;
+	}
+
+	public void setHasValue(boolean hasValue) {
+		this.hasValue = hasValue;
+	}
+
+	public boolean isHasLike() {
+		return hasLike;
+	}
+
+	public void setHasLike(boolean hasLike) {
+		this.hasLike = hasLike;
+	}
+
+	public boolean isHasIn() {
+		return hasIn;
+	}
+
+	public void setHasIn(boolean hasIn) {
+		this.hasIn = hasIn;
+	}
+
+	public boolean isHasPlaceholder() {
+		return hasPlaceholder;
+	}
+
+	public void setHasPlaceholder(boolean hasPlaceholder) {
+		this.hasPlaceholder = hasPlaceholder;
+	}
+
+	public SqlPseudoBlock[] getPseudoBlocks() {
+		return pseudoBlocks;
+	}
+
+	public void setPseudoBlocks(SqlPseudoBlock[] pseudoBlocks) {
+		this.pseudoBlocks = pseudoBlocks;
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package org.sagacity.sqltoy.config.model;
+
+import java.io.Serializable;
+
+/**
+ * @project sqltoy-orm
+ * @description sql中单个#[]的解析结果:位置、前面的参数数量、@if()表达式、参数是否is条件等与参数值无关的信息,
+ *              在解析计划中一次性编译,执行时只需根据参数值判断是否保留
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-31
+ */
+public class SqlPseudoBlock implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -5262913580470218469L;
+
+	/**
+	 * #[ 在sql中的位置
+	 */
+	private int start;
+
+	/**
+	 * 对称] 在原始sql中的位置(嵌套#[]的以执行时为准)
+	 */
+	private int end;
+
+	/**
+	 * 是否包含内部#[],内部#[]处理后内容会变化,需执行时再解析
+	 */
+	private boolean nested = false;
+
+	/**
+	 * #[ 前面的参数数量
+	 */
+	private int preParamCnt;
+
+	/**
+	 * #[ 前面sql中where 结尾的位置
+	 */
+	private int whereEndIndex = -1;
+
+	/**
+	 * #[ 前面sql中where 1=1 结尾的位置
+	 */
+	private int whereOneEqualIndex = -1;
+
+	/**
+	 * #[ 前面sql是否以set 结尾
+	 */
+	private boolean updateSet = false;
+
+	/**
+	 * #[]中的内容(前后补了空白)
+	 */
+	private String markContentSql;
+
+	/**
+	 * #[]中的参数数量
+	 */
+	private int paramCnt;
+
+	/**
+	 * @if( 在内容中的位置,-1表示没有@if()
+	 */
+	private int ifStart = -1;
+
+	/**
+	 * @if()中的逻辑表达式
+	 */
+	private String evalStr;
+
+	/**
+	 * @if()中的参数数量
+	 */
+	private int logicParamCnt;
+
+	/**
+	 * 剔除@if()后的内容
+	 */
+	private String ifRemovedSql;
+
+	/**
+	 * 剔除@if()后每个参数是否是is (not) ?条件
+	 */
+	private boolean[] isParams;
+
+	public int getStart() {
+		return start;
+	}
+
+	public void setStart(int start) {
+		this.start = start;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	public void setEnd(int end) {
+		this.end = end;
+	}
+
+	public boolean isNested() {
+		return nested;
+	}
+
+	public void setNested(boolean nested) {
+		this.nested = nested;
+	}
+
+	public int getPreParamCnt() {
+		return preParamCnt;
+	}
+
+	public void setPreParamCnt(int preParamCnt) {
+		this.preParamCnt = preParamCnt;
+	}
+
+	public int getWhereEndIndex() {
+		return whereEndIndex;
+	}
+
+	public void setWhereEndIndex(int whereEndIndex) {
+		this.whereEndIndex = whereEndIndex;
+	}
+
+	public int getWhereOneEqualIndex() {
+		return whereOneEqualIndex;
+	}
+
+	public void setWhereOneEqualIndex(int whereOneEqualIndex) {
+		this.whereOneEqualIndex = whereOneEqualIndex;
+	}
+
+	public boolean isUpdateSet() {
+		return updateSet;
+	}
+
+	public void setUpdateSet(boolean updateSet) {
+		this.updateSet = updateSet;
+	}
+
+	public String getMarkContentSql() {
+		return markContentSql;
+	}
+
+	public void setMarkContentSql(String markContentSql) {
+		this.markContentSql = markContentSql;
+	}
+
+	public int getParamCnt() {
+		return paramCnt;
+	}
+
+	public void setParamCnt(int paramCnt) {
+		this.paramCnt = paramCnt;
+	}
+
+	public int getIfStart() {
+		return ifStart;
+	}
+
+	public void setIfStart(int ifStart) {
+		this.ifStart = ifStart;
+	}
+
+	public String getEvalStr() {
+		return evalStr;
+	}
+
+	public void setEvalStr(String evalStr) {
+		this.evalStr = evalStr;
+	}
+
+	public int getLogicParamCnt() {
+		return logicParamCnt;
+	}
+
+	public void setLogicParamCnt(int logicParamCnt) {
+		this.logicParamCnt = logicParamCnt;
+	}
+
+	public String getIfRemovedSql() {
+		return ifRemovedSql;
+	}
+
+	public void setIfRemovedSql(String ifRemovedSql) {
+		this.ifRemovedSql = ifRemovedSql;
+	}
+
+	public boolean[] getIsParams() {
+		return isParams;
+	}
+
+	public void setIsParams(boolean[] isParams) {
+		this.isParams = isParams;
+	}
+}
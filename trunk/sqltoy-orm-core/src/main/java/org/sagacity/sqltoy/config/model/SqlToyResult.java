@@ -10,6 +10,7 @@ import java.io.Serializable;
  * @description 通过sqlToy工具处理后查询条件以及sql语句的最终结果
  * @author zhongxuchen
  * @version v1.0,Date:2009-12-13
+ * @modify {Date:2024-06-01,增加paramsType,拦截器增加参数时同步调整对应位置的参数类型}
  */
 public class SqlToyResult implements Serializable {
 	/**
@@ -27,6 +28,11 @@ public class SqlToyResult implements Serializable {
 	 */
 	private Object[] paramsValue;
 
+	/**
+	 * 对应sql条件参数位置的jdbc类型(对象操作时才有值,批量操作为每行共用的类型)
+	 */
+	private Integer[] paramsType;
+
 	public SqlToyResult() {
 
 	}
@@ -63,4 +69,12 @@ public class SqlToyResult implements Serializable {
 	public void setParamsValue(Object[] paramsValue) {
 		this.paramsValue = paramsValue;
 	}
+
+	public Integer[] getParamsType() {
+		return paramsType;
+	}
+
+	public void setParamsType(Integer[] paramsType) {
+		this.paramsType = paramsType;
+	}
 }
@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
@@ -208,6 +209,14 @@ public interface LightDao {
 	 */
 	public void fetchStream(final QueryExecutor queryExecutor, final StreamResultHandler streamResultHandler);
 
+	/**
+	 * @TODO 拉取式流查询,返回的Stream需要关闭(try-with-resources)以释放数据库连接
+	 * @param <T>
+	 * @param queryExecutor 可设置fetchSize和prefetch(后台预读数量)
+	 * @return
+	 */
+	public <T> Stream<T> stream(final QueryExecutor queryExecutor);
+
 	/**
 	 * @todo 保存对象,并返回主键值
 	 * @param entity
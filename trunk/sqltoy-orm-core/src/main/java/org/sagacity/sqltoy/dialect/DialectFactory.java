@@ -5,10 +5,12 @@ import java.lang.reflect.Type;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -55,19 +57,24 @@ import org.sagacity.sqltoy.dialect.impl.TDengineDialect;
 import org.sagacity.sqltoy.dialect.impl.TidbDialect;
 import org.sagacity.sqltoy.dialect.utils.ClickHouseDialectUtils;
 import org.sagacity.sqltoy.dialect.utils.DialectUtils;
+import org.sagacity.sqltoy.dialect.utils.KeysetPageUtils;
 import org.sagacity.sqltoy.dialect.utils.PageOptimizeUtils;
 import org.sagacity.sqltoy.exception.DataAccessException;
 import org.sagacity.sqltoy.model.ColumnMeta;
+import org.sagacity.sqltoy.model.DataSourceMeta;
 import org.sagacity.sqltoy.model.LockMode;
 import org.sagacity.sqltoy.model.QueryExecutor;
 import org.sagacity.sqltoy.model.QueryResult;
+import org.sagacity.sqltoy.model.ResultCursor;
 import org.sagacity.sqltoy.model.StoreResult;
 import org.sagacity.sqltoy.model.TableMeta;
 import org.sagacity.sqltoy.model.TreeTableModel;
 import org.sagacity.sqltoy.model.UniqueExecutor;
 import org.sagacity.sqltoy.model.inner.QueryExecutorExtend;
 import org.sagacity.sqltoy.plugins.secure.FieldsSecureProvider;
+import org.sagacity.sqltoy.plugins.sharding.ShardingScatterUtils;
 import org.sagacity.sqltoy.plugins.sharding.ShardingUtils;
+import org.sagacity.sqltoy.plugins.stats.SqlStatsCollector;
 import org.sagacity.sqltoy.utils.BeanUtil;
 import org.sagacity.sqltoy.utils.CollectionUtil;
 import org.sagacity.sqltoy.utils.DataSourceUtils;
@@ -93,6 +100,14 @@ import org.slf4j.LoggerFactory;
  * @update data:2022-12-14 启动TDengine的支持
  * @update data:2023-09-16
  *         优化wrapTreeTableRoute，纠正rootId为pidValue，同时增加pidValue为null的校验
+ * @update data:2024-05-03 findByQuery、findPage、findTop、getCountBySql支持分库聚合(scatter-gather)查询
+ * @update data:2024-05-06 增加findKeysetPage,提供keyset(seek)分页
+ * @update data:2024-05-20 增加openCursor,提供拉取式(Stream/Iterator)流查询
+ * @update data:2024-05-25 findPage第一页记录数不足一页时以其作为总记录数,省去count查询
+ * @update data:2024-05-27 saveAll、updateAll、saveOrUpdateAll支持级联,每个子表只执行一次批量操作
+ * @update data:2024-06-01 存在link、忽略空行、旋转汇总等改变记录数的处理时,第一页不再以结果记录数作为总记录数
+ * @update data:2024-06-01 级联saveAll逐条保存时保留reflectPropsHandler的处理
+ * @update data:2024-06-01 批量操作根据DataSourceMeta.supportBatch判断驱动是否支持批处理,不支持则逐条执行
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class DialectFactory {
@@ -290,7 +305,8 @@ public class DialectFactory {
 							realSql = SqlUtilsExt.signSql(realSql, dbType, sqlToyConfig);
 							SqlExecuteStat.showSql("批量sql执行", realSql, null);
 							this.setResult(SqlUtil.batchUpdateByJdbc(sqlToyContext.getTypeHandler(), realSql, values,
-									batchSize, insertCallhandler, fieldTypes, autoCommit, conn, dbType));
+									getBatchSize(dataSource, conn, batchSize), insertCallhandler, fieldTypes,
+									autoCommit, conn, dbType));
 						}
 					});
 			// 输出执行结果更新记录量日志
@@ -500,7 +516,7 @@ public class DialectFactory {
 										realSqlToyConfig, queryResult, pivotCategorySet, extend);
 								// 结果映射成对象(含Map),为什么不放在rs循环过程中?因为rs循环里面有link、缓存翻译等很多处理
 								// 将结果映射对象单独出来为了解耦，性能影响其实可以忽略，上万条也是1毫秒级
-								if (extend.resultType != null) {
+								if (extend.resultType != null && !queryResult.isMappedResult()) {
 									queryResult.setRows(ResultUtils.wrapQueryResult(sqlToyContext,
 											queryResult.getRows(), queryResult.getLabelNames(),
 											(Class) extend.resultType, changedCols, extend.humpMapLabel,
@@ -713,7 +729,7 @@ public class DialectFactory {
 										realSqlToyConfig, queryResult, pivotCategorySet, extend);
 								// 结果映射成对象(含Map),为什么不放在rs循环过程中?因为rs循环里面有link、缓存翻译等很多处理
 								// 将结果映射对象单独出来为了解耦，性能影响其实可以忽略，上万条也是1毫秒级
-								if (extend.resultType != null) {
+								if (extend.resultType != null && !queryResult.isMappedResult()) {
 									queryResult.setRows(ResultUtils.wrapQueryResult(sqlToyContext,
 											queryResult.getRows(), queryResult.getLabelNames(),
 											(Class) extend.resultType, changedCols, extend.humpMapLabel,
@@ -735,6 +751,99 @@ public class DialectFactory {
 		}
 	}
 
+	/**
+	 * @TODO keyset(seek)分页:以排序键和上一页最后记录的键值为条件查询下一页,不查询总记录数,返回下一页游标
+	 * @param sqlToyContext
+	 * @param queryExecutor
+	 * @param sqlToyConfig
+	 * @param keysetColumns 排序键(可单独指定方向,如:create_time desc)
+	 * @param keysetDesc    未单独指定方向的排序键是否降序
+	 * @param keysetValues  上一页最后记录的排序键值(null表示第一页)
+	 * @param pageSize
+	 * @param dataSource
+	 * @return
+	 */
+	public QueryResult findKeysetPage(final SqlToyContext sqlToyContext, final QueryExecutor queryExecutor,
+			final SqlToyConfig sqlToyConfig, final String[] keysetColumns, final boolean keysetDesc,
+			final Object[] keysetValues, final Integer pageSize, final DataSource dataSource) {
+		final QueryExecutorExtend extend = queryExecutor.getInnerModel();
+		if (StringUtil.isBlank(extend.sql)) {
+			throw new IllegalArgumentException("findKeysetPage operate sql is null!");
+		}
+		if (pageSize == null || pageSize < 1) {
+			throw new IllegalArgumentException("findKeysetPage operate pageSize:" + pageSize + " is null or <1!");
+		}
+		int limitSize = sqlToyContext.getPageFetchSizeLimit();
+		// 分页查询不允许单页数据超过上限，避免大规模数据提取
+		if (limitSize > 0 && pageSize >= limitSize) {
+			throw new IllegalArgumentException(
+					"findKeysetPage operate args is Illegal,pageSize={" + pageSize + "}>= limit:{" + limitSize + "}!");
+		}
+		try {
+			Long startTime = System.currentTimeMillis();
+			// 规整查询参数名称和参数名称对应的值
+			QueryExecutorBuilder.initQueryExecutor(sqlToyContext, extend, sqlToyConfig, true);
+			SqlExecuteStat.start(sqlToyConfig.getId(), "findKeysetPage",
+					(extend.showSql != null) ? extend.showSql : sqlToyConfig.isShowSql());
+			QueryResult result = (QueryResult) DataSourceUtils.processDataSource(sqlToyContext,
+					ShardingUtils.getShardingDataSource(sqlToyContext, sqlToyConfig, queryExecutor, dataSource),
+					new DataSourceCallbackHandler() {
+						@Override
+						public void doConnection(Connection conn, Integer dbType, String dialect) throws Exception {
+							SqlExecuteStat.setDialect(dialect);
+							// 处理sql中的?为统一的:named形式，并进行sharding table替换
+							SqlToyConfig realSqlToyConfig = DialectUtils.getUnifyParamsNamedConfig(sqlToyContext,
+									sqlToyConfig, queryExecutor, dialect, true);
+							// 通过参数处理最终的sql和参数值
+							SqlToyResult queryParam = SqlConfigParseUtils.processSql(realSqlToyConfig.getSql(dialect),
+									extend.getParamsName(), extend.getParamsValue(sqlToyContext, realSqlToyConfig),
+									dialect);
+							// 增加sql执行拦截器(在keyset包装之前,便于拦截器定位原始sql)
+							queryParam = DialectUtils.doInterceptors(sqlToyContext, realSqlToyConfig,
+									(extend.entityClass == null) ? OperateType.page : OperateType.singleTable,
+									queryParam, extend.entityClass, dbType);
+							queryParam = KeysetPageUtils.wrapKeysetSql(queryParam.getSql(),
+									queryParam.getParamsValue(), keysetColumns, keysetDesc, keysetValues, pageSize,
+									dbType);
+							QueryResult queryResult = getDialectSqlWrapper(dbType).findBySql(sqlToyContext,
+									realSqlToyConfig, queryParam.getSql(), queryParam.getParamsValue(), extend,
+									wrapDecryptHandler(sqlToyContext, extend.resultType), conn, null, dbType, dialect,
+									getFetchSize(extend.fetchSize), extend.maxRows);
+							queryResult.setPageNo(1L);
+							queryResult.setPageSize(pageSize);
+							if (queryResult.getRows() != null && !queryResult.getRows().isEmpty()) {
+								// 在计算和对象映射之前提取游标,确保取到原始的排序键值
+								queryResult.setNextKeysetValues(
+										KeysetPageUtils.getNextKeysetValues(queryResult.getRows(),
+												queryResult.getLabelNames(), keysetColumns, pageSize));
+								// 存在计算和旋转的数据不能映射到对象(数据类型不一致，如汇总平均以及数据旋转)
+								List pivotCategorySet = ResultUtils.getPivotCategory(sqlToyContext, realSqlToyConfig,
+										queryExecutor, conn, dbType, dialect);
+								// 对查询结果进行计算处理:字段脱敏、格式化、数据旋转、同步环比、分组汇总等
+								boolean changedCols = ResultUtils.calculate(sqlToyContext.getDesensitizeProvider(),
+										realSqlToyConfig, queryResult, pivotCategorySet, extend);
+								if (extend.resultType != null && !queryResult.isMappedResult()) {
+									queryResult.setRows(ResultUtils.wrapQueryResult(sqlToyContext,
+											queryResult.getRows(), queryResult.getLabelNames(),
+											(Class) extend.resultType, changedCols, extend.humpMapLabel,
+											extend.hiberarchy, extend.hiberarchyClasses, extend.fieldsMap));
+								}
+							}
+							queryResult.setSkipQueryCount(true);
+							SqlExecuteStat.debug("查询结果", "keyset分页查询出记录数量:{}条!", queryResult.getRecordCount());
+							this.setResult(queryResult);
+						}
+					});
+			result.setExecuteTime(System.currentTimeMillis() - startTime);
+			return result;
+		} catch (Exception e) {
+			SqlExecuteStat.error(e);
+			throw new DataAccessException(e);
+		} finally {
+			SqlExecuteStat.destroy();
+		}
+	}
+
 	/**
 	 * @todo 分页查询, pageNo为负一表示取全部记录
 	 * @param sqlToyContext
@@ -759,6 +868,15 @@ public class DialectFactory {
 			QueryExecutorBuilder.initQueryExecutor(sqlToyContext, extend, sqlToyConfig, true);
 			SqlExecuteStat.start(sqlToyConfig.getId(), "findPage",
 					(extend.showSql != null) ? extend.showSql : sqlToyConfig.isShowSql());
+			// 分库聚合查询:向全部分库查询并合并结果
+			List<DataSource> scatterDataSources = ShardingUtils.getScatterDataSources(sqlToyContext, sqlToyConfig,
+					queryExecutor);
+			if (scatterDataSources != null) {
+				QueryResult result = scatterQuery(sqlToyContext, queryExecutor, sqlToyConfig, scatterDataSources, null,
+						pageNo, pageSize, overPageToFirst, 0);
+				result.setExecuteTime(System.currentTimeMillis() - startTime);
+				return result;
+			}
 			final DataSource realDataSource = ShardingUtils.getShardingDataSource(sqlToyContext, sqlToyConfig,
 					queryExecutor, dataSource);
 			QueryResult result = (QueryResult) DataSourceUtils.processDataSource(sqlToyContext, realDataSource,
@@ -816,6 +934,25 @@ public class DialectFactory {
 											recordCnt);
 								}
 							} else {
+								// 第一页先查询数据,不足一页时记录数即为总记录数,省去count查询
+								// (存在link、忽略空行、旋转汇总等改变记录数的处理时,结果记录数不等于实际记录数,不能省去count)
+								QueryResult firstPageResult = null;
+								if (recordCnt == null && pageNo == 1 && SqlToyConstants.pageFirstSkipCount()
+										&& ResultUtils.isRowCountPreserved(realSqlToyConfig, extend, pageSize)) {
+									long preTime = System.currentTimeMillis();
+									firstPageResult = getDialectSqlWrapper(dbType).findPageBySql(sqlToyContext,
+											realSqlToyConfig, queryExecutor,
+											wrapDecryptHandler(sqlToyContext, extend.resultType), 1L, pageSize, conn,
+											dbType, dialect, getFetchSize(extend.fetchSize), extend.maxRows);
+									int rowSize = (firstPageResult.getRows() != null)
+											? firstPageResult.getRows().size()
+											: 0;
+									if (rowSize < pageSize) {
+										recordCnt = Long.valueOf(rowSize);
+										SqlExecuteStat.debug("过程提示", "第一页记录数:{}不足一页,即为总记录数,省去count查询!", rowSize);
+									}
+									SqlExecuteStat.debug("查询分页记录耗时", (System.currentTimeMillis() - preTime) + "毫秒!");
+								}
 								// 非并行且分页缓存未命中，执行count查询
 								if (recordCnt == null) {
 									long preTime = System.currentTimeMillis();
@@ -881,6 +1018,9 @@ public class DialectFactory {
 										if (isOverPage && !isOverPageToFirst) {
 											queryResult = new QueryResult();
 											queryResult.setPageNo(pageNo);
+										} else if (firstPageResult != null && !isOverPage) {
+											queryResult = firstPageResult;
+											queryResult.setPageNo(pageNo);
 										} else {
 											long realStartPage = isOverPage ? 1 : pageNo;
 											queryResult = getDialectSqlWrapper(dbType).findPageBySql(sqlToyContext,
@@ -923,7 +1063,7 @@ public class DialectFactory {
 										realSqlToyConfig, queryResult, pivotCategorySet, extend);
 								// 结果映射成对象(含Map),为什么不放在rs循环过程中?因为rs循环里面有link、缓存翻译等很多处理
 								// 将结果映射对象单独出来为了解耦，性能影响其实可以忽略，上万条也是1毫秒级
-								if (extend.resultType != null) {
+								if (extend.resultType != null && !queryResult.isMappedResult()) {
 									queryResult.setRows(ResultUtils.wrapQueryResult(sqlToyContext,
 											queryResult.getRows(), queryResult.getLabelNames(),
 											(Class) extend.resultType, changedCols, extend.humpMapLabel,
@@ -1002,6 +1142,7 @@ public class DialectFactory {
 						queryExecutor, wrapDecryptHandler(sqlToyContext, extend.resultType), pageNo, pageSize, conn,
 						dbType, dialect, getFetchSize(extend.fetchSize), extend.maxRows);
 				queryResult.setRows(result.getRows());
+				queryResult.setMappedResult(result.isMappedResult());
 				queryResult.setLabelNames(result.getLabelNames());
 				queryResult.setLabelTypes(result.getLabelTypes());
 				SqlExecuteStat.debug("并行查询分页记录耗时", (System.currentTimeMillis() - startTime) + "毫秒!");
@@ -1065,6 +1206,15 @@ public class DialectFactory {
 			QueryExecutorBuilder.initQueryExecutor(sqlToyContext, extend, sqlToyConfig, false);
 			SqlExecuteStat.start(sqlToyConfig.getId(), "findTop",
 					(extend.showSql != null) ? extend.showSql : sqlToyConfig.isShowSql());
+			// 分库聚合查询:向全部分库查询并合并结果
+			List<DataSource> scatterDataSources = ShardingUtils.getScatterDataSources(sqlToyContext, sqlToyConfig,
+					queryExecutor);
+			if (scatterDataSources != null) {
+				QueryResult result = scatterQuery(sqlToyContext, queryExecutor, sqlToyConfig, scatterDataSources, null,
+						1, null, null, topSize);
+				result.setExecuteTime(System.currentTimeMillis() - startTime);
+				return result;
+			}
 			QueryResult result = (QueryResult) DataSourceUtils.processDataSource(sqlToyContext,
 					ShardingUtils.getShardingDataSource(sqlToyContext, sqlToyConfig, queryExecutor, dataSource),
 					new DataSourceCallbackHandler() {
@@ -1105,7 +1255,7 @@ public class DialectFactory {
 										realSqlToyConfig, queryResult, pivotCategorySet, extend);
 								// 结果映射成对象(含Map),为什么不放在rs循环过程中?因为rs循环里面有link、缓存翻译等很多处理,后续可能还有旋转、汇总等计算
 								// 将结果映射对象单独出来为了解耦，性能影响其实可以忽略，上万条也是1毫秒级
-								if (extend.resultType != null) {
+								if (extend.resultType != null && !queryResult.isMappedResult()) {
 									queryResult.setRows(ResultUtils.wrapQueryResult(sqlToyContext,
 											queryResult.getRows(), queryResult.getLabelNames(),
 											(Class) extend.resultType, changedCols, extend.humpMapLabel,
@@ -1148,6 +1298,15 @@ public class DialectFactory {
 			QueryExecutorBuilder.initQueryExecutor(sqlToyContext, extend, sqlToyConfig, false);
 			SqlExecuteStat.start(sqlToyConfig.getId(), "findByQuery",
 					(extend.showSql != null) ? extend.showSql : sqlToyConfig.isShowSql());
+			// 分库聚合查询:向全部分库查询并合并结果
+			List<DataSource> scatterDataSources = ShardingUtils.getScatterDataSources(sqlToyContext, sqlToyConfig,
+					queryExecutor);
+			if (scatterDataSources != null) {
+				QueryResult result = scatterQuery(sqlToyContext, queryExecutor, sqlToyConfig, scatterDataSources,
+						lockMode, 1, null, null, 0);
+				result.setExecuteTime(System.currentTimeMillis() - startTime);
+				return result;
+			}
 			QueryResult result = (QueryResult) DataSourceUtils.processDataSource(sqlToyContext,
 					ShardingUtils.getShardingDataSource(sqlToyContext, sqlToyConfig, queryExecutor, dataSource),
 					new DataSourceCallbackHandler() {
@@ -1178,7 +1337,7 @@ public class DialectFactory {
 										realSqlToyConfig, queryResult, pivotCategorySet, extend);
 								// 结果映射成对象(含Map),为什么不放在rs循环过程中?因为rs循环里面有link、缓存翻译等很多处理,后续可能还有旋转、汇总等计算
 								// 将结果映射对象单独出来为了解耦，性能影响其实可以忽略，上万条也是1毫秒级
-								if (extend.resultType != null) {
+								if (extend.resultType != null && !queryResult.isMappedResult()) {
 									queryResult.setRows(ResultUtils.wrapQueryResult(sqlToyContext,
 											queryResult.getRows(), queryResult.getLabelNames(),
 											(Class) extend.resultType, changedCols, extend.humpMapLabel,
@@ -1218,6 +1377,14 @@ public class DialectFactory {
 			QueryExecutorBuilder.initQueryExecutor(sqlToyContext, extend, sqlToyConfig, false);
 			SqlExecuteStat.start(sqlToyConfig.getId(), "getCountBySql",
 					(extend.showSql != null) ? extend.showSql : sqlToyConfig.isShowSql());
+			// 分库聚合查询:各分库count求和
+			List<DataSource> scatterDataSources = ShardingUtils.getScatterDataSources(sqlToyContext, sqlToyConfig,
+					queryExecutor);
+			if (scatterDataSources != null) {
+				Long count = scatterCount(sqlToyContext, queryExecutor, sqlToyConfig, scatterDataSources, false);
+				SqlExecuteStat.debug("查询结果", "分库聚合count查询结果={}!", count);
+				return count;
+			}
 			Long count = (Long) DataSourceUtils.processDataSource(sqlToyContext,
 					ShardingUtils.getShardingDataSource(sqlToyContext, sqlToyConfig, queryExecutor, dataSource),
 					new DataSourceCallbackHandler() {
@@ -1241,6 +1408,199 @@ public class DialectFactory {
 		}
 	}
 
+	/**
+	 * @TODO 分库聚合查询(scatter-gather):向全部分库并行查询,按sql最外层order by归并各分库结果,再统一进行计算和结果映射
+	 *       <li>分页和top查询各分库只取前pageNo*pageSize(topSize)条</li>
+	 *       <li>分页查询必须有可对应到结果列的order by,否则报错</li>
+	 *       <li>汇总、分组、旋转等计算在合并后的结果上执行</li>
+	 * @param sqlToyContext
+	 * @param queryExecutor
+	 * @param sqlToyConfig
+	 * @param dataSources
+	 * @param lockMode
+	 * @param pageNo
+	 * @param pageSize        不为null表示分页查询
+	 * @param overPageToFirst
+	 * @param topSize         大于0表示取top记录(小于1表示按比例)
+	 * @return
+	 * @throws Exception
+	 */
+	private QueryResult scatterQuery(final SqlToyContext sqlToyContext, final QueryExecutor queryExecutor,
+			final SqlToyConfig sqlToyConfig, final List<DataSource> dataSources, final LockMode lockMode,
+			final long pageNo, final Integer pageSize, final Boolean overPageToFirst, final double topSize)
+			throws Exception {
+		final QueryExecutorExtend extend = queryExecutor.getInnerModel();
+		final QueryResult queryResult = new QueryResult();
+		// 各分库提取的记录数量(-1表示全部)
+		long limitSize = -1;
+		long startIndex = 0;
+		if (pageSize != null) {
+			boolean isOverPageToFirst = false;
+			if (sqlToyContext.getOverPageToFirst() != null) {
+				isOverPageToFirst = sqlToyContext.getOverPageToFirst();
+			}
+			if (overPageToFirst != null) {
+				isOverPageToFirst = overPageToFirst;
+			}
+			Long recordCnt = scatterCount(sqlToyContext, queryExecutor, sqlToyConfig, dataSources, true);
+			int fetchLimit = sqlToyContext.getPageFetchSizeLimit();
+			boolean illegal = (pageNo == -1 && (fetchLimit > 0 && recordCnt > fetchLimit));
+			queryResult.setPageSize(pageSize);
+			queryResult.setRecordCount(recordCnt);
+			if (recordCnt == 0 || illegal) {
+				queryResult.setPageNo((recordCnt == 0 && isOverPageToFirst) ? 1L : pageNo);
+				queryResult.setRecordCount(0L);
+				return queryResult;
+			}
+			if (pageNo == -1) {
+				queryResult.setPageNo(1L);
+				queryResult.setPageSize(recordCnt.intValue());
+			} else {
+				boolean isOverPage = (pageNo * pageSize >= (recordCnt + pageSize));
+				if (isOverPage && !isOverPageToFirst) {
+					queryResult.setPageNo(pageNo);
+					return queryResult;
+				}
+				long realStartPage = isOverPage ? 1 : pageNo;
+				queryResult.setPageNo(realStartPage);
+				startIndex = (realStartPage - 1) * pageSize;
+				limitSize = realStartPage * pageSize;
+			}
+		} else if (topSize > 0) {
+			if (topSize < 1) {
+				limitSize = Double.valueOf(topSize
+						* scatterCount(sqlToyContext, queryExecutor, sqlToyConfig, dataSources, false).longValue())
+						.longValue();
+			} else {
+				limitSize = Double.valueOf(topSize).longValue();
+			}
+			if (limitSize == 0) {
+				return queryResult;
+			}
+		}
+		final int topRows = (int) limitSize;
+		List<Callable<QueryResult>> tasks = new ArrayList<Callable<QueryResult>>();
+		for (DataSource dataSource : dataSources) {
+			tasks.add(() -> (QueryResult) DataSourceUtils.processDataSource(sqlToyContext, dataSource,
+					new DataSourceCallbackHandler() {
+						@Override
+						public void doConnection(Connection conn, Integer dbType, String dialect) throws Exception {
+							SqlToyConfig realSqlToyConfig = DialectUtils.getUnifyParamsNamedConfig(sqlToyContext,
+									sqlToyConfig, queryExecutor, dialect, false);
+							// 分页和top:各分库只取前limitSize条
+							if (topRows > 0) {
+								this.setResult(getDialectSqlWrapper(dbType).findTopBySql(sqlToyContext,
+										realSqlToyConfig, queryExecutor,
+										wrapDecryptHandler(sqlToyContext, extend.resultType), topRows, conn, dbType,
+										dialect, getFetchSize(extend.fetchSize), extend.maxRows));
+							} else {
+								SqlToyResult queryParam = SqlConfigParseUtils.processSql(
+										realSqlToyConfig.getSql(dialect), extend.getParamsName(),
+										extend.getParamsValue(sqlToyContext, realSqlToyConfig), dialect);
+								queryParam = DialectUtils.doInterceptors(sqlToyContext, realSqlToyConfig,
+										(extend.entityClass == null) ? OperateType.search : OperateType.singleTable,
+										queryParam, extend.entityClass, dbType);
+								this.setResult(getDialectSqlWrapper(dbType).findBySql(sqlToyContext, realSqlToyConfig,
+										queryParam.getSql(), queryParam.getParamsValue(), extend,
+										wrapDecryptHandler(sqlToyContext, extend.resultType), conn, lockMode, dbType,
+										dialect, getFetchSize(extend.fetchSize), extend.maxRows));
+							}
+						}
+					}));
+		}
+		final List<QueryResult> shardResults = sqlToyContext.getParallelExecutor().invokeAll(tasks, dataSources,
+				dataSources.size(), SqlToyConstants.PARALLEL_MAXWAIT_SECONDS);
+		final long mergeLimit = limitSize;
+		final long mergeStart = startIndex;
+		// 以第一个分库的连接在汇总端完成归并、计算(如数据旋转需查询分类)和结果映射
+		return (QueryResult) DataSourceUtils.processDataSource(sqlToyContext, dataSources.get(0),
+				new DataSourceCallbackHandler() {
+					@Override
+					public void doConnection(Connection conn, Integer dbType, String dialect) throws Exception {
+						SqlExecuteStat.setDialect(dialect);
+						SqlToyConfig realSqlToyConfig = DialectUtils.getUnifyParamsNamedConfig(sqlToyContext,
+								sqlToyConfig, queryExecutor, dialect, false);
+						List<List> shardRows = new ArrayList<List>();
+						for (QueryResult shardResult : shardResults) {
+							if (queryResult.getLabelNames() == null && shardResult.getLabelNames() != null) {
+								queryResult.setLabelNames(shardResult.getLabelNames());
+								queryResult.setLabelTypes(shardResult.getLabelTypes());
+							}
+							shardRows.add(shardResult.getRows());
+						}
+						SqlToyResult queryParam = SqlConfigParseUtils.processSql(realSqlToyConfig.getSql(dialect),
+								extend.getParamsName(), extend.getParamsValue(sqlToyContext, realSqlToyConfig),
+								dialect);
+						// 分页必须有确定的排序,否则各分库结果拼接后分页每次结果不一致
+						int[][] orders = (pageSize != null && mergeLimit > 0)
+								? ShardingScatterUtils.parsePageOrderBy(queryParam.getSql(), queryResult.getLabelNames())
+								: ShardingScatterUtils.parseOrderBy(queryParam.getSql(), queryResult.getLabelNames());
+						if (orders == null) {
+							SqlExecuteStat.debug("过程提示", "分库聚合查询order by 无法对应到查询结果的列,按分库顺序合并结果!");
+						}
+						List rows = ShardingScatterUtils.mergeSorted(shardRows, orders, mergeLimit);
+						if (mergeStart > 0) {
+							rows = (mergeStart >= rows.size()) ? new ArrayList()
+									: new ArrayList(rows.subList((int) mergeStart, rows.size()));
+						}
+						queryResult.setRows(rows);
+						if (!rows.isEmpty()) {
+							// 存在计算和旋转的数据不能映射到对象(数据类型不一致，如汇总平均以及数据旋转)
+							List pivotCategorySet = ResultUtils.getPivotCategory(sqlToyContext, realSqlToyConfig,
+									queryExecutor, conn, dbType, dialect);
+							// 对合并后的结果进行计算处理:字段脱敏、格式化、数据旋转、同步环比、分组汇总等
+							boolean changedCols = ResultUtils.calculate(sqlToyContext.getDesensitizeProvider(),
+									realSqlToyConfig, queryResult, pivotCategorySet, extend);
+							if (extend.resultType != null) {
+								queryResult.setRows(ResultUtils.wrapQueryResult(sqlToyContext, queryResult.getRows(),
+										queryResult.getLabelNames(), (Class) extend.resultType, changedCols,
+										extend.humpMapLabel, extend.hiberarchy, extend.hiberarchyClasses,
+										extend.fieldsMap));
+							}
+						}
+						SqlExecuteStat.debug("查询结果", "分库聚合查询:{}个分库,合并后取得记录数:{}条!", dataSources.size(),
+								queryResult.getRows().size());
+						this.setResult(queryResult);
+					}
+				});
+	}
+
+	/**
+	 * @TODO 分库聚合count:各分库并行执行count后求和
+	 * @param sqlToyContext
+	 * @param queryExecutor
+	 * @param sqlToyConfig
+	 * @param dataSources
+	 * @param wrapNamed   分页查询需将?参数统一为:named形式
+	 * @return
+	 * @throws Exception
+	 */
+	private Long scatterCount(final SqlToyContext sqlToyContext, final QueryExecutor queryExecutor,
+			final SqlToyConfig sqlToyConfig, final List<DataSource> dataSources, final boolean wrapNamed)
+			throws Exception {
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for (DataSource dataSource : dataSources) {
+			tasks.add(() -> (Long) DataSourceUtils.processDataSource(sqlToyContext, dataSource,
+					new DataSourceCallbackHandler() {
+						@Override
+						public void doConnection(Connection conn, Integer dbType, String dialect) throws Exception {
+							SqlToyConfig realSqlToyConfig = DialectUtils.getUnifyParamsNamedConfig(sqlToyContext,
+									sqlToyConfig, queryExecutor, dialect, wrapNamed);
+							this.setResult(getCountBySql(sqlToyContext, realSqlToyConfig, queryExecutor, conn, dbType,
+									dialect));
+						}
+					}));
+		}
+		long count = 0;
+		for (Long shardCount : sqlToyContext.getParallelExecutor().invokeAll(tasks, dataSources, dataSources.size(),
+				SqlToyConstants.PARALLEL_MAXWAIT_SECONDS)) {
+			if (shardCount != null) {
+				count += shardCount;
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * @todo 获取记录总数
 	 * @param sqlToyContext
@@ -1375,6 +1735,28 @@ public class DialectFactory {
 	public Long saveOrUpdateAll(final SqlToyContext sqlToyContext, final List<?> entities, final int batchSize,
 			final String[] forceUpdateProps, final ReflectPropsHandler reflectPropsHandler, final DataSource dataSource,
 			final Boolean autoCommit) {
+		return saveOrUpdateAll(sqlToyContext, entities, batchSize, forceUpdateProps, reflectPropsHandler, dataSource,
+				autoCommit, false, null, null);
+	}
+
+	/**
+	 * @todo 批量保存或修改数据,并级联保存或修改子表数据(每个子表只执行一次批量操作)
+	 * @param sqlToyContext
+	 * @param entities
+	 * @param batchSize
+	 * @param forceUpdateProps
+	 * @param reflectPropsHandler
+	 * @param dataSource
+	 * @param autoCommit
+	 * @param cascade
+	 * @param forceCascadeClasses
+	 * @param subTableForceUpdateProps
+	 * @return
+	 */
+	public Long saveOrUpdateAll(final SqlToyContext sqlToyContext, final List<?> entities, final int batchSize,
+			final String[] forceUpdateProps, final ReflectPropsHandler reflectPropsHandler, final DataSource dataSource,
+			final Boolean autoCommit, final boolean cascade, final Class[] forceCascadeClasses,
+			final HashMap<Class, String[]> subTableForceUpdateProps) {
 		// 清除集合中的null值
 		CollectionUtil.removeNull(entities);
 		// 前置输入合法校验
@@ -1397,10 +1779,19 @@ public class DialectFactory {
 									public void doConnection(Connection conn, Integer dbType, String dialect)
 											throws Exception {
 										SqlExecuteStat.setDialect(dialect);
-										this.setResult(getDialectSqlWrapper(dbType).saveOrUpdateAll(context,
-												batchModel.getEntities(), batchSize, reflectPropsHandler,
-												forceUpdateProps, conn, dbType, dialect, autoCommit,
-												shardingModel.getTableName()));
+										Dialect dialectImpl = getDialectSqlWrapper(dbType);
+										// 驱动不支持批处理时逐条执行
+										int realBatchSize = getBatchSize(shardingModel.getDataSource(), conn,
+												batchSize);
+										this.setResult(dialectImpl.saveOrUpdateAll(context, batchModel.getEntities(),
+												realBatchSize, reflectPropsHandler, forceUpdateProps, conn, dbType,
+												dialect, autoCommit, shardingModel.getTableName()));
+										if (cascade) {
+											DialectUtils.cascadeAll(context, dialectImpl,
+													context.getEntityMeta(entityClass), batchModel.getEntities(), true,
+													forceCascadeClasses, subTableForceUpdateProps, realBatchSize,
+													conn, dbType, dialect, autoCommit);
+										}
 									}
 								});
 						List<Long> tmp = new ArrayList();
@@ -1641,6 +2032,23 @@ public class DialectFactory {
 	 */
 	public Long saveAll(final SqlToyContext sqlToyContext, final List<?> entities, final int batchSize,
 			final ReflectPropsHandler reflectPropsHandler, final DataSource dataSource, final Boolean autoCommit) {
+		return saveAll(sqlToyContext, entities, batchSize, reflectPropsHandler, dataSource, autoCommit, false);
+	}
+
+	/**
+	 * @todo 批量保存,并级联保存子表数据(主键提前批量赋值,每个子表只执行一次批量操作)
+	 * @param sqlToyContext
+	 * @param entities
+	 * @param batchSize
+	 * @param reflectPropsHandler
+	 * @param dataSource
+	 * @param autoCommit
+	 * @param cascade
+	 * @return
+	 */
+	public Long saveAll(final SqlToyContext sqlToyContext, final List<?> entities, final int batchSize,
+			final ReflectPropsHandler reflectPropsHandler, final DataSource dataSource, final Boolean autoCommit,
+			final boolean cascade) {
 		// 清除集合中的null值
 		CollectionUtil.removeNull(entities);
 		if (entities == null || entities.isEmpty()) {
@@ -1662,9 +2070,33 @@ public class DialectFactory {
 									public void doConnection(Connection conn, Integer dbType, String dialect)
 											throws Exception {
 										SqlExecuteStat.setDialect(dialect);
-										this.setResult(getDialectSqlWrapper(dbType).saveAll(context,
-												batchModel.getEntities(), batchSize, reflectPropsHandler, conn, dbType,
-												dialect, autoCommit, shardingModel.getTableName()));
+										Dialect dialectImpl = getDialectSqlWrapper(dbType);
+										// 驱动不支持批处理时逐条执行
+										int realBatchSize = getBatchSize(shardingModel.getDataSource(), conn,
+												batchSize);
+										EntityMeta entityMeta = context.getEntityMeta(entityClass);
+										// 主键由数据库产生(identity/sequence)无法提前获得,逐条保存(单条save含级联)
+										if (cascade && !entityMeta.getCascadeModels().isEmpty()
+												&& hasBlankId(entityMeta, batchModel.getEntities())) {
+											logger.warn("表:{} 主键由数据库产生,级联批量保存转为逐条保存!", entityMeta.getTableName());
+											// 单条save不支持reflectPropsHandler,先将其处理结果回写到对象
+											applyReflectPropsHandler(entityMeta, batchModel.getEntities(),
+													reflectPropsHandler);
+											for (Object entity : batchModel.getEntities()) {
+												dialectImpl.save(context, (Serializable) entity, conn, dbType, dialect,
+														shardingModel.getTableName());
+											}
+											this.setResult(Long.valueOf(batchModel.getEntities().size()));
+											return;
+										}
+										this.setResult(dialectImpl.saveAll(context, batchModel.getEntities(),
+												realBatchSize, reflectPropsHandler, conn, dbType, dialect, autoCommit,
+												shardingModel.getTableName()));
+										if (cascade) {
+											DialectUtils.cascadeAll(context, dialectImpl, entityMeta,
+													batchModel.getEntities(), false, null, null, realBatchSize,
+													conn, dbType, dialect, autoCommit);
+										}
 									}
 								});
 						List<Long> tmp = new ArrayList();
@@ -1790,6 +2222,30 @@ public class DialectFactory {
 	public Long updateAll(final SqlToyContext sqlToyContext, final List<?> entities, final int batchSize,
 			final String[] uniqueFields, final String[] forceUpdateFields,
 			final ReflectPropsHandler reflectPropsHandler, final DataSource dataSource, final Boolean autoCommit) {
+		return updateAll(sqlToyContext, entities, batchSize, uniqueFields, forceUpdateFields, reflectPropsHandler,
+				dataSource, autoCommit, false, null, null);
+	}
+
+	/**
+	 * @todo 批量修改对象,并级联修改子表数据(每个子表只执行一次批量操作)
+	 * @param sqlToyContext
+	 * @param entities
+	 * @param batchSize
+	 * @param uniqueFields
+	 * @param forceUpdateFields
+	 * @param reflectPropsHandler
+	 * @param dataSource
+	 * @param autoCommit
+	 * @param cascade
+	 * @param forceCascadeClasses      (强制需要修改的子对象,当子集合数据为null,则进行清空或置为无效处理)
+	 * @param subTableForceUpdateProps
+	 * @return
+	 */
+	public Long updateAll(final SqlToyContext sqlToyContext, final List<?> entities, final int batchSize,
+			final String[] uniqueFields, final String[] forceUpdateFields,
+			final ReflectPropsHandler reflectPropsHandler, final DataSource dataSource, final Boolean autoCommit,
+			final boolean cascade, final Class[] forceCascadeClasses,
+			final HashMap<Class, String[]> subTableForceUpdateProps) {
 		// 清除集合中的null值
 		CollectionUtil.removeNull(entities);
 		if (entities == null || entities.isEmpty()) {
@@ -1811,10 +2267,19 @@ public class DialectFactory {
 									public void doConnection(Connection conn, Integer dbType, String dialect)
 											throws Exception {
 										SqlExecuteStat.setDialect(dialect);
-										this.setResult(getDialectSqlWrapper(dbType).updateAll(context,
-												batchModel.getEntities(), batchSize, uniqueFields, forceUpdateFields,
-												reflectPropsHandler, conn, dbType, dialect, autoCommit,
-												shardingModel.getTableName()));
+										Dialect dialectImpl = getDialectSqlWrapper(dbType);
+										// 驱动不支持批处理时逐条执行
+										int realBatchSize = getBatchSize(shardingModel.getDataSource(), conn,
+												batchSize);
+										this.setResult(dialectImpl.updateAll(context, batchModel.getEntities(),
+												realBatchSize, uniqueFields, forceUpdateFields, reflectPropsHandler,
+												conn, dbType, dialect, autoCommit, shardingModel.getTableName()));
+										if (cascade) {
+											DialectUtils.cascadeAll(context, dialectImpl,
+													context.getEntityMeta(entityClass), batchModel.getEntities(), true,
+													forceCascadeClasses, subTableForceUpdateProps, realBatchSize,
+													conn, dbType, dialect, autoCommit);
+										}
 									}
 								});
 						List<Long> tmp = new ArrayList();
@@ -2190,6 +2655,94 @@ public class DialectFactory {
 		}
 	}
 
+	/**
+	 * @TODO 打开拉取式查询游标,连接在游标读取完成或关闭时释放
+	 * @param sqlToyContext
+	 * @param queryExecutor
+	 * @param sqlToyConfig
+	 * @param dataSource
+	 * @return
+	 */
+	public ResultCursor openCursor(final SqlToyContext sqlToyContext, final QueryExecutor queryExecutor,
+			final SqlToyConfig sqlToyConfig, final DataSource dataSource) {
+		final QueryExecutorExtend extend = queryExecutor.getInnerModel();
+		// 合法校验
+		if (StringUtil.isBlank(extend.sql)) {
+			throw new IllegalArgumentException("stream operate sql is null!");
+		}
+		Connection conn = null;
+		PreparedStatement pst = null;
+		DataSource realDataSource = null;
+		try {
+			// 规整查询参数名称和参数名称对应的值
+			QueryExecutorBuilder.initQueryExecutor(sqlToyContext, extend, sqlToyConfig, false);
+			SqlExecuteStat.start(sqlToyConfig.getId(), "stream",
+					(extend.showSql != null) ? extend.showSql : sqlToyConfig.isShowSql());
+			realDataSource = ShardingUtils.getShardingDataSource(sqlToyContext, sqlToyConfig, queryExecutor,
+					dataSource);
+			if (realDataSource == null) {
+				throw new IllegalArgumentException("dataSource为null,请检查多数据源场景是否正确配置默认数据源!");
+			}
+			long waitStart = System.nanoTime();
+			conn = sqlToyContext.getConnection(realDataSource);
+			SqlExecuteStat.addConnectionWait(System.nanoTime() - waitStart);
+			// 连接需要持有到游标关闭,不能使用DataSourceUtils.processDataSource
+			String dialect;
+			Integer dbType;
+			if (StringUtil.isNotBlank(sqlToyContext.getDialect())) {
+				dialect = sqlToyContext.getDialect();
+				dbType = DataSourceUtils.getDBType(dialect);
+			} else {
+				DataSourceMeta dataSourceMeta = DataSourceUtils.getDataSourceMeta(realDataSource, conn);
+				dbType = dataSourceMeta.getDbType();
+				dialect = dataSourceMeta.getDialect();
+			}
+			SqlExecuteStat.setDialect(dialect);
+			// 处理sql中的?为统一的:named形式，并进行sharding table替换
+			SqlToyConfig realSqlToyConfig = DialectUtils.getUnifyParamsNamedConfig(sqlToyContext, sqlToyConfig,
+					queryExecutor, dialect, false);
+			// 通过参数处理最终的sql和参数值
+			SqlToyResult queryParam = SqlConfigParseUtils.processSql(realSqlToyConfig.getSql(dialect),
+					extend.getParamsName(), extend.getParamsValue(sqlToyContext, realSqlToyConfig), dialect);
+			queryParam = DialectUtils.doInterceptors(sqlToyContext, realSqlToyConfig, OperateType.search, queryParam,
+					null, dbType);
+			String lastSql = SqlUtilsExt.signSql(queryParam.getSql(), dbType, realSqlToyConfig);
+			Object[] paramsValue = queryParam.getParamsValue();
+			SqlExecuteStat.showSql("执行查询", lastSql, paramsValue);
+			pst = conn.prepareStatement(lastSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			if (extend.fetchSize != -1) {
+				pst.setFetchSize(extend.fetchSize);
+			} // mysql 有点特殊必须要设置为MIN_VALUE
+			else if (dbType == DBType.MYSQL || dbType == DBType.MYSQL57) {
+				pst.setFetchSize(Integer.MIN_VALUE);
+			} // 默认为1000
+			else {
+				pst.setFetchSize(1000);
+			}
+			pst.setFetchDirection(ResultSet.FETCH_FORWARD);
+			SqlUtil.setParamsValue(sqlToyContext.getTypeHandler(), conn, dbType, pst, paramsValue, null, 0);
+			ResultSet rs = pst.executeQuery();
+			ResultUtils.StreamRowMapper rowMapper = new ResultUtils.StreamRowMapper(sqlToyContext, extend,
+					sqlToyConfig, rs, (Class) extend.resultType, extend.humpMapLabel, extend.fieldsMap);
+			return new ResultCursor(sqlToyContext, realDataSource, conn, pst, rs, rowMapper, extend.prefetchSize,
+					(sqlToyConfig.getId() == null) ? SqlStatsCollector.normalizeSql(lastSql) : sqlToyConfig.getId());
+		} catch (Exception e) {
+			SqlExecuteStat.error(e);
+			if (pst != null) {
+				try {
+					pst.close();
+				} catch (Exception ex) {
+				}
+			}
+			if (conn != null) {
+				sqlToyContext.releaseConnection(conn, realDataSource);
+			}
+			throw new DataAccessException(e);
+		} finally {
+			SqlExecuteStat.destroy();
+		}
+	}
+
 	/**
 	 * @TODO 获取数据库的表字段信息
 	 * @param sqlToyContext
@@ -2286,4 +2839,67 @@ public class DialectFactory {
 			throw new IllegalArgumentException("Class=[" + entityClass.getName() + "]没有@Id定义主键字段!");
 		}
 	}
+
+	/**
+	 * @TODO 驱动不支持批处理(DatabaseMetaData.supportsBatchUpdates()为false)时批次量为1,即逐条执行
+	 * @param dataSource
+	 * @param conn
+	 * @param batchSize
+	 * @return
+	 * @throws SQLException
+	 */
+	private static int getBatchSize(DataSource dataSource, Connection conn, int batchSize) throws SQLException {
+		if (batchSize > 1 && !DataSourceUtils.getDataSourceMeta(dataSource, conn).isSupportBatch()) {
+			return 1;
+		}
+		return batchSize;
+	}
+
+	/**
+	 * @TODO 将reflectPropsHandler对属性值的修改回写到对象(逐条save时使用)
+	 * @param entityMeta
+	 * @param entities
+	 * @param reflectPropsHandler
+	 */
+	private static void applyReflectPropsHandler(EntityMeta entityMeta, List<?> entities,
+			ReflectPropsHandler reflectPropsHandler) {
+		if (reflectPropsHandler == null) {
+			return;
+		}
+		String[] fields = entityMeta.getFieldsArray();
+		List<Object[]> values = BeanUtil.reflectBeansToInnerAry(entities, fields, null, null);
+		List<Object[]> handleValues = BeanUtil.reflectBeansToInnerAry(entities, fields, null, reflectPropsHandler);
+		Object[] rowValues;
+		Object[] rowHandleValues;
+		for (int i = 0, n = entities.size(); i < n; i++) {
+			rowValues = values.get(i);
+			rowHandleValues = handleValues.get(i);
+			for (int j = 0; j < fields.length; j++) {
+				if (rowValues[j] != rowHandleValues[j]) {
+					BeanUtil.setProperty(entities.get(i), fields[j], rowHandleValues[j]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @TODO 判断是否存在主键值为空的记录(经过assignPKs后依然为空说明由数据库identity/sequence产生)
+	 * @param entityMeta
+	 * @param entities
+	 * @return
+	 */
+	private static boolean hasBlankId(EntityMeta entityMeta, List<?> entities) {
+		if (entityMeta.getIdArray() == null) {
+			return false;
+		}
+		List<Object[]> ids = BeanUtil.reflectBeansToInnerAry(entities, entityMeta.getIdArray(), null, null);
+		for (Object[] idValues : ids) {
+			for (Object idValue : idValues) {
+				if (StringUtil.isBlank(idValue)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
 }
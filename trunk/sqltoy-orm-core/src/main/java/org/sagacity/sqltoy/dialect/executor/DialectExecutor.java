@@ -18,6 +18,7 @@ import org.slf4j.LoggerFactory;
  * @description 数据库方言并行执行器
  * @author zhongxuchen
  * @version v1.0,Date:2017年11月3日
+ * @modify {Date:2024-06-01,不再在任务结束时清理sql日志,由TTL包装恢复线程原有上下文}
  */
 public class DialectExecutor implements Callable<ShardingResult> {
 	/**
@@ -67,8 +68,6 @@ public class DialectExecutor implements Callable<ShardingResult> {
 			result.setMessage(
 					"执行分库分表,DataSource节点:" + dataSourceName + ",table=" + tableName + " 发生异常:" + e.getMessage());
 			logger.error("执行分库分表,DataSource节点:{},table={} 发生异常:{}", dataSourceName, tableName, e.getMessage());
-		} finally {
-			SqlExecuteStat.destroy();
 		}
 		return result;
 	}
@@ -0,0 +1,298 @@
+/**
+ *
+ */
+package org.sagacity.sqltoy.dialect.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.ttl.TtlCallable;
+
+/**
+ * @project sagacity-sqltoy
+ * @description sqltoy共享的并行执行器(并行查询、分库分表批量执行),由SqlToyContext统一持有,避免每次调用都创建和销毁线程池
+ *              <li>线程池全局限定最大线程数量和队列长度</li>
+ *              <li>单次调用的maxThreads/maxConcurrents作为本次调用的并发许可数量</li>
+ *              <li>同一个数据源的并发数量受限,避免并行任务耗尽连接池</li>
+ *              <li>超过最大等待时长则取消未完成的任务</li>
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-04-30
+ * @modify {Date:2024-06-01,并发许可改为在任务线程结束时释放,取消执行中的任务不再提前释放数据源许可;传递TTL上下文}
+ * @modify {Date:2024-06-01,嵌套执行由SqlExecuteStat恢复外层sql日志,任务结束不再调用destroy避免调用线程执行时提前结束其日志}
+ */
+public class ParallelExecutor {
+	/**
+	 * 定义日志
+	 */
+	protected final static Logger logger = LoggerFactory.getLogger(ParallelExecutor.class);
+
+	/**
+	 * 标记当前线程是否为并行执行器的工作线程(嵌套并行时直接在当前线程执行,避免线程池被占满而死锁)
+	 */
+	private final static ThreadLocal<Boolean> IN_WORKER = new ThreadLocal<Boolean>();
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * 单个数据源最大并发数量(<=0 表示不限制)
+	 */
+	private final int dataSourceMaxConcurrents;
+
+	/**
+	 * 数据源对应的并发许可
+	 */
+	private final ConcurrentHashMap<DataSource, Semaphore> dataSourcePermits = new ConcurrentHashMap<DataSource, Semaphore>();
+
+	private final AtomicLong submittedCount = new AtomicLong(0);
+
+	private final AtomicLong completedCount = new AtomicLong(0);
+
+	private final AtomicLong rejectedCount = new AtomicLong(0);
+
+	private final AtomicLong timeoutCount = new AtomicLong(0);
+
+	/**
+	 * @param maxThreads               全局最大线程数量
+	 * @param queueSize                等待队列长度
+	 * @param dataSourceMaxConcurrents 单个数据源最大并发数量(<=0 表示不限制)
+	 */
+	public ParallelExecutor(int maxThreads, int queueSize, int dataSourceMaxConcurrents) {
+		final AtomicInteger threadIndex = new AtomicInteger(0);
+		int realMaxThreads = (maxThreads < 1) ? 1 : maxThreads;
+		this.executor = new ThreadPoolExecutor(realMaxThreads, realMaxThreads, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>((queueSize < 1) ? 1 : queueSize), (runnable) -> {
+					Thread thread = new Thread(() -> {
+						IN_WORKER.set(Boolean.TRUE);
+						runnable.run();
+					}, "sqltoy-parallel-" + threadIndex.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		// 空闲线程超时回收
+		this.executor.allowCoreThreadTimeOut(true);
+		this.dataSourceMaxConcurrents = dataSourceMaxConcurrents;
+	}
+
+	/**
+	 * @TODO 并行执行一组任务,按任务顺序返回结果
+	 * @param <T>
+	 * @param tasks
+	 * @param dataSources    任务对应的数据源(用于数据源并发限制,可以为null)
+	 * @param maxConcurrents 本次调用最大并发数量
+	 * @param maxWaitSeconds 最大等待时长(秒),超时则取消未完成的任务并抛出TimeoutException
+	 * @return
+	 * @throws Exception
+	 */
+	public <T> List<T> invokeAll(List<? extends Callable<T>> tasks, List<DataSource> dataSources, int maxConcurrents,
+			long maxWaitSeconds) throws Exception {
+		List<T> results = new ArrayList<T>(tasks.size());
+		// 已经在工作线程中(嵌套并行),直接在当前线程顺序执行
+		if (Boolean.TRUE.equals(IN_WORKER.get())) {
+			for (Callable<T> task : tasks) {
+				results.add(task.call());
+			}
+			return results;
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(maxWaitSeconds);
+		Semaphore callPermits = new Semaphore((maxConcurrents < 1) ? 1 : maxConcurrents);
+		List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>(tasks.size());
+		try {
+			Semaphore dataSourcePermit;
+			for (int i = 0; i < tasks.size(); i++) {
+				if (!callPermits.tryAcquire(remainNanos(deadline), TimeUnit.NANOSECONDS)) {
+					throw new TimeoutException();
+				}
+				dataSourcePermit = getDataSourcePermits((dataSources == null) ? null : dataSources.get(i));
+				if (dataSourcePermit != null
+						&& !dataSourcePermit.tryAcquire(remainNanos(deadline), TimeUnit.NANOSECONDS)) {
+					callPermits.release();
+					throw new TimeoutException();
+				}
+				FutureTask<T> future = new PermitFutureTask<T>(tasks.get(i), callPermits, dataSourcePermit);
+				futures.add(future);
+				submittedCount.incrementAndGet();
+				try {
+					executor.execute(future);
+				} catch (RejectedExecutionException e) {
+					// 线程池和队列已满,由调用线程直接执行
+					rejectedCount.incrementAndGet();
+					logger.warn("sqltoy并行执行器队列已满(activeCount={},queueSize={}),任务改由调用线程执行!",
+							executor.getActiveCount(), executor.getQueue().size());
+					future.run();
+				}
+			}
+			for (FutureTask<T> future : futures) {
+				results.add(future.get(remainNanos(deadline), TimeUnit.NANOSECONDS));
+			}
+		} catch (TimeoutException e) {
+			timeoutCount.incrementAndGet();
+			cancel(futures);
+			throw new TimeoutException("并行执行超过最大等待时长:" + maxWaitSeconds + " 秒,已取消未完成的任务!");
+		} catch (ExecutionException e) {
+			cancel(futures);
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} catch (Exception e) {
+			cancel(futures);
+			throw e;
+		}
+		return results;
+	}
+
+	private long remainNanos(long deadline) {
+		return deadline - System.nanoTime();
+	}
+
+	private void cancel(List<? extends FutureTask<?>> futures) {
+		for (FutureTask<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	private Semaphore getDataSourcePermits(DataSource dataSource) {
+		if (dataSource == null || dataSourceMaxConcurrents <= 0) {
+			return null;
+		}
+		return dataSourcePermits.computeIfAbsent(dataSource, (key) -> new Semaphore(dataSourceMaxConcurrents));
+	}
+
+	/**
+	 * @TODO 活跃线程数量
+	 * @return
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @TODO 线程池当前线程数量
+	 * @return
+	 */
+	public int getPoolSize() {
+		return executor.getPoolSize();
+	}
+
+	/**
+	 * @TODO 等待队列中的任务数量
+	 * @return
+	 */
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @TODO 数据源当前正在执行的并行任务数量
+	 * @param dataSource
+	 * @return
+	 */
+	public int getDataSourceActiveCount(DataSource dataSource) {
+		Semaphore permits = dataSourcePermits.get(dataSource);
+		return (permits == null) ? 0 : dataSourceMaxConcurrents - permits.availablePermits();
+	}
+
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * 任务执行结束时(在任务线程的finally中)释放并发许可,并清理线程中的sql执行日志:
+	 * <li>取消正在执行的任务时,许可在任务真正退出(归还连接)后才释放</li>
+	 * <li>未开始执行即被取消的任务,由done()释放许可</li>
+	 * <li>通过TtlCallable将调用线程的TransmittableThreadLocal上下文传递到工作线程</li>
+	 */
+	private class PermitFutureTask<T> extends FutureTask<T> {
+		private final PermitCallable<T> permitCallable;
+
+		PermitFutureTask(Callable<T> task, Semaphore callPermits, Semaphore dataSourcePermit) {
+			this(new PermitCallable<T>(TtlCallable.get(task), callPermits, dataSourcePermit));
+		}
+
+		private PermitFutureTask(PermitCallable<T> permitCallable) {
+			super(permitCallable);
+			this.permitCallable = permitCallable;
+		}
+
+		@Override
+		protected void done() {
+			// 未开始执行即被取消
+			if (permitCallable.started.compareAndSet(false, true)) {
+				permitCallable.release();
+			}
+		}
+	}
+
+	private class PermitCallable<T> implements Callable<T> {
+		private final Callable<T> task;
+
+		private final Semaphore callPermits;
+
+		private final Semaphore dataSourcePermit;
+
+		private final AtomicBoolean started = new AtomicBoolean(false);
+
+		PermitCallable(Callable<T> task, Semaphore callPermits, Semaphore dataSourcePermit) {
+			this.task = task;
+			this.callPermits = callPermits;
+			this.dataSourcePermit = dataSourcePermit;
+		}
+
+		@Override
+		public T call() throws Exception {
+			// 开始执行前已经被取消
+			if (!started.compareAndSet(false, true)) {
+				return null;
+			}
+			// 任务由TtlCallable包装,结束后自动恢复线程中原有的sql日志等上下文
+			try {
+				return task.call();
+			} finally {
+				// 先计数和释放许可,再设置任务结果,保证等待结果的调用方看到的完成数量准确
+				release();
+			}
+		}
+
+		private void release() {
+			completedCount.incrementAndGet();
+			callPermits.release();
+			if (dataSourcePermit != null) {
+				dataSourcePermit.release();
+			}
+		}
+	}
+}
@@ -313,11 +313,12 @@ public class ClickHouseDialectUtils {
 		sqlToyConfig.setSql(deleteSql);
 		sqlToyConfig.setParamsName(entityMeta.getIdArray());
 		SqlToyResult sqlToyResult = new SqlToyResult(deleteSql, idValues);
+		sqlToyResult.setParamsType(parameterTypes);
 		// 增加sql执行拦截器 update 2022-9-10
 		sqlToyResult = DialectUtils.doInterceptors(sqlToyContext, sqlToyConfig, OperateType.delete, sqlToyResult,
 				entity.getClass(), dbType);
 		return SqlUtil.executeSql(sqlToyContext.getTypeHandler(), sqlToyResult.getSql(), sqlToyResult.getParamsValue(),
-				parameterTypes, conn, dbType, null, true);
+				sqlToyResult.getParamsType(), conn, dbType, null, true);
 	}
 
 	public static Long update(SqlToyContext sqlToyContext, Serializable entity, String nullFunction,
@@ -360,11 +361,12 @@ public class ClickHouseDialectUtils {
 		sqlToyConfig.setSql(updateSql);
 		sqlToyConfig.setParamsName(fields);
 		SqlToyResult sqlToyResult = new SqlToyResult(updateSql, fieldsValues);
+		sqlToyResult.setParamsType(getIgnorePartionFieldsTypes(entityMeta));
 		// 增加sql执行拦截器 update 2022-9-10
 		sqlToyResult = DialectUtils.doInterceptors(sqlToyContext, sqlToyConfig, OperateType.update, sqlToyResult,
 				entity.getClass(), dbType);
 		Long updateCnt = SqlUtil.executeSql(sqlToyContext.getTypeHandler(), sqlToyResult.getSql(),
-				sqlToyResult.getParamsValue(), getIgnorePartionFieldsTypes(entityMeta), conn, dbType, null, false);
+				sqlToyResult.getParamsValue(), sqlToyResult.getParamsType(), conn, dbType, null, false);
 		return updateCnt;
 	}
 
@@ -446,20 +448,23 @@ public class ClickHouseDialectUtils {
 		}
 		List<Object[]> realParams = paramsValues;
 		String realSql = updateSql;
+		Integer[] realTypes = getIgnorePartionFieldsTypes(entityMeta);
 		if (sqlToyContext.hasSqlInterceptors()) {
 			SqlToyConfig sqlToyConfig = new SqlToyConfig(Dialect.CLICKHOUSE);
 			sqlToyConfig.setSqlType(SqlType.update);
 			sqlToyConfig.setSql(updateSql);
 			sqlToyConfig.setParamsName(fields);
 			SqlToyResult sqlToyResult = new SqlToyResult(updateSql, paramsValues.toArray());
+			sqlToyResult.setParamsType(realTypes);
 			sqlToyResult = DialectUtils.doInterceptors(sqlToyContext, sqlToyConfig, OperateType.updateAll, sqlToyResult,
 					entities.get(0).getClass(), dbType);
 			realSql = sqlToyResult.getSql();
 			realParams = CollectionUtil.arrayToList(sqlToyResult.getParamsValue());
+			realTypes = sqlToyResult.getParamsType();
 		}
 		SqlExecuteStat.showSql("批量修改[" + realParams.size() + "]条记录", realSql, null);
-		return SqlUtilsExt.batchUpdateForPOJO(sqlToyContext.getTypeHandler(), realSql, realParams,
-				getIgnorePartionFieldsTypes(entityMeta), null, null, batchSize, autoCommit, conn, dbType);
+		return SqlUtilsExt.batchUpdateForPOJO(sqlToyContext.getTypeHandler(), realSql, realParams, realTypes, null,
+				null, batchSize, autoCommit, conn, dbType);
 	}
 
 	/**
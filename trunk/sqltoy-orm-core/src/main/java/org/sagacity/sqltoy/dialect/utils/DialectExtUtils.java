@@ -5,13 +5,14 @@ package org.sagacity.sqltoy.dialect.utils;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.sagacity.sqltoy.SqlToyConstants;
 import org.sagacity.sqltoy.config.model.EntityMeta;
 import org.sagacity.sqltoy.config.model.FieldMeta;
 import org.sagacity.sqltoy.config.model.PKStrategy;
+import org.sagacity.sqltoy.model.BoundedCache;
 import org.sagacity.sqltoy.model.IgnoreCaseSet;
 import org.sagacity.sqltoy.model.IgnoreKeyCaseMap;
 import org.sagacity.sqltoy.plugins.IUnifyFieldsHandler;
@@ -30,16 +31,13 @@ import org.sagacity.sqltoy.utils.StringUtil;
  * @modify 2022-10-19 修改processDefaultValue修复oracle、db2日期类型的支持
  * @modify 2023-10-24 修改了sqlCacheKey，增加pkStrategy作为key的组成,因为gaussdb
  *         save情况下sequence策略会变成assign，saveAll则保持sequence
+ * @modify 2024-05-25 insert、update、saveOrUpdate等对象操作语句统一缓存,key增加操作类型、强制修改字段等组成
  */
 public class DialectExtUtils {
-	// POJO 对应的insert sql语句缓存
-	private static ConcurrentHashMap<String, String> insertSqlCache = new ConcurrentHashMap<String, String>(256);
-
-	// POJO 对应的merge into not match insert语句缓存
-	private static ConcurrentHashMap<String, String> mergeIgnoreSqlCache = new ConcurrentHashMap<String, String>(256);
-
-	// POJO 对应的insert into ON CONFLICT语句缓存
-	private static ConcurrentHashMap<String, String> insertIgnoreSqlCache = new ConcurrentHashMap<String, String>(256);
+	// POJO 对应的insert、update、saveOrUpdate、merge into not match insert、insert into ON
+	// CONFLICT等语句缓存
+	private static BoundedCache<String, String> crudSqlCache = new BoundedCache<String, String>("crudSql",
+			SqlToyConstants::getMaxCrudSqlCount);
 
 	/**
 	 * @todo 产生对象对应的insert sql语句
@@ -57,8 +55,9 @@ public class DialectExtUtils {
 			EntityMeta entityMeta, PKStrategy pkStrategy, String isNullFunction, String sequence, boolean isAssignPK,
 			String tableName) {
 		// update 2023-5-13 增加缓存机制，避免每次动态组织insert语句
-		String sqlCacheKey = getCacheKey(entityMeta, tableName, dbType, pkStrategy);
-		String insertSql = insertSqlCache.get(sqlCacheKey);
+		String sqlCacheKey = getCrudSqlKey("insert", entityMeta, tableName, dbType, pkStrategy, unifyFieldsHandler,
+				isNullFunction, sequence, isAssignPK);
+		String insertSql = crudSqlCache.get(sqlCacheKey);
 		if (null != insertSql) {
 			return insertSql;
 		}
@@ -149,7 +148,7 @@ public class DialectExtUtils {
 		sql.append(values);
 		sql.append(")");
 		insertSql = sql.toString();
-		insertSqlCache.put(sqlCacheKey, insertSql);
+		putCrudSql(sqlCacheKey, insertSql);
 		return insertSql;
 	}
 
@@ -309,8 +308,9 @@ public class DialectExtUtils {
 					isAssignPK, realTable);
 		}
 		// sql 缓存，避免每次重复产生
-		String sqlCacheKey = getCacheKey(entityMeta, tableName, dbType, pkStrategy);
-		String mergeIgnoreSql = mergeIgnoreSqlCache.get(sqlCacheKey);
+		String sqlCacheKey = getCrudSqlKey("mergeIgnore", entityMeta, tableName, dbType, pkStrategy,
+				unifyFieldsHandler, fromTable, isNullFunction, sequence, isAssignPK);
+		String mergeIgnoreSql = crudSqlCache.get(sqlCacheKey);
 		if (null != mergeIgnoreSql) {
 			return mergeIgnoreSql;
 		}
@@ -457,7 +457,7 @@ public class DialectExtUtils {
 		}
 		sql.append(")");
 		mergeIgnoreSql = sql.toString();
-		mergeIgnoreSqlCache.put(sqlCacheKey, mergeIgnoreSql);
+		putCrudSql(sqlCacheKey, mergeIgnoreSql);
 		return mergeIgnoreSql;
 	}
 
@@ -476,8 +476,9 @@ public class DialectExtUtils {
 	public static String insertIgnore(IUnifyFieldsHandler unifyFieldsHandler, Integer dbType, EntityMeta entityMeta,
 			PKStrategy pkStrategy, String isNullFunction, String sequence, boolean isAssignPK, String tableName) {
 		// update 2023-5-13 提供缓存方式快速获取sql
-		String sqlCacheKey = getCacheKey(entityMeta, tableName, dbType, pkStrategy);
-		String insertIgnoreSql = insertIgnoreSqlCache.get(sqlCacheKey);
+		String sqlCacheKey = getCrudSqlKey("insertIgnore", entityMeta, tableName, dbType, pkStrategy,
+				unifyFieldsHandler, isNullFunction, sequence, isAssignPK);
+		String insertIgnoreSql = crudSqlCache.get(sqlCacheKey);
 		if (null != insertIgnoreSql) {
 			return insertIgnoreSql;
 		}
@@ -567,7 +568,7 @@ public class DialectExtUtils {
 			sql.append(" ) DO NOTHING ");
 		}
 		insertIgnoreSql = sql.toString();
-		insertIgnoreSqlCache.put(sqlCacheKey, insertIgnoreSql);
+		putCrudSql(sqlCacheKey, insertIgnoreSql);
 		return insertIgnoreSql;
 	}
 
@@ -628,16 +629,52 @@ public class DialectExtUtils {
 
 	/**
 	 * @TODO 组织对象操作sql的key
+	 * @param operate            操作类型:insert、update、saveOrUpdate等
 	 * @param entityMeta
 	 * @param tableName
 	 * @param dbType
 	 * @param pkStrategy
+	 * @param unifyFieldsHandler
+	 * @param extendArgs         其他影响sql的参数,如强制修改的字段、nvl函数、sequence等
 	 * @return
 	 */
-	private static String getCacheKey(EntityMeta entityMeta, String tableName, int dbType, PKStrategy pkStrategy) {
+	public static String getCrudSqlKey(String operate, EntityMeta entityMeta, String tableName, int dbType,
+			PKStrategy pkStrategy, IUnifyFieldsHandler unifyFieldsHandler, Object... extendArgs) {
 		// update 2023-10-24 增加主键策略作为缓存key的组成，因为gaussdb
 		// save单条保存和saveAll批量机制存在差异，save时sequence策略会提前获取sequence值，然后变成了assign策略
-		return entityMeta.getEntityClass().getName() + "[" + tableName + "]dbType=" + dbType
-				+ ((pkStrategy == null) ? "" : pkStrategy.getValue());
+		StringBuilder cacheKey = new StringBuilder(operate).append(":")
+				.append(entityMeta.getEntityClass().getName()).append("[").append(tableName).append("]dbType=")
+				.append(dbType).append((pkStrategy == null) ? "" : pkStrategy.getValue());
+		// 统一字段(创建时间、修改时间取数据库时间等)模式
+		if (unifyFieldsHandler != null) {
+			cacheKey.append(";unify=").append(unifyFieldsHandler.getClass().getName());
+		}
+		for (Object arg : extendArgs) {
+			cacheKey.append(";");
+			if (arg instanceof Object[]) {
+				cacheKey.append(Arrays.toString((Object[]) arg));
+			} else {
+				cacheKey.append(arg);
+			}
+		}
+		return cacheKey.toString();
+	}
+
+	/**
+	 * @TODO 获取缓存的对象操作sql
+	 * @param sqlCacheKey
+	 * @return
+	 */
+	public static String getCrudSql(String sqlCacheKey) {
+		return crudSqlCache.get(sqlCacheKey);
+	}
+
+	/**
+	 * @TODO 缓存对象操作sql(强制修改字段组合等不断变化时,超出最大数量淘汰最少使用的)
+	 * @param sqlCacheKey
+	 * @param sql
+	 */
+	public static void putCrudSql(String sqlCacheKey, String sql) {
+		crudSqlCache.put(sqlCacheKey, sql);
 	}
 }
@@ -12,9 +12,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -46,8 +49,10 @@ import org.sagacity.sqltoy.config.model.SqlToyResult;
 import org.sagacity.sqltoy.config.model.SqlType;
 import org.sagacity.sqltoy.config.model.SqlWithAnalysis;
 import org.sagacity.sqltoy.config.model.TableCascadeModel;
+import org.sagacity.sqltoy.dialect.Dialect;
 import org.sagacity.sqltoy.dialect.model.SavePKStrategy;
 import org.sagacity.sqltoy.exception.DataAccessException;
+import org.sagacity.sqltoy.model.BoundedCache;
 import org.sagacity.sqltoy.model.IgnoreCaseSet;
 import org.sagacity.sqltoy.model.IgnoreKeyCaseMap;
 import org.sagacity.sqltoy.model.LockMode;
@@ -59,6 +64,7 @@ import org.sagacity.sqltoy.model.inner.QueryExecutorExtend;
 import org.sagacity.sqltoy.plugins.IUnifyFieldsHandler;
 import org.sagacity.sqltoy.plugins.SqlInterceptor;
 import org.sagacity.sqltoy.plugins.UnifyUpdateFieldsController;
+import org.sagacity.sqltoy.plugins.id.IdGenerator;
 import org.sagacity.sqltoy.plugins.secure.DesensitizeProvider;
 import org.sagacity.sqltoy.plugins.secure.FieldsSecureProvider;
 import org.sagacity.sqltoy.plugins.sharding.ShardingUtils;
@@ -87,6 +93,12 @@ import org.slf4j.LoggerFactory;
  * @modify {Date:2018-9-25,修复select和from对称判断问题,影响分页查询时剔除from之前语句构建select
  *         count(1) from错误}
  * @modify {Date:2024-3-22,修复分页取count记录剔除order by片段未剔除对应参数的缺陷}
+ * @modify {Date:2024-5-12,saveAll按关联字段分组批量获取主键,减少主键生成的交互次数}
+ * @modify {Date:2024-5-25,getCountBySql推导的count语句及需剔除的参数范围按sql缓存,避免每次分页重复解析}
+ * @modify {Date:2024-5-26,update、saveOrUpdate语句按对象、表、数据库类型、强制修改字段等缓存,避免每次重新组织}
+ * @modify {Date:2024-5-27,增加cascadeAll,批量操作时汇总全部主表记录的子表数据,每个子表只执行一次批量级联保存或修改}
+ * @modify {Date:2024-06-01,saveOrUpdate语句中包含创建人、租户等统一赋值的默认值时不缓存,避免不同用户间串值}
+ * @modify {Date:2024-06-01,对象修改、删除操作将参数类型一并传给拦截器,拦截器增加参数时类型与参数保持对应}
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class DialectUtils {
@@ -128,6 +140,12 @@ public class DialectUtils {
 
 	private static final String WHERE_REGEX = "\\s+where[\\(\\s+]";
 
+	/**
+	 * 分页count语句推导结果缓存(sql经过动态条件处理后的最终形态 对应 count语句)
+	 */
+	private static BoundedCache<String, CountSqlPlan> countSqlPlans = new BoundedCache<String, CountSqlPlan>(
+			"countSqlPlan", SqlToyConstants::getMaxCountSqlPlanCount);
+
 	private static final HashMap<String, String> QuesFilters = new HashMap<String, String>() {
 		private static final long serialVersionUID = 7135705054559913831L;
 		{
@@ -269,8 +287,9 @@ public class DialectUtils {
 			public void execute(Object obj, PreparedStatement pst, ResultSet rs) throws Exception {
 				SqlUtil.setParamsValue(sqlToyContext.getTypeHandler(), conn, dbType, pst, paramsValue, null, 0);
 				rs = pst.executeQuery();
-				this.setResult(ResultUtils.processResultSet(sqlToyContext, sqlToyConfig, conn, rs, extend, null,
-						decryptHandler, startIndex));
+				QueryResult queryResult = ResultUtils.processResultSet(sqlToyContext, sqlToyConfig, conn, rs, extend,
+						null, decryptHandler, startIndex);
+				this.setResult(queryResult);
 				if (rs != null) {
 					rs.close();
 					rs = null;
@@ -347,109 +366,24 @@ public class DialectUtils {
 			final String sql, final Object[] paramsValue, final boolean isLastSql, final Connection conn,
 			final Integer dbType) throws Exception {
 		String lastCountSql;
-		int paramCnt = 0;
-		int withParamCnt = 0;
-		// order by 语句片段中存在的参数数量
-		int orderByParamsCnt = 0;
+		Object[] realParamsTemp = paramsValue;
 		// 通过配置直接给定的最优化count 语句
 		if (isLastSql) {
 			lastCountSql = sql;
 		} else {
-			String countPart = " count(1) ";
-			// es count(1) 不起作用
-			if (dbType.equals(DBType.ES)) {
-				countPart = " count(*) ";
-			}
-			String query_tmp = sql;
-			String withSql = "";
-			// with as分析器(避免每次做with 检测,提升效率)
-			if (sqlToyConfig != null && sqlToyConfig.isHasWith()) {
-				SqlWithAnalysis sqlWith = new SqlWithAnalysis(sql);
-				// 判断with as是否在开始位置，如果在内部不做优化处理
-				if (StringUtil.isBlank(sqlWith.getPreSql())) {
-					query_tmp = sqlWith.getRejectWithSql();
-					withSql = sqlWith.getWithSql();
-				}
-			}
-			int lastBracketIndex = query_tmp.lastIndexOf(")");
-			int sql_from_index = 0;
-			// sql不以from开头，截取from 后的部分语句
-			if (StringUtil.indexOfIgnoreCase(query_tmp, "from") != 0) {
-				sql_from_index = StringUtil.getSymMarkMatchIndex(SELECT_REGEX, FROM_REGEX, query_tmp.toLowerCase(), 0);
-			}
-			// 剔除order提高运行效率
-			int orderByIndex = StringUtil.matchLastIndex(query_tmp, ORDER_BY_PATTERN, 1);
-			// order by 在from 之后
-			if (orderByIndex > sql_from_index) {
-				// orderBy片段
-				String orderBySql = null;
-				// 剔除order by 语句
-				if (orderByIndex > lastBracketIndex) {
-					orderBySql = query_tmp.substring(orderByIndex + 1);
-					query_tmp = query_tmp.substring(0, orderByIndex + 1);
-				} else {
-					// 剔除掉order by 后面语句对称的() 内容
-					String orderJudgeSql = clearDisturbSql(query_tmp.substring(orderByIndex + 1));
-					// 在order by 不在子查询内,说明可以整体切除掉order by
-					if (orderJudgeSql.indexOf(")") == -1) {
-						orderBySql = query_tmp.substring(orderByIndex + 1);
-						query_tmp = query_tmp.substring(0, orderByIndex + 1);
-					}
-				}
-				// 存在order by被剔除，获取其参数数量，从全部参数数组中剔除
-				if (null != orderBySql) {
-					orderByParamsCnt = getParamsCount(orderBySql);
-				}
-			}
-			int groupIndex = StringUtil.matchLastIndex(query_tmp, GROUP_BY_PATTERN, 1);
-			// 判断group by 是否是内层，如select * from (select * from table group by)
-			// 外层group by 必须要进行包裹(update by chenrenfei 2016-4-21)
-			boolean isInnerGroup = false;
-			if (groupIndex != -1) {
-				isInnerGroup = clearDisturbSql(query_tmp.substring(groupIndex + 1)).lastIndexOf(")") != -1;
-			}
-			final StringBuilder countQueryStr = new StringBuilder();
-			// 是否包含union,update 2024-2-1(改为每次都判断，避免极端情况)
-			boolean hasUnion = SqlUtil.hasUnion(query_tmp, false);
-			// 不包含distinct和group by 等,则剔除[select * ] from 变成select count(1) from
-			// 性能最优
-			if (!StringUtil.matches(query_tmp.trim(), DISTINCT_PATTERN) && !hasUnion
-					&& (groupIndex == -1 || (groupIndex < lastBracketIndex && isInnerGroup))) {
-				int selectIndex = StringUtil.matchIndex(query_tmp.toLowerCase(), SELECT_REGEX);
-				// 截取出select 和from之间的语句
-				String selectFields = (sql_from_index < 1) ? ""
-						: query_tmp.substring(selectIndex + 6, sql_from_index).toLowerCase();
-				// 剔除嵌套的子查询语句中select 和 from 之间的内容,便于判断统计函数的作用位置
-				selectFields = clearSymSelectFromSql(selectFields);
-				// 存在统计函数 update by chenrenfei ,date: 2017-2-24
-				if (StringUtil.matches(selectFields, STAT_PATTERN)) {
-					countQueryStr.append("select ").append(countPart).append(" from (").append(query_tmp)
-							.append(") sag_count_tmpTable ");
-				} else {
-					// 截取from后的部分
-					countQueryStr.append("select ").append(countPart)
-							.append((sql_from_index != -1 ? query_tmp.substring(sql_from_index) : query_tmp));
+			CountSqlPlan countSqlPlan = getCountSqlPlan(sql, dbType.equals(DBType.ES),
+					sqlToyConfig != null && sqlToyConfig.isHasWith());
+			lastCountSql = countSqlPlan.countSql;
+			if (realParamsTemp != null) {
+				// 剔除order by 语句中的参数对应的值
+				if (countSqlPlan.orderByParamsCnt > 0) {
+					realParamsTemp = CollectionUtil.subtractArray(realParamsTemp,
+							realParamsTemp.length - countSqlPlan.orderByParamsCnt, countSqlPlan.orderByParamsCnt);
 				}
-			} // 包含distinct 或包含union则直接将查询作为子表(普通做法)
-			else {
-				countQueryStr.append("select ").append(countPart).append(" from (").append(query_tmp)
-						.append(") sag_count_tmpTable ");
-			}
-			paramCnt = getParamsCount(countQueryStr.toString());
-			withParamCnt = getParamsCount(withSql);
-			countQueryStr.insert(0, withSql + " ");
-			lastCountSql = countQueryStr.toString();
-		}
-		Object[] realParamsTemp = paramsValue;
-		if (realParamsTemp != null && !isLastSql) {
-			// 剔除order by 语句中的参数对应的值
-			if (orderByParamsCnt > 0) {
-				realParamsTemp = CollectionUtil.subtractArray(realParamsTemp, realParamsTemp.length - orderByParamsCnt,
-						orderByParamsCnt);
+				// 将select from之间语句中的参数剔除
+				realParamsTemp = CollectionUtil.subtractArray(realParamsTemp, countSqlPlan.withParamCnt,
+						realParamsTemp.length - countSqlPlan.withParamCnt - countSqlPlan.paramCnt);
 			}
-			// 将select from之间语句中的参数剔除
-			realParamsTemp = CollectionUtil.subtractArray(realParamsTemp, withParamCnt,
-					realParamsTemp.length - withParamCnt - paramCnt);
 		}
 		final Object[] realParams = realParamsTemp;
 		// 做sql签名
@@ -478,6 +412,129 @@ public class DialectUtils {
 		});
 	}
 
+	/**
+	 * @TODO 获取sql对应的count语句推导结果(同一sql结构只解析一次)
+	 * @param sql
+	 * @param isES
+	 * @param hasWith
+	 * @return
+	 */
+	private static CountSqlPlan getCountSqlPlan(String sql, boolean isES, boolean hasWith) {
+		String planKey = (isES ? "1" : "0").concat(hasWith ? "1" : "0").concat(sql);
+		CountSqlPlan countSqlPlan = countSqlPlans.get(planKey);
+		if (countSqlPlan != null) {
+			return countSqlPlan;
+		}
+		countSqlPlan = compileCountSql(sql, isES, hasWith);
+		// 有界缓存,代码中拼接的动态sql超出数量后淘汰最少使用的
+		countSqlPlans.put(planKey, countSqlPlan);
+		return countSqlPlan;
+	}
+
+	/**
+	 * @TODO 清空count语句推导结果缓存
+	 */
+	public static void clearCountSqlPlans() {
+		countSqlPlans.clear();
+	}
+
+	/**
+	 * @TODO 推导count语句(包含剔除order by和智能判断是直接select count from ()
+	 *       还是直接剔除from之前的语句补充select count)
+	 * @param sql
+	 * @param isES
+	 * @param hasWith
+	 * @return
+	 */
+	private static CountSqlPlan compileCountSql(String sql, boolean isES, boolean hasWith) {
+		CountSqlPlan countSqlPlan = new CountSqlPlan();
+		String countPart = " count(1) ";
+		// es count(1) 不起作用
+		if (isES) {
+			countPart = " count(*) ";
+		}
+		String query_tmp = sql;
+		String withSql = "";
+		// with as分析器(避免每次做with 检测,提升效率)
+		if (hasWith) {
+			SqlWithAnalysis sqlWith = new SqlWithAnalysis(sql);
+			// 判断with as是否在开始位置，如果在内部不做优化处理
+			if (StringUtil.isBlank(sqlWith.getPreSql())) {
+				query_tmp = sqlWith.getRejectWithSql();
+				withSql = sqlWith.getWithSql();
+			}
+		}
+		int lastBracketIndex = query_tmp.lastIndexOf(")");
+		int sql_from_index = 0;
+		// sql不以from开头，截取from 后的部分语句
+		if (StringUtil.indexOfIgnoreCase(query_tmp, "from") != 0) {
+			sql_from_index = StringUtil.getSymMarkMatchIndex(SELECT_REGEX, FROM_REGEX, query_tmp.toLowerCase(), 0);
+		}
+		// 剔除order提高运行效率
+		int orderByIndex = StringUtil.matchLastIndex(query_tmp, ORDER_BY_PATTERN, 1);
+		// order by 在from 之后
+		if (orderByIndex > sql_from_index) {
+			// orderBy片段
+			String orderBySql = null;
+			// 剔除order by 语句
+			if (orderByIndex > lastBracketIndex) {
+				orderBySql = query_tmp.substring(orderByIndex + 1);
+				query_tmp = query_tmp.substring(0, orderByIndex + 1);
+			} else {
+				// 剔除掉order by 后面语句对称的() 内容
+				String orderJudgeSql = clearDisturbSql(query_tmp.substring(orderByIndex + 1));
+				// 在order by 不在子查询内,说明可以整体切除掉order by
+				if (orderJudgeSql.indexOf(")") == -1) {
+					orderBySql = query_tmp.substring(orderByIndex + 1);
+					query_tmp = query_tmp.substring(0, orderByIndex + 1);
+				}
+			}
+			// 存在order by被剔除，获取其参数数量，从全部参数数组中剔除
+			if (null != orderBySql) {
+				countSqlPlan.orderByParamsCnt = getParamsCount(orderBySql);
+			}
+		}
+		int groupIndex = StringUtil.matchLastIndex(query_tmp, GROUP_BY_PATTERN, 1);
+		// 判断group by 是否是内层，如select * from (select * from table group by)
+		// 外层group by 必须要进行包裹(update by chenrenfei 2016-4-21)
+		boolean isInnerGroup = false;
+		if (groupIndex != -1) {
+			isInnerGroup = clearDisturbSql(query_tmp.substring(groupIndex + 1)).lastIndexOf(")") != -1;
+		}
+		final StringBuilder countQueryStr = new StringBuilder();
+		// 是否包含union,update 2024-2-1(改为每次都判断，避免极端情况)
+		boolean hasUnion = SqlUtil.hasUnion(query_tmp, false);
+		// 不包含distinct和group by 等,则剔除[select * ] from 变成select count(1) from
+		// 性能最优
+		if (!StringUtil.matches(query_tmp.trim(), DISTINCT_PATTERN) && !hasUnion
+				&& (groupIndex == -1 || (groupIndex < lastBracketIndex && isInnerGroup))) {
+			int selectIndex = StringUtil.matchIndex(query_tmp.toLowerCase(), SELECT_REGEX);
+			// 截取出select 和from之间的语句
+			String selectFields = (sql_from_index < 1) ? ""
+					: query_tmp.substring(selectIndex + 6, sql_from_index).toLowerCase();
+			// 剔除嵌套的子查询语句中select 和 from 之间的内容,便于判断统计函数的作用位置
+			selectFields = clearSymSelectFromSql(selectFields);
+			// 存在统计函数 update by chenrenfei ,date: 2017-2-24
+			if (StringUtil.matches(selectFields, STAT_PATTERN)) {
+				countQueryStr.append("select ").append(countPart).append(" from (").append(query_tmp)
+						.append(") sag_count_tmpTable ");
+			} else {
+				// 截取from后的部分
+				countQueryStr.append("select ").append(countPart)
+						.append((sql_from_index != -1 ? query_tmp.substring(sql_from_index) : query_tmp));
+			}
+		} // 包含distinct 或包含union则直接将查询作为子表(普通做法)
+		else {
+			countQueryStr.append("select ").append(countPart).append(" from (").append(query_tmp)
+					.append(") sag_count_tmpTable ");
+		}
+		countSqlPlan.paramCnt = getParamsCount(countQueryStr.toString());
+		countSqlPlan.withParamCnt = getParamsCount(withSql);
+		countQueryStr.insert(0, withSql + " ");
+		countSqlPlan.countSql = countQueryStr.toString();
+		return countSqlPlan;
+	}
+
 	/**
 	 * @todo 统一将查询的sql参数由?形式变成:named形式(分页和查询随机记录时)
 	 * @param sqlToyContext
@@ -679,20 +736,23 @@ public class DialectUtils {
 		String saveOrUpdateSql = generateSqlHandler.generateSql(entityMeta, forceUpdateFields);
 		List<Object[]> realParams = paramValues;
 		String realSql = saveOrUpdateSql;
+		Integer[] realTypes = entityMeta.getFieldsTypeArray();
 		if (sqlToyContext.hasSqlInterceptors()) {
 			SqlToyConfig sqlToyConfig = new SqlToyConfig(DataSourceUtils.getDialect(dbType));
 			sqlToyConfig.setSqlType(SqlType.insert);
 			sqlToyConfig.setSql(saveOrUpdateSql);
 			sqlToyConfig.setParamsName(entityMeta.getFieldsArray());
 			SqlToyResult sqlToyResult = new SqlToyResult(saveOrUpdateSql, paramValues.toArray());
+			sqlToyResult.setParamsType(realTypes);
 			sqlToyResult = doInterceptors(sqlToyContext, sqlToyConfig, OperateType.saveOrUpdate, sqlToyResult,
 					entities.get(0).getClass(), dbType);
 			realSql = sqlToyResult.getSql();
 			realParams = CollectionUtil.arrayToList(sqlToyResult.getParamsValue());
+			realTypes = sqlToyResult.getParamsType();
 		}
 		SqlExecuteStat.showSql("执行saveOrUpdate语句", realSql, null);
 		return SqlUtil.batchUpdateByJdbc(sqlToyContext.getTypeHandler(), realSql, realParams, batchSize, null,
-				entityMeta.getFieldsTypeArray(), autoCommit, conn, dbType);
+				realTypes, autoCommit, conn, dbType);
 	}
 
 	/**
@@ -718,6 +778,40 @@ public class DialectUtils {
 			return DialectExtUtils.generateInsertSql(unifyFieldsHandler, dbType, entityMeta, pkStrategy, isNullFunction,
 					sequence, isAssignPK, realTable);
 		}
+		// 创建人、租户等统一赋值以默认值形式写入了sql(随当前用户变化),不能缓存
+		if (unifyFieldsHandler != null && unifyFieldsHandler.createUnifyFields() != null
+				&& !unifyFieldsHandler.createUnifyFields().isEmpty()) {
+			return generateSaveOrUpdateSql(unifyFieldsHandler, dbType, entityMeta, pkStrategy, forceUpdateFields,
+					fromTable, isNullFunction, sequence, isAssignPK, realTable);
+		}
+		String sqlCacheKey = DialectExtUtils.getCrudSqlKey("saveOrUpdate", entityMeta, realTable, dbType, pkStrategy,
+				unifyFieldsHandler, forceUpdateFields, fromTable, isNullFunction, sequence, isAssignPK);
+		String saveOrUpdateSql = DialectExtUtils.getCrudSql(sqlCacheKey);
+		if (saveOrUpdateSql == null) {
+			saveOrUpdateSql = generateSaveOrUpdateSql(unifyFieldsHandler, dbType, entityMeta, pkStrategy,
+					forceUpdateFields, fromTable, isNullFunction, sequence, isAssignPK, realTable);
+			DialectExtUtils.putCrudSql(sqlCacheKey, saveOrUpdateSql);
+		}
+		return saveOrUpdateSql;
+	}
+
+	/**
+	 * @todo 组织merge into 形式的saveOrUpdate语句
+	 * @param unifyFieldsHandler
+	 * @param dbType
+	 * @param entityMeta
+	 * @param pkStrategy
+	 * @param forceUpdateFields
+	 * @param fromTable
+	 * @param isNullFunction
+	 * @param sequence
+	 * @param isAssignPK
+	 * @param realTable          已经增加了schema
+	 * @return
+	 */
+	private static String generateSaveOrUpdateSql(IUnifyFieldsHandler unifyFieldsHandler, Integer dbType,
+			EntityMeta entityMeta, PKStrategy pkStrategy, String[] forceUpdateFields, String fromTable,
+			String isNullFunction, String sequence, boolean isAssignPK, String realTable) {
 		// 将新增记录统一赋值属性模拟成默认值模式
 		IgnoreKeyCaseMap<String, Object> createUnifyFields = null;
 		if (unifyFieldsHandler != null && unifyFieldsHandler.createUnifyFields() != null
@@ -935,6 +1029,12 @@ public class DialectUtils {
 		if (entityMeta.getIdArray() == null) {
 			return null;
 		}
+		String sqlCacheKey = DialectExtUtils.getCrudSqlKey("update", entityMeta, tableName, dbType, null,
+				unifyFieldsHandler, forceUpdateFields, nullFunction);
+		String updateSql = DialectExtUtils.getCrudSql(sqlCacheKey);
+		if (updateSql != null) {
+			return updateSql;
+		}
 		StringBuilder sql = new StringBuilder(entityMeta.getFieldsArray().length * 30 + 30);
 		sql.append(" update  ");
 		// 已经增加了schema
@@ -1011,7 +1111,9 @@ public class DialectUtils {
 			sql.append(columnName);
 			sql.append("=?");
 		}
-		return sql.toString();
+		updateSql = sql.toString();
+		DialectExtUtils.putCrudSql(sqlCacheKey, updateSql);
+		return updateSql;
 	}
 
 	/**
@@ -1628,6 +1730,11 @@ public class DialectUtils {
 		Object[] relatedColValue = null;
 		String businessIdType = hasBizId ? entityMeta.getColumnJavaType(entityMeta.getBusinessIdField()) : "";
 		Object[] rowData;
+		// update 2024-05-12 按关联字段值分组记录需要生成主键的行,统一批量获取主键
+		Map<List<Object>, List<Integer>> idGroups = hasId ? new LinkedHashMap<List<Object>, List<Integer>>() : null;
+		Map<List<Object>, List<Integer>> bizIdGroups = hasBizId ? new LinkedHashMap<List<Object>, List<Integer>>()
+				: null;
+		List<Object> groupKey;
 		for (int i = 0, end = paramValues.size(); i < end; i++) {
 			rowData = (Object[]) paramValues.get(i);
 			// 业务主键关联字段值校验
@@ -1641,26 +1748,28 @@ public class DialectUtils {
 					}
 				}
 			}
-			// 主键值为null,调用主键生成策略并赋值
+			groupKey = (relatedColValue == null) ? Collections.emptyList() : Arrays.asList(relatedColValue);
+			// 主键值为null,登记待生成
 			if (hasId && StringUtil.isBlank(rowData[pkIndex])) {
-				rowData[pkIndex] = entityMeta.getIdGenerator().getId(entityMeta.getTableName(), signature,
-						relatedColumnNames, relatedColValue, null, entityMeta.getIdType(), entityMeta.getIdLength(),
-						entityMeta.getBizIdSequenceSize());
-				// 回写主键值
-				BeanUtil.setProperty(entities.get(i), entityMeta.getIdArray()[0], rowData[pkIndex]);
+				idGroups.computeIfAbsent(groupKey, (k) -> new ArrayList<Integer>()).add(i);
 			}
 			if (hasBizId && StringUtil.isBlank(rowData[bizIdColIndex])) {
-				rowData[bizIdColIndex] = entityMeta.getBusinessIdGenerator().getId(entityMeta.getTableName(), signature,
-						relatedColumnNames, relatedColValue, null, businessIdType, entityMeta.getBizIdLength(),
-						entityMeta.getBizIdSequenceSize());
-				// 回写业务主键值
-				BeanUtil.setProperty(entities.get(i), entityMeta.getBusinessIdField(), rowData[bizIdColIndex]);
+				bizIdGroups.computeIfAbsent(groupKey, (k) -> new ArrayList<Integer>()).add(i);
 			}
 			// 回写数据版本
 			if (hasDataVersion) {
 				BeanUtil.setProperty(entities.get(i), entityMeta.getDataVersion().getField(), rowData[dataVerIndex]);
 			}
 		}
+		// 主键值为null,调用主键生成策略并赋值
+		if (hasId && !idGroups.isEmpty()) {
+			assignBatchIds(entityMeta, entityMeta.getIdGenerator(), idGroups, paramValues, entities, pkIndex,
+					entityMeta.getIdArray()[0], entityMeta.getIdType(), entityMeta.getIdLength());
+		}
+		if (hasBizId && !bizIdGroups.isEmpty()) {
+			assignBatchIds(entityMeta, entityMeta.getBusinessIdGenerator(), bizIdGroups, paramValues, entities,
+					bizIdColIndex, entityMeta.getBusinessIdField(), businessIdType, entityMeta.getBizIdLength());
+		}
 		List<Object[]> realParams = paramValues;
 		String realSql = insertSql;
 		if (sqlToyContext.hasSqlInterceptors()) {
@@ -1680,6 +1789,166 @@ public class DialectUtils {
 				batchSize, autoCommit, conn, dbType);
 	}
 
+	/**
+	 * @TODO 按关联字段值分组批量获取主键(或业务主键)并赋值、回写到对象
+	 * @param entityMeta
+	 * @param idGenerator
+	 * @param idGroups    关联字段值 -> 需要生成主键的行
+	 * @param paramValues
+	 * @param entities
+	 * @param colIndex
+	 * @param field
+	 * @param idJavaType
+	 * @param idLength
+	 * @throws Exception
+	 */
+	private static void assignBatchIds(EntityMeta entityMeta, IdGenerator idGenerator,
+			Map<List<Object>, List<Integer>> idGroups, List<Object[]> paramValues, List<?> entities, int colIndex,
+			String field, String idJavaType, int idLength) throws Exception {
+		Object[] relatedColValue;
+		Object[] ids;
+		List<Integer> rows;
+		int rowIndex;
+		for (Map.Entry<List<Object>, List<Integer>> group : idGroups.entrySet()) {
+			relatedColValue = group.getKey().isEmpty() ? null : group.getKey().toArray();
+			rows = group.getValue();
+			ids = idGenerator.getIds(entityMeta.getTableName(), entityMeta.getBizIdSignature(),
+					entityMeta.getBizIdRelatedColumns(), relatedColValue, null, idJavaType, idLength,
+					entityMeta.getBizIdSequenceSize(), rows.size());
+			for (int i = 0; i < rows.size(); i++) {
+				rowIndex = rows.get(i);
+				paramValues.get(rowIndex)[colIndex] = ids[i];
+				// 回写主键值
+				BeanUtil.setProperty(entities.get(rowIndex), field, ids[i]);
+			}
+		}
+	}
+
+	/**
+	 * @TODO 批量级联保存或修改子表:汇总全部主表对象的子表数据,回写外键值后每个子表只执行一次批量操作
+	 *       <li>主表对象的主键需已经赋值(saveAll通过ShardingUtils.assignPKs提前赋值)</li>
+	 *       <li>isUpdate=true:按主表记录批量执行子表存量数据的级联修改sql(cascadeUpdateSql),子表再执行saveOrUpdateAll</li>
+	 *       <li>isUpdate=false:子表执行saveAll</li>
+	 * @param sqlToyContext
+	 * @param dialectImpl              当前数据库方言实现
+	 * @param entityMeta
+	 * @param entities                 主表对象集合
+	 * @param isUpdate
+	 * @param forceCascadeClasses      子集合数据为空时依然执行cascadeUpdateSql的子表类型
+	 * @param subTableForceUpdateProps
+	 * @param batchSize
+	 * @param conn
+	 * @param dbType
+	 * @param dialect
+	 * @param autoCommit               子表批量操作不做提交控制(autoCommit=null),由主表操作统一处理
+	 * @return 子表影响的记录数
+	 * @throws Exception
+	 */
+	public static Long cascadeAll(SqlToyContext sqlToyContext, Dialect dialectImpl, EntityMeta entityMeta,
+			List<?> entities, boolean isUpdate, Class[] forceCascadeClasses,
+			HashMap<Class, String[]> subTableForceUpdateProps, int batchSize, Connection conn, Integer dbType,
+			String dialect, Boolean autoCommit) throws Exception {
+		if (entities == null || entities.isEmpty() || entityMeta.getCascadeModels().isEmpty()) {
+			return 0L;
+		}
+		Set<Class> forceTypes = new HashSet<Class>();
+		if (isUpdate && forceCascadeClasses != null) {
+			forceTypes.addAll(Arrays.asList(forceCascadeClasses));
+		}
+		long updateCnt = 0;
+		String[] mappedFields;
+		EntityMeta subTableEntityMeta;
+		List<Object[]> mappedValues;
+		Object[] mappedFieldValues;
+		List subTableData;
+		List items;
+		boolean force;
+		// 存量数据处理sql(包含拦截器处理后的结果) 对应 每个主表记录的参数
+		Map<String, List<Object[]>> cascadeUpdateParams;
+		for (TableCascadeModel cascadeModel : entityMeta.getCascadeModels()) {
+			mappedFields = cascadeModel.getMappedFields();
+			subTableEntityMeta = sqlToyContext.getEntityMeta(cascadeModel.getMappedType());
+			force = forceTypes.contains(cascadeModel.getMappedType());
+			mappedValues = BeanUtil.reflectBeansToInnerAry(entities, cascadeModel.getFields(), null, null);
+			subTableData = new ArrayList();
+			cascadeUpdateParams = new LinkedHashMap<String, List<Object[]>>();
+			for (int i = 0, n = entities.size(); i < n; i++) {
+				mappedFieldValues = mappedValues.get(i);
+				items = getCascadeItems(entities.get(i), cascadeModel);
+				if (items.isEmpty() && !force) {
+					continue;
+				}
+				for (int j = 0; j < mappedFieldValues.length; j++) {
+					if (StringUtil.isBlank(mappedFieldValues[j])) {
+						throw new IllegalArgumentException("表:" + entityMeta.getTableName() + " 级联子表:"
+								+ subTableEntityMeta.getTableName() + " 批量操作,主表关联字段:" + cascadeModel.getFields()[j]
+								+ " 值为null(identity/sequence主键未回写),请改用单记录save/update级联操作!");
+					}
+				}
+				if (!items.isEmpty()) {
+					// 回写关联字段赋值
+					BeanUtil.batchSetProperties(items, mappedFields, mappedFieldValues, true);
+					subTableData.addAll(items);
+				}
+				if (isUpdate && cascadeModel.getCascadeUpdateSql() != null) {
+					SqlToyResult sqlToyResult = SqlConfigParseUtils.processSql(cascadeModel.getCascadeUpdateSql(),
+							mappedFields, mappedFieldValues, null);
+					SqlToyConfig sqlToyConfig = new SqlToyConfig(DataSourceUtils.getDialect(dbType));
+					sqlToyConfig.setSqlType(SqlType.update);
+					sqlToyConfig.setSql(cascadeModel.getCascadeUpdateSql());
+					sqlToyConfig.setParamsName(mappedFields);
+					sqlToyResult = doInterceptors(sqlToyContext, sqlToyConfig, OperateType.execute, sqlToyResult,
+							cascadeModel.getMappedType(), dbType);
+					cascadeUpdateParams.computeIfAbsent(sqlToyResult.getSql(), (k) -> new ArrayList<Object[]>())
+							.add(sqlToyResult.getParamsValue());
+				}
+			}
+			// 针对子表存量数据,批量执行级联修改的语句(删除或置为无效)
+			for (Map.Entry<String, List<Object[]>> entry : cascadeUpdateParams.entrySet()) {
+				SqlExecuteStat.showSql("批量执行子表级联更新前的存量数据更新[" + entry.getValue().size() + "]条", entry.getKey(),
+						null);
+				SqlUtil.batchUpdateByJdbc(sqlToyContext.getTypeHandler(), entry.getKey(), entry.getValue(), batchSize,
+						null, null, null, conn, dbType);
+			}
+			if (subTableData.isEmpty()) {
+				logger.info("未执行主表:{} 对应级联子表:{} 批量操作,子表数据为空!", entityMeta.getTableName(),
+						subTableEntityMeta.getTableName());
+				continue;
+			}
+			logger.info("执行主表:{} 对应级联子表:{} 批量操作,子表记录数:{}", entityMeta.getTableName(),
+					subTableEntityMeta.getTableName(), subTableData.size());
+			if (isUpdate) {
+				updateCnt += dialectImpl.saveOrUpdateAll(sqlToyContext, subTableData, batchSize, null,
+						(subTableForceUpdateProps == null) ? null
+								: subTableForceUpdateProps.get(cascadeModel.getMappedType()),
+						conn, dbType, dialect, null, null);
+			} else {
+				updateCnt += dialectImpl.saveAll(sqlToyContext, subTableData, batchSize, null, conn, dbType, dialect,
+						null, null);
+			}
+		}
+		return updateCnt;
+	}
+
+	/**
+	 * @TODO 获取对象级联属性的子表数据(oneToMany为List,oneToOne为单个对象)
+	 * @param entity
+	 * @param cascadeModel
+	 * @return
+	 * @throws Exception
+	 */
+	private static List getCascadeItems(Object entity, TableCascadeModel cascadeModel) throws Exception {
+		Object value = BeanUtil.getProperty(entity, cascadeModel.getProperty());
+		if (value == null) {
+			return Collections.emptyList();
+		}
+		// oneToMany
+		if (cascadeModel.getCascadeType() == 1) {
+			return (List) value;
+		}
+		return Collections.singletonList(value);
+	}
+
 	/**
 	 * @todo 执行批量保存或修改操作
 	 * @param sqlToyContext
@@ -1823,11 +2092,12 @@ public class DialectUtils {
 		sqlToyConfig.setSql(updateSql);
 		sqlToyConfig.setParamsName(entityMeta.getFieldsArray());
 		SqlToyResult sqlToyResult = new SqlToyResult(updateSql, fieldsValues);
+		sqlToyResult.setParamsType(entityMeta.getFieldsTypeArray());
 		// 增加sql执行拦截器 update 2022-9-10
 		sqlToyResult = doInterceptors(sqlToyContext, sqlToyConfig, OperateType.update, sqlToyResult, entity.getClass(),
 				dbType);
 		return SqlUtil.executeSql(sqlToyContext.getTypeHandler(), sqlToyResult.getSql(), sqlToyResult.getParamsValue(),
-				entityMeta.getFieldsTypeArray(), conn, dbType, null, false);
+				sqlToyResult.getParamsType(), conn, dbType, null, false);
 	}
 
 	/**
@@ -2139,20 +2409,23 @@ public class DialectUtils {
 		}
 		List<Object[]> realParams = paramsValues;
 		String realSql = updateSql;
+		Integer[] realTypes = entityMeta.getFieldsTypeArray();
 		if (sqlToyContext.hasSqlInterceptors()) {
 			SqlToyConfig sqlToyConfig = new SqlToyConfig(DataSourceUtils.getDialect(dbType));
 			sqlToyConfig.setSqlType(SqlType.update);
 			sqlToyConfig.setSql(updateSql);
 			sqlToyConfig.setParamsName(entityMeta.getFieldsArray());
 			SqlToyResult sqlToyResult = new SqlToyResult(updateSql, paramsValues.toArray());
+			sqlToyResult.setParamsType(realTypes);
 			sqlToyResult = doInterceptors(sqlToyContext, sqlToyConfig, OperateType.updateAll, sqlToyResult,
 					entities.get(0).getClass(), dbType);
 			realSql = sqlToyResult.getSql();
 			realParams = CollectionUtil.arrayToList(sqlToyResult.getParamsValue());
+			realTypes = sqlToyResult.getParamsType();
 		}
 		SqlExecuteStat.showSql("批量修改[" + realParams.size() + "]条记录", realSql, null);
-		return SqlUtilsExt.batchUpdateForPOJO(sqlToyContext.getTypeHandler(), realSql, realParams,
-				entityMeta.getFieldsTypeArray(), null, null, batchSize, autoCommit, conn, dbType);
+		return SqlUtilsExt.batchUpdateForPOJO(sqlToyContext.getTypeHandler(), realSql, realParams, realTypes, null,
+				null, batchSize, autoCommit, conn, dbType);
 	}
 
 	/**
@@ -2216,11 +2489,12 @@ public class DialectUtils {
 					sqlToyConfig.setSql(cascadeModel.getDeleteSubTableSql());
 					sqlToyConfig.setParamsName(cascadeModel.getFields());
 					SqlToyResult sqlToyResult = new SqlToyResult(cascadeModel.getDeleteSubTableSql(), mainFieldValues);
+					sqlToyResult.setParamsType(subTableFieldType);
 					// 增加sql执行拦截器 update 2022-9-10
 					sqlToyResult = doInterceptors(sqlToyContext, sqlToyConfig, OperateType.deleteAll, sqlToyResult,
 							cascadeModel.getMappedType(), dbType);
 					SqlUtil.executeSql(sqlToyContext.getTypeHandler(), sqlToyResult.getSql(),
-							sqlToyResult.getParamsValue(), subTableFieldType, conn, dbType, null, true);
+							sqlToyResult.getParamsValue(), sqlToyResult.getParamsType(), conn, dbType, null, true);
 				}
 			}
 		}
@@ -2230,11 +2504,12 @@ public class DialectUtils {
 		sqlToyConfig.setSql(deleteSql);
 		sqlToyConfig.setParamsName(entityMeta.getIdArray());
 		SqlToyResult sqlToyResult = new SqlToyResult(deleteSql, idValues);
+		sqlToyResult.setParamsType(parameterTypes);
 		// 增加sql执行拦截器 update 2022-9-10
 		sqlToyResult = doInterceptors(sqlToyContext, sqlToyConfig, OperateType.delete, sqlToyResult, entity.getClass(),
 				dbType);
 		return SqlUtil.executeSql(sqlToyContext.getTypeHandler(), sqlToyResult.getSql(), sqlToyResult.getParamsValue(),
-				parameterTypes, conn, dbType, null, true);
+				sqlToyResult.getParamsType(), conn, dbType, null, true);
 	}
 
 	/**
@@ -2306,20 +2581,23 @@ public class DialectUtils {
 					delSubTableSql = ReservedWordsUtil.convertSql(cascadeModel.getDeleteSubTableSql(), dbType);
 					List<Object[]> realParams = mainFieldValues;
 					String realSql = delSubTableSql;
+					Integer[] realTypes = subTableFieldType;
 					if (sqlToyContext.hasSqlInterceptors()) {
 						SqlToyConfig sqlToyConfig = new SqlToyConfig(DataSourceUtils.getDialect(dbType));
 						sqlToyConfig.setSqlType(SqlType.delete);
 						sqlToyConfig.setSql(delSubTableSql);
 						sqlToyConfig.setParamsName(cascadeModel.getFields());
 						SqlToyResult sqlToyResult = new SqlToyResult(delSubTableSql, mainFieldValues.toArray());
+						sqlToyResult.setParamsType(realTypes);
 						sqlToyResult = doInterceptors(sqlToyContext, sqlToyConfig, OperateType.deleteAll, sqlToyResult,
 								cascadeModel.getMappedType(), dbType);
 						realSql = sqlToyResult.getSql();
 						realParams = CollectionUtil.arrayToList(sqlToyResult.getParamsValue());
+						realTypes = sqlToyResult.getParamsType();
 					}
 					SqlExecuteStat.showSql("级联删除子表记录", realSql, null);
-					SqlUtilsExt.batchUpdateForPOJO(sqlToyContext.getTypeHandler(), realSql, realParams,
-							subTableFieldType, null, null, sqlToyContext.getBatchSize(), null, conn, dbType);
+					SqlUtilsExt.batchUpdateForPOJO(sqlToyContext.getTypeHandler(), realSql, realParams, realTypes,
+							null, null, sqlToyContext.getBatchSize(), null, conn, dbType);
 				}
 			}
 		}
@@ -2327,19 +2605,22 @@ public class DialectUtils {
 				.convertSql("delete from ".concat(realTable).concat(" ").concat(entityMeta.getIdArgWhereSql()), dbType);
 		List<Object[]> realParams = idValues;
 		String realSql = deleteSql;
+		Integer[] realTypes = parameterTypes;
 		if (sqlToyContext.hasSqlInterceptors()) {
 			SqlToyConfig sqlToyConfig = new SqlToyConfig(DataSourceUtils.getDialect(dbType));
 			sqlToyConfig.setSqlType(SqlType.delete);
 			sqlToyConfig.setSql(deleteSql);
 			sqlToyConfig.setParamsName(entityMeta.getIdArray());
 			SqlToyResult sqlToyResult = new SqlToyResult(deleteSql, idValues.toArray());
+			sqlToyResult.setParamsType(realTypes);
 			sqlToyResult = doInterceptors(sqlToyContext, sqlToyConfig, OperateType.deleteAll, sqlToyResult,
 					entities.get(0).getClass(), dbType);
 			realSql = sqlToyResult.getSql();
 			realParams = CollectionUtil.arrayToList(sqlToyResult.getParamsValue());
+			realTypes = sqlToyResult.getParamsType();
 		}
 		SqlExecuteStat.showSql("批量删除[" + realParams.size() + "]条记录", realSql, null);
-		return SqlUtilsExt.batchUpdateForPOJO(sqlToyContext.getTypeHandler(), realSql, realParams, parameterTypes, null,
+		return SqlUtilsExt.batchUpdateForPOJO(sqlToyContext.getTypeHandler(), realSql, realParams, realTypes, null,
 				null, batchSize, autoCommit, conn, dbType);
 	}
 
@@ -2970,4 +3251,20 @@ public class DialectUtils {
 		}
 		return result;
 	}
+
+	/**
+	 * count语句推导结果:count语句以及原查询参数中需要剔除的参数数量
+	 */
+	private static class CountSqlPlan {
+		private String countSql;
+
+		// select from之间以外保留的参数数量
+		private int paramCnt = 0;
+
+		// with as 中的参数数量
+		private int withParamCnt = 0;
+
+		// order by 语句片段中存在的参数数量
+		private int orderByParamsCnt = 0;
+	}
 }
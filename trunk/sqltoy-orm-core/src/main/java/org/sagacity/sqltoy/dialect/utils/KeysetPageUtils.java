@@ -0,0 +1,346 @@
+/**
+ *
+ */
+package org.sagacity.sqltoy.dialect.utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.sagacity.sqltoy.SqlToyConstants;
+import org.sagacity.sqltoy.config.model.SqlToyResult;
+import org.sagacity.sqltoy.utils.BeanUtil;
+import org.sagacity.sqltoy.utils.DataSourceUtils.DBType;
+import org.sagacity.sqltoy.utils.StringUtil;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 提供keyset(seek)分页的sql构造:以排序键和上一页最后一条记录的键值作为条件,
+ *              形成 where (k1,k2) > (?,?) order by k1,k2 limit n,避免offset扫描和count查询,适用于移动端滚屏等场景
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-06
+ * @modify {Date:2024-06-01,排序键支持单独指定方向(混合升降序时按展开形式比较);完整剔除最外层order by及其参数;校验pageSize}
+ */
+@SuppressWarnings("rawtypes")
+public class KeysetPageUtils {
+	/**
+	 * 排序键只允许字段名称(可带表别名),避免sql注入
+	 */
+	private static final Pattern KEYSET_COLUMN_PATTERN = Pattern
+			.compile("^([a-zA-Z_][\\w]*(?:\\.[a-zA-Z_][\\w]*)?)(?:\\s+(?i)(asc|desc))?$");
+
+	private static final Pattern ORDER_BY_START_PATTERN = Pattern.compile("^(?i)order\\s+by\\W");
+
+	/**
+	 * order by 之后的分页、锁语句
+	 */
+	private static final Pattern OUTER_LIMIT_PATTERN = Pattern
+			.compile("(?i)\\W(limit|offset|fetch|rows|for\\s+update|lock)\\W");
+
+	private KeysetPageUtils() {
+	}
+
+	/**
+	 * @TODO 将已经处理完参数的查询sql包装成keyset分页sql
+	 * @param sql          已经过processSql处理(参数为?)的sql
+	 * @param paramsValue  sql对应的参数值
+	 * @param columns      排序键(查询结果中的列名称),可单独指定方向如:create_time desc
+	 * @param desc         未单独指定方向的排序键是否降序
+	 * @param keysetValues 上一页最后一条记录的排序键值(为null表示第一页)
+	 * @param pageSize     每页记录数
+	 * @param dbType
+	 * @return
+	 */
+	public static SqlToyResult wrapKeysetSql(String sql, Object[] paramsValue, String[] columns, boolean desc,
+			Object[] keysetValues, int pageSize, Integer dbType) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("keyset分页pageSize:" + pageSize + " 必须大于0!");
+		}
+		String[] keyColumns = getKeyColumns(columns);
+		boolean[] descs = getKeyDescs(columns, desc);
+		boolean hasKeyset = (keysetValues != null && keysetValues.length > 0);
+		if (hasKeyset && keysetValues.length != keyColumns.length) {
+			throw new IllegalArgumentException("keyset分页排序键数量:" + keyColumns.length + " 跟键值数量:"
+					+ keysetValues.length + " 不一致!");
+		}
+		// 剔除最外层order by(及其中的参数),外层统一按排序键排序
+		SqlToyResult innerSql = removeOuterOrderBy(sql, paramsValue);
+		paramsValue = innerSql.getParamsValue();
+		int oneSqlParamCnt = (paramsValue == null) ? 0 : paramsValue.length;
+		Object[] realParamsValue = paramsValue;
+		StringBuilder result = new StringBuilder();
+		boolean isSqlServer = (dbType != null && dbType.intValue() == DBType.SQLSERVER);
+		boolean isOracle11 = (dbType != null && dbType.intValue() == DBType.ORACLE11);
+		result.append("select ");
+		if (isSqlServer) {
+			result.append("top ").append(pageSize).append(" ");
+		}
+		result.append(SqlToyConstants.INTERMEDIATE_TABLE).append(".* from (");
+		result.append(innerSql.getSql());
+		result.append(") ").append(SqlToyConstants.INTERMEDIATE_TABLE);
+		if (hasKeyset) {
+			result.append(" where ");
+			// 排序方向一致且支持行值比较的数据库:(k1,k2) > (?,?)
+			if (keyColumns.length == 1 || (isSameDirection(descs) && supportRowValue(dbType))) {
+				String compare = descs[0] ? "<" : ">";
+				realParamsValue = new Object[oneSqlParamCnt + keyColumns.length];
+				if (oneSqlParamCnt > 0) {
+					System.arraycopy(paramsValue, 0, realParamsValue, 0, oneSqlParamCnt);
+				}
+				System.arraycopy(keysetValues, 0, realParamsValue, oneSqlParamCnt, keyColumns.length);
+				if (keyColumns.length > 1) {
+					result.append("(");
+				}
+				for (int i = 0; i < keyColumns.length; i++) {
+					if (i > 0) {
+						result.append(",");
+					}
+					result.append(SqlToyConstants.INTERMEDIATE_TABLE).append(".").append(keyColumns[i]);
+				}
+				result.append(keyColumns.length > 1 ? ") " : " ").append(compare);
+				result.append(keyColumns.length > 1 ? " (" : " ");
+				for (int i = 0; i < keyColumns.length; i++) {
+					if (i > 0) {
+						result.append(",");
+					}
+					result.append("?");
+				}
+				if (keyColumns.length > 1) {
+					result.append(")");
+				}
+			} else {
+				// 展开形式(每个排序键按各自方向比较):k1>? or (k1=? and k2<?)
+				int keysetParamCnt = keyColumns.length * (keyColumns.length + 1) / 2;
+				realParamsValue = new Object[oneSqlParamCnt + keysetParamCnt];
+				if (oneSqlParamCnt > 0) {
+					System.arraycopy(paramsValue, 0, realParamsValue, 0, oneSqlParamCnt);
+				}
+				int index = oneSqlParamCnt;
+				result.append("(");
+				for (int i = 0; i < keyColumns.length; i++) {
+					if (i > 0) {
+						result.append(" or ");
+					}
+					result.append("(");
+					for (int j = 0; j < i; j++) {
+						result.append(SqlToyConstants.INTERMEDIATE_TABLE).append(".").append(keyColumns[j]);
+						result.append("=? and ");
+						realParamsValue[index++] = keysetValues[j];
+					}
+					result.append(SqlToyConstants.INTERMEDIATE_TABLE).append(".").append(keyColumns[i]);
+					result.append(descs[i] ? "<" : ">").append("?)");
+					realParamsValue[index++] = keysetValues[i];
+				}
+				result.append(")");
+			}
+		}
+		appendOrderBy(result, keyColumns, descs);
+		// oracle11 不支持fetch first,rownum在排序之前生效,需在排序后再包裹一层
+		if (isOracle11) {
+			result.insert(0, "select * from (");
+			result.append(") where rownum<=").append(pageSize);
+		} else if (!isSqlServer) {
+			if (dbType != null && (dbType.intValue() == DBType.ORACLE || dbType.intValue() == DBType.DB2
+					|| dbType.intValue() == DBType.DM || dbType.intValue() == DBType.OSCAR)) {
+				result.append(" fetch first ").append(pageSize).append(" rows only");
+			} else {
+				result.append(" limit ").append(pageSize);
+			}
+		}
+		return new SqlToyResult(result.toString(), realParamsValue);
+	}
+
+	/**
+	 * @TODO 提取当前页最后一条记录的排序键值,作为下一页的游标
+	 * @param rows       查询结果(List<List>、Map或POJO)
+	 * @param labelNames 查询结果的列名称
+	 * @param columns    排序键
+	 * @param pageSize
+	 * @return 记录数量小于pageSize(已经到末尾)返回null
+	 */
+	public static Object[] getNextKeysetValues(List rows, String[] labelNames, String[] columns, int pageSize) {
+		if (rows == null || rows.isEmpty() || rows.size() < pageSize) {
+			return null;
+		}
+		String[] keyColumns = getKeyColumns(columns);
+		Object lastRow = rows.get(rows.size() - 1);
+		Object[] result = new Object[keyColumns.length];
+		int index;
+		for (int i = 0; i < keyColumns.length; i++) {
+			if (lastRow instanceof List) {
+				index = getLabelIndex(labelNames, keyColumns[i]);
+				if (index == -1) {
+					throw new IllegalArgumentException("keyset分页排序键:" + keyColumns[i] + " 不在查询结果列中!");
+				}
+				result[i] = ((List) lastRow).get(index);
+			} else if (lastRow instanceof Map) {
+				Map rowMap = (Map) lastRow;
+				result[i] = rowMap.containsKey(keyColumns[i]) ? rowMap.get(keyColumns[i])
+						: rowMap.get(StringUtil.toHumpStr(keyColumns[i], false));
+			} else {
+				result[i] = BeanUtil.getProperty(lastRow, StringUtil.toHumpStr(keyColumns[i], false));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 是否支持(k1,k2) > (?,?) 行值比较
+	 * @param dbType
+	 * @return
+	 */
+	private static boolean supportRowValue(Integer dbType) {
+		if (dbType == null) {
+			return false;
+		}
+		switch (dbType) {
+		case DBType.MYSQL:
+		case DBType.MYSQL57:
+		case DBType.TIDB:
+		case DBType.OCEANBASE:
+		case DBType.POSTGRESQL:
+		case DBType.POSTGRESQL15:
+		case DBType.GAUSSDB:
+		case DBType.KINGBASE:
+		case DBType.H2:
+		case DBType.SQLITE:
+		case DBType.DB2:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static String[] getKeyColumns(String[] columns) {
+		if (columns == null || columns.length == 0) {
+			throw new IllegalArgumentException("keyset分页必须指定排序键!");
+		}
+		String[] result = new String[columns.length];
+		String column;
+		for (int i = 0; i < columns.length; i++) {
+			column = (columns[i] == null) ? "" : columns[i].trim();
+			Matcher matcher = KEYSET_COLUMN_PATTERN.matcher(column);
+			if (!matcher.matches()) {
+				throw new IllegalArgumentException("keyset分页排序键:" + columns[i] + " 不是合法的字段名称!");
+			}
+			column = matcher.group(1);
+			// 外层查询已经包裹,去除表别名
+			result[i] = column.substring(column.indexOf(".") + 1);
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 获取每个排序键的方向,未单独指定的按默认方向
+	 * @param columns
+	 * @param desc
+	 * @return
+	 */
+	private static boolean[] getKeyDescs(String[] columns, boolean desc) {
+		boolean[] result = new boolean[columns.length];
+		Matcher matcher;
+		for (int i = 0; i < columns.length; i++) {
+			matcher = KEYSET_COLUMN_PATTERN.matcher(columns[i].trim());
+			matcher.matches();
+			result[i] = (matcher.group(2) == null) ? desc : "desc".equalsIgnoreCase(matcher.group(2));
+		}
+		return result;
+	}
+
+	private static boolean isSameDirection(boolean[] descs) {
+		for (int i = 1; i < descs.length; i++) {
+			if (descs[i] != descs[0]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void appendOrderBy(StringBuilder sql, String[] keyColumns, boolean[] descs) {
+		sql.append(" order by ");
+		for (int i = 0; i < keyColumns.length; i++) {
+			if (i > 0) {
+				sql.append(",");
+			}
+			sql.append(SqlToyConstants.INTERMEDIATE_TABLE).append(".").append(keyColumns[i]);
+			if (descs[i]) {
+				sql.append(" desc");
+			}
+		}
+	}
+
+	private static int getLabelIndex(String[] labelNames, String column) {
+		if (labelNames == null) {
+			return -1;
+		}
+		String humpColumn = column.replace("_", "");
+		for (int i = 0; i < labelNames.length; i++) {
+			if (labelNames[i].equalsIgnoreCase(column) || labelNames[i].replace("_", "").equalsIgnoreCase(humpColumn)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @TODO 剔除sql最外层的order by(外层统一按排序键排序,且sqlserver不允许子查询中存在order by),
+	 *       order by中的参数同时剔除;order by 之后存在limit、offset等无法剔除的直接报错
+	 * @param sql
+	 * @param paramsValue
+	 * @return
+	 */
+	private static SqlToyResult removeOuterOrderBy(String sql, Object[] paramsValue) {
+		int orderByIndex = getOuterOrderByIndex(sql);
+		if (orderByIndex == -1) {
+			return new SqlToyResult(sql, paramsValue);
+		}
+		String orderBy = sql.substring(orderByIndex);
+		if (StringUtil.matches(orderBy.concat(" "), OUTER_LIMIT_PATTERN)) {
+			throw new IllegalArgumentException("keyset分页的sql在order by 之后不能再有limit、offset、fetch等分页或锁语句!");
+		}
+		int orderParamCnt = StringUtil.matchCnt(orderBy, "\\?");
+		Object[] realParamsValue = paramsValue;
+		if (orderParamCnt > 0 && paramsValue != null) {
+			realParamsValue = new Object[paramsValue.length - orderParamCnt];
+			System.arraycopy(paramsValue, 0, realParamsValue, 0, realParamsValue.length);
+		}
+		return new SqlToyResult(sql.substring(0, orderByIndex), realParamsValue);
+	}
+
+	/**
+	 * @TODO 获取最外层(不在括号和引号中)order by 的开始位置
+	 * @param sql
+	 * @return
+	 */
+	private static int getOuterOrderByIndex(String sql) {
+		int depth = 0;
+		int result = -1;
+		char quote = 0;
+		char c;
+		for (int i = 0; i < sql.length(); i++) {
+			c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+				continue;
+			}
+			if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (depth == 0 && (c == 'o' || c == 'O') && (i == 0 || !isWordChar(sql.charAt(i - 1)))
+					&& StringUtil.matches(sql.substring(i, Math.min(i + 20, sql.length())), ORDER_BY_START_PATTERN)) {
+				result = i;
+			}
+		}
+		return result;
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+}
@@ -10,6 +10,7 @@ import java.util.List;
 import javax.sql.DataSource;
 
 import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.callback.StreamResultHandler;
 import org.sagacity.sqltoy.config.model.ElasticEndpoint;
 import org.sagacity.sqltoy.config.model.NoSqlConfigModel;
 import org.sagacity.sqltoy.config.model.SqlToyConfig;
@@ -26,6 +27,7 @@ import org.sagacity.sqltoy.utils.StringUtil;
  * @description 提供基于elasticSearch的查询服务(利用sqltoy组织查询的语句机制的优势提供查询相关功能,增删改暂时不提供)
  * @author zhongxuchen
  * @version v1.0,Date:2018年1月1日
+ * @modify Date:2024-05-18 {增加fetchStream流式查询}
  */
 public class Elastic extends BaseLink {
 	/**
@@ -67,6 +69,11 @@ public class Elastic extends BaseLink {
 	 */
 	private Boolean humpMapLabel;
 
+	/**
+	 * fetchStream 每批提取的记录数量
+	 */
+	private int fetchSize = -1;
+
 	/**
 	 * @param sqlToyContext
 	 * @param dataSource
@@ -110,6 +117,11 @@ public class Elastic extends BaseLink {
 		return this;
 	}
 
+	public Elastic fetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
 	/**
 	 * @todo 获取单条记录
 	 * @return
@@ -240,6 +252,35 @@ public class Elastic extends BaseLink {
 		}
 	}
 
+	/**
+	 * @TODO 流式获取查询结果(eql基于point in time + search_after,原生sql基于cursor),分批提取不受分页窗口限制
+	 * @param streamResultHandler
+	 */
+	public void fetchStream(StreamResultHandler streamResultHandler) {
+		QueryExecutor queryExecutor = build();
+		SqlToyConfig sqlToyConfig = sqlToyContext.getSqlToyConfig(sql, SqlType.search, "", null);
+		if (sqlToyConfig.getNoSqlConfigModel() == null) {
+			throw new IllegalArgumentException(ERROR_MESSAGE);
+		}
+		SqlToyConfig realSqlConfig = null;
+		if (StringUtil.isNotBlank(endPoint)) {
+			realSqlConfig = sqlToyConfig.clone();
+			realSqlConfig.getNoSqlConfigModel().setEndpoint(endPoint);
+		} else {
+			realSqlConfig = sqlToyConfig;
+		}
+		try {
+			if (realSqlConfig.getNoSqlConfigModel().isSqlMode()) {
+				ElasticSqlPlugin.fetchStream(sqlToyContext, realSqlConfig, queryExecutor, streamResultHandler);
+			} else {
+				ElasticSearchPlugin.fetchStream(sqlToyContext, realSqlConfig, queryExecutor, streamResultHandler);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new DataAccessException(e);
+		}
+	}
+
 	/**
 	 * @todo 构造统一的查询条件
 	 * @return
@@ -255,6 +296,9 @@ public class Elastic extends BaseLink {
 			queryExecutor.resultType(resultType);
 		}
 		queryExecutor.humpMapLabel(humpMapLabel);
+		if (fetchSize > 0) {
+			queryExecutor.fetchSize(fetchSize);
+		}
 		return queryExecutor;
 	}
 
@@ -5,6 +5,7 @@ package org.sagacity.sqltoy.link;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
@@ -17,6 +18,7 @@ import org.sagacity.sqltoy.model.LockMode;
 import org.sagacity.sqltoy.model.Page;
 import org.sagacity.sqltoy.model.QueryExecutor;
 import org.sagacity.sqltoy.model.QueryResult;
+import org.sagacity.sqltoy.model.ResultCursor;
 import org.sagacity.sqltoy.plugins.CrossDbAdapter;
 import org.sagacity.sqltoy.utils.BeanUtil;
 
@@ -25,6 +27,7 @@ import org.sagacity.sqltoy.utils.BeanUtil;
  * @description 普通查询
  * @author zhongxuchen
  * @version v1.0,Date:2017年10月9日
+ * @modify Date:2024-05-20 {增加stream拉取式流查询}
  */
 public class Query extends BaseLink {
 
@@ -63,6 +66,11 @@ public class Query extends BaseLink {
 	 */
 	private int fetchSize = -1;
 
+	/**
+	 * stream查询后台预读的记录数量
+	 */
+	private int prefetchSize = 0;
+
 	/**
 	 * jdbc查询最大返回记录数量
 	 */
@@ -91,6 +99,11 @@ public class Query extends BaseLink {
 		return this;
 	}
 
+	public Query prefetch(int prefetchSize) {
+		this.prefetchSize = prefetchSize;
+		return this;
+	}
+
 	@Deprecated
 	public Query maxRows(int maxRows) {
 		this.maxRows = maxRows;
@@ -282,7 +295,11 @@ public class Query extends BaseLink {
 		QueryExecutor queryExecute = build();
 		SqlToyConfig sqlToyConfig = sqlToyContext.getSqlToyConfig(queryExecute, SqlType.search, getDialect());
 		Page<?> result;
-		if (page.getSkipQueryCount()) {
+		if (page.getKeysetColumns() != null) {
+			result = (Page<?>) dialectFactory.findKeysetPage(sqlToyContext, queryExecute, sqlToyConfig,
+					page.getKeysetColumns(), Boolean.TRUE.equals(page.getKeysetDesc()), page.getKeysetValues(),
+					page.getPageSize(), getDataSource(sqlToyConfig)).getPageResult();
+		} else if (page.getSkipQueryCount()) {
 			result = (Page<?>) dialectFactory.findSkipTotalCountPage(sqlToyContext, queryExecute, sqlToyConfig,
 					page.getPageNo(), page.getPageSize(), getDataSource(sqlToyConfig)).getPageResult();
 		} else {
@@ -294,6 +311,18 @@ public class Query extends BaseLink {
 		return result;
 	}
 
+	/**
+	 * @TODO 拉取式流查询,返回的Stream需要关闭(try-with-resources)以释放数据库连接
+	 * @return
+	 */
+	public Stream<?> stream() {
+		QueryExecutor queryExecute = build();
+		SqlToyConfig sqlToyConfig = sqlToyContext.getSqlToyConfig(queryExecute, SqlType.search, getDialect());
+		ResultCursor<?> cursor = dialectFactory.openCursor(sqlToyContext, queryExecute, sqlToyConfig,
+				getDataSource(sqlToyConfig));
+		return cursor.stream();
+	}
+
 	private QueryExecutor build() {
 		QueryExecutor queryExecutor = null;
 		if (entity != null) {
@@ -307,6 +336,7 @@ public class Query extends BaseLink {
 		queryExecutor.humpMapLabel(humpMapLabel);
 		queryExecutor.maxRows(maxRows);
 		queryExecutor.fetchSize(fetchSize);
+		queryExecutor.prefetch(prefetchSize);
 		return queryExecutor;
 	}
 }
@@ -17,6 +17,7 @@ import org.sagacity.sqltoy.model.SaveMode;
  * @description 对象保存操作
  * @author zhongxuchen
  * @version v1.0,Date:2017年10月9日
+ * @modify Date:2024-05-27 {批量保存支持级联保存子表数据}
  */
 public class Save extends BaseLink {
 
@@ -50,6 +51,11 @@ public class Save extends BaseLink {
 	 */
 	private int batchSize = 0;
 
+	/**
+	 * 批量保存是否级联保存子表数据
+	 */
+	private boolean cascade = false;
+
 	public Save deeply(boolean deeply) {
 		this.deeply = deeply;
 		return this;
@@ -109,6 +115,16 @@ public class Save extends BaseLink {
 		return this;
 	}
 
+	/**
+	 * @todo 批量保存时是否级联保存子表数据(子表每个表执行一次批量操作)
+	 * @param cascade
+	 * @return
+	 */
+	public Save cascade(boolean cascade) {
+		this.cascade = cascade;
+		return this;
+	}
+
 	/**
 	 * @todo 保存单条记录
 	 * @param entity
@@ -156,8 +172,9 @@ public class Save extends BaseLink {
 				forceUpdateProps = sqlToyContext.getEntityMeta(entities.get(0).getClass()).getRejectIdFieldArray();
 			}
 			return dialectFactory.saveOrUpdateAll(sqlToyContext, entities, realBatchSize, forceUpdateProps, null,
-					getDataSource(null), autoCommit);
+					getDataSource(null), autoCommit, cascade, null, null);
 		}
-		return dialectFactory.saveAll(sqlToyContext, entities, realBatchSize, null, getDataSource(null), autoCommit);
+		return dialectFactory.saveAll(sqlToyContext, entities, realBatchSize, null, getDataSource(null), autoCommit,
+				cascade);
 	}
 }
@@ -17,6 +17,7 @@ import org.sagacity.sqltoy.SqlToyContext;
  * @description 数据修改操作
  * @author zhongxuchen
  * @version v1.0,Date:2017年10月9日
+ * @modify Date:2024-05-27 {批量修改支持级联修改子表数据}
  */
 public class Update extends BaseLink {
 	/**
@@ -165,7 +166,7 @@ public class Update extends BaseLink {
 	}
 
 	/**
-	 * @todo 批量修改(批量不做级联)
+	 * @todo 批量修改(设置了cascadeClasses或cascadeForceUpdate则级联修改,子表每个表执行一次批量操作)
 	 * @param entities
 	 */
 	public Long many(final List<?> entities) {
@@ -184,8 +185,13 @@ public class Update extends BaseLink {
 			}
 			forceUpdate = sqlToyContext.getEntityMeta(entity.getClass()).getRejectIdFieldArray();
 		}
+		boolean cascade = false;
+		if ((forceCascadeClasses != null && forceCascadeClasses.length > 0)
+				|| (subTableForceUpdateProps != null && !subTableForceUpdateProps.isEmpty())) {
+			cascade = true;
+		}
 		int realBatchSize = (batchSize > 0) ? batchSize : sqlToyContext.getBatchSize();
 		return dialectFactory.updateAll(sqlToyContext, entities, realBatchSize, uniqueFields, forceUpdate, null,
-				getDataSource(null), autoCommit);
+				getDataSource(null), autoCommit, cascade, forceCascadeClasses, subTableForceUpdateProps);
 	}
 }
@@ -0,0 +1,389 @@
+package org.sagacity.sqltoy.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 有界缓存(分段LRU),用于框架内部sql文本、解析计划、反射方法等缓存,避免无限增长或缓存满后不再缓存
+ *              <li>按key的hash分成多个段,段内分为试用区和保护区:新记录进入试用区,再次命中晋升到保护区</li>
+ *              <li>读取不加锁(ConcurrentHashMap),访问顺序的调整通过tryLock尽力而为,并发争用时跳过不阻塞读取</li>
+ *              <li>超出数量或权重上限时优先淘汰试用区最久未使用的记录,一次性的sql(如拼接了条件值)不会挤掉常用sql</li>
+ *              <li>数量和权重上限通过supplier获取,SqlToyConstants中的参数在框架初始化后加载依然生效</li>
+ *              <li>设置了名称的缓存以弱引用登记到全局,通过getAllStats()按名称汇总输出命中、未命中、淘汰次数</li>
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-30
+ * @modify {Date:2024-06-01,读取改为无锁;全局登记改为弱引用,同名缓存合并统计}
+ */
+public class BoundedCache<K, V> {
+	/**
+	 * 全部命名缓存(弱引用,缓存实例不再使用后自动移除,如每个SqlToyContext一份的代码sql缓存)
+	 */
+	private static final Map<BoundedCache, Boolean> CACHES = Collections
+			.synchronizedMap(new WeakHashMap<BoundedCache, Boolean>());
+
+	private static final int MAX_SEGMENTS = 16;
+
+	/**
+	 * 每段最少记录数量,数量上限较小的缓存减少分段,保证淘汰的准确性
+	 */
+	private static final int MIN_SEGMENT_SIZE = 64;
+
+	private final String name;
+
+	private final IntSupplier maxSize;
+
+	private final LongSupplier maxWeight;
+
+	private final ToIntBiFunction<? super K, ? super V> weigher;
+
+	private final Segment<K, V>[] segments;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * @param name    缓存名称,为null则不登记统计
+	 * @param maxSize 最大记录数量
+	 */
+	public BoundedCache(String name, IntSupplier maxSize) {
+		this(name, maxSize, null, null);
+	}
+
+	/**
+	 * @param name      缓存名称,为null则不登记统计
+	 * @param maxSize   最大记录数量
+	 * @param maxWeight 最大权重,为null表示不限制
+	 * @param weigher   单条记录的权重计算,如sql的字符长度
+	 */
+	public BoundedCache(String name, IntSupplier maxSize, LongSupplier maxWeight,
+			ToIntBiFunction<? super K, ? super V> weigher) {
+		this.name = name;
+		this.maxSize = maxSize;
+		this.maxWeight = (weigher == null) ? null : maxWeight;
+		this.weigher = weigher;
+		int segmentCount = 1;
+		int size = maxSize.getAsInt();
+		while (segmentCount < MAX_SEGMENTS && size / (segmentCount * 2) >= MIN_SEGMENT_SIZE) {
+			segmentCount <<= 1;
+		}
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment<K, V>();
+		}
+		if (name != null) {
+			CACHES.put(this, Boolean.TRUE);
+		}
+	}
+
+	public V get(K key) {
+		V result = segmentFor(key).get(key);
+		if (result == null) {
+			missCount.increment();
+		} else {
+			hitCount.increment();
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 放入缓存,value为null或权重超过单段上限的不缓存
+	 * @param key
+	 * @param value
+	 */
+	public void put(K key, V value) {
+		if (key == null || value == null) {
+			return;
+		}
+		int segmentCount = segments.length;
+		// 按分段平均分配上限,合计不超过缓存整体上限
+		int segmentSize = Math.max(1, maxSize.getAsInt() / segmentCount);
+		long segmentWeight = Long.MAX_VALUE;
+		int weight = 1;
+		if (weigher != null) {
+			weight = Math.max(0, weigher.applyAsInt(key, value));
+			if (maxWeight != null) {
+				long totalWeight = maxWeight.getAsLong();
+				if (totalWeight > 0) {
+					segmentWeight = Math.max(1, totalWeight / segmentCount);
+				}
+			}
+		}
+		int evicted = segmentFor(key).put(key, value, weight, segmentSize, segmentWeight);
+		if (evicted > 0) {
+			evictionCount.add(evicted);
+		}
+	}
+
+	/**
+	 * @TODO 获取缓存,不存在则通过loader加载并放入缓存(loader在锁外执行,并发时可能重复加载)
+	 * @param key
+	 * @param loader 返回null则不缓存
+	 * @return
+	 */
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+		V result = get(key);
+		if (result == null) {
+			result = loader.apply(key);
+			put(key, result);
+		}
+		return result;
+	}
+
+	public V remove(K key) {
+		return segmentFor(key).remove(key);
+	}
+
+	public void clear() {
+		for (Segment<K, V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public int size() {
+		int result = 0;
+		for (Segment<K, V> segment : segments) {
+			result += segment.size();
+		}
+		return result;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public CacheStats getStats() {
+		CacheStats result = new CacheStats();
+		result.setName(name);
+		result.setMaxSize(maxSize.getAsInt());
+		result.setMaxWeight((maxWeight == null) ? -1 : maxWeight.getAsLong());
+		long weight = 0;
+		int size = 0;
+		for (Segment<K, V> segment : segments) {
+			size += segment.size();
+			weight += segment.getWeight();
+		}
+		result.setSize(size);
+		result.setWeight(weight);
+		result.setHitCount(hitCount.sum());
+		result.setMissCount(missCount.sum());
+		result.setEvictionCount(evictionCount.sum());
+		return result;
+	}
+
+	/**
+	 * @TODO 全部命名缓存的使用情况(同名的多个缓存实例合并统计)
+	 * @return
+	 */
+	public static List<CacheStats> getAllStats() {
+		List<BoundedCache> caches;
+		synchronized (CACHES) {
+			caches = new ArrayList<BoundedCache>(CACHES.keySet());
+		}
+		Map<String, CacheStats> statsMap = new LinkedHashMap<String, CacheStats>();
+		CacheStats stats;
+		CacheStats total;
+		for (BoundedCache cache : caches) {
+			stats = cache.getStats();
+			total = statsMap.putIfAbsent(stats.getName(), stats);
+			if (total != null) {
+				total.setSize(total.getSize() + stats.getSize());
+				total.setMaxSize(total.getMaxSize() + stats.getMaxSize());
+				total.setWeight(total.getWeight() + stats.getWeight());
+				total.setMaxWeight((total.getMaxWeight() < 0 || stats.getMaxWeight() < 0) ? -1
+						: total.getMaxWeight() + stats.getMaxWeight());
+				total.setHitCount(total.getHitCount() + stats.getHitCount());
+				total.setMissCount(total.getMissCount() + stats.getMissCount());
+				total.setEvictionCount(total.getEvictionCount() + stats.getEvictionCount());
+			}
+		}
+		return new ArrayList<CacheStats>(statsMap.values());
+	}
+
+	private Segment<K, V> segmentFor(K key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[hash & (segments.length - 1)];
+	}
+
+	private static class Entry<V> {
+		private final V value;
+
+		private final int weight;
+
+		Entry(V value, int weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * 单个分段:data提供无锁读取;试用区和保护区按访问顺序排列,在锁内维护,保护区占分段容量的80%
+	 */
+	private static class Segment<K, V> {
+		private final ConcurrentHashMap<K, Entry<V>> data = new ConcurrentHashMap<K, Entry<V>>();
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+
+		private final LinkedHashMap<K, Entry<V>> protect = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+
+		private volatile long weight = 0;
+
+		private int protectSize = 0;
+
+		V get(K key) {
+			Entry<V> entry = data.get(key);
+			if (entry == null) {
+				return null;
+			}
+			// 其他线程正在修改或调整顺序时不等待,只是本次访问不计入访问顺序
+			if (lock.tryLock()) {
+				try {
+					recordAccess(key, entry);
+				} finally {
+					lock.unlock();
+				}
+			}
+			return entry.value;
+		}
+
+		/**
+		 * @TODO 调整访问顺序,再次命中晋升到保护区,保护区溢出的降级回试用区
+		 * @param key
+		 * @param entry
+		 */
+		private void recordAccess(K key, Entry<V> entry) {
+			if (protect.get(key) != null) {
+				return;
+			}
+			// 读取后已被淘汰或替换
+			if (probation.get(key) != entry) {
+				return;
+			}
+			probation.remove(key);
+			protect.put(key, entry);
+			Iterator<Map.Entry<K, Entry<V>>> iter;
+			Map.Entry<K, Entry<V>> eldest;
+			while (protect.size() > protectSize) {
+				iter = protect.entrySet().iterator();
+				eldest = iter.next();
+				iter.remove();
+				probation.put(eldest.getKey(), eldest.getValue());
+			}
+		}
+
+		int put(K key, V value, int entryWeight, int maxSize, long maxWeight) {
+			lock.lock();
+			try {
+				protectSize = maxSize * 4 / 5;
+				Entry<V> old = protect.remove(key);
+				if (old == null) {
+					old = probation.remove(key);
+				}
+				long currentWeight = weight;
+				if (old != null) {
+					currentWeight -= old.weight;
+				}
+				// 单条超过上限的不缓存
+				if (entryWeight > maxWeight) {
+					if (old != null) {
+						data.remove(key);
+					}
+					weight = currentWeight;
+					return 0;
+				}
+				Entry<V> entry = new Entry<V>(value, entryWeight);
+				// 已存在的记录更新视为再次命中
+				if (old != null) {
+					protect.put(key, entry);
+				} else {
+					probation.put(key, entry);
+				}
+				data.put(key, entry);
+				currentWeight += entryWeight;
+				int evicted = 0;
+				Iterator<Map.Entry<K, Entry<V>>> iter;
+				Map.Entry<K, Entry<V>> eldest;
+				while (data.size() > maxSize || currentWeight > maxWeight) {
+					// 优先淘汰试用区,试用区只剩当前记录时淘汰保护区
+					if (probation.size() > 1 || (probation.size() == 1 && protect.isEmpty())) {
+						iter = probation.entrySet().iterator();
+					} else {
+						iter = protect.entrySet().iterator();
+					}
+					eldest = iter.next();
+					iter.remove();
+					data.remove(eldest.getKey());
+					currentWeight -= eldest.getValue().weight;
+					evicted++;
+				}
+				weight = currentWeight;
+				// 更新后保护区可能超出容量
+				while (protect.size() > protectSize) {
+					iter = protect.entrySet().iterator();
+					eldest = iter.next();
+					iter.remove();
+					probation.put(eldest.getKey(), eldest.getValue());
+				}
+				return evicted;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		V remove(K key) {
+			lock.lock();
+			try {
+				Entry<V> entry = protect.remove(key);
+				if (entry == null) {
+					entry = probation.remove(key);
+				}
+				if (entry == null) {
+					return null;
+				}
+				data.remove(key);
+				weight -= entry.weight;
+				return entry.value;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void clear() {
+			lock.lock();
+			try {
+				probation.clear();
+				protect.clear();
+				data.clear();
+				weight = 0;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		int size() {
+			return data.size();
+		}
+
+		long getWeight() {
+			return weight;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package org.sagacity.sqltoy.model;
+
+import java.io.Serializable;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 框架内部有界缓存(sql文本、解析计划、反射方法等)的使用情况快照
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-30
+ */
+public class CacheStats implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 4719826351046830271L;
+
+	/**
+	 * 缓存名称
+	 */
+	private String name;
+
+	/**
+	 * 当前缓存的记录数量
+	 */
+	private int size;
+
+	/**
+	 * 最大记录数量
+	 */
+	private int maxSize;
+
+	/**
+	 * 当前权重合计(如sql的字符长度),未设置权重的缓存等于size
+	 */
+	private long weight;
+
+	/**
+	 * 最大权重,-1表示不限制
+	 */
+	private long maxWeight;
+
+	/**
+	 * 命中次数
+	 */
+	private long hitCount;
+
+	/**
+	 * 未命中次数
+	 */
+	private long missCount;
+
+	/**
+	 * 超出上限被淘汰的次数
+	 */
+	private long evictionCount;
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public void setSize(int size) {
+		this.size = size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public long getWeight() {
+		return weight;
+	}
+
+	public void setWeight(long weight) {
+		this.weight = weight;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public void setMaxWeight(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public void setHitCount(long hitCount) {
+		this.hitCount = hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public void setMissCount(long missCount) {
+		this.missCount = missCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public void setEvictionCount(long evictionCount) {
+		this.evictionCount = evictionCount;
+	}
+
+	/**
+	 * @TODO 命中率
+	 * @return
+	 */
+	public double getHitRate() {
+		long total = hitCount + missCount;
+		return (total == 0) ? 0 : hitCount / (double) total;
+	}
+}
@@ -0,0 +1,108 @@
+package org.sagacity.sqltoy.model;
+
+import java.io.Serializable;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 数据源对应的数据库信息(一个DataSource只获取一次,避免每次操作通过connection.getMetaData()判断)
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-25
+ * @modify {Date:2024-06-01,批量执行支持信息提供给DialectFactory判断是否采用jdbc批处理}
+ */
+public class DataSourceMeta implements Serializable {
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -2871407336215468291L;
+
+	/**
+	 * 数据库类型(DataSourceUtils.DBType)
+	 */
+	private int dbType;
+
+	/**
+	 * 数据库方言
+	 */
+	private String dialect;
+
+	/**
+	 * 数据库产品名称
+	 */
+	private String productName;
+
+	/**
+	 * 数据库主版本,-1表示不确定
+	 */
+	private int majorVersion = -1;
+
+	/**
+	 * 数据库字段名称的引号,如mysql为`
+	 */
+	private String identifierQuote;
+
+	/**
+	 * 是否支持批量执行
+	 */
+	private boolean supportBatch = true;
+
+	/**
+	 * 是否支持merge into 或 on conflict 等saveOrUpdate语法
+	 */
+	private boolean supportMerge = false;
+
+	public int getDbType() {
+		return dbType;
+	}
+
+	public void setDbType(int dbType) {
+		this.dbType = dbType;
+	}
+
+	public String getDialect() {
+		return dialect;
+	}
+
+	public void setDialect(String dialect) {
+		this.dialect = dialect;
+	}
+
+	public String getProductName() {
+		return productName;
+	}
+
+	public void setProductName(String productName) {
+		this.productName = productName;
+	}
+
+	public int getMajorVersion() {
+		return majorVersion;
+	}
+
+	public void setMajorVersion(int majorVersion) {
+		this.majorVersion = majorVersion;
+	}
+
+	public String getIdentifierQuote() {
+		return identifierQuote;
+	}
+
+	public void setIdentifierQuote(String identifierQuote) {
+		this.identifierQuote = identifierQuote;
+	}
+
+	public boolean isSupportBatch() {
+		return supportBatch;
+	}
+
+	public void setSupportBatch(boolean supportBatch) {
+		this.supportBatch = supportBatch;
+	}
+
+	public boolean isSupportMerge() {
+		return supportMerge;
+	}
+
+	public void setSupportMerge(boolean supportMerge) {
+		this.supportMerge = supportMerge;
+	}
+}
@@ -0,0 +1,122 @@
+package org.sagacity.sqltoy.model;
+
+import java.io.Serializable;
+
+/**
+ * @project sagacity-sqltoy
+ * @description http连接池使用情况快照,耗时单位为毫秒
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-16
+ */
+public class HttpPoolStats implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -3325318829420733612L;
+
+	/**
+	 * 连接池名称
+	 */
+	private String name;
+
+	/**
+	 * 正在使用的连接数
+	 */
+	private int leased;
+
+	/**
+	 * 等待获取连接的请求数
+	 */
+	private int pending;
+
+	/**
+	 * 空闲可用的连接数
+	 */
+	private int available;
+
+	/**
+	 * 最大连接数
+	 */
+	private int max;
+
+	/**
+	 * 累计获取连接次数
+	 */
+	private long leaseCount;
+
+	/**
+	 * 平均获取连接等待时长
+	 */
+	private double aveLeaseWaitTime;
+
+	/**
+	 * 最大获取连接等待时长
+	 */
+	private double maxLeaseWaitTime;
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public int getLeased() {
+		return leased;
+	}
+
+	public void setLeased(int leased) {
+		this.leased = leased;
+	}
+
+	public int getPending() {
+		return pending;
+	}
+
+	public void setPending(int pending) {
+		this.pending = pending;
+	}
+
+	public int getAvailable() {
+		return available;
+	}
+
+	public void setAvailable(int available) {
+		this.available = available;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public void setMax(int max) {
+		this.max = max;
+	}
+
+	public long getLeaseCount() {
+		return leaseCount;
+	}
+
+	public void setLeaseCount(long leaseCount) {
+		this.leaseCount = leaseCount;
+	}
+
+	public double getAveLeaseWaitTime() {
+		return aveLeaseWaitTime;
+	}
+
+	public void setAveLeaseWaitTime(double aveLeaseWaitTime) {
+		this.aveLeaseWaitTime = aveLeaseWaitTime;
+	}
+
+	public double getMaxLeaseWaitTime() {
+		return maxLeaseWaitTime;
+	}
+
+	public void setMaxLeaseWaitTime(double maxLeaseWaitTime) {
+		this.maxLeaseWaitTime = maxLeaseWaitTime;
+	}
+
+}
@@ -11,6 +11,7 @@ import org.sagacity.sqltoy.SqlToyConstants;
  * @description 分页数据模型
  * @author zhongxuchen
  * @version v1.0,Date:2011-2-25
+ * @modify Date:2024-05-06 {增加keyset(seek)分页:指定排序键和上一页最后记录的键值,跳过count查询,返回下一页游标}
  */
 public class Page<T> implements Serializable {
 	private static final long serialVersionUID = -7117473828519846708L;
@@ -50,6 +51,26 @@ public class Page<T> implements Serializable {
 	 */
 	private Boolean overPageToFirst;
 
+	/**
+	 * keyset分页的排序键(查询结果的列名称,可单独指定方向如:create_time desc),设置后以 where (k1,k2) > (?,?) order by k1,k2 形式分页
+	 */
+	private String[] keysetColumns;
+
+	/**
+	 * keyset分页未单独指定方向的排序键是否降序
+	 */
+	private Boolean keysetDesc = false;
+
+	/**
+	 * 上一页最后一条记录的排序键值(为null表示第一页)
+	 */
+	private Object[] keysetValues;
+
+	/**
+	 * 分页结果中下一页的游标(当前页最后一条记录的排序键值,为null表示已经到末尾)
+	 */
+	private Object[] nextKeysetValues;
+
 	public Page() {
 
 	}
@@ -227,4 +248,45 @@ public class Page<T> implements Serializable {
 		return overPageToFirst;
 	}
 
+	public String[] getKeysetColumns() {
+		return keysetColumns;
+	}
+
+	/**
+	 * @TODO 设置keyset分页的排序键,按排序键和上一页的游标进行分页,不查询总记录数
+	 * @param keysetColumns
+	 * @return
+	 */
+	public Page keyset(String... keysetColumns) {
+		this.keysetColumns = keysetColumns;
+		return this;
+	}
+
+	public Boolean getKeysetDesc() {
+		return keysetDesc;
+	}
+
+	public Page setKeysetDesc(Boolean keysetDesc) {
+		this.keysetDesc = keysetDesc;
+		return this;
+	}
+
+	public Object[] getKeysetValues() {
+		return keysetValues;
+	}
+
+	public Page setKeysetValues(Object... keysetValues) {
+		this.keysetValues = keysetValues;
+		return this;
+	}
+
+	public Object[] getNextKeysetValues() {
+		return nextKeysetValues;
+	}
+
+	public Page setNextKeysetValues(Object[] nextKeysetValues) {
+		this.nextKeysetValues = nextKeysetValues;
+		return this;
+	}
+
 }
@@ -241,6 +241,18 @@ public class QueryExecutor implements Serializable {
 		return this;
 	}
 
+	/**
+	 * @TODO 向分库策略的全部分库发起查询并合并结果(适用于没有分库条件的统计、报表查询)
+	 *       <li>findByQuery、findPage、findTop、getCount 有效</li>
+	 *       <li>按sql最外层order by 对各分库结果归并排序,分页时各分库取前pageNo*pageSize条</li>
+	 * @param shardingScatter
+	 * @return
+	 */
+	public QueryExecutor shardingScatter(boolean shardingScatter) {
+		innerModel.shardingScatter = shardingScatter;
+		return this;
+	}
+
 	/**
 	 * @TODO 设置分表策略,再复杂场景则推荐用xml的sql中定义
 	 * @param strategy
@@ -268,6 +280,16 @@ public class QueryExecutor implements Serializable {
 		return this;
 	}
 
+	/**
+	 * @TODO 拉取式流查询(stream)由后台线程预读的最大记录数量,0表示不预读
+	 * @param prefetchSize
+	 * @return
+	 */
+	public QueryExecutor prefetch(int prefetchSize) {
+		innerModel.prefetchSize = prefetchSize;
+		return this;
+	}
+
 	/**
 	 * @TODO 设置最大提取记录数量(一般不用设置)
 	 * @param maxRows
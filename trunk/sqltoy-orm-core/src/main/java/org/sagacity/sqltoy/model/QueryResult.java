@@ -35,6 +35,11 @@ public class QueryResult<T> extends DataSetResult<T> implements Serializable {
 	 */
 	private Boolean skipQueryCount = false;
 
+	/**
+	 * keyset分页下一页的游标
+	 */
+	private Object[] nextKeysetValues;
+
 	/**
 	 * @return the pageNo
 	 */
@@ -71,6 +76,14 @@ public class QueryResult<T> extends DataSetResult<T> implements Serializable {
 		this.skipQueryCount = skipQueryCount;
 	}
 
+	public Object[] getNextKeysetValues() {
+		return nextKeysetValues;
+	}
+
+	public void setNextKeysetValues(Object[] nextKeysetValues) {
+		this.nextKeysetValues = nextKeysetValues;
+	}
+
 	/**
 	 * @todo 获取分页结果模型
 	 * @return
@@ -90,6 +103,7 @@ public class QueryResult<T> extends DataSetResult<T> implements Serializable {
 		if (skipQueryCount != null) {
 			result.setSkipQueryCount(skipQueryCount);
 		}
+		result.setNextKeysetValues(nextKeysetValues);
 		return result;
 	}
 
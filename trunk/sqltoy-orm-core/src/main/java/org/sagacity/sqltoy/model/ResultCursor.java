@@ -0,0 +1,266 @@
+package org.sagacity.sqltoy.model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.exception.DataAccessException;
+import org.sagacity.sqltoy.plugins.stats.SqlStatsCollector;
+import org.sagacity.sqltoy.utils.ResultUtils.StreamRowMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 基于数据库游标(forward-only)的拉取式查询结果,调用方按需逐行获取,可组合成Stream进行limit、分批写入等处理
+ *              <li>持有数据库连接直到读取完成或close,必须在try-with-resources中使用或关闭Stream</li>
+ *              <li>prefetchSize>0 时由后台线程预读,队列满则暂停读取(背压),预读行数不超过prefetchSize</li>
+ *              <li>缓存翻译、解密、脱敏、格式化和resultType映射与fetchStream一致</li>
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-20
+ * @modify {Date:2024-06-01,关闭游标时向sql执行统计补充登记获取的记录数量}
+ */
+public class ResultCursor<T> implements Iterator<T>, AutoCloseable {
+	/**
+	 * 定义日志
+	 */
+	protected final static Logger logger = LoggerFactory.getLogger(ResultCursor.class);
+
+	/**
+	 * 数据读取结束标记
+	 */
+	private final static Object END = new Object();
+
+	private final static AtomicInteger readerIndex = new AtomicInteger(0);
+
+	private final SqlToyContext sqlToyContext;
+
+	private final DataSource dataSource;
+
+	private Connection conn;
+
+	private PreparedStatement pst;
+
+	private ResultSet rs;
+
+	private final StreamRowMapper rowMapper;
+
+	/**
+	 * 预读队列
+	 */
+	private BlockingQueue<Object> queue;
+
+	private Thread reader;
+
+	private volatile Throwable readerError;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * 下一行数据(已从游标取出,尚未交给调用方)
+	 */
+	private Object nextRow;
+
+	private int rowCount = 0;
+
+	/**
+	 * sql执行统计的sqlId(游标关闭时补充登记获取的记录数量)
+	 */
+	private String sqlId;
+
+	public ResultCursor(SqlToyContext sqlToyContext, DataSource dataSource, Connection conn, PreparedStatement pst,
+			ResultSet rs, StreamRowMapper rowMapper, int prefetchSize) {
+		this(sqlToyContext, dataSource, conn, pst, rs, rowMapper, prefetchSize, null);
+	}
+
+	public ResultCursor(SqlToyContext sqlToyContext, DataSource dataSource, Connection conn, PreparedStatement pst,
+			ResultSet rs, StreamRowMapper rowMapper, int prefetchSize, String sqlId) {
+		this.sqlId = sqlId;
+		this.sqlToyContext = sqlToyContext;
+		this.dataSource = dataSource;
+		this.conn = conn;
+		this.pst = pst;
+		this.rs = rs;
+		this.rowMapper = rowMapper;
+		if (prefetchSize > 0) {
+			queue = new ArrayBlockingQueue<Object>(prefetchSize);
+			reader = new Thread(this::prefetch, "sqltoy-stream-reader-" + readerIndex.incrementAndGet());
+			reader.setDaemon(true);
+			reader.start();
+		}
+	}
+
+	/**
+	 * @TODO 查询结果列标题
+	 * @return
+	 */
+	public String[] getLabelNames() {
+		return rowMapper.getLabelNames();
+	}
+
+	/**
+	 * @TODO 已经获取的记录数量
+	 * @return
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextRow == null) {
+			if (closed) {
+				return false;
+			}
+			nextRow = (queue == null) ? fetchRow() : takeRow();
+		}
+		if (nextRow == END) {
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object row = nextRow;
+		nextRow = null;
+		rowCount++;
+		return (T) row;
+	}
+
+	/**
+	 * @TODO 转成Stream,Stream关闭时释放数据库连接
+	 * @return
+	 */
+	public Stream<T> stream() {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	/**
+	 * @TODO 从游标读取下一条有效记录
+	 * @return 读取完成返回END
+	 */
+	private Object fetchRow() {
+		try {
+			Object row;
+			while (!closed && rs.next()) {
+				row = rowMapper.mapRow(rs);
+				if (row != null) {
+					return row;
+				}
+			}
+			return END;
+		} catch (Exception e) {
+			// 预读线程中由调用方关闭
+			if (queue == null) {
+				close();
+			}
+			throw new DataAccessException("游标读取查询结果失败:" + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @TODO 后台线程预读,队列满时等待调用方消费
+	 */
+	private void prefetch() {
+		Object row;
+		try {
+			do {
+				row = fetchRow();
+				while (!closed && !queue.offer(row, 100, TimeUnit.MILLISECONDS)) {
+				}
+			} while (row != END && !closed);
+		} catch (Throwable e) {
+			readerError = e;
+			// 队列满时等待腾出位置放入结束标记
+			try {
+				while (!closed && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+				}
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private Object takeRow() {
+		Object row;
+		try {
+			row = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new DataAccessException("等待预读查询结果被中断!", e);
+		}
+		if (row == END && readerError != null) {
+			close();
+			Throwable error = readerError;
+			throw (error instanceof DataAccessException) ? (DataAccessException) error
+					: new DataAccessException(error.getMessage(), error);
+		}
+		return row;
+	}
+
+	/**
+	 * 关闭游标并释放数据库连接(可重复调用)
+	 */
+	@Override
+	public void close() {
+		if (closed && conn == null) {
+			return;
+		}
+		closed = true;
+		// 等待预读线程结束,避免与其并发操作ResultSet
+		if (reader != null && reader != Thread.currentThread()) {
+			queue.clear();
+			try {
+				reader.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			queue.clear();
+		}
+		synchronized (this) {
+			if (conn == null) {
+				return;
+			}
+			try {
+				if (rs != null) {
+					rs.close();
+				}
+				if (pst != null) {
+					pst.close();
+				}
+			} catch (Exception e) {
+				logger.warn("关闭查询游标失败:{}", e.getMessage());
+			} finally {
+				rs = null;
+				pst = null;
+				sqlToyContext.releaseConnection(conn, dataSource);
+				conn = null;
+				SqlStatsCollector sqlStatsCollector = sqlToyContext.getSqlStatsCollector();
+				if (sqlStatsCollector != null && sqlId != null) {
+					sqlStatsCollector.addRowCount(sqlId, "stream", rowCount);
+				}
+			}
+		}
+	}
+}
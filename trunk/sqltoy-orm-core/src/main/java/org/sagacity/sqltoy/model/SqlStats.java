@@ -0,0 +1,152 @@
+package org.sagacity.sqltoy.model;
+
+import java.io.Serializable;
+
+/**
+ * @project sagacity-sqltoy
+ * @description sql执行统计快照(按sqlId和执行类型),耗时单位为毫秒
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-08
+ */
+public class SqlStats implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 2903675431268937551L;
+
+	/**
+	 * sqlId(代码中直接写的sql为sql语句本身)
+	 */
+	private String id;
+
+	/**
+	 * 执行类型,如:findPage、save、executeSql
+	 */
+	private String type;
+
+	/**
+	 * 执行次数
+	 */
+	private long executeCount;
+
+	/**
+	 * 发生错误的次数
+	 */
+	private long errorCount;
+
+	/**
+	 * 查询或影响的记录数量合计
+	 */
+	private long rowCount;
+
+	/**
+	 * 平均耗时
+	 */
+	private double aveTakeTime;
+
+	/**
+	 * 最大耗时
+	 */
+	private double maxTakeTime;
+
+	private double p50;
+
+	private double p99;
+
+	private double p999;
+
+	/**
+	 * 平均获取数据库连接的等待时长
+	 */
+	private double aveConnectionWaitTime;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public long getExecuteCount() {
+		return executeCount;
+	}
+
+	public void setExecuteCount(long executeCount) {
+		this.executeCount = executeCount;
+	}
+
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	public void setErrorCount(long errorCount) {
+		this.errorCount = errorCount;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public void setRowCount(long rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	public double getAveTakeTime() {
+		return aveTakeTime;
+	}
+
+	public void setAveTakeTime(double aveTakeTime) {
+		this.aveTakeTime = aveTakeTime;
+	}
+
+	public double getMaxTakeTime() {
+		return maxTakeTime;
+	}
+
+	public void setMaxTakeTime(double maxTakeTime) {
+		this.maxTakeTime = maxTakeTime;
+	}
+
+	public double getP50() {
+		return p50;
+	}
+
+	public void setP50(double p50) {
+		this.p50 = p50;
+	}
+
+	public double getP99() {
+		return p99;
+	}
+
+	public void setP99(double p99) {
+		this.p99 = p99;
+	}
+
+	public double getP999() {
+		return p999;
+	}
+
+	public void setP999(double p999) {
+		this.p999 = p999;
+	}
+
+	public double getAveConnectionWaitTime() {
+		return aveConnectionWaitTime;
+	}
+
+	public void setAveConnectionWaitTime(double aveConnectionWaitTime) {
+		this.aveConnectionWaitTime = aveConnectionWaitTime;
+	}
+
+}
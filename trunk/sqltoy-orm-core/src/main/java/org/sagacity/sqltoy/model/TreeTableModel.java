@@ -10,6 +10,7 @@ import java.io.Serializable;
  * @description 树形表结构模型
  * @author zhongxuchen
  * @version v1.0,Date:2010-9-27
+ * @modify Date:2024-05-29 {增加inMemory、recursive内存计算树形路径模式}
  */
 public class TreeTableModel implements Serializable {
 	/**
@@ -87,6 +88,17 @@ public class TreeTableModel implements Serializable {
 	 */
 	private int idLength = -1;
 
+	/**
+	 * 一次读取全部id、pid在内存中计算节点层级、路径、是否叶子节点,再批量回写(避免逐层查询)
+	 */
+	private boolean inMemory = false;
+
+	/**
+	 * 内存计算时,数据库支持递归查询(with recursive)则只读取pidValue(或idValue)下的子树
+	 * (递归深度限制为500层,超出或pid数据存在环路时改为读取全表计算)
+	 */
+	private boolean recursive = false;
+
 	public TreeTableModel() {
 
 	}
@@ -176,6 +188,16 @@ public class TreeTableModel implements Serializable {
 		return this;
 	}
 
+	public TreeTableModel inMemory(boolean inMemory) {
+		this.inMemory = inMemory;
+		return this;
+	}
+
+	public TreeTableModel recursive(boolean recursive) {
+		this.recursive = recursive;
+		return this;
+	}
+
 	/**
 	 * @return the tableName
 	 */
@@ -288,6 +310,14 @@ public class TreeTableModel implements Serializable {
 		return this;
 	}
 
+	public boolean isInMemory() {
+		return inMemory;
+	}
+
+	public boolean isRecursive() {
+		return recursive;
+	}
+
 	/**
 	 * @return the splitSign
 	 */
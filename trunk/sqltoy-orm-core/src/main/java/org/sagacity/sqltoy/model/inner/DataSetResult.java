@@ -55,6 +55,11 @@ public class DataSetResult<T> implements Serializable {
 	 */
 	private String message;
 
+	/**
+	 * rows是否已在结果集遍历时直接映射成了resultType对象(无需再做计算和对象封装)
+	 */
+	private boolean mappedResult = false;
+
 	/**
 	 * @return the labelNames
 	 */
@@ -228,4 +233,18 @@ public class DataSetResult<T> implements Serializable {
 	public void setMessage(String message) {
 		this.message = message;
 	}
+
+	/**
+	 * @return the mappedResult
+	 */
+	public boolean isMappedResult() {
+		return mappedResult;
+	}
+
+	/**
+	 * @param mappedResult the mappedResult to set
+	 */
+	public void setMappedResult(boolean mappedResult) {
+		this.mappedResult = mappedResult;
+	}
 }
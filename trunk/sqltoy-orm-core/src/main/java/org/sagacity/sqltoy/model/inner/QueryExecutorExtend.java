@@ -66,6 +66,11 @@ public class QueryExecutorExtend implements Serializable {
 	 */
 	public int fetchSize = -1;
 
+	/**
+	 * 拉取式流查询后台预读的记录数量,0表示不预读(由调用线程直接读取游标)
+	 */
+	public int prefetchSize = 0;
+
 	/**
 	 * jdbc查询最大返回记录数量
 	 */
@@ -171,6 +176,11 @@ public class QueryExecutorExtend implements Serializable {
 	// 分库策略配置
 	public ShardingStrategyConfig dbSharding;
 
+	/**
+	 * 没有分库条件时向全部分库查询并合并结果(scatter-gather)
+	 */
+	public boolean shardingScatter = false;
+
 	/**
 	 * 执行时是否输出sql 日志
 	 */
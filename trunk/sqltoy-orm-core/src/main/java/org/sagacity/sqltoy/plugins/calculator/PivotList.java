@@ -0,0 +1,263 @@
+package org.sagacity.sqltoy.plugins.calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.sagacity.sqltoy.SqlToyConstants;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 基于hash分组的数据旋转(行转列),数据无需按分组列预先排序
+ *              <li>分组列值 对应 输出行,旋转参照值 对应 旋转列位置,一次遍历完成</li>
+ *              <li>值比较规则与BeanUtil.equalsIgnoreType一致(按字符串比较,null视为"null")</li>
+ *              <li>记录数超过sqltoy.pivot.parallel.threshold时分段并行分组再按顺序合并</li>
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-22
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class PivotList {
+	/**
+	 * 旋转单元格未被赋值的标记,最终替换为默认值
+	 */
+	private final static Object UNSET = new Object();
+
+	/**
+	 * 多列组合key的分隔符
+	 */
+	private final static char KEY_SPLIT = '\u0001';
+
+	/**
+	 * @TODO 集合进行数据旋转
+	 * @param data
+	 * @param categorys       旋转参照数据(单维或多维)
+	 * @param categoryCol     多维参照数据对应的行,为null则依次对应categCompareCol
+	 * @param pkColumns       分组主键列
+	 * @param categCompareCol 数据中的旋转参照列
+	 * @param startCol        旋转数据开始列
+	 * @param endCol          旋转数据截止列
+	 * @param defaultValue
+	 * @return
+	 */
+	public static List process(List data, List categorys, Integer[] categoryCol, Integer[] pkColumns,
+			Integer[] categCompareCol, int startCol, int endCol, Object defaultValue) {
+		return process(data, categorys, categoryCol, pkColumns, categCompareCol, startCol, endCol, defaultValue,
+				SqlToyConstants.getPivotParallelThreshold());
+	}
+
+	/**
+	 * @TODO 集合进行数据旋转
+	 * @param data
+	 * @param categorys
+	 * @param categoryCol
+	 * @param pkColumns
+	 * @param categCompareCol
+	 * @param startCol
+	 * @param endCol
+	 * @param defaultValue
+	 * @param parallelThreshold 超过此记录数则分段并行分组,<=0 不并行
+	 * @return
+	 */
+	public static List process(List data, List categorys, Integer[] categoryCol, Integer[] pkColumns,
+			Integer[] categCompareCol, int startCol, int endCol, Object defaultValue, int parallelThreshold) {
+		if (data == null || data.isEmpty()) {
+			return data;
+		}
+		Integer[] categCol;
+		if (categoryCol == null) {
+			categCol = new Integer[categCompareCol.length];
+			for (int i = 0; i < categCompareCol.length; i++) {
+				categCol[i] = i;
+			}
+		} else {
+			categCol = categoryCol;
+		}
+		boolean isTwoDimensionCategory = (categorys.get(0) instanceof Collection
+				|| categorys.get(0).getClass().isArray());
+		// 多维旋转参照数据行数跟参照列的数量要一致
+		if (isTwoDimensionCategory
+				&& (categCompareCol.length > categorys.size() || categCompareCol.length != categCol.length)) {
+			throw new IllegalArgumentException("多维旋转参照数据行数跟参照列的数量要一致,categCol.length == categCompareCol.length!");
+		}
+		int dataWidth = ((List) data.get(0)).size();
+		int cateItemSize = isTwoDimensionCategory ? ((Collection) categorys.get(0)).size() : categorys.size();
+		int rotateWith = endCol - startCol + 1;
+		// 保留的非旋转列
+		List<Integer> fixedColList = new ArrayList<Integer>();
+		boolean isRotaCol;
+		for (int k = 0; k < dataWidth; k++) {
+			isRotaCol = (k >= startCol && k <= endCol);
+			for (int m = 0; !isRotaCol && m < categCompareCol.length; m++) {
+				if (k == categCompareCol[m]) {
+					isRotaCol = true;
+				}
+			}
+			if (!isRotaCol) {
+				fixedColList.add(k);
+			}
+		}
+		int[] fixedCols = fixedColList.stream().mapToInt(Integer::intValue).toArray();
+		// 旋转参照值 对应 旋转位置(参照值重复时对应多个位置)
+		Map<String, int[]> categoryIndexMap = new HashMap<String, int[]>();
+		Object[] categoryValues = new Object[categCompareCol.length];
+		for (int j = 0; j < cateItemSize; j++) {
+			for (int k = 0; k < categCompareCol.length; k++) {
+				categoryValues[k] = isTwoDimensionCategory ? ((List) categorys.get(categCol[k])).get(j)
+						: categorys.get(j);
+			}
+			categoryIndexMap.merge(toKey(categoryValues), new int[] { j }, (old, add) -> {
+				int[] indexes = Arrays.copyOf(old, old.length + 1);
+				indexes[old.length] = add[0];
+				return indexes;
+			});
+		}
+		PivotMeta meta = new PivotMeta(pkColumns, categCompareCol, fixedCols, startCol, rotateWith,
+				fixedCols.length + cateItemSize * rotateWith, categoryIndexMap);
+		int rowSize = data.size();
+		Map<String, Object[]> groupRows;
+		if (parallelThreshold > 0 && rowSize > parallelThreshold) {
+			int partitions = Math.min(Runtime.getRuntime().availableProcessors(),
+					(rowSize + parallelThreshold - 1) / parallelThreshold);
+			int partSize = (rowSize + partitions - 1) / partitions;
+			// 分段并行分组,按分段顺序合并保持分组首次出现的顺序
+			List<Map<String, Object[]>> partRows = IntStream.range(0, partitions).parallel()
+					.mapToObj((part) -> group(data, part * partSize, Math.min(rowSize, (part + 1) * partSize), meta))
+					.collect(Collectors.toList());
+			groupRows = partRows.get(0);
+			for (int i = 1; i < partRows.size(); i++) {
+				merge(groupRows, partRows.get(i), meta);
+			}
+		} else {
+			groupRows = group(data, 0, rowSize, meta);
+		}
+		List result = new ArrayList(groupRows.size());
+		for (Object[] rowData : groupRows.values()) {
+			for (int i = fixedCols.length; i < rowData.length; i++) {
+				if (rowData[i] == UNSET) {
+					rowData[i] = defaultValue;
+				}
+			}
+			result.add(new ArrayList(Arrays.asList(rowData)));
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 对[start,end)区间的数据进行分组旋转
+	 * @param data
+	 * @param start
+	 * @param end
+	 * @param meta
+	 * @return
+	 */
+	private static Map<String, Object[]> group(List data, int start, int end, PivotMeta meta) {
+		Map<String, Object[]> groupRows = new LinkedHashMap<String, Object[]>();
+		Object[] pkValues = new Object[meta.pkColumns.length];
+		Object[] categoryValues = new Object[meta.categCompareCol.length];
+		List rowList;
+		Object[] rowData;
+		int[] categoryIndexes;
+		int offset;
+		for (int i = start; i < end; i++) {
+			rowList = (List) data.get(i);
+			for (int k = 0; k < pkValues.length; k++) {
+				pkValues[k] = rowList.get(meta.pkColumns[k]);
+			}
+			String pkKey = toKey(pkValues);
+			rowData = groupRows.get(pkKey);
+			// 不同指标，构建新的行数据
+			if (rowData == null) {
+				rowData = new Object[meta.rowWidth];
+				for (int k = 0; k < meta.fixedCols.length; k++) {
+					rowData[k] = rowList.get(meta.fixedCols[k]);
+				}
+				Arrays.fill(rowData, meta.fixedCols.length, meta.rowWidth, UNSET);
+				groupRows.put(pkKey, rowData);
+			}
+			for (int k = 0; k < categoryValues.length; k++) {
+				categoryValues[k] = rowList.get(meta.categCompareCol[k]);
+			}
+			categoryIndexes = meta.categoryIndexMap.get(toKey(categoryValues));
+			if (categoryIndexes != null) {
+				for (int j : categoryIndexes) {
+					offset = meta.fixedCols.length + j * meta.rotateWith;
+					for (int t = 0; t < meta.rotateWith; t++) {
+						rowData[offset + t] = rowList.get(meta.startCol + t);
+					}
+				}
+			}
+		}
+		return groupRows;
+	}
+
+	/**
+	 * @TODO 将后一分段的分组结果合并到前面,后出现的旋转值覆盖先出现的(与顺序处理一致)
+	 * @param target
+	 * @param source
+	 * @param meta
+	 */
+	private static void merge(Map<String, Object[]> target, Map<String, Object[]> source, PivotMeta meta) {
+		Object[] targetRow;
+		Object[] sourceRow;
+		for (Map.Entry<String, Object[]> entry : source.entrySet()) {
+			sourceRow = entry.getValue();
+			targetRow = target.putIfAbsent(entry.getKey(), sourceRow);
+			if (targetRow != null) {
+				for (int i = meta.fixedCols.length; i < sourceRow.length; i++) {
+					if (sourceRow[i] != UNSET) {
+						targetRow[i] = sourceRow[i];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @TODO 组合key,按字符串比较与BeanUtil.equalsIgnoreType保持一致
+	 * @param values
+	 * @return
+	 */
+	private static String toKey(Object[] values) {
+		if (values.length == 1) {
+			return (values[0] == null) ? "null" : values[0].toString();
+		}
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				key.append(KEY_SPLIT);
+			}
+			key.append((values[i] == null) ? "null" : values[i].toString());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * 旋转过程中不变的列位置信息
+	 */
+	private static class PivotMeta {
+		final Integer[] pkColumns;
+		final Integer[] categCompareCol;
+		final int[] fixedCols;
+		final int startCol;
+		final int rotateWith;
+		final int rowWidth;
+		final Map<String, int[]> categoryIndexMap;
+
+		PivotMeta(Integer[] pkColumns, Integer[] categCompareCol, int[] fixedCols, int startCol, int rotateWith,
+				int rowWidth, Map<String, int[]> categoryIndexMap) {
+			this.pkColumns = pkColumns;
+			this.categCompareCol = categCompareCol;
+			this.fixedCols = fixedCols;
+			this.startCol = startCol;
+			this.rotateWith = rotateWith;
+			this.rowWidth = rowWidth;
+			this.categoryIndexMap = categoryIndexMap;
+		}
+	}
+}
@@ -5,8 +5,11 @@ package org.sagacity.sqltoy.plugins.calculator;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.sagacity.sqltoy.config.model.LabelIndexModel;
@@ -15,6 +18,8 @@ import org.sagacity.sqltoy.plugins.utils.CalculateUtils;
 import org.sagacity.sqltoy.utils.CollectionUtil;
 import org.sagacity.sqltoy.utils.MacroIfLogic;
 import org.sagacity.sqltoy.utils.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @project sagacity-sqltoy
@@ -23,9 +28,15 @@ import org.sagacity.sqltoy.utils.StringUtil;
  * @version v1.0, Date:2022年10月28日
  * @modify 2022年10月28日,修改说明
  * @modify 2023年7月23日 增加level-order-column属性，支持同层级内数据排序
+ * @modify 2024年5月21日 排序和汇总改为基于父子索引的线性算法,循环引用的数据放在最后不再丢失
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class TreeDataSort {
+	/**
+	 * 定义日志
+	 */
+	protected final static Logger logger = LoggerFactory.getLogger(TreeDataSort.class);
+
 	public static void process(TreeSortModel treeTableSortModel, LabelIndexModel labelIndexMap, List treeList) {
 		if (treeList == null || treeList.isEmpty()) {
 			return;
@@ -39,8 +50,11 @@ public class TreeDataSort {
 		// 汇总列
 		List<Integer> sumColList = CalculateUtils.parseColumns(labelIndexMap, treeTableSortModel.getSumColumns(),
 				dataWidth);
-		// 组织树形结构
-		sortTree(treeList, idColIndex, pidColIndex);
+		boolean levelOrder = StringUtil.isNotBlank(treeTableSortModel.getLevelOrderColumn());
+		// 组织树形结构(有层级内排序且无需汇总时直接按层级排序组织)
+		if (!sumColList.isEmpty() || !levelOrder) {
+			sortTree(treeList, idColIndex, pidColIndex, null);
+		}
 		// 树结构从底层往上级汇总
 		if (!sumColList.isEmpty()) {
 			Integer[] sumIndexes = new Integer[sumColList.size()];
@@ -48,7 +62,7 @@ public class TreeDataSort {
 			summaryTreeList(treeTableSortModel, labelIndexMap, treeList, sumIndexes, idColIndex, pidColIndex);
 		}
 		// 对每层的数据进行排序
-		if (StringUtil.isNotBlank(treeTableSortModel.getLevelOrderColumn())) {
+		if (levelOrder) {
 			Integer sortColIndex = labelIndexMap.get(treeTableSortModel.getLevelOrderColumn());
 			if (sortColIndex == null) {
 				throw new RuntimeException("对树形结构每层级内部进行排序，未正确指定层级排序依据的列:levelOrderColumn="
@@ -56,56 +70,33 @@ public class TreeDataSort {
 			}
 			int dataType = CollectionUtil.getSortDataType(treeList, sortColIndex);
 			boolean desc = treeTableSortModel.getOrderWay().equalsIgnoreCase("desc") ? true : false;
-			// 整个集合按某列的值进行排序
-			CollectionUtil.sortList(treeList, sortColIndex, dataType, 0, treeList.size() - 1, !desc);
-			// 再重新进行树节点组织
-			sortTree(treeList, idColIndex, pidColIndex);
+			// 组织树节点时同一父节点下的节点按某列的值进行排序
+			sortTree(treeList, idColIndex, pidColIndex,
+					CollectionUtil.getListComparator(sortColIndex, dataType, !desc));
 		}
 	}
 
 	/**
-	 * @TODO 按照树的父子关系组织顺序
+	 * @TODO 按照树的父子关系组织顺序(建立父子索引后深度优先输出,O(n))
 	 * @param treeList
 	 * @param idColIndex
 	 * @param pidColIndex
+	 * @param siblingComparator 同层级排序,为null保持原顺序
 	 */
-	private static void sortTree(List treeList, Integer idColIndex, Integer pidColIndex) {
-		// 获取根节点值
-		Set topPids = getTopPids(treeList, idColIndex, pidColIndex);
-		List result = new ArrayList();
-		List row;
-		// 提取第一层树节点
-		for (int i = 0; i < treeList.size(); i++) {
-			row = (List) treeList.get(i);
-			if (topPids.contains(row.get(pidColIndex))) {
-				result.add(row);
-				treeList.remove(i);
-				i--;
-			}
-		}
-		int beginIndex = 0;
-		int addCount = 0;
-		Object idValue;
-		Object pidValue;
-		while (treeList.size() != 0) {
-			addCount = 0;
-			// id
-			idValue = ((List) result.get(beginIndex)).get(idColIndex);
-			for (int i = 0; i < treeList.size(); i++) {
-				pidValue = ((List) treeList.get(i)).get(pidColIndex);
-				if (idValue.equals(pidValue)) {
-					result.add(beginIndex + addCount + 1, treeList.get(i));
-					treeList.remove(i);
-					addCount++;
-					i--;
-				}
-			}
-			// 下一个
-			beginIndex++;
-			// 防止因数据不符合规则造成的死循环
-			if (beginIndex + 1 > result.size()) {
-				break;
-			}
+	private static void sortTree(List treeList, Integer idColIndex, Integer pidColIndex,
+			Comparator siblingComparator) {
+		final int idIndex = idColIndex;
+		final int pidIndex = pidColIndex;
+		// 获取根节点值(父节点不在集合中的节点都作为根节点)
+		Set topPids = getTopPids(treeList, idIndex, pidIndex);
+		List unreachedRows = new ArrayList();
+		List result = CollectionUtil.sortTreeByRoots(treeList,
+				(row) -> new Object[] { ((List) row).get(idIndex), ((List) row).get(pidIndex) }, topPids,
+				siblingComparator, unreachedRows);
+		// 存在循环引用的数据无法挂接到根节点下,放在最后避免数据丢失
+		if (!unreachedRows.isEmpty()) {
+			logger.warn("树形结构数据排序发现{}条数据存在父子循环引用,已放在结果最后,请检查数据!", unreachedRows.size());
+			result.addAll(unreachedRows);
 		}
 		treeList.clear();
 		treeList.addAll(result);
@@ -149,7 +140,6 @@ public class TreeDataSort {
 			Integer[] sumIndexes, Integer idColIndex, Integer pidColIndex) {
 		List idRow;
 		Object pid;
-		Object id;
 		List pidRow;
 		Object pidCellValue, idCellValue;
 		boolean hasFilter = false;
@@ -158,51 +148,55 @@ public class TreeDataSort {
 				&& StringUtil.isNotBlank(treeTableSortModel.getCompareType())) {
 			hasFilter = true;
 		}
+		// id对应的行号(树排序后父节点在子节点之前)
+		Map<Object, Integer> idIndexMap = new HashMap<Object, Integer>(treeList.size() * 4 / 3 + 1);
+		for (int i = 0; i < treeList.size(); i++) {
+			idIndexMap.putIfAbsent(((List) treeList.get(i)).get(idColIndex), i);
+		}
+		Integer filterIndex = hasFilter ? labelIndexMap.get(treeTableSortModel.getFilterColumn()) : null;
 		boolean doSum = true;
-		// 从最后一行开始
+		Integer pidIndex;
+		// 从最后一行开始,子节点先于父节点完成汇总
 		Object filterValue;
 		for (int i = treeList.size() - 1; i > 0; i--) {
 			idRow = (List) treeList.get(i);
 			pid = idRow.get(pidColIndex);
 			doSum = true;
 			if (hasFilter) {
-				filterValue = idRow.get(labelIndexMap.get(treeTableSortModel.getFilterColumn()));
+				filterValue = idRow.get(filterIndex);
 				doSum = MacroIfLogic.compare(filterValue, treeTableSortModel.getCompareType(),
 						treeTableSortModel.getCompareValues());
 			}
-			// 上一行开始寻找父节点
 			if (doSum) {
-				for (int j = i - 1; j >= 0; j--) {
-					pidRow = (List) treeList.get(j);
-					id = pidRow.get(idColIndex);
-					if (id.equals(pid)) {
-						// 汇总列
-						for (int sumIndex : sumIndexes) {
-							pidCellValue = pidRow.get(sumIndex);
-							idCellValue = idRow.get(sumIndex);
-							// 父节点汇总列的值为null,将子节点的值转BigDecimal赋上
-							if (pidCellValue == null) {
-								if (idCellValue == null) {
-									pidRow.set(sumIndex, BigDecimal.ZERO);
-								} else {
-									pidRow.set(sumIndex, new BigDecimal(idCellValue.toString().replace(",", "")));
-								}
-							} else if (pidCellValue instanceof BigDecimal) {
-								// 子节点值+ 父节点值
-								if (idCellValue != null) {
-									pidRow.set(sumIndex, ((BigDecimal) pidCellValue)
-											.add(new BigDecimal(idCellValue.toString().replace(",", ""))));
-								}
-							} else if (idCellValue != null) {
-								// 子节点值+ 父节点值
-								pidRow.set(sumIndex, new BigDecimal(pidCellValue.toString().replace(",", ""))
-										.add(new BigDecimal(idCellValue.toString().replace(",", ""))));
+				pidIndex = idIndexMap.get(pid);
+				// 父节点在当前行之前
+				if (pidIndex != null && pidIndex < i) {
+					pidRow = (List) treeList.get(pidIndex);
+					// 汇总列
+					for (int sumIndex : sumIndexes) {
+						pidCellValue = pidRow.get(sumIndex);
+						idCellValue = idRow.get(sumIndex);
+						// 父节点汇总列的值为null,将子节点的值转BigDecimal赋上
+						if (pidCellValue == null) {
+							if (idCellValue == null) {
+								pidRow.set(sumIndex, BigDecimal.ZERO);
 							} else {
-								// 子节点值转BigDecimal
-								pidRow.set(sumIndex, new BigDecimal(pidCellValue.toString().replace(",", "")));
+								pidRow.set(sumIndex, new BigDecimal(idCellValue.toString().replace(",", "")));
+							}
+						} else if (pidCellValue instanceof BigDecimal) {
+							// 子节点值+ 父节点值
+							if (idCellValue != null) {
+								pidRow.set(sumIndex, ((BigDecimal) pidCellValue)
+										.add(new BigDecimal(idCellValue.toString().replace(",", ""))));
 							}
+						} else if (idCellValue != null) {
+							// 子节点值+ 父节点值
+							pidRow.set(sumIndex, new BigDecimal(pidCellValue.toString().replace(",", ""))
+									.add(new BigDecimal(idCellValue.toString().replace(",", ""))));
+						} else {
+							// 子节点值转BigDecimal
+							pidRow.set(sumIndex, new BigDecimal(pidCellValue.toString().replace(",", "")));
 						}
-						break;
 					}
 				}
 			}
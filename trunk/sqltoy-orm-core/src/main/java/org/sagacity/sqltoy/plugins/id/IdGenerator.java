@@ -12,6 +12,7 @@ import org.sagacity.sqltoy.SqlToyContext;
  * @description 定义主键产生器接口,自定义产生器必须实现getId()方法
  * @author zhongxuchen
  * @version v1.0,Date:2012-6-4
+ * @modify Date:2024-05-12 {增加getIds批量获取,便于saveAll等批量场景减少主键生成的交互次数}
  */
 public interface IdGenerator {
 	/**
@@ -28,6 +29,29 @@ public interface IdGenerator {
 	public Object getId(String tableName, String signature, String[] relatedColumns, Object[] relatedColValue,
 			Date bizDate, String idJavaType, int length, int sequencSize);
 
+	/**
+	 * @todo <b>批量返回id(默认逐个调用getId,集中式的生成器可覆盖实现一次性获取)</b>
+	 * @param tableName
+	 * @param signature
+	 * @param relatedColumns
+	 * @param relatedColValue
+	 * @param bizDate
+	 * @param idJavaType
+	 * @param length
+	 * @param sequencSize
+	 * @param count           获取的数量
+	 * @return
+	 */
+	public default Object[] getIds(String tableName, String signature, String[] relatedColumns,
+			Object[] relatedColValue, Date bizDate, String idJavaType, int length, int sequencSize, int count) {
+		Object[] result = new Object[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = getId(tableName, signature, relatedColumns, relatedColValue, bizDate, idJavaType, length,
+					sequencSize);
+		}
+		return result;
+	}
+
 	public default void initialize(SqlToyContext sqlToyContext) throws Exception {
 
 	};
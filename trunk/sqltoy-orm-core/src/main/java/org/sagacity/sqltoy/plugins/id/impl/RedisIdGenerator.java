@@ -4,7 +4,9 @@
 package org.sagacity.sqltoy.plugins.id.impl;
 
 import java.util.Date;
+import java.util.concurrent.Executor;
 
+import org.sagacity.sqltoy.SqlToyConstants;
 import org.sagacity.sqltoy.SqlToyContext;
 import org.sagacity.sqltoy.integration.DistributeIdGenerator;
 import org.sagacity.sqltoy.model.IgnoreKeyCaseMap;
@@ -21,6 +23,7 @@ import org.slf4j.LoggerFactory;
  * @author zhongxuchen
  * @version v1.0,Date:2018年1月30日
  * @modify Date:2019-1-24 {key命名策略改为SQLTOY_GL_ID:tableName:xxx 便于redis检索}
+ * @modify Date:2024-05-12 {支持号段预取(sqltoy.redis.id.segment.size),增加getIds批量获取一次INCRBY}
  */
 public class RedisIdGenerator implements IdGenerator {
 	/**
@@ -33,6 +36,11 @@ public class RedisIdGenerator implements IdGenerator {
 	 */
 	private DistributeIdGenerator distributeIdGenerator;
 
+	/**
+	 * 号段分配器
+	 */
+	private SegmentIdAllocator segmentIdAllocator;
+
 	@Override
 	public void initialize(SqlToyContext sqlToyContext) throws Exception {
 		if (distributeIdGenerator == null) {
@@ -40,6 +48,10 @@ public class RedisIdGenerator implements IdGenerator {
 					.newInstance();
 			distributeIdGenerator.initialize(sqlToyContext.getAppContext());
 		}
+		if (segmentIdAllocator == null) {
+			segmentIdAllocator = new SegmentIdAllocator(distributeIdGenerator, SqlToyConstants.getRedisIdSegmentSize(),
+					sqlToyContext.getTaskExecutor());
+		}
 	}
 
 	/*
@@ -51,6 +63,45 @@ public class RedisIdGenerator implements IdGenerator {
 	@Override
 	public Object getId(String tableName, String signature, String[] relatedColumns, Object[] relatedColValue,
 			Date bizDate, String idJavaType, int length, int sequencSize) {
+		String realKey = getRealKey(tableName, signature, relatedColumns, relatedColValue, bizDate, length,
+				sequencSize);
+		// 结合redis计数取末尾几位顺序数
+		long result = segmentIdAllocator.nextId(getRedisKey(tableName, realKey));
+		return realKey.concat(
+				StringUtil.addLeftZero2Len("" + result, (sequencSize > 0) ? sequencSize : length - realKey.length()));
+	}
+
+	@Override
+	public Object[] getIds(String tableName, String signature, String[] relatedColumns, Object[] relatedColValue,
+			Date bizDate, String idJavaType, int length, int sequencSize, int count) {
+		String realKey = getRealKey(tableName, signature, relatedColumns, relatedColValue, bizDate, length,
+				sequencSize);
+		long[] ids = segmentIdAllocator.nextIds(getRedisKey(tableName, realKey), count);
+		int seqLength = (sequencSize > 0) ? sequencSize : length - realKey.length();
+		Object[] result = new Object[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = realKey.concat(StringUtil.addLeftZero2Len("" + ids[i], seqLength));
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 设置分布式id生成器(便于非spring环境或测试时直接注入)
+	 * @param distributeIdGenerator
+	 * @param segmentSize
+	 * @param executor
+	 */
+	public void setDistributeIdGenerator(DistributeIdGenerator distributeIdGenerator, int segmentSize,
+			Executor executor) {
+		this.distributeIdGenerator = distributeIdGenerator;
+		this.segmentIdAllocator = new SegmentIdAllocator(distributeIdGenerator, segmentSize, executor);
+	}
+
+	/**
+	 * @TODO 组织流水号的前缀
+	 */
+	private String getRealKey(String tableName, String signature, String[] relatedColumns, Object[] relatedColValue,
+			Date bizDate, int length, int sequencSize) {
 		String key = (signature == null ? "" : signature);
 		// 主键生成依赖业务的相关字段值
 		IgnoreKeyCaseMap<String, Object> keyValueMap = new IgnoreKeyCaseMap<String, Object>();
@@ -77,16 +128,16 @@ public class RedisIdGenerator implements IdGenerator {
 		if (!keyValueMap.isEmpty()) {
 			realKey = MacroUtils.replaceParams(realKey, keyValueMap);
 		}
-		// 结合redis计数取末尾几位顺序数
-		Long result;
-		// update 2019-1-24 key命名策略改为SQLTOY_GL_ID:tableName:xxx 便于redis检索
+		return realKey;
+	}
+
+	/**
+	 * update 2019-1-24 key命名策略改为SQLTOY_GL_ID:tableName:xxx 便于redis检索
+	 */
+	private String getRedisKey(String tableName, String realKey) {
 		if (tableName != null) {
-			result = distributeIdGenerator
-					.generateId("".equals(realKey) ? tableName : tableName.concat(":").concat(realKey), 1, null);
-		} else {
-			result = distributeIdGenerator.generateId(realKey, 1, null);
+			return "".equals(realKey) ? tableName : tableName.concat(":").concat(realKey);
 		}
-		return realKey.concat(
-				StringUtil.addLeftZero2Len("" + result, (sequencSize > 0) ? sequencSize : length - realKey.length()));
+		return realKey;
 	}
 }
@@ -0,0 +1,261 @@
+/**
+ *
+ */
+package org.sagacity.sqltoy.plugins.id.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.sagacity.sqltoy.integration.DistributeIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 基于号段的分布式流水号分配:每个key一次INCRBY预留segmentSize个号,本地无锁分配,
+ *              剩余数量低于阀值时在后台预取下一个号段
+ *              <li>segmentSize<=1 时每次直接调用分布式生成器(保持号码连续)</li>
+ *              <li>号段模式下应用重启会丢弃未用完的号,号码存在间隔</li>
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-12
+ */
+public class SegmentIdAllocator {
+	/**
+	 * 定义全局日志
+	 */
+	protected final static Logger logger = LoggerFactory.getLogger(SegmentIdAllocator.class);
+
+	/**
+	 * 最多保留的key数量(key一般含日期,超过后清空重建)
+	 */
+	private static final int MAX_KEYS = 1024;
+
+	private final DistributeIdGenerator distributeIdGenerator;
+
+	private final int segmentSize;
+
+	/**
+	 * 号段剩余数量低于此值时预取下一个号段
+	 */
+	private final int lowWaterMark;
+
+	/**
+	 * 预取号段的执行器(为null则在号段用完时同步获取)
+	 */
+	private final Executor executor;
+
+	private final ConcurrentHashMap<String, SegmentBuffer> buffers = new ConcurrentHashMap<String, SegmentBuffer>();
+
+	/**
+	 * @param distributeIdGenerator
+	 * @param segmentSize           号段大小
+	 * @param executor              后台预取执行器
+	 */
+	public SegmentIdAllocator(DistributeIdGenerator distributeIdGenerator, int segmentSize, Executor executor) {
+		this.distributeIdGenerator = distributeIdGenerator;
+		this.segmentSize = segmentSize;
+		// 剩余20%时预取
+		this.lowWaterMark = Math.max(1, segmentSize / 5);
+		this.executor = executor;
+	}
+
+	/**
+	 * @TODO 获取下一个流水号
+	 * @param key
+	 * @return
+	 */
+	public long nextId(String key) {
+		if (segmentSize <= 1) {
+			return distributeIdGenerator.generateId(key, 1, null);
+		}
+		return getBuffer(key).next();
+	}
+
+	/**
+	 * @TODO 批量获取流水号
+	 * @param key
+	 * @param count
+	 * @return
+	 */
+	public long[] nextIds(String key, int count) {
+		long[] result = new long[count];
+		if (count < 1) {
+			return result;
+		}
+		// 非号段模式,一次INCRBY获取连续的号
+		if (segmentSize <= 1) {
+			fillRange(result, 0, count, distributeIdGenerator.generateId(key, count, null));
+			return result;
+		}
+		return getBuffer(key).next(result);
+	}
+
+	private SegmentBuffer getBuffer(String key) {
+		SegmentBuffer buffer = buffers.get(key);
+		if (buffer == null) {
+			if (buffers.size() >= MAX_KEYS) {
+				buffers.clear();
+			}
+			buffer = buffers.computeIfAbsent(key, (k) -> new SegmentBuffer(k));
+		}
+		return buffer;
+	}
+
+	/**
+	 * @TODO 以max为最大值向前连续填充
+	 * @param result
+	 * @param offset
+	 * @param size
+	 * @param max
+	 */
+	private static void fillRange(long[] result, int offset, int size, long max) {
+		long start = max - size + 1;
+		for (int i = 0; i < size; i++) {
+			result[offset + i] = start + i;
+		}
+	}
+
+	/**
+	 * 已预留的号段[cursor,max]
+	 */
+	private static class Segment {
+		private final long max;
+
+		private final AtomicLong cursor;
+
+		Segment(long min, long max) {
+			this.max = max;
+			this.cursor = new AtomicLong(min);
+		}
+
+		/**
+		 * @TODO 从号段中取最多count个号
+		 * @return 实际取到的数量
+		 */
+		int take(long[] result, int offset, int count) {
+			long value;
+			int size;
+			while (true) {
+				value = cursor.get();
+				if (value > max) {
+					return 0;
+				}
+				size = (int) Math.min(count, max - value + 1);
+				if (cursor.compareAndSet(value, value + size)) {
+					for (int i = 0; i < size; i++) {
+						result[offset + i] = value + i;
+					}
+					return size;
+				}
+			}
+		}
+
+		long remain() {
+			return max - cursor.get() + 1;
+		}
+	}
+
+	/**
+	 * 单个key的当前号段和预取号段
+	 */
+	private class SegmentBuffer {
+		private final String key;
+
+		private volatile Segment current = new Segment(0, -1);
+
+		private final AtomicReference<CompletableFuture<Segment>> prefetch = new AtomicReference<CompletableFuture<Segment>>();
+
+		SegmentBuffer(String key) {
+			this.key = key;
+		}
+
+		long next() {
+			Segment segment;
+			long value;
+			while (true) {
+				segment = current;
+				value = segment.cursor.getAndIncrement();
+				if (value <= segment.max) {
+					if (segment.max - value < lowWaterMark) {
+						prefetch();
+					}
+					return value;
+				}
+				switchSegment(segment);
+			}
+		}
+
+		long[] next(long[] result) {
+			int count = result.length;
+			int filled = 0;
+			Segment segment;
+			int remain;
+			while (filled < count) {
+				segment = current;
+				filled += segment.take(result, filled, count - filled);
+				remain = count - filled;
+				if (remain > 0) {
+					// 剩余数量超过号段大小,直接一次性获取
+					if (remain >= segmentSize) {
+						fillRange(result, filled, remain, distributeIdGenerator.generateId(key, remain, null));
+						filled = count;
+					} else {
+						switchSegment(segment);
+					}
+				}
+			}
+			if (current.remain() < lowWaterMark) {
+				prefetch();
+			}
+			return result;
+		}
+
+		/**
+		 * @TODO 当前号段用完,切换到预取的号段(没有则同步获取)
+		 * @param exhausted
+		 */
+		private synchronized void switchSegment(Segment exhausted) {
+			if (current != exhausted) {
+				return;
+			}
+			CompletableFuture<Segment> future = prefetch.getAndSet(null);
+			Segment segment = null;
+			if (future != null) {
+				try {
+					segment = future.join();
+				} catch (Exception e) {
+					logger.warn("预取主键号段失败,key={},改为同步获取:{}", key, e.getMessage());
+				}
+			}
+			current = (segment == null) ? load() : segment;
+		}
+
+		private void prefetch() {
+			if (executor == null || prefetch.get() != null) {
+				return;
+			}
+			CompletableFuture<Segment> future = new CompletableFuture<Segment>();
+			if (prefetch.compareAndSet(null, future)) {
+				try {
+					executor.execute(() -> {
+						try {
+							future.complete(load());
+						} catch (Throwable e) {
+							future.completeExceptionally(e);
+						}
+					});
+				} catch (Exception e) {
+					future.completeExceptionally(e);
+				}
+			}
+		}
+
+		private Segment load() {
+			long max = distributeIdGenerator.generateId(key, segmentSize, null);
+			return new Segment(max - segmentSize + 1, max);
+		}
+	}
+}
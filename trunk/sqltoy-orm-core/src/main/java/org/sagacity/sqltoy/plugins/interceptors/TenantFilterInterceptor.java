@@ -3,15 +3,20 @@
  */
 package org.sagacity.sqltoy.plugins.interceptors;
 
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.sagacity.sqltoy.SqlToyConstants;
 import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.config.SqlConfigParseUtils;
 import org.sagacity.sqltoy.config.model.EntityMeta;
 import org.sagacity.sqltoy.config.model.OperateType;
 import org.sagacity.sqltoy.config.model.SqlToyConfig;
 import org.sagacity.sqltoy.config.model.SqlToyResult;
+import org.sagacity.sqltoy.model.BoundedCache;
 import org.sagacity.sqltoy.plugins.SqlInterceptor;
 import org.sagacity.sqltoy.utils.ReservedWordsUtil;
-import org.sagacity.sqltoy.utils.SqlUtil;
 import org.sagacity.sqltoy.utils.StringUtil;
 
 /**
@@ -20,8 +25,19 @@ import org.sagacity.sqltoy.utils.StringUtil;
  * @author zhongxuchen
  * @version v1.0, Date:2022年9月21日
  * @modify 2022年9月21日,修改说明
+ * @modify 2024年5月28日,租户条件改为?参数绑定(多租户in列表按2的幂次补齐),条件插入位置按sql缓存,避免不同租户产生不同的sql文本
+ * @modify 2024年6月1日,参数类型跟随租户参数同步插入;参数数量与sql不一致时抛出异常,不再返回未加租户条件的sql
  */
 public class TenantFilterInterceptor implements SqlInterceptor {
+	private final static Pattern WHERE_PATTERN = Pattern.compile("(?i)\\swhere\\s");
+
+	private final static Pattern MERGE_ALIAS_ON_PATTERN = Pattern.compile(SqlToyConstants.MERGE_ALIAS_ON_REGEX);
+
+	/**
+	 * 租户字段+sql 对应 租户条件插入位置(与拦截器实例无关,全局共用一份)
+	 */
+	private final static BoundedCache<String, TenantSplice> splicePlans = new BoundedCache<String, TenantSplice>(
+			"tenantSplicePlan", SqlToyConstants::getMaxTenantSplicePlanCount);
 
 	/**
 	 * @TODO 对最终执行sql和sql参数进行处理
@@ -56,46 +72,73 @@ public class TenantFilterInterceptor implements SqlInterceptor {
 		if (tenants == null || tenants.length == 0) {
 			return sqlToyResult;
 		}
-		String sql = sqlToyResult.getSql();
+		// 所有基于对象操作和查询、更新操作进行租户过滤
+		if (!(operateType.equals(OperateType.load) || operateType.equals(OperateType.loadAll)
+				|| operateType.equals(OperateType.update) || operateType.equals(OperateType.updateAll)
+				|| operateType.equals(OperateType.delete) || operateType.equals(OperateType.deleteAll)
+				|| operateType.equals(OperateType.unique) || operateType.equals(OperateType.saveOrUpdate)
+				|| operateType.equals(OperateType.singleTable))) {
+			return sqlToyResult;
+		}
 		// 保留字处理(实际不会出现保留字用作租户)
 		tenantColumn = ReservedWordsUtil.convertWord(tenantColumn, dbType);
-		int whereIndex = StringUtil.matchIndex(sql, "(?i)\\Wwhere\\W");
-		// sql 在where后面已经有租户条件过滤，无需做处理
-		if (whereIndex > 0
-				&& StringUtil.matches(sql.substring(whereIndex), "(?i)\\W" + tenantColumn + "(\\s*\\=|\\s+in)")) {
+		String sql = sqlToyResult.getSql();
+		String planKey = tenantColumn.concat("\n").concat(sql);
+		TenantSplice splice = splicePlans.get(planKey);
+		if (splice == null) {
+			splice = createSplice(sql, tenantColumn);
+			splicePlans.put(planKey, splice);
+		}
+		// sql已经有租户条件或找不到条件插入位置
+		if (splice.index < 0) {
 			return sqlToyResult;
 		}
-		String where = " where ";
-		String sqlPart = where;
-		if (tenants.length == 1) {
-			sqlPart = sqlPart.concat(tenantColumn).concat("='").concat(tenants[0]).concat("' and ");
+		Object[] paramsValue = sqlToyResult.getParamsValue();
+		int paramsSize = (paramsValue == null) ? 0 : paramsValue.length;
+		boolean isBatch = isBatchParams(paramsValue, splice.paramCnt);
+		// 参数数量跟sql中?数量不一致,无法确定租户参数位置,不能在缺失租户过滤的情况下执行
+		if (!isBatch && paramsSize != splice.paramCnt) {
+			throw new IllegalArgumentException("租户过滤:sql中参数数量:" + splice.paramCnt + " 与实际参数数量:" + paramsSize
+					+ " 不一致,无法确定租户条件参数位置,sql:" + sql);
+		}
+		// 多租户in (?,?) 按2的幂次补齐,让sql文本只随租户数量级变化
+		int tenantCnt = (tenants.length == 1) ? 1 : Integer.highestOneBit(tenants.length - 1) << 1;
+		Object[] tenantValues = Arrays.copyOf(tenants, tenantCnt, Object[].class);
+		for (int i = tenants.length; i < tenantCnt; i++) {
+			tenantValues[i] = tenants[tenants.length - 1];
+		}
+		StringBuilder condition = new StringBuilder(splice.aliasName).append(tenantColumn);
+		if (tenantCnt == 1) {
+			condition.append("=? and ");
 		} else {
-			sqlPart = sqlPart.concat(tenantColumn).concat("in (")
-					.concat(SqlUtil.combineQueryInStr(tenants, null, null, true).concat(") and "));
+			condition.append(" in (?");
+			for (int i = 1; i < tenantCnt; i++) {
+				condition.append(",?");
+			}
+			condition.append(") and ");
 		}
-		// 所有基于对象操作和查询、更新操作进行租户过滤
-		if (operateType.equals(OperateType.load) || operateType.equals(OperateType.loadAll)
-				|| operateType.equals(OperateType.update) || operateType.equals(OperateType.updateAll)
-				|| operateType.equals(OperateType.delete) || operateType.equals(OperateType.deleteAll)
-				|| operateType.equals(OperateType.unique) || operateType.equals(OperateType.saveOrUpdate)
-				|| operateType.equals(OperateType.singleTable)) {
-			// 从where开始替换，避免select a,b from table where id=? for update 场景拼接在最后面是有错误的
-			// 对象操作sql由框架生成，where前后是空白
-			if (operateType.equals(OperateType.saveOrUpdate) && sql.indexOf(SqlToyConstants.MERGE_UPDATE) > 0) {
-				// 截取merge int xxxx (select ?,? from dual) as tv on (alias.field=tv.xxx)
-				// 中的具体alias
-				//构造成:merge int xxxx (select ?,? from dual) as tv on (alias.tenant_id=xxx and alias.field=tv.xxx)
-				int onTenantIndex = sql.indexOf(SqlToyConstants.MERGE_ALIAS_ON);
-				int end = onTenantIndex + SqlToyConstants.MERGE_ALIAS_ON.length();
-				String aliasName = sql.substring(end, sql.indexOf(".", end)).trim();
-				// 去除where、租户字段加上表别名，末尾补充and跟后续条件衔接
-				sqlPart = sqlPart.replaceFirst(where, "").replaceFirst(tenantColumn, aliasName + "." + tenantColumn);
-				sql = sql.replaceFirst(SqlToyConstants.MERGE_ALIAS_ON_REGEX,
-						SqlToyConstants.MERGE_ALIAS_ON.concat(sqlPart));
-				sqlToyResult.setSql(sql);
+		sqlToyResult.setSql(sql.substring(0, splice.index).concat(condition.toString())
+				.concat(sql.substring(splice.index)));
+		// 批量操作的参数为每行记录的数组
+		if (isBatch) {
+			Object[] realParams = new Object[paramsSize];
+			for (int i = 0; i < paramsSize; i++) {
+				realParams[i] = insertParams((Object[]) paramsValue[i], splice.paramIndex, tenantValues);
+			}
+			sqlToyResult.setParamsValue(realParams);
+		} else {
+			sqlToyResult.setParamsValue(insertParams(paramsValue, splice.paramIndex, tenantValues));
+		}
+		// 参数类型在同样位置插入租户字段类型(批量操作每行共用一组类型)
+		Integer[] paramsType = sqlToyResult.getParamsType();
+		if (paramsType != null) {
+			if (paramsType.length == splice.paramCnt) {
+				Integer[] tenantTypes = new Integer[tenantCnt];
+				Arrays.fill(tenantTypes, entityMeta.getColumnJdbcType(entityMeta.getTenantField()));
+				sqlToyResult.setParamsType(insertParams(paramsType, splice.paramIndex, tenantTypes));
 			} else {
-				sql = sql.replaceFirst("(?i)\\swhere\\s", sqlPart);
-				sqlToyResult.setSql(sql);
+				// 类型与参数无法对应,改为按参数值判断类型
+				sqlToyResult.setParamsType(null);
 			}
 		}
 		// 通过表名获取entityMeta、并判断表里面是否有租户字段
@@ -105,4 +148,94 @@ public class TenantFilterInterceptor implements SqlInterceptor {
 		return sqlToyResult;
 	}
 
+	/**
+	 * @TODO 计算租户条件在sql中的插入位置以及之前的参数数量
+	 * @param sql
+	 * @param tenantColumn
+	 * @return
+	 */
+	private TenantSplice createSplice(String sql, String tenantColumn) {
+		TenantSplice splice = new TenantSplice();
+		int whereIndex = StringUtil.matchIndex(sql, "(?i)\\Wwhere\\W");
+		// sql 在where后面已经有租户条件过滤，无需做处理
+		if (whereIndex > 0 && StringUtil.matches(sql.substring(whereIndex),
+				"(?i)\\W" + Pattern.quote(tenantColumn) + "(\\s*\\=|\\s+in)")) {
+			return splice;
+		}
+		// 从where开始拼接，避免select a,b from table where id=? for update 场景拼接在最后面是有错误的
+		// 对象操作sql由框架生成，where前后是空白
+		Matcher matcher;
+		if (sql.indexOf(SqlToyConstants.MERGE_UPDATE) > 0
+				&& (matcher = MERGE_ALIAS_ON_PATTERN.matcher(sql)).find()) {
+			// merge into xxxx (select ?,? from dual) tv on (alias.field=tv.xxx)
+			// 构造成:merge into xxxx (select ?,? from dual) tv on (alias.tenant_id=? and alias.field=tv.xxx)
+			splice.index = matcher.end();
+			splice.aliasName = sql.substring(splice.index, sql.indexOf(".", splice.index)).trim().concat(".");
+		} else if ((matcher = WHERE_PATTERN.matcher(sql)).find()) {
+			splice.index = matcher.end();
+		} else {
+			return splice;
+		}
+		splice.paramIndex = StringUtil.matchCnt(SqlConfigParseUtils.clearDblQuestMark(sql.substring(0, splice.index)),
+				SqlConfigParseUtils.ARG_REGEX);
+		splice.paramCnt = StringUtil.matchCnt(SqlConfigParseUtils.clearDblQuestMark(sql),
+				SqlConfigParseUtils.ARG_REGEX);
+		return splice;
+	}
+
+	/**
+	 * @TODO 判断是否是批量操作的参数(每个元素为一行记录的参数数组)
+	 * @param paramsValue
+	 * @param paramCnt
+	 * @return
+	 */
+	private static boolean isBatchParams(Object[] paramsValue, int paramCnt) {
+		if (paramsValue == null || paramsValue.length == 0) {
+			return false;
+		}
+		for (Object rowValues : paramsValue) {
+			if (!(rowValues instanceof Object[]) || ((Object[]) rowValues).length != paramCnt) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @TODO 在paramIndex位置插入租户参数值(或参数类型)
+	 * @param paramsValue
+	 * @param paramIndex
+	 * @param tenantValues
+	 * @return
+	 */
+	private static <T> T[] insertParams(T[] paramsValue, int paramIndex, T[] tenantValues) {
+		int paramsSize = (paramsValue == null) ? 0 : paramsValue.length;
+		T[] result = Arrays.copyOf(tenantValues, paramsSize + tenantValues.length);
+		if (paramIndex > 0) {
+			System.arraycopy(paramsValue, 0, result, 0, paramIndex);
+		}
+		System.arraycopy(tenantValues, 0, result, paramIndex, tenantValues.length);
+		if (paramsSize > paramIndex) {
+			System.arraycopy(paramsValue, paramIndex, result, paramIndex + tenantValues.length,
+					paramsSize - paramIndex);
+		}
+		return result;
+	}
+
+	/**
+	 * 租户条件插入位置
+	 */
+	private static class TenantSplice {
+		// -1 表示无需处理
+		int index = -1;
+
+		// 插入位置之前的?参数数量
+		int paramIndex;
+
+		// sql中?参数总数量
+		int paramCnt;
+
+		// merge语句中的表别名
+		String aliasName = "";
+	}
 }
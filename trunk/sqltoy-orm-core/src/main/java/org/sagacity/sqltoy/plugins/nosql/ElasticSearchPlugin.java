@@ -4,14 +4,20 @@
 package org.sagacity.sqltoy.plugins.nosql;
 
 import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.callback.StreamResultHandler;
 import org.sagacity.sqltoy.config.model.ElasticEndpoint;
 import org.sagacity.sqltoy.config.model.NoSqlConfigModel;
+import org.sagacity.sqltoy.config.model.NoSqlFieldsModel;
 import org.sagacity.sqltoy.config.model.SqlToyConfig;
+import org.sagacity.sqltoy.exception.DataAccessException;
 import org.sagacity.sqltoy.model.Page;
 import org.sagacity.sqltoy.model.QueryExecutor;
 import org.sagacity.sqltoy.model.inner.DataSetResult;
@@ -28,12 +34,14 @@ import org.slf4j.LoggerFactory;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONReader;
 
 /**
  * @project sagacity-sqltoy
  * @description elasticSearch的插件
  * @author zhongxuchen
  * @version v1.0,Date:2018年1月3日
+ * @modify Date:2024-05-18 {增加fetchStream,基于point in time + search_after 流式提取数据}
  */
 public class ElasticSearchPlugin {
 	/**
@@ -41,6 +49,21 @@ public class ElasticSearchPlugin {
 	 */
 	protected final static Logger logger = LoggerFactory.getLogger(ElasticSearchPlugin.class);
 
+	/**
+	 * fetchStream 默认每批提取记录数量
+	 */
+	private final static int DEFAULT_BATCH_SIZE = 1000;
+
+	/**
+	 * es默认max_result_window
+	 */
+	private final static int MAX_BATCH_SIZE = 10000;
+
+	/**
+	 * point in time 每批之间的保持时长
+	 */
+	private final static String PIT_KEEP_ALIVE = "1m";
+
 	/**
 	 * @todo 基于es的分页查询
 	 * @param sqlToyContext
@@ -119,6 +142,136 @@ public class ElasticSearchPlugin {
 		return result.getRows();
 	}
 
+	/**
+	 * @TODO 基于point in time + search_after 分批提取数据并逐行交给streamResultHandler消费,每次只在内存中保留一批数据
+	 *       <li>不受from+size(max_result_window)限制,适用于大数据量导出</li>
+	 *       <li>需要es7.10+版本,排序最后追加_shard_doc保证翻页唯一</li>
+	 * @param sqlToyContext
+	 * @param sqlToyConfig
+	 * @param queryExecutor
+	 * @param streamResultHandler
+	 * @throws Exception
+	 */
+	public static void fetchStream(SqlToyContext sqlToyContext, SqlToyConfig sqlToyConfig, QueryExecutor queryExecutor,
+			StreamResultHandler streamResultHandler) throws Exception {
+		NoSqlConfigModel noSqlModel = sqlToyConfig.getNoSqlConfigModel();
+		if (noSqlModel.isHasAggs()) {
+			throw new UnsupportedOperationException("elastic aggregations query fetchStream is not support!");
+		}
+		if (StringUtil.isBlank(noSqlModel.getIndex())) {
+			throw new IllegalArgumentException("es fetchStream 查询必须配置index!");
+		}
+		String realMql = "";
+		JSONObject jsonQuery = null;
+		QueryExecutorExtend extend = queryExecutor.getInnerModel();
+		QueryExecutorBuilder.initQueryExecutor(sqlToyContext, extend, sqlToyConfig, false);
+		try {
+			realMql = MongoElasticUtils.wrapES(sqlToyConfig, extend.getParamsName(),
+					extend.getParamsValue(sqlToyContext, sqlToyConfig)).trim();
+			jsonQuery = JSON.parseObject(realMql);
+			jsonQuery.remove("from");
+			jsonQuery.remove("FROM");
+			jsonQuery.remove("size");
+			jsonQuery.remove("SIZE");
+		} catch (Exception e) {
+			logger.error("解析es原生json错误,请检查json串格式是否正确!错误信息:{},json={}", e.getMessage(), realMql);
+			throw e;
+		}
+		Class resultClass = (Class) extend.resultType;
+		String[] fields = wrapFields(noSqlModel, jsonQuery, resultClass);
+		NoSqlFieldsModel fieldModel = MongoElasticUtils.processFields(fields, null);
+		String[] realFields = fieldModel.getFields();
+		String[] labelNames = fieldModel.getAliasLabels();
+		int batchSize = (extend.fetchSize > 0) ? Math.min(extend.fetchSize, MAX_BATCH_SIZE) : DEFAULT_BATCH_SIZE;
+		// 原排序基础上追加_shard_doc作为search_after的唯一排序
+		Object sort = jsonQuery.containsKey("sort") ? jsonQuery.remove("sort") : jsonQuery.remove("SORT");
+		JSONArray sortArray = new JSONArray();
+		if (sort instanceof JSONArray) {
+			sortArray.addAll((JSONArray) sort);
+		} else if (sort != null) {
+			sortArray.add(sort);
+		}
+		sortArray.add(JSONObject.of("_shard_doc", "asc"));
+		jsonQuery.put("sort", sortArray);
+		jsonQuery.put("size", batchSize);
+		jsonQuery.put("track_total_hits", false);
+		ElasticEndpoint esConfig = sqlToyContext.getElasticEndpoint(noSqlModel.getEndpoint());
+		// 打开point in time
+		Map<String, Object> pit = HttpClientUtils.doRequest(sqlToyContext, noSqlModel, esConfig, "POST",
+				"/" + noSqlModel.getIndex() + "/_pit?keep_alive=" + PIT_KEEP_ALIVE, null,
+				(input, charset) -> JSONReader.of(input, Charset.forName(charset)).readObject());
+		String pitId = (pit == null) ? null : (String) pit.get("id");
+		if (pitId == null) {
+			throw new DataAccessException("ElasticSearch打开point in time失败,index:" + noSqlModel.getIndex());
+		}
+		streamResultHandler.start(labelNames, null);
+		List<Map<String, Object>> hits = new ArrayList<Map<String, Object>>(batchSize);
+		Map<String, Object> source;
+		String newPitId;
+		int rowIndex = 0;
+		try {
+			while (true) {
+				jsonQuery.put("pit", JSONObject.of("id", pitId, "keep_alive", PIT_KEEP_ALIVE));
+				if (sqlToyContext.isDebug()) {
+					logger.debug("fetchStream elastic eql=" + jsonQuery.toJSONString());
+				}
+				hits.clear();
+				newPitId = HttpClientUtils.doRequest(sqlToyContext, noSqlModel, esConfig, "POST", "/_search",
+						jsonQuery, (input, charset) -> ElasticSearchUtils.readHits(input, charset, hits));
+				if (newPitId != null) {
+					pitId = newPitId;
+				}
+				if (hits.isEmpty()) {
+					break;
+				}
+				List rows = new ArrayList(hits.size());
+				for (Map<String, Object> hit : hits) {
+					source = (Map<String, Object>) hit.get("_source");
+					ElasticSearchUtils.addRow(rows, (source == null) ? Collections.emptyMap() : source, realFields);
+				}
+				Object searchAfter = hits.get(hits.size() - 1).get("sort");
+				DataSetResult resultSet = new DataSetResult();
+				resultSet.setRows(rows);
+				resultSet.setLabelNames(labelNames);
+				MongoElasticUtils.processTranslate(sqlToyContext, sqlToyConfig, resultSet.getRows(),
+						resultSet.getLabelNames());
+				boolean changedCols = ResultUtils.calculate(sqlToyContext.getDesensitizeProvider(), sqlToyConfig,
+						resultSet, null, null);
+				List result = ResultUtils.wrapQueryResult(sqlToyContext, resultSet.getRows(),
+						StringUtil.humpFieldNames(resultSet.getLabelNames()), resultClass, changedCols,
+						extend.humpMapLabel, false, null, null);
+				for (Object row : result) {
+					streamResultHandler.consume(row, rowIndex);
+					rowIndex++;
+				}
+				if (hits.size() < batchSize || searchAfter == null) {
+					break;
+				}
+				jsonQuery.put("search_after", searchAfter);
+			}
+		} finally {
+			closePit(sqlToyContext, noSqlModel, esConfig, pitId);
+		}
+		streamResultHandler.end();
+	}
+
+	/**
+	 * @TODO 关闭point in time,释放es端资源
+	 * @param sqlToyContext
+	 * @param noSqlModel
+	 * @param esConfig
+	 * @param pitId
+	 */
+	private static void closePit(SqlToyContext sqlToyContext, NoSqlConfigModel noSqlModel, ElasticEndpoint esConfig,
+			String pitId) {
+		try {
+			HttpClientUtils.doRequest(sqlToyContext, noSqlModel, esConfig, "DELETE", "/_pit",
+					JSONObject.of("id", pitId), (input, charset) -> null);
+		} catch (Exception e) {
+			logger.warn("关闭es point in time失败:{}", e.getMessage());
+		}
+	}
+
 	/**
 	 * @todo 执行实际查询处理
 	 * @param sqlToyContext
@@ -133,6 +286,41 @@ public class ElasticSearchPlugin {
 			JSONObject jsonQuery, Class resultClass, Boolean humpMapLabel) throws Exception {
 		NoSqlConfigModel noSqlModel = sqlToyConfig.getNoSqlConfigModel();
 		ElasticEndpoint esConfig = sqlToyContext.getElasticEndpoint(noSqlModel.getEndpoint());
+		String[] fields = wrapFields(noSqlModel, jsonQuery, resultClass);
+		if (sqlToyContext.isDebug()) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("execute elastic eql=" + jsonQuery.toJSONString());
+			} else {
+				System.out.println("execute elastic eql=" + jsonQuery.toJSONString());
+			}
+		}
+
+		// 执行请求
+		JSONObject json = HttpClientUtils.doPost(sqlToyContext, noSqlModel, esConfig, jsonQuery);
+		if (json == null || json.isEmpty()) {
+			return new DataSetResult();
+		}
+		DataSetResult resultSet = ElasticSearchUtils.extractFieldValue(sqlToyContext, sqlToyConfig, json, fields);
+		MongoElasticUtils.processTranslate(sqlToyContext, sqlToyConfig, resultSet.getRows(), resultSet.getLabelNames());
+
+		// 不支持指定查询集合的行列转换
+		boolean changedCols = ResultUtils.calculate(sqlToyContext.getDesensitizeProvider(), sqlToyConfig, resultSet,
+				null, null);
+		// 将结果数据映射到具体对象类型中
+		resultSet.setRows(ResultUtils.wrapQueryResult(sqlToyContext, resultSet.getRows(),
+				StringUtil.humpFieldNames(resultSet.getLabelNames()), resultClass, changedCols, humpMapLabel, false,
+				null, null));
+		return resultSet;
+	}
+
+	/**
+	 * @TODO 确定查询的字段,未指定_source时将配置的fields设置到查询json中
+	 * @param noSqlModel
+	 * @param jsonQuery
+	 * @param resultClass
+	 * @return
+	 */
+	private static String[] wrapFields(NoSqlConfigModel noSqlModel, JSONObject jsonQuery, Class resultClass) {
 		String source = "_source";
 		// 是否设置了fields
 		boolean hasFields = false;
@@ -169,29 +357,6 @@ public class ElasticSearchPlugin {
 				&& !Collection.class.isAssignableFrom(resultClass) && !Map.class.isAssignableFrom(resultClass)) {
 			fields = BeanUtil.matchSetMethodNames(resultClass);
 		}
-		if (sqlToyContext.isDebug()) {
-			if (logger.isDebugEnabled()) {
-				logger.debug("execute elastic eql=" + jsonQuery.toJSONString());
-			} else {
-				System.out.println("execute elastic eql=" + jsonQuery.toJSONString());
-			}
-		}
-
-		// 执行请求
-		JSONObject json = HttpClientUtils.doPost(sqlToyContext, noSqlModel, esConfig, jsonQuery);
-		if (json == null || json.isEmpty()) {
-			return new DataSetResult();
-		}
-		DataSetResult resultSet = ElasticSearchUtils.extractFieldValue(sqlToyContext, sqlToyConfig, json, fields);
-		MongoElasticUtils.processTranslate(sqlToyContext, sqlToyConfig, resultSet.getRows(), resultSet.getLabelNames());
-
-		// 不支持指定查询集合的行列转换
-		boolean changedCols = ResultUtils.calculate(sqlToyContext.getDesensitizeProvider(), sqlToyConfig, resultSet,
-				null, null);
-		// 将结果数据映射到具体对象类型中
-		resultSet.setRows(ResultUtils.wrapQueryResult(sqlToyContext, resultSet.getRows(),
-				StringUtil.humpFieldNames(resultSet.getLabelNames()), resultClass, changedCols, humpMapLabel, false,
-				null, null));
-		return resultSet;
+		return fields;
 	}
 }
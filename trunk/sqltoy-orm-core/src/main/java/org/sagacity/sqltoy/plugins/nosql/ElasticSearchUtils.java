@@ -3,7 +3,9 @@
  */
 package org.sagacity.sqltoy.plugins.nosql;
 
+import java.io.InputStream;
 import java.lang.reflect.Array;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -14,6 +16,7 @@ import org.sagacity.sqltoy.config.model.ElasticEndpoint;
 import org.sagacity.sqltoy.config.model.NoSqlConfigModel;
 import org.sagacity.sqltoy.config.model.NoSqlFieldsModel;
 import org.sagacity.sqltoy.config.model.SqlToyConfig;
+import org.sagacity.sqltoy.exception.DataAccessException;
 import org.sagacity.sqltoy.model.inner.DataSetResult;
 import org.sagacity.sqltoy.utils.BeanUtil;
 import org.sagacity.sqltoy.utils.HttpClientUtils;
@@ -23,14 +26,17 @@ import org.sagacity.sqltoy.utils.StringUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONReader;
 
 /**
  * @project sagacity-sqltoy
  * @description 提供es执行过程处理的工具方法
  * @author zhongxuchen
  * @version v1.0,Date:2018年1月8日
+ * @modify Date:2024-05-18 {增加readHits、readSqlRows,以流方式逐条解析返回结果,用于fetchStream}
  */
 public class ElasticSearchUtils {
 	/**
@@ -360,13 +366,13 @@ public class ElasticSearchUtils {
 	 * @param rowJson
 	 * @param realFields
 	 */
-	private static void addRow(List result, JSONObject rowJson, String[] realFields) {
+	static void addRow(List result, Map rowJson, String[] realFields) {
 		Object cell;
 		List row = new ArrayList();
 		for (String str : realFields) {
 			cell = rowJson.get(str);
-			if (cell instanceof JSONObject) {
-				row.add(((JSONObject) cell).get("value"));
+			if (cell instanceof Map) {
+				row.add(((Map) cell).get("value"));
 			} else {
 				row.add(cell);
 			}
@@ -447,4 +453,92 @@ public class ElasticSearchUtils {
 		}
 		return rowJson;
 	}
+
+	/**
+	 * @TODO 以流方式解析search返回结果:逐条读取hits.hits中的记录,不构造整个返回结果的JSON对象
+	 * @param input
+	 * @param charset
+	 * @param hits    存放读取的记录(包含_source和sort)
+	 * @return 返回结果中的pit_id(point in time 查询时es可能返回新的id)
+	 */
+	public static String readHits(InputStream input, String charset, List<Map<String, Object>> hits) {
+		String pitId = null;
+		try (JSONReader reader = JSONReader.of(input, Charset.forName(charset))) {
+			if (!reader.nextIfObjectStart()) {
+				return null;
+			}
+			String fieldName;
+			while (!reader.nextIfObjectEnd()) {
+				fieldName = reader.readFieldName();
+				if ("pit_id".equals(fieldName)) {
+					pitId = reader.readString();
+				} else if ("hits".equals(fieldName) && reader.nextIfObjectStart()) {
+					while (!reader.nextIfObjectEnd()) {
+						if ("hits".equals(reader.readFieldName()) && reader.nextIfArrayStart()) {
+							while (!reader.nextIfArrayEnd()) {
+								hits.add(reader.readObject());
+							}
+						} else {
+							reader.skipValue();
+						}
+					}
+				} else if ("error".equals(fieldName)) {
+					throwError(reader.readAny());
+				} else {
+					reader.skipValue();
+				}
+			}
+		}
+		return pitId;
+	}
+
+	/**
+	 * @TODO 以流方式解析es原生sql返回结果:{columns:[{name:xx}],rows:[[]],cursor:xxx}
+	 * @param input
+	 * @param charset
+	 * @param columns 存放列名(只有首次查询返回)
+	 * @param rows    存放读取的数据行
+	 * @return 返回结果中的cursor,为null表示数据已经读取完
+	 */
+	public static String readSqlRows(InputStream input, String charset, List<String> columns,
+			List<List<Object>> rows) {
+		String cursor = null;
+		try (JSONReader reader = JSONReader.of(input, Charset.forName(charset))) {
+			if (!reader.nextIfObjectStart()) {
+				return null;
+			}
+			String fieldName;
+			while (!reader.nextIfObjectEnd()) {
+				fieldName = reader.readFieldName();
+				if ("cursor".equals(fieldName)) {
+					cursor = reader.readString();
+				} else if ("columns".equals(fieldName) && reader.nextIfArrayStart()) {
+					while (!reader.nextIfArrayEnd()) {
+						columns.add((String) reader.readObject().get("name"));
+					}
+				} else if ("rows".equals(fieldName) && reader.nextIfArrayStart()) {
+					while (!reader.nextIfArrayEnd()) {
+						rows.add(reader.readArray());
+					}
+				} else if ("error".equals(fieldName)) {
+					throwError(reader.readAny());
+				} else {
+					reader.skipValue();
+				}
+			}
+		}
+		return cursor;
+	}
+
+	private static void throwError(Object error) {
+		String errorMessage = JSON.toJSONString(error);
+		if (error instanceof Map) {
+			Object rootCause = ((Map) error).get("root_cause");
+			if (rootCause instanceof List && !((List) rootCause).isEmpty()) {
+				errorMessage = JSON.toJSONString(((List) rootCause).get(0));
+			}
+		}
+		logger.error("elastic查询失败,错误信息:[{}]", errorMessage);
+		throw new DataAccessException("ElasticSearch查询失败,错误信息:" + errorMessage);
+	}
 }
@@ -3,24 +3,34 @@
  */
 package org.sagacity.sqltoy.plugins.nosql;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.callback.StreamResultHandler;
+import org.sagacity.sqltoy.config.model.ElasticEndpoint;
+import org.sagacity.sqltoy.config.model.NoSqlConfigModel;
 import org.sagacity.sqltoy.config.model.SqlToyConfig;
 import org.sagacity.sqltoy.model.Page;
 import org.sagacity.sqltoy.model.QueryExecutor;
 import org.sagacity.sqltoy.model.inner.DataSetResult;
 import org.sagacity.sqltoy.model.inner.QueryExecutorExtend;
+import org.sagacity.sqltoy.utils.HttpClientUtils;
 import org.sagacity.sqltoy.utils.MongoElasticUtils;
 import org.sagacity.sqltoy.utils.QueryExecutorBuilder;
+import org.sagacity.sqltoy.utils.ResultUtils;
+import org.sagacity.sqltoy.utils.StringUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.fastjson2.JSONObject;
+
 /**
  * @project sagacity-sqltoy
  * @description elasticsearch-sql 或elasticsearch6.3.x 版本支持xpack sql查询
  * @author zhongxuchen
  * @version v1.0,Date:2018年1月3日
+ * @modify Date:2024-05-18 {增加fetchStream,基于原生sql的cursor流式提取数据}
  */
 public class ElasticSqlPlugin {
 	/**
@@ -28,6 +38,11 @@ public class ElasticSqlPlugin {
 	 */
 	protected final static Logger logger = LoggerFactory.getLogger(ElasticSqlPlugin.class);
 
+	/**
+	 * fetchStream 默认每批提取记录数量
+	 */
+	private final static int DEFAULT_BATCH_SIZE = 1000;
+
 	/**
 	 * @todo 基于es的分页查询
 	 * @param sqlToyContext
@@ -94,4 +109,111 @@ public class ElasticSqlPlugin {
 		return result.getRows();
 	}
 
+	/**
+	 * @TODO 基于es原生sql的cursor分批提取数据并逐行交给streamResultHandler消费,每次只在内存中保留一批数据
+	 * @param sqlToyContext
+	 * @param sqlToyConfig
+	 * @param queryExecutor
+	 * @param streamResultHandler
+	 * @throws Exception
+	 */
+	public static void fetchStream(SqlToyContext sqlToyContext, SqlToyConfig sqlToyConfig, QueryExecutor queryExecutor,
+			StreamResultHandler streamResultHandler) throws Exception {
+		NoSqlConfigModel noSqlModel = sqlToyConfig.getNoSqlConfigModel();
+		ElasticEndpoint esConfig = sqlToyContext.getElasticEndpoint(noSqlModel.getEndpoint());
+		// elasticsearch-sql 插件没有cursor机制
+		if (!esConfig.isNativeSql()) {
+			throw new UnsupportedOperationException(
+					"elasticsearch-sql fetchStream is not support,please use native sql or eql!");
+		}
+		QueryExecutorExtend extend = queryExecutor.getInnerModel();
+		QueryExecutorBuilder.initQueryExecutor(sqlToyContext, extend, sqlToyConfig, false);
+		String realSql = MongoElasticUtils.wrapES(sqlToyConfig, extend.getParamsName(),
+				extend.getParamsValue(sqlToyContext, sqlToyConfig)).trim();
+		if (sqlToyContext.isDebug()) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("fetchStreamByElastic sql=" + realSql);
+			} else {
+				System.out.println("fetchStreamByElastic sql=" + realSql);
+			}
+		}
+		String sqlPath = StringUtil.isBlank(esConfig.getSqlPath()) ? "_sql" : esConfig.getSqlPath();
+		sqlPath = (sqlPath.startsWith("/") ? "" : "/").concat(sqlPath);
+		int batchSize = (extend.fetchSize > 0) ? extend.fetchSize : DEFAULT_BATCH_SIZE;
+		Class resultClass = (Class) extend.resultType;
+		JSONObject request = JSONObject.of("query", realSql, "fetch_size", batchSize);
+		List<String> columns = new ArrayList<String>();
+		List<List<Object>> rows = new ArrayList<List<Object>>(batchSize);
+		String[] labelNames = null;
+		String cursor = null;
+		int rowIndex = 0;
+		try {
+			while (true) {
+				rows.clear();
+				cursor = HttpClientUtils.doRequest(sqlToyContext, noSqlModel, esConfig, "POST",
+						sqlPath + "?format=json", request,
+						(input, charset) -> ElasticSearchUtils.readSqlRows(input, charset, columns, rows));
+				// 首批返回列信息
+				if (labelNames == null) {
+					String[] fields = noSqlModel.getFields();
+					if (fields == null) {
+						fields = columns.toArray(new String[columns.size()]);
+					}
+					labelNames = MongoElasticUtils.processFields(fields, null).getAliasLabels();
+					streamResultHandler.start(labelNames, null);
+				}
+				if (!rows.isEmpty()) {
+					DataSetResult resultSet = new DataSetResult();
+					resultSet.setRows(rows);
+					resultSet.setLabelNames(labelNames);
+					MongoElasticUtils.processTranslate(sqlToyContext, sqlToyConfig, resultSet.getRows(),
+							resultSet.getLabelNames());
+					boolean changedCols = ResultUtils.calculate(sqlToyContext.getDesensitizeProvider(), sqlToyConfig,
+							resultSet, null, null);
+					List result = ResultUtils.wrapQueryResult(sqlToyContext, resultSet.getRows(),
+							StringUtil.humpFieldNames(resultSet.getLabelNames()), resultClass, changedCols,
+							extend.humpMapLabel, false, null, null);
+					for (Object row : result) {
+						streamResultHandler.consume(row, rowIndex);
+						rowIndex++;
+					}
+				}
+				// 没有cursor表示数据已经全部返回,es自动释放cursor
+				if (StringUtil.isBlank(cursor) || rows.isEmpty()) {
+					break;
+				}
+				request = JSONObject.of("cursor", cursor);
+			}
+		} catch (Exception e) {
+			// 中途失败主动关闭cursor
+			if (StringUtil.isNotBlank(cursor)) {
+				closeCursor(sqlToyContext, noSqlModel, esConfig, sqlPath, cursor);
+			}
+			throw e;
+		}
+		// 提前结束(如:返回空数据但存在cursor)
+		if (StringUtil.isNotBlank(cursor)) {
+			closeCursor(sqlToyContext, noSqlModel, esConfig, sqlPath, cursor);
+		}
+		streamResultHandler.end();
+	}
+
+	/**
+	 * @TODO 关闭sql cursor,释放es端资源
+	 * @param sqlToyContext
+	 * @param noSqlModel
+	 * @param esConfig
+	 * @param sqlPath
+	 * @param cursor
+	 */
+	private static void closeCursor(SqlToyContext sqlToyContext, NoSqlConfigModel noSqlModel, ElasticEndpoint esConfig,
+			String sqlPath, String cursor) {
+		try {
+			HttpClientUtils.doRequest(sqlToyContext, noSqlModel, esConfig, "POST", sqlPath + "/close",
+					JSONObject.of("cursor", cursor), (input, charset) -> null);
+		} catch (Exception e) {
+			logger.warn("关闭es sql cursor失败:{}", e.getMessage());
+		}
+	}
+
 }
@@ -5,9 +5,8 @@ import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.sagacity.sqltoy.model.OverTimeSql;
 import org.sagacity.sqltoy.model.PriorityLimitSizeQueue;
@@ -17,53 +16,58 @@ import org.sagacity.sqltoy.plugins.OverTimeSqlHandler;
  * @TODO 提供默认的sql执行超时日志队列，便于应用获取
  * @author zhongxuchen
  * @version v1.0, Date:2022-06-29
+ * @modify Date:2024-05-08 {改为线程安全:ConcurrentHashMap原子合并、队列同步访问,平均耗时不再每次做BigDecimal运算;全量执行统计见SqlStatsCollector}
  */
 public class DefaultOverTimeHandler implements OverTimeSqlHandler {
 	/**
-	 * 无sqlId 的超时sql
+	 * 按执行时长从大到小
 	 */
-	private PriorityLimitSizeQueue<OverTimeSql> queues = new PriorityLimitSizeQueue<OverTimeSql>(500,
-			new Comparator<OverTimeSql>() {
-				@Override
-				public int compare(OverTimeSql o1, OverTimeSql o2) {
-					return Long.valueOf(o1.getTakeTime() - o2.getTakeTime()).intValue();
-				}
-			});
+	private static final Comparator<OverTimeSql> SLOWEST_FIRST = (o1, o2) -> Long.compare(o2.getTakeTime(),
+			o1.getTakeTime());
+
+	/**
+	 * 无sqlId 的超时sql(非线程安全,统一在同步块中访问)
+	 */
+	private final PriorityLimitSizeQueue<OverTimeSql> queues = new PriorityLimitSizeQueue<OverTimeSql>(500,
+			(o1, o2) -> Long.compare(o1.getTakeTime(), o2.getTakeTime()));
+
 	// 所有执行超时且含sqlId的sql语句
-	private HashMap<String, OverTimeSql> slowSqlMap = new HashMap<String, OverTimeSql>();
+	private final ConcurrentHashMap<String, OverTimeSql> slowSqlMap = new ConcurrentHashMap<String, OverTimeSql>();
 
 	@Override
 	public void log(OverTimeSql overTimeSql) {
 		String sqlId = overTimeSql.getId();
 		if (null != sqlId && !"".equals(sqlId.trim())) {
-			OverTimeSql preSql = slowSqlMap.get(sqlId);
-			if (null == preSql) {
-				overTimeSql.setAveTakeTime(new BigDecimal(overTimeSql.getTakeTime()));
-				slowSqlMap.put(sqlId, overTimeSql);
-			} else {
+			overTimeSql.setAveTakeTime(BigDecimal.valueOf(overTimeSql.getTakeTime()));
+			slowSqlMap.merge(sqlId, overTimeSql, (preSql, newSql) -> {
+				long overTimeCount = preSql.getOverTimeCount() + 1;
+				// 平均执行时长
+				BigDecimal aveTakeTime = BigDecimal.valueOf(
+						(preSql.getAveTakeTime().doubleValue() * preSql.getOverTimeCount() + newSql.getTakeTime())
+								/ overTimeCount)
+						.setScale(3, RoundingMode.HALF_UP);
 				// 新的相同sqlId的超时执行时长大于之前的
-				if (overTimeSql.getTakeTime() > preSql.getTakeTime()) {
-					// 平均执行时长
-					overTimeSql
-							.setAveTakeTime(preSql.getAveTakeTime().multiply(new BigDecimal(preSql.getOverTimeCount()))
-									.add(new BigDecimal(overTimeSql.getTakeTime()))
-									.divide(new BigDecimal(preSql.getOverTimeCount() + 1), 3, RoundingMode.HALF_UP));
-					// 执行次数进行累加
-					overTimeSql.setOverTimeCount(preSql.getOverTimeCount() + 1);
+				if (newSql.getTakeTime() > preSql.getTakeTime()) {
 					// 设置首次超时发生时间
-					overTimeSql.setFirstLogTime(preSql.getFirstLogTime());
-					slowSqlMap.put(sqlId, overTimeSql);
-				} else {
-					preSql.setAveTakeTime(preSql.getAveTakeTime().multiply(new BigDecimal(preSql.getOverTimeCount()))
-							.add(new BigDecimal(overTimeSql.getTakeTime()))
-							.divide(new BigDecimal(preSql.getOverTimeCount() + 1), 3, RoundingMode.HALF_UP));
-					// 更新最后超时发生时间
-					preSql.setLogTime(overTimeSql.getLogTime());
-					preSql.setOverTimeCount(preSql.getOverTimeCount() + 1);
+					newSql.setFirstLogTime(preSql.getFirstLogTime());
+					newSql.setOverTimeCount(overTimeCount);
+					newSql.setAveTakeTime(aveTakeTime);
+					return newSql;
 				}
-			}
+				// 合并结果不能直接修改原对象(可能正在被读取),复制一份
+				OverTimeSql result = new OverTimeSql(preSql.getId(), preSql.getSql(), preSql.getTakeTime(),
+						preSql.getCodeTrace());
+				result.setFirstLogTime(preSql.getFirstLogTime());
+				// 更新最后超时发生时间
+				result.setLogTime(newSql.getLogTime());
+				result.setOverTimeCount(overTimeCount);
+				result.setAveTakeTime(aveTakeTime);
+				return result;
+			});
 		} else {
-			queues.offer(overTimeSql);
+			synchronized (queues) {
+				queues.offer(overTimeSql);
+			}
 		}
 	}
 
@@ -75,51 +79,21 @@ public class DefaultOverTimeHandler implements OverTimeSqlHandler {
 		if (size < 1) {
 			throw new IllegalArgumentException("取最慢查询:size 参数必须>=1,如果要获取全部，可使用:Integer.MAX_VALUE");
 		}
+		List<OverTimeSql> result;
 		// 非xml中定义的sql，没有具体的sqlId
 		if (!hasSqlId) {
-			return getSlowest(size);
-		} else {
-			List<OverTimeSql> result = new ArrayList<OverTimeSql>();
-			Iterator<OverTimeSql> iter = slowSqlMap.values().iterator();
-			while (iter.hasNext()) {
-				result.add(iter.next());
+			synchronized (queues) {
+				result = new ArrayList<OverTimeSql>(queues);
 			}
-			// 按照执行时长从大到小排序
-			Collections.sort(result, new Comparator<OverTimeSql>() {
-				@Override
-				public int compare(OverTimeSql o1, OverTimeSql o2) {
-					return Long.valueOf(o2.getTakeTime() - o1.getTakeTime()).intValue();
-				}
-			});
-			if (size >= result.size()) {
-				return result;
-			}
-			return result.subList(0, size - 1);
-		}
-	}
-
-	/**
-	 * @TODO 从队列中取出最慢的sql记录
-	 * @param size
-	 * @return
-	 */
-	private List<OverTimeSql> getSlowest(int size) {
-		List<OverTimeSql> result = new ArrayList<OverTimeSql>();
-		Iterator<OverTimeSql> iter = queues.iterator();
-		int index = 0;
-		int start = queues.size() - size;
-		if (start < 0) {
-			start = 0;
+		} else {
+			result = new ArrayList<OverTimeSql>(slowSqlMap.values());
 		}
-		OverTimeSql nextVal;
-		while (iter.hasNext()) {
-			nextVal = iter.next();
-			if (index >= start) {
-				result.add(0, nextVal);
-			}
-			index++;
+		// 按照执行时长从大到小排序
+		Collections.sort(result, SLOWEST_FIRST);
+		if (size >= result.size()) {
+			return result;
 		}
-		return result;
+		return new ArrayList<OverTimeSql>(result.subList(0, size));
 	}
 
 }
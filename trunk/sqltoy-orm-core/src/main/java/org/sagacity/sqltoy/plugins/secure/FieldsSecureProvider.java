@@ -5,6 +5,7 @@ package org.sagacity.sqltoy.plugins.secure;
  * @description sqltoy 字段加解密接口定义,sqltoy提供默认基于RSA非对称实现，同时提供开发者自行扩展
  * @author zhongxuchen
  * @version v1.0,Date:2021-11-05
+ * @modify Date:2024-05-14 {增加decrypt(String[])批量解密,查询结果按列批量解密}
  */
 public interface FieldsSecureProvider {
 
@@ -29,4 +30,19 @@ public interface FieldsSecureProvider {
 	 * @return
 	 */
 	public String decrypt(String secureContents);
+
+	/**
+	 * @TODO 批量解密(默认逐个解密,实现类可复用cipher等资源批量处理),数组中null值直接返回null
+	 * @param secureContents
+	 * @return
+	 */
+	public default String[] decrypt(String[] secureContents) {
+		String[] result = new String[secureContents.length];
+		for (int i = 0; i < secureContents.length; i++) {
+			if (secureContents[i] != null) {
+				result[i] = decrypt(secureContents[i]);
+			}
+		}
+		return result;
+	}
 }
@@ -0,0 +1,160 @@
+package org.sagacity.sqltoy.plugins.secure.impl;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.sagacity.sqltoy.SqlToyConstants;
+import org.sagacity.sqltoy.utils.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @project sagacity-sqltoy
+ * @description sqltoy 字段加解密信封加密实现:RSA密钥对只用于保护数据密钥,字段内容采用AES-GCM加解密
+ *              <li>数据密钥通过sqltoy.secure.data.key配置(RSA公钥加密后的Base64),未配置则由私钥派生</li>
+ *              <li>密文格式:Base64(版本(1字节)+iv(12字节)+密文和tag)</li>
+ *              <li>兼容历史RSA密文:非本格式的密文自动按RSA解密,便于平滑切换</li>
+ *              <li>Cipher非线程安全,每个线程独立持有</li>
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-14
+ */
+public class FieldsAESSecureProvider extends FieldsRSASecureProvider {
+	/**
+	 * 定义全局日志
+	 */
+	protected final static Logger logger = LoggerFactory.getLogger(FieldsAESSecureProvider.class);
+
+	private final static String ALGORITHM_AES = "AES";
+
+	private final static String TRANSFORMATION = "AES/GCM/NoPadding";
+
+	/**
+	 * 密文格式版本
+	 */
+	private final static byte VERSION = 1;
+
+	private final static int IV_LENGTH = 12;
+
+	private final static int TAG_BITS = 128;
+
+	/**
+	 * 最短密文长度(版本+iv+tag)
+	 */
+	private final static int MIN_LENGTH = 1 + IV_LENGTH + TAG_BITS / 8;
+
+	/**
+	 * 数据密钥
+	 */
+	private SecretKeySpec dataKey;
+
+	private final SecureRandom secureRandom = new SecureRandom();
+
+	private final ThreadLocal<Cipher> cipherHolder = ThreadLocal.withInitial(() -> {
+		try {
+			return Cipher.getInstance(TRANSFORMATION);
+		} catch (Exception e) {
+			throw new IllegalStateException("AES cipher 初始化失败:" + e.getMessage(), e);
+		}
+	});
+
+	@Override
+	public void initialize(String charset, String privateKeyStr, String publicKeyStr) throws Exception {
+		super.initialize(charset, privateKeyStr, publicKeyStr);
+		String wrappedDataKey = SqlToyConstants.getSecureDataKey();
+		byte[] keyBytes;
+		if (StringUtil.isNotBlank(wrappedDataKey)) {
+			keyBytes = decryptBytes(Base64.getDecoder().decode(wrappedDataKey.trim()));
+			if (keyBytes.length != 16 && keyBytes.length != 24 && keyBytes.length != 32) {
+				throw new IllegalArgumentException("sqltoy.secure.data.key 解密后的数据密钥长度必须是16、24或32字节!");
+			}
+		} else {
+			// 未配置数据密钥,由私钥派生(同一密钥对得到同一数据密钥)
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update("sqltoy-data-key:".getBytes(getCharset()));
+			keyBytes = digest.digest(getPrivateKey().getEncoded());
+			logger.debug("未配置sqltoy.secure.data.key,字段加密数据密钥由RSA私钥派生!");
+		}
+		dataKey = new SecretKeySpec(keyBytes, ALGORITHM_AES);
+	}
+
+	/**
+	 * @TODO 随机产生一个AES-256数据密钥并用RSA公钥加密,结果用于配置sqltoy.secure.data.key
+	 * @return
+	 * @throws Exception
+	 */
+	public String generateWrappedDataKey() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance(ALGORITHM_AES);
+		keyGenerator.init(256, secureRandom);
+		return Base64.getEncoder().encodeToString(encryptBytes(keyGenerator.generateKey().getEncoded()));
+	}
+
+	@Override
+	public String encrypt(String contents) {
+		try {
+			byte[] iv = new byte[IV_LENGTH];
+			secureRandom.nextBytes(iv);
+			Cipher cipher = cipherHolder.get();
+			cipher.init(Cipher.ENCRYPT_MODE, dataKey, new GCMParameterSpec(TAG_BITS, iv));
+			byte[] bytes = contents.getBytes(getCharset());
+			ByteBuffer buffer = ByteBuffer.allocate(1 + IV_LENGTH + cipher.getOutputSize(bytes.length));
+			buffer.put(VERSION);
+			buffer.put(iv);
+			cipher.doFinal(ByteBuffer.wrap(bytes), buffer);
+			return Base64.getEncoder().encodeToString(buffer.array());
+		} catch (Exception e) {
+			logger.error("字段AES加密失败:{}", e.getMessage(), e);
+		}
+		return "";
+	}
+
+	@Override
+	public String decrypt(String secureContents) {
+		return decrypt(cipherHolder.get(), secureContents);
+	}
+
+	@Override
+	public String[] decrypt(String[] secureContents) {
+		// 整批复用同一个cipher
+		Cipher cipher = cipherHolder.get();
+		String[] result = new String[secureContents.length];
+		for (int i = 0; i < secureContents.length; i++) {
+			if (secureContents[i] != null) {
+				result[i] = decrypt(cipher, secureContents[i]);
+			}
+		}
+		return result;
+	}
+
+	private String decrypt(Cipher cipher, String secureContents) {
+		byte[] secureBytes;
+		try {
+			secureBytes = Base64.getDecoder().decode(secureContents);
+		} catch (Exception e) {
+			logger.error("字段解密失败,密文非Base64格式:{}", e.getMessage());
+			return "";
+		}
+		// 非AES-GCM格式,按历史RSA密文解密
+		if (secureBytes.length < MIN_LENGTH || secureBytes[0] != VERSION) {
+			return super.decrypt(secureContents);
+		}
+		try {
+			cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(TAG_BITS, secureBytes, 1, IV_LENGTH));
+			byte[] result = cipher.doFinal(secureBytes, 1 + IV_LENGTH, secureBytes.length - 1 - IV_LENGTH);
+			return new String(result, getCharset());
+		} catch (AEADBadTagException e) {
+			// RSA密文首字节恰好等于版本号的情况
+			return super.decrypt(secureContents);
+		} catch (Exception e) {
+			logger.error("字段AES解密失败:{}", e.getMessage(), e);
+		}
+		return "";
+	}
+}
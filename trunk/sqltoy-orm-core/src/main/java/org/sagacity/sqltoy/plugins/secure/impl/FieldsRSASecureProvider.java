@@ -18,6 +18,7 @@ import org.sagacity.sqltoy.utils.StringUtil;
  * @description sqltoy 字段加解密接口RSA默认实现
  * @author zhongxuchen
  * @version v1.0,Date:2021-11-05
+ * @modify Date:2024-05-14 {Cipher非线程安全,改为每个线程独立的cipher;解密按字符集还原字符串}
  */
 public class FieldsRSASecureProvider implements FieldsSecureProvider {
 
@@ -39,14 +40,14 @@ public class FieldsRSASecureProvider implements FieldsSecureProvider {
 	private final static String ALGORITHM_RSA = "RSA";
 
 	/**
-	 * 加密cipher
+	 * 加密cipher(Cipher非线程安全,每个线程独立)
 	 */
-	private Cipher encryptCipher;
+	private ThreadLocal<Cipher> encryptCipher;
 
 	/**
 	 * 解密cipher
 	 */
-	private Cipher decryptCipher;
+	private ThreadLocal<Cipher> decryptCipher;
 
 	@Override
 	public void initialize(String charset, String privateKeyStr, String publicKeyStr) throws Exception {
@@ -57,13 +58,51 @@ public class FieldsRSASecureProvider implements FieldsSecureProvider {
 		KeyFactory keyFactory = KeyFactory.getInstance(ALGORITHM_RSA);
 		privateKey = (RSAPrivateKey) keyFactory.generatePrivate(getPrivateKeySpec(privateKeyStr));
 		publicKey = (RSAPublicKey) keyFactory.generatePublic(getPublicKeySpec(publicKeyStr));
+		// 校验密钥可用
+		createCipher(Cipher.ENCRYPT_MODE);
+		createCipher(Cipher.DECRYPT_MODE);
 		// 公钥加密
-		encryptCipher = Cipher.getInstance(ALGORITHM_RSA);
-		encryptCipher.init(Cipher.ENCRYPT_MODE, publicKey);
-
+		encryptCipher = ThreadLocal.withInitial(() -> createCipher(Cipher.ENCRYPT_MODE));
 		// 私钥解密
-		decryptCipher = Cipher.getInstance(ALGORITHM_RSA);
-		decryptCipher.init(Cipher.DECRYPT_MODE, privateKey);
+		decryptCipher = ThreadLocal.withInitial(() -> createCipher(Cipher.DECRYPT_MODE));
+	}
+
+	private Cipher createCipher(int mode) {
+		try {
+			Cipher cipher = Cipher.getInstance(ALGORITHM_RSA);
+			cipher.init(mode, (mode == Cipher.ENCRYPT_MODE) ? publicKey : privateKey);
+			return cipher;
+		} catch (Exception e) {
+			throw new IllegalStateException("RSA cipher 初始化失败:" + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @TODO 提供给信封加密:用公钥加密数据密钥
+	 * @param keyBytes
+	 * @return
+	 * @throws Exception
+	 */
+	protected byte[] encryptBytes(byte[] keyBytes) throws Exception {
+		return encryptCipher.get().doFinal(keyBytes);
+	}
+
+	/**
+	 * @TODO 提供给信封加密:用私钥解密数据密钥
+	 * @param secureBytes
+	 * @return
+	 * @throws Exception
+	 */
+	protected byte[] decryptBytes(byte[] secureBytes) throws Exception {
+		return decryptCipher.get().doFinal(secureBytes);
+	}
+
+	protected RSAPrivateKey getPrivateKey() {
+		return privateKey;
+	}
+
+	protected String getCharset() {
+		return CHARSET;
 	}
 
 	/**
@@ -111,7 +150,7 @@ public class FieldsRSASecureProvider implements FieldsSecureProvider {
 	@Override
 	public String encrypt(String contents) {
 		try {
-			byte[] result = encryptCipher.doFinal(contents.getBytes(CHARSET));
+			byte[] result = encryptCipher.get().doFinal(contents.getBytes(CHARSET));
 			return Base64.getEncoder().encodeToString(result);
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -122,8 +161,8 @@ public class FieldsRSASecureProvider implements FieldsSecureProvider {
 	@Override
 	public String decrypt(String secureContents) {
 		try {
-			byte[] result = decryptCipher.doFinal(Base64.getDecoder().decode(secureContents));
-			return new String(result);
+			byte[] result = decryptCipher.get().doFinal(Base64.getDecoder().decode(secureContents));
+			return new String(result, CHARSET);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,304 @@
+/**
+ *
+ */
+package org.sagacity.sqltoy.plugins.sharding;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.sagacity.sqltoy.utils.NumberUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 分库聚合(scatter-gather)查询的结果合并:解析sql最外层order by,将各分库已排序的结果进行k路归并
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-03
+ * @modify {Date:2024-06-01,分页查询没有可用的order by时直接报错,避免各分库结果任意拼接后分页}
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class ShardingScatterUtils {
+	/**
+	 * 定义日志
+	 */
+	protected final static Logger logger = LoggerFactory.getLogger(ShardingScatterUtils.class);
+
+	private ShardingScatterUtils() {
+	}
+
+	/**
+	 * @TODO 解析sql最外层的order by,并对应到查询结果的列
+	 * @param sql
+	 * @param labelNames
+	 * @return int[][]{列索引,是否降序(1:降序),null是否排最后(1:最后)},无order by返回空数组,无法对应到结果列返回null
+	 */
+	public static int[][] parseOrderBy(String sql, String[] labelNames) {
+		if (sql == null || labelNames == null) {
+			return null;
+		}
+		int orderIndex = getOuterOrderByIndex(sql);
+		if (orderIndex == -1) {
+			return new int[0][];
+		}
+		String orderBy = sql.substring(orderIndex);
+		// 排除order by 之后的分页、锁等语句
+		int endIndex = getOuterEndIndex(orderBy);
+		if (endIndex != -1) {
+			orderBy = orderBy.substring(0, endIndex);
+		}
+		List<String> items = splitOuterComma(orderBy);
+		int[][] result = new int[items.size()][];
+		String item;
+		String lowerItem;
+		boolean desc;
+		boolean nullsLast;
+		int colIndex;
+		for (int i = 0; i < items.size(); i++) {
+			item = items.get(i).trim();
+			lowerItem = item.toLowerCase();
+			desc = false;
+			nullsLast = false;
+			if (lowerItem.endsWith(" nulls last")) {
+				nullsLast = true;
+				item = item.substring(0, item.length() - 11).trim();
+			} else if (lowerItem.endsWith(" nulls first")) {
+				item = item.substring(0, item.length() - 12).trim();
+			}
+			lowerItem = item.toLowerCase();
+			if (lowerItem.endsWith(" desc")) {
+				desc = true;
+				item = item.substring(0, item.length() - 5).trim();
+			} else if (lowerItem.endsWith(" asc")) {
+				item = item.substring(0, item.length() - 4).trim();
+			}
+			colIndex = getColumnIndex(item, labelNames);
+			if (colIndex == -1) {
+				return null;
+			}
+			result[i] = new int[] { colIndex, desc ? 1 : 0, nullsLast ? 1 : 0 };
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 分页查询解析order by:各分库结果只有按确定的排序归并,每页数据才是稳定的,没有order by或无法对应到结果列的直接报错
+	 * @param sql
+	 * @param labelNames
+	 * @return
+	 */
+	public static int[][] parsePageOrderBy(String sql, String[] labelNames) {
+		int[][] orders = parseOrderBy(sql, labelNames);
+		if (orders == null || orders.length == 0) {
+			throw new IllegalArgumentException(
+					"分库聚合分页查询sql最外层必须有order by,且排序字段必须是查询结果中的列(可用别名或序号),否则分页结果不确定!");
+		}
+		return orders;
+	}
+
+	/**
+	 * @TODO 将各分库已经排好序的结果进行k路归并
+	 * @param shardRows 各分库的查询结果
+	 * @param orders    parseOrderBy的结果,为null或空数组则按分库顺序直接合并
+	 * @param limit     最多取多少条(<=0 表示全部)
+	 * @return
+	 */
+	public static List mergeSorted(List<List> shardRows, int[][] orders, long limit) {
+		int total = 0;
+		for (List rows : shardRows) {
+			if (rows != null) {
+				total += rows.size();
+			}
+		}
+		int size = (limit > 0 && limit < total) ? (int) limit : total;
+		List result = new ArrayList(size);
+		if (orders == null || orders.length == 0) {
+			for (List rows : shardRows) {
+				if (rows == null) {
+					continue;
+				}
+				for (Object row : rows) {
+					if (result.size() == size) {
+						return result;
+					}
+					result.add(row);
+				}
+			}
+			return result;
+		}
+		final Comparator<List> rowComparator = getComparator(orders);
+		// int[]{分库序号,行序号}
+		PriorityQueue<int[]> cursors = new PriorityQueue<int[]>(shardRows.size() + 1, (a, b) -> {
+			int compare = rowComparator.compare((List) shardRows.get(a[0]).get(a[1]),
+					(List) shardRows.get(b[0]).get(b[1]));
+			// 相等则按分库顺序,保证结果稳定
+			return (compare != 0) ? compare : Integer.compare(a[0], b[0]);
+		});
+		for (int i = 0; i < shardRows.size(); i++) {
+			if (shardRows.get(i) != null && !shardRows.get(i).isEmpty()) {
+				cursors.add(new int[] { i, 0 });
+			}
+		}
+		int[] cursor;
+		List rows;
+		while (result.size() < size && !cursors.isEmpty()) {
+			cursor = cursors.poll();
+			rows = shardRows.get(cursor[0]);
+			result.add(rows.get(cursor[1]));
+			if (cursor[1] + 1 < rows.size()) {
+				cursor[1] = cursor[1] + 1;
+				cursors.add(cursor);
+			}
+		}
+		return result;
+	}
+
+	private static Comparator<List> getComparator(final int[][] orders) {
+		return (row1, row2) -> {
+			int compare;
+			Object value1;
+			Object value2;
+			for (int[] order : orders) {
+				value1 = row1.get(order[0]);
+				value2 = row2.get(order[0]);
+				if (value1 == null || value2 == null) {
+					if (value1 == value2) {
+						continue;
+					}
+					// 默认null排前面,nulls last 排后面(不受desc影响)
+					compare = (value1 == null) ? -1 : 1;
+					return (order[2] == 1) ? -compare : compare;
+				}
+				compare = compareValue(value1, value2);
+				if (compare != 0) {
+					return (order[1] == 1) ? -compare : compare;
+				}
+			}
+			return 0;
+		};
+	}
+
+	private static int compareValue(Object value1, Object value2) {
+		if (value1 instanceof Number && value2 instanceof Number) {
+			if (value1.getClass() == value2.getClass() && value1 instanceof Comparable) {
+				return ((Comparable) value1).compareTo(value2);
+			}
+			return new BigDecimal(value1.toString()).compareTo(new BigDecimal(value2.toString()));
+		}
+		if (value1 instanceof Comparable && value1.getClass().isInstance(value2)) {
+			return ((Comparable) value1).compareTo(value2);
+		}
+		if (NumberUtil.isNumber(value1.toString()) && NumberUtil.isNumber(value2.toString())) {
+			return new BigDecimal(value1.toString()).compareTo(new BigDecimal(value2.toString()));
+		}
+		return value1.toString().compareTo(value2.toString());
+	}
+
+	/**
+	 * @TODO 排序字段对应查询结果的列(支持序号、别名、t.column 形式)
+	 * @param item
+	 * @param labelNames
+	 * @return
+	 */
+	private static int getColumnIndex(String item, String[] labelNames) {
+		if (item.matches("\\d+")) {
+			int index = Integer.parseInt(item) - 1;
+			return (index >= 0 && index < labelNames.length) ? index : -1;
+		}
+		String column = item;
+		int dotIndex = column.lastIndexOf(".");
+		if (dotIndex != -1) {
+			column = column.substring(dotIndex + 1);
+		}
+		column = column.replaceAll("[\\`\\\"\\[\\]]", "").trim();
+		// 表达式无法对应到结果列
+		if (!column.matches("\\w+")) {
+			return -1;
+		}
+		String humpColumn = column.replace("_", "");
+		for (int i = 0; i < labelNames.length; i++) {
+			if (labelNames[i].equalsIgnoreCase(column) || labelNames[i].replace("_", "").equalsIgnoreCase(humpColumn)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @TODO 获取最外层(不在括号和引号中)order by 中排序字段的开始位置
+	 * @param sql
+	 * @return
+	 */
+	private static int getOuterOrderByIndex(String sql) {
+		String lowerSql = sql.toLowerCase();
+		int depth = 0;
+		int result = -1;
+		char quote = 0;
+		char c;
+		for (int i = 0; i < lowerSql.length(); i++) {
+			c = lowerSql.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+				continue;
+			}
+			if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (depth == 0 && c == 'o' && lowerSql.startsWith("order", i)
+					&& (i == 0 || !Character.isLetterOrDigit(lowerSql.charAt(i - 1)))) {
+				int byIndex = i + 5;
+				while (byIndex < lowerSql.length() && Character.isWhitespace(lowerSql.charAt(byIndex))) {
+					byIndex++;
+				}
+				if (byIndex > i + 5 && lowerSql.startsWith("by", byIndex) && byIndex + 2 < lowerSql.length()
+						&& Character.isWhitespace(lowerSql.charAt(byIndex + 2))) {
+					result = byIndex + 2;
+				}
+			}
+		}
+		return result;
+	}
+
+	private static int getOuterEndIndex(String orderBy) {
+		String lowerSql = orderBy.toLowerCase();
+		String[] endWords = { " limit ", " offset ", " fetch ", " for ", " lock " };
+		int result = -1;
+		int index;
+		String realSql = lowerSql.replaceAll("\\s", " ").concat(" ");
+		for (String word : endWords) {
+			index = realSql.indexOf(word);
+			if (index != -1 && (result == -1 || index < result)) {
+				result = index;
+			}
+		}
+		return result;
+	}
+
+	private static List<String> splitOuterComma(String orderBy) {
+		List<String> result = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		char c;
+		for (int i = 0; i < orderBy.length(); i++) {
+			c = orderBy.charAt(i);
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				result.add(orderBy.substring(start, i));
+				start = i + 1;
+			}
+		}
+		result.add(orderBy.substring(start));
+		return result;
+	}
+}
@@ -3,6 +3,8 @@
  */
 package org.sagacity.sqltoy.plugins.sharding;
 
+import java.util.List;
+
 import org.sagacity.sqltoy.SqlToyContext;
 import org.sagacity.sqltoy.config.model.ShardingDBModel;
 import org.sagacity.sqltoy.model.IgnoreCaseLinkedMap;
@@ -12,6 +14,7 @@ import org.sagacity.sqltoy.model.IgnoreCaseLinkedMap;
  * @description sharding 策略接口
  * @author zhongxuchen
  * @version v1.0,Date:2015年3月17日
+ * @modify {Date:2024-05-03,增加getAllShardingDBs,支持没有分库条件时的分库聚合查询}
  */
 public interface ShardingStrategy {
 	/**
@@ -38,6 +41,19 @@ public interface ShardingStrategy {
 	public ShardingDBModel getShardingDB(SqlToyContext sqlToyContext, Class entityClass, String tableOrSql,
 			String decisionType, IgnoreCaseLinkedMap<String, Object> paramsMap);
 
+	/**
+	 * @TODO 获取策略对应的全部分库,用于没有分库条件时向全部分库发起查询再合并结果(scatter-gather)
+	 * @param sqlToyContext
+	 * @param entityClass
+	 * @param tableOrSql
+	 * @param decisionType
+	 * @return 返回null表示策略不支持分库聚合查询
+	 */
+	public default List<ShardingDBModel> getAllShardingDBs(SqlToyContext sqlToyContext, Class entityClass,
+			String tableOrSql, String decisionType) {
+		return null;
+	}
+
 	/**
 	 * @TODO 初始化
 	 */
@@ -38,6 +38,7 @@ import org.slf4j.LoggerFactory;
  * @author zhongxuchen
  * @version v1.0,Date:2014年12月7日
  * @modify Date:2016-9-7 {修复matchReplace方法,解决因表名大小写未匹配无法替换表名错误}
+ * @modify Date:2024-05-03 {增加getScatterDataSources,提供分库聚合查询的全部分库}
  */
 @SuppressWarnings("rawtypes")
 public class ShardingUtils {
@@ -261,6 +262,46 @@ public class ShardingUtils {
 		return shardingDataSource;
 	}
 
+	/**
+	 * @TODO 分库聚合查询(scatter-gather):获取分库策略对应的全部DataSource
+	 * @param sqlToyContext
+	 * @param sqlToyConfig
+	 * @param queryExecutor
+	 * @return 未设置shardingScatter或没有分库策略返回null
+	 */
+	public static List<DataSource> getScatterDataSources(SqlToyContext sqlToyContext, SqlToyConfig sqlToyConfig,
+			QueryExecutor queryExecutor) {
+		QueryExecutorExtend extend = queryExecutor.getInnerModel();
+		if (!extend.shardingScatter) {
+			return null;
+		}
+		ShardingStrategyConfig shardingConfig = sqlToyConfig.getDataSourceSharding();
+		if (null != extend.dbSharding) {
+			shardingConfig = extend.dbSharding;
+		}
+		if (shardingConfig == null) {
+			return null;
+		}
+		ShardingStrategy shardingStrategy = sqlToyContext.getShardingStrategy(shardingConfig.getStrategy());
+		List<ShardingDBModel> shardingDBs = (shardingStrategy == null) ? null
+				: shardingStrategy.getAllShardingDBs(sqlToyContext, null, sqlToyConfig.getId(),
+						shardingConfig.getDecisionType());
+		if (shardingDBs == null || shardingDBs.isEmpty()) {
+			throw new IllegalArgumentException("分库策略:" + shardingConfig.getStrategy()
+					+ " 没有实现getAllShardingDBs提供全部分库,无法进行分库聚合查询!");
+		}
+		List<DataSource> result = new ArrayList<DataSource>();
+		DataSource dataSource;
+		for (ShardingDBModel shardingDB : shardingDBs) {
+			dataSource = (shardingDB.getDataSource() != null) ? shardingDB.getDataSource()
+					: sqlToyContext.getDataSourceBean(shardingDB.getDataSourceName());
+			if (dataSource != null && !result.contains(dataSource)) {
+				result.add(dataSource);
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * @todo 根据数据获取sharding对应的DataSource
 	 * @param sqlToyContext
@@ -3,7 +3,10 @@
  */
 package org.sagacity.sqltoy.plugins.sharding.impl;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 import org.sagacity.sqltoy.SqlToyContext;
 import org.sagacity.sqltoy.config.model.ShardingDBModel;
@@ -80,6 +83,39 @@ public class HashShardingStrategy implements ShardingStrategy {
 		return shardingModel;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.sagacity.sqltoy.plugins.sharding.ShardingStrategy#getAllShardingDBs(org.
+	 * sagacity.sqltoy.SqlToyContext, java.lang.Class, java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public List<ShardingDBModel> getAllShardingDBs(SqlToyContext sqlToyContext, Class entityClass, String tableOrSql,
+			String decisionType) {
+		List<ShardingDBModel> result = new ArrayList<ShardingDBModel>();
+		if (dataSourceMode < 1) {
+			return result;
+		}
+		// 按取模值顺序,去除重复的数据源
+		LinkedHashSet<String> dataSourceNames = new LinkedHashSet<String>();
+		String dataSourceName;
+		for (int i = 0; i < dataSourceMode; i++) {
+			dataSourceName = dataSourceMap.get(Integer.toString(i));
+			if (dataSourceName != null) {
+				dataSourceNames.add(dataSourceName);
+			}
+		}
+		ShardingDBModel shardingModel;
+		for (String name : dataSourceNames) {
+			shardingModel = new ShardingDBModel();
+			shardingModel.setDataSourceName(name);
+			result.add(shardingModel);
+		}
+		return result;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -0,0 +1,120 @@
+/**
+ *
+ */
+package org.sagacity.sqltoy.plugins.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 按对数分桶的执行耗时直方图(单位微秒),每个2的幂区间再细分8个桶,相对误差约12.5%
+ *              <li>记录只做AtomicLongArray原子累加,不加锁,适合在每次sql执行结束时调用</li>
+ *              <li>全部桶共用一个long数组(约2.5KB),避免每个桶一个LongAdder在高并发下膨胀</li>
+ *              <li>分位值取所在桶的上界,结果偏保守</li>
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-08
+ * @modify {Date:2024-06-01,桶计数由LongAdder数组改为AtomicLongArray,降低每个统计sql的内存占用}
+ */
+public class LatencyHistogram {
+	/**
+	 * 每个2的幂区间细分的桶数量(2^3)
+	 */
+	private static final int SUB_BITS = 3;
+
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	/**
+	 * 最大可区分的数量级(2^40微秒约12.7天),超出的计入最后一个桶
+	 */
+	private static final int MAX_EXPONENT = 40;
+
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * @TODO 记录一次耗时
+	 * @param micros 耗时(微秒)
+	 */
+	public void record(long micros) {
+		buckets.incrementAndGet(getBucketIndex(micros));
+	}
+
+	/**
+	 * @TODO 获取各个桶的计数快照
+	 * @return
+	 */
+	public long[] getCounts() {
+		long[] result = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			result[i] = buckets.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 基于计数快照计算分位值
+	 * @param counts     getCounts()的结果
+	 * @param percentile 0-100,如:50、99、99.9
+	 * @return 分位值(微秒),无记录返回0
+	 */
+	public static long getPercentile(long[] counts, double percentile) {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile / 100d);
+		if (rank < 1) {
+			rank = 1;
+		}
+		long accumulate = 0;
+		for (int i = 0; i < counts.length; i++) {
+			accumulate += counts[i];
+			if (accumulate >= rank) {
+				return getBucketUpperBound(i);
+			}
+		}
+		return getBucketUpperBound(counts.length - 1);
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+	}
+
+	/**
+	 * @TODO 耗时对应的桶:小于8直接对应,其余按最高位所在的数量级和其后3位确定
+	 * @param micros
+	 * @return
+	 */
+	static int getBucketIndex(long micros) {
+		if (micros < SUB_COUNT) {
+			return (micros < 0) ? 0 : (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+		int sub = (int) ((micros >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1));
+		return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	/**
+	 * @TODO 桶的上界(含)
+	 * @param index
+	 * @return
+	 */
+	static long getBucketUpperBound(int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		int exponent = index / SUB_COUNT + SUB_BITS - 1;
+		int sub = index % SUB_COUNT;
+		long lower = (long) (SUB_COUNT + sub) << (exponent - SUB_BITS);
+		return lower + (1L << (exponent - SUB_BITS)) - 1;
+	}
+}
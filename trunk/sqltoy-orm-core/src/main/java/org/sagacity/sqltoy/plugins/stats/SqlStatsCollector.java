@@ -0,0 +1,345 @@
+/**
+ *
+ */
+package org.sagacity.sqltoy.plugins.stats;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.sagacity.sqltoy.SqlToyConstants;
+import org.sagacity.sqltoy.config.model.SqlExecuteTrace;
+import org.sagacity.sqltoy.model.BoundedCache;
+import org.sagacity.sqltoy.model.CacheStats;
+import org.sagacity.sqltoy.model.SqlStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 按sqlId和执行类型统计每次sql执行的耗时分布(p50/p99/p999)、记录数量、错误次数和连接等待时长
+ *              <li>由SqlExecuteStat.destroy在每次执行结束时调用,全部采用LongAdder累加,执行过程不加锁</li>
+ *              <li>统计的sql数量超过上限后,新的sql统一归入[others]</li>
+ *              <li>代码中直接写的sql(无sqlId)以规整后的sql作为标识:常量替换为?,in (?,?...)合并为in (?)</li>
+ *              <li>默认不开启,通过sqltoy.sql.stats.enabled=true开启</li>
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-08
+ * @modify {Date:2024-06-01,无sqlId的sql按规整后的sql统计,避免拼接常量的sql各自占用一个统计;游标查询补充记录数}
+ */
+public class SqlStatsCollector implements SqlStatsMXBean {
+	/**
+	 * 定义日志
+	 */
+	protected final static Logger logger = LoggerFactory.getLogger(SqlStatsCollector.class);
+
+	/**
+	 * 超过统计数量上限的sql归集的key
+	 */
+	public static final String OTHERS_KEY = "[others]";
+
+	/**
+	 * 代码中直接写的sql取sql语句作为id时的最大长度
+	 */
+	private static final int MAX_SQL_ID_LENGTH = 500;
+
+	private final ConcurrentHashMap<String, Recorder> recorders = new ConcurrentHashMap<String, Recorder>();
+
+	private final int maxKeys;
+
+	private ObjectName objectName;
+
+	public SqlStatsCollector() {
+		this(SqlToyConstants.getSqlStatsMaxKeys());
+	}
+
+	/**
+	 * @param maxKeys 最多统计的sql(sqlId+执行类型)数量
+	 */
+	public SqlStatsCollector(int maxKeys) {
+		this.maxKeys = maxKeys;
+	}
+
+	/**
+	 * @TODO 登记sql执行日志中的统计信息
+	 * @param sqlTrace
+	 */
+	public void record(SqlExecuteTrace sqlTrace) {
+		if (sqlTrace == null) {
+			return;
+		}
+		String id = sqlTrace.getId();
+		// 代码中直接写的sql没有sqlId,以第一条执行的sql规整后作为标识
+		if (id == null && sqlTrace.getFirstSql() != null) {
+			id = normalizeSql(sqlTrace.getFirstSql());
+		}
+		record(id, sqlTrace.getType(), sqlTrace.getExecuteNanos(), sqlTrace.getRowCount(), sqlTrace.isError(),
+				sqlTrace.getConnectionWaitNanos());
+	}
+
+	/**
+	 * @TODO 登记一次sql执行
+	 * @param id                  sqlId
+	 * @param type                执行类型
+	 * @param executeNanos        执行耗时(纳秒)
+	 * @param rowCount            查询或影响的记录数量
+	 * @param error               是否发生错误
+	 * @param connectionWaitNanos 获取连接的等待时长(纳秒)
+	 */
+	public void record(String id, String type, long executeNanos, long rowCount, boolean error,
+			long connectionWaitNanos) {
+		String key = (id == null ? "" : id).concat("\u0001").concat(type == null ? "" : type);
+		Recorder recorder = recorders.get(key);
+		if (recorder == null) {
+			if (recorders.size() >= maxKeys) {
+				key = OTHERS_KEY.concat("\u0001").concat(type == null ? "" : type);
+				recorder = recorders.computeIfAbsent(key, (k) -> new Recorder(OTHERS_KEY, type));
+			} else {
+				recorder = recorders.computeIfAbsent(key, (k) -> new Recorder(id, type));
+			}
+		}
+		recorder.record(executeNanos, rowCount, error, connectionWaitNanos);
+	}
+
+	/**
+	 * @TODO 补充登记记录数量(如游标查询在执行结束后才逐步获取记录),不计入执行次数
+	 * @param id
+	 * @param type
+	 * @param rowCount
+	 */
+	public void addRowCount(String id, String type, long rowCount) {
+		if (rowCount <= 0) {
+			return;
+		}
+		Recorder recorder = recorders.get((id == null ? "" : id).concat("\u0001").concat(type == null ? "" : type));
+		if (recorder == null) {
+			recorder = recorders.get(OTHERS_KEY.concat("\u0001").concat(type == null ? "" : type));
+		}
+		if (recorder != null) {
+			recorder.rowCount.add(rowCount);
+		}
+	}
+
+	/**
+	 * @TODO 规整sql作为统计标识:字符和数字常量替换为?,in (?,?,?)合并为(?),连续空白合并为一个空格
+	 * @param sql
+	 * @return
+	 */
+	public static String normalizeSql(String sql) {
+		if (sql == null) {
+			return null;
+		}
+		StringBuilder result = new StringBuilder(Math.min(sql.length(), MAX_SQL_ID_LENGTH + 16));
+		int length = sql.length();
+		char c;
+		char pre = ' ';
+		int i = 0;
+		while (i < length && result.length() < MAX_SQL_ID_LENGTH) {
+			c = sql.charAt(i);
+			// 字符常量('' 为转义)
+			if (c == '\'') {
+				i++;
+				while (i < length) {
+					if (sql.charAt(i) == '\'') {
+						if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+							i += 2;
+							continue;
+						}
+						break;
+					}
+					i++;
+				}
+				i++;
+				c = '?';
+			} // 数字常量(不是字段名称的一部分)
+			else if (Character.isDigit(c) && !(Character.isLetterOrDigit(pre) || pre == '_' || pre == '.')) {
+				while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+					i++;
+				}
+				c = '?';
+			} else {
+				i++;
+				if (Character.isWhitespace(c)) {
+					if (pre == ' ') {
+						continue;
+					}
+					c = ' ';
+				}
+			}
+			// ?,? 合并
+			if (c == '?' && result.length() > 1 && result.charAt(result.length() - 1) == ','
+					&& result.charAt(result.length() - 2) == '?') {
+				result.setLength(result.length() - 1);
+				pre = '?';
+				continue;
+			}
+			if (c == ',' && pre == ' ' && result.length() > 1 && result.charAt(result.length() - 2) == '?') {
+				result.setLength(result.length() - 1);
+			} else if (c == ' ' && pre == ',' && result.length() > 1 && result.charAt(result.length() - 2) == '?') {
+				continue;
+			}
+			result.append(c);
+			pre = c;
+		}
+		return result.toString().trim();
+	}
+
+	@Override
+	public int getSqlCount() {
+		return recorders.size();
+	}
+
+	@Override
+	public List<SqlStats> getSnapshots() {
+		List<SqlStats> result = new ArrayList<SqlStats>(recorders.size());
+		for (Recorder recorder : recorders.values()) {
+			result.add(recorder.snapshot());
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 获取单个sql的执行统计快照
+	 * @param id
+	 * @param type
+	 * @return
+	 */
+	public SqlStats getSnapshot(String id, String type) {
+		Recorder recorder = recorders.get((id == null ? "" : id).concat("\u0001").concat(type == null ? "" : type));
+		return (recorder == null) ? null : recorder.snapshot();
+	}
+
+	@Override
+	public List<SqlStats> getSlowest(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("取最慢sql:size 参数必须>=1,如果要获取全部，可使用:Integer.MAX_VALUE");
+		}
+		List<SqlStats> result = getSnapshots();
+		// 按照p99耗时从大到小排序
+		Collections.sort(result, (o1, o2) -> Double.compare(o2.getP99(), o1.getP99()));
+		if (size >= result.size()) {
+			return result;
+		}
+		return new ArrayList<SqlStats>(result.subList(0, size));
+	}
+
+	@Override
+	public List<CacheStats> getCacheStats() {
+		return BoundedCache.getAllStats();
+	}
+
+	@Override
+	public void reset() {
+		recorders.clear();
+	}
+
+	/**
+	 * @TODO 注册JMX
+	 * @param name 区分多个SqlToyContext,可以为null
+	 */
+	public synchronized void registerMBean(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objName = new ObjectName("org.sagacity.sqltoy:type=SqlStats"
+					+ ((name == null || "".equals(name.trim())) ? "" : ",name=" + ObjectName.quote(name)));
+			if (server.isRegistered(objName)) {
+				server.unregisterMBean(objName);
+			}
+			server.registerMBean(this, objName);
+			this.objectName = objName;
+		} catch (Exception e) {
+			logger.warn("注册sql执行统计JMX失败:{}", e.getMessage());
+		}
+	}
+
+	public synchronized void unregisterMBean() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (Exception e) {
+			logger.warn("注销sql执行统计JMX失败:{}", e.getMessage());
+		}
+		objectName = null;
+	}
+
+	/**
+	 * 单个sql(sqlId+执行类型)的统计,全部为无锁累加
+	 */
+	private static class Recorder {
+		private final String id;
+
+		private final String type;
+
+		private final LongAdder executeCount = new LongAdder();
+
+		private final LongAdder errorCount = new LongAdder();
+
+		private final LongAdder rowCount = new LongAdder();
+
+		private final LongAdder totalMicros = new LongAdder();
+
+		private final LongAdder connectionWaitMicros = new LongAdder();
+
+		private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+		private final LatencyHistogram histogram = new LatencyHistogram();
+
+		Recorder(String id, String type) {
+			this.id = id;
+			this.type = type;
+		}
+
+		void record(long executeNanos, long rows, boolean error, long connectionWaitNanos) {
+			long micros = TimeUnit.NANOSECONDS.toMicros(executeNanos);
+			executeCount.increment();
+			if (error) {
+				errorCount.increment();
+			}
+			if (rows > 0) {
+				rowCount.add(rows);
+			}
+			totalMicros.add(micros);
+			if (connectionWaitNanos > 0) {
+				connectionWaitMicros.add(TimeUnit.NANOSECONDS.toMicros(connectionWaitNanos));
+			}
+			maxMicros.accumulate(micros);
+			histogram.record(micros);
+		}
+
+		SqlStats snapshot() {
+			SqlStats result = new SqlStats();
+			result.setId(id);
+			result.setType(type);
+			long count = executeCount.sum();
+			result.setExecuteCount(count);
+			result.setErrorCount(errorCount.sum());
+			result.setRowCount(rowCount.sum());
+			if (count > 0) {
+				result.setAveTakeTime(toMillis(totalMicros.sum() / (double) count));
+				result.setAveConnectionWaitTime(toMillis(connectionWaitMicros.sum() / (double) count));
+			}
+			result.setMaxTakeTime(toMillis(maxMicros.get()));
+			long[] counts = histogram.getCounts();
+			result.setP50(toMillis(LatencyHistogram.getPercentile(counts, 50)));
+			result.setP99(toMillis(LatencyHistogram.getPercentile(counts, 99)));
+			result.setP999(toMillis(LatencyHistogram.getPercentile(counts, 99.9)));
+			return result;
+		}
+
+		private static double toMillis(double micros) {
+			return Math.round(micros) / 1000d;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package org.sagacity.sqltoy.plugins.stats;
+
+import java.util.List;
+
+import org.sagacity.sqltoy.model.CacheStats;
+import org.sagacity.sqltoy.model.SqlStats;
+
+/**
+ * @project sagacity-sqltoy
+ * @description sql执行统计的JMX输出接口
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-08
+ */
+public interface SqlStatsMXBean {
+	/**
+	 * @TODO 统计的sql(sqlId+执行类型)数量
+	 * @return
+	 */
+	public int getSqlCount();
+
+	/**
+	 * @TODO 全部sql执行统计快照
+	 * @return
+	 */
+	public List<SqlStats> getSnapshots();
+
+	/**
+	 * @TODO 按p99耗时取最慢的sql
+	 * @param size
+	 * @return
+	 */
+	public List<SqlStats> getSlowest(int size);
+
+	/**
+	 * @TODO 框架内部有界缓存(sql解析计划、代码中的sql、反射方法等)的命中、未命中、淘汰统计
+	 * @return
+	 */
+	public List<CacheStats> getCacheStats();
+
+	/**
+	 * @TODO 清空统计
+	 */
+	public void reset();
+}
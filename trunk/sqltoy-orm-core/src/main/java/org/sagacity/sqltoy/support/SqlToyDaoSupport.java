@@ -14,10 +14,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
@@ -68,6 +65,7 @@ import org.sagacity.sqltoy.model.ParallQueryResult;
 import org.sagacity.sqltoy.model.ParallelConfig;
 import org.sagacity.sqltoy.model.QueryExecutor;
 import org.sagacity.sqltoy.model.QueryResult;
+import org.sagacity.sqltoy.model.ResultCursor;
 import org.sagacity.sqltoy.model.SaveMode;
 import org.sagacity.sqltoy.model.StoreResult;
 import org.sagacity.sqltoy.model.TableMeta;
@@ -83,6 +81,7 @@ import org.sagacity.sqltoy.plugins.IUnifyFieldsHandler;
 import org.sagacity.sqltoy.plugins.UnifyUpdateFieldsController;
 import org.sagacity.sqltoy.plugins.datasource.DataSourceSelector;
 import org.sagacity.sqltoy.plugins.id.IdGenerator;
+import org.sagacity.sqltoy.translate.CacheMatchIndex;
 import org.sagacity.sqltoy.translate.TranslateHandler;
 import org.sagacity.sqltoy.translate.model.TranslateConfigModel;
 import org.sagacity.sqltoy.utils.BeanUtil;
@@ -120,6 +119,10 @@ import org.slf4j.LoggerFactory;
  *         {剔除linkDaoSupport、BaseDaoSupport,将link功能放入SqlToyDaoSupport}
  * @modify Date:2021-12-23 {优化updateByQuery支持set field=field+1依据字段值进行计算的模式}
  * @modify Date:2023-08-06 {增加executeMoreResultStore存储过程支持多结果返回}
+ * @modify Date:2024-04-30 {parallQuery改为使用SqlToyContext共享的并行执行器}
+ * @modify Date:2024-05-06 {分页Page模型中设置keyset排序键则进行keyset(seek)分页,跳过count查询}
+ * @modify Date:2024-05-20 {增加stream拉取式流查询,返回可关闭的Stream}
+ * @modify Date:2024-05-23 {cacheMatchKeys对配置了match-index的缓存通过倒排索引获取候选记录}
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class SqlToyDaoSupport {
@@ -827,6 +830,20 @@ public class SqlToyDaoSupport {
 				getDataSource(queryExecutor.getInnerModel().dataSource, sqlToyConfig));
 	}
 
+	/**
+	 * @TODO 以拉取模式流式获取查询结果,返回的Stream关闭时释放数据库连接(需在try-with-resources中使用)
+	 * @param <T>
+	 * @param queryExecutor 可通过fetchSize设置每次从数据库提取的数量,prefetch设置后台预读数量
+	 * @return
+	 */
+	protected <T> Stream<T> stream(final QueryExecutor queryExecutor) {
+		SqlToyConfig sqlToyConfig = sqlToyContext.getSqlToyConfig(queryExecutor, SqlType.search,
+				getDialect(queryExecutor.getInnerModel().dataSource));
+		ResultCursor<T> cursor = dialectFactory.openCursor(sqlToyContext, queryExecutor, sqlToyConfig,
+				getDataSource(queryExecutor.getInnerModel().dataSource, sqlToyConfig));
+		return cursor.stream();
+	}
+
 	/**
 	 * @todo 以QueryExecutor 封装sql、参数等条件，实现分页查询
 	 * @param page
@@ -849,8 +866,13 @@ public class SqlToyDaoSupport {
 			}
 		}
 		QueryResult result;
-		// 跳过查询总记录数量
-		if (page.getSkipQueryCount() != null && page.getSkipQueryCount()) {
+		// keyset分页(不查询总记录数)
+		if (page.getKeysetColumns() != null) {
+			result = dialectFactory.findKeysetPage(sqlToyContext, queryExecutor, sqlToyConfig, page.getKeysetColumns(),
+					Boolean.TRUE.equals(page.getKeysetDesc()), page.getKeysetValues(), page.getPageSize(),
+					getDataSource(queryExecutor.getInnerModel().dataSource, sqlToyConfig));
+		} // 跳过查询总记录数量
+		else if (page.getSkipQueryCount() != null && page.getSkipQueryCount()) {
 			result = dialectFactory.findSkipTotalCountPage(sqlToyContext, queryExecutor, sqlToyConfig, page.getPageNo(),
 					page.getPageSize(), getDataSource(queryExecutor.getInnerModel().dataSource, sqlToyConfig));
 		} else {
@@ -1641,10 +1663,15 @@ public class SqlToyDaoSupport {
 		boolean priorMatchEqual = extendArgs.priorMatchEqual;
 		boolean hasFilter = (extendArgs.cacheFilter == null) ? false : true;
 		boolean include = true;
+		// 配置了match-index的缓存通过倒排索引获取候选记录,避免全量扫描
+		CacheMatchIndex matchIndex = sqlToyContext.getTranslateManager().getMatchIndex(extendArgs.cacheName,
+				extendArgs.cacheType, cacheDatas, cacheKeyIndex, nameIndexes);
 		// 优先匹配名称相同,名称相同直接剔除掉对比参数不再进行后续匹配
 		if (priorMatchEqual) {
 			String keyLow;
-			for (Object[] row : cacheDatas.values()) {
+			Collection<Object[]> rows = (matchIndex == null) ? cacheDatas.values()
+					: matchIndex.equalCandidates(matchLowAry);
+			for (Object[] row : rows) {
 				keyCode = row[cacheKeyIndex].toString();
 				include = true;
 				if (hasFilter) {
@@ -1687,7 +1714,9 @@ public class SqlToyDaoSupport {
 			for (int i = 0; i < likeArgSize; i++) {
 				paramsMatchWords.add(matchLowAry.get(i).split("\\s+"));
 			}
-			for (Object[] row : cacheDatas.values()) {
+			Collection<Object[]> rows = (matchIndex == null) ? cacheDatas.values()
+					: matchIndex.likeCandidates(paramsMatchWords);
+			for (Object[] row : rows) {
 				keyCode = row[cacheKeyIndex].toString();
 				include = true;
 				// 已经存在无需再比较
@@ -2040,8 +2069,13 @@ public class SqlToyDaoSupport {
 			}
 			return result;
 		} else {
-			// 跳过总记录数形式的分页
-			if (page.getSkipQueryCount()) {
+			// keyset分页
+			if (page.getKeysetColumns() != null) {
+				result = dialectFactory.findKeysetPage(sqlToyContext, queryExecutor, sqlToyConfig,
+						page.getKeysetColumns(), Boolean.TRUE.equals(page.getKeysetDesc()), page.getKeysetValues(),
+						page.getPageSize(), realDataSource).getPageResult();
+			} // 跳过总记录数形式的分页
+			else if (page.getSkipQueryCount()) {
 				result = dialectFactory.findSkipTotalCountPage(sqlToyContext, queryExecutor, sqlToyConfig,
 						page.getPageNo(), page.getPageSize(), realDataSource).getPageResult();
 			} else {
@@ -2409,44 +2443,35 @@ public class SqlToyDaoSupport {
 		if (parallConfig.getMaxThreads() == null) {
 			parallConfig.maxThreads(10);
 		}
-		int thread = parallConfig.getMaxThreads();
-		if (parallQueryList.size() < thread) {
-			thread = parallQueryList.size();
-		}
 		List<QueryResult<T>> results = new ArrayList<QueryResult<T>>();
-		ExecutorService pool = null;
 		try {
-			pool = Executors.newFixedThreadPool(thread);
-			List<Future<ParallQueryResult>> futureResult = new ArrayList<Future<ParallQueryResult>>();
+			List<ParallQueryExecutor> tasks = new ArrayList<ParallQueryExecutor>();
+			List<DataSource> dataSources = new ArrayList<DataSource>();
 			SqlToyConfig sqlToyConfig;
-			Future<ParallQueryResult> future;
+			DataSource dataSource;
 			for (ParallQuery query : parallQueryList) {
 				sqlToyConfig = sqlToyContext.getSqlToyConfig(
 						new QueryExecutor(query.getExtend().sql).resultType(query.getExtend().resultType),
 						SqlType.search, getDialect(query.getExtend().dataSource));
+				dataSource = getDataSource(query.getExtend().dataSource, sqlToyConfig);
 				// 自定义条件参数
 				if (query.getExtend().selfCondition) {
-					future = pool.submit(new ParallQueryExecutor(sqlToyContext, dialectFactory, sqlToyConfig, query,
-							query.getExtend().names, query.getExtend().values,
-							getDataSource(query.getExtend().dataSource, sqlToyConfig)));
+					tasks.add(new ParallQueryExecutor(sqlToyContext, dialectFactory, sqlToyConfig, query,
+							query.getExtend().names, query.getExtend().values, dataSource));
 				} else {
-					future = pool.submit(new ParallQueryExecutor(sqlToyContext, dialectFactory, sqlToyConfig, query,
-							paramNames, paramValues, getDataSource(query.getExtend().dataSource, sqlToyConfig)));
+					tasks.add(new ParallQueryExecutor(sqlToyContext, dialectFactory, sqlToyConfig, query, paramNames,
+							paramValues, dataSource));
 				}
-				futureResult.add(future);
+				dataSources.add(dataSource);
 			}
-			pool.shutdown();
-			// 设置最大等待时长
-			if (parallConfig.getMaxWaitSeconds() != null) {
-				pool.awaitTermination(parallConfig.getMaxWaitSeconds(), TimeUnit.SECONDS);
-			} else {
-				pool.awaitTermination(SqlToyConstants.PARALLEL_MAXWAIT_SECONDS, TimeUnit.SECONDS);
-			}
-			ParallQueryResult item;
+			// 由共享的并行执行器执行,maxThreads作为本次调用的并发数量,超时则取消未完成的查询
+			List<ParallQueryResult> queryResults = sqlToyContext.getParallelExecutor().invokeAll(tasks, dataSources,
+					parallConfig.getMaxThreads(), (parallConfig.getMaxWaitSeconds() != null)
+							? parallConfig.getMaxWaitSeconds()
+							: SqlToyConstants.PARALLEL_MAXWAIT_SECONDS);
 			int index = 0;
-			for (Future<ParallQueryResult> result : futureResult) {
+			for (ParallQueryResult item : queryResults) {
 				index++;
-				item = result.get();
 				// 存在执行异常则整体抛出
 				if (item != null && !item.isSuccess()) {
 					throw new DataAccessException("第:{} 个sql执行异常:{}!", index, item.getMessage());
@@ -2456,10 +2481,6 @@ public class SqlToyDaoSupport {
 		} catch (Exception e) {
 			e.printStackTrace();
 			throw new DataAccessException("并行查询执行错误:" + e.getMessage(), e);
-		} finally {
-			if (pool != null) {
-				pool.shutdownNow();
-			}
 		}
 		return results;
 	}
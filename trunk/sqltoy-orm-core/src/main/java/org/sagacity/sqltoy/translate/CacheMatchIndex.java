@@ -0,0 +1,261 @@
+package org.sagacity.sqltoy.translate;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 缓存反向名称匹配(cacheMatchKeys、cache-arg)的倒排索引,避免每次全量扫描缓存
+ *              <li>精确索引:key列和名称列的小写值 对应 记录</li>
+ *              <li>模糊索引:名称列小写值的单字和双字(n-gram) 对应 记录,查询时求交集得到候选记录</li>
+ *              <li>候选记录保持缓存原有遍历顺序,调用方对候选记录按原逻辑再做一次精确比较,结果与全量扫描一致</li>
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-23
+ * @modify {Date:2024-06-01,缓存增量更新后只标记索引失效,下次使用时再重建}
+ */
+public class CacheMatchIndex {
+	private final static int[] EMPTY = new int[0];
+
+	/**
+	 * 建立索引时的缓存数据(用于判断缓存是否已经被替换)
+	 */
+	private final HashMap<String, Object[]> cacheData;
+
+	private final int cacheSize;
+
+	/**
+	 * 缓存数据被增量修改后标记为失效
+	 */
+	private volatile boolean stale = false;
+
+	private final int keyIndex;
+
+	private final int[] matchIndexes;
+
+	/**
+	 * 按缓存遍历顺序排列的记录
+	 */
+	private final Object[][] rows;
+
+	/**
+	 * key、名称小写值 对应 记录序号
+	 */
+	private final Map<String, int[]> equalIndex;
+
+	/**
+	 * 名称小写值的单字、双字 对应 记录序号(升序)
+	 */
+	private final Map<String, int[]> gramIndex;
+
+	/**
+	 * @param cacheData
+	 * @param keyIndex     缓存key所在列
+	 * @param matchIndexes 名称匹配的列
+	 */
+	public CacheMatchIndex(HashMap<String, Object[]> cacheData, int keyIndex, int[] matchIndexes) {
+		this.cacheData = cacheData;
+		this.cacheSize = cacheData.size();
+		this.keyIndex = keyIndex;
+		this.matchIndexes = matchIndexes;
+		this.rows = cacheData.values().toArray(new Object[cacheSize][]);
+		Map<String, IntBuffer> equalMap = new HashMap<String, IntBuffer>();
+		Map<String, IntBuffer> gramMap = new HashMap<String, IntBuffer>();
+		Object[] row;
+		Object value;
+		String lowValue;
+		for (int i = 0; i < rows.length; i++) {
+			row = rows[i];
+			value = row[keyIndex];
+			if (value != null) {
+				add(equalMap, value.toString().toLowerCase(), i);
+			}
+			for (int index : matchIndexes) {
+				value = row[index];
+				if (value != null) {
+					lowValue = value.toString().toLowerCase();
+					add(equalMap, lowValue, i);
+					for (int j = 0, len = lowValue.length(); j < len; j++) {
+						add(gramMap, lowValue.substring(j, j + 1), i);
+						if (j + 1 < len) {
+							add(gramMap, lowValue.substring(j, j + 2), i);
+						}
+					}
+				}
+			}
+		}
+		this.equalIndex = compact(equalMap);
+		this.gramIndex = compact(gramMap);
+	}
+
+	/**
+	 * @TODO 索引是否是基于当前缓存数据建立的
+	 * @param cacheData
+	 * @return
+	 */
+	public boolean isValid(HashMap<String, Object[]> cacheData) {
+		return !stale && this.cacheData == cacheData && cacheData.size() == cacheSize;
+	}
+
+	/**
+	 * @TODO 缓存数据被增量修改,索引失效(由下次获取索引时重建)
+	 */
+	public void markStale() {
+		this.stale = true;
+	}
+
+	public int getKeyIndex() {
+		return keyIndex;
+	}
+
+	public int[] getMatchIndexes() {
+		return matchIndexes;
+	}
+
+	/**
+	 * @TODO 获取key或名称与匹配参数相等的候选记录(保持缓存遍历顺序)
+	 * @param matchLowAry 已经转小写的匹配参数
+	 * @return
+	 */
+	public List<Object[]> equalCandidates(Collection<String> matchLowAry) {
+		BitSet candidates = new BitSet(rows.length);
+		int[] rowIds;
+		for (String matchStr : matchLowAry) {
+			rowIds = equalIndex.get(matchStr);
+			if (rowIds != null) {
+				for (int rowId : rowIds) {
+					candidates.set(rowId);
+				}
+			}
+		}
+		return toRows(candidates);
+	}
+
+	/**
+	 * @TODO 获取名称可能like匹配的候选记录(保持缓存遍历顺序)
+	 * @param paramsMatchWords 每个匹配参数切割后的分词(已转小写)
+	 * @return
+	 */
+	public List<Object[]> likeCandidates(List<String[]> paramsMatchWords) {
+		BitSet candidates = new BitSet(rows.length);
+		int[] rowIds;
+		for (String[] matchWords : paramsMatchWords) {
+			rowIds = intersect(matchWords);
+			// null 表示分词都为空,全部记录都是候选
+			if (rowIds == null) {
+				candidates.set(0, rows.length);
+				break;
+			}
+			for (int rowId : rowIds) {
+				candidates.set(rowId);
+			}
+		}
+		return toRows(candidates);
+	}
+
+	/**
+	 * @TODO 所有分词的n-gram对应记录的交集
+	 * @param matchWords
+	 * @return 分词都为空返回null
+	 */
+	private int[] intersect(String[] matchWords) {
+		int[] result = null;
+		int[] rowIds;
+		for (String word : matchWords) {
+			for (int j = 0, len = word.length(); j < len; j++) {
+				// 单字只在分词长度为1时使用,其余用双字
+				if (len == 1) {
+					rowIds = gramIndex.get(word);
+				} else if (j + 1 < len) {
+					rowIds = gramIndex.get(word.substring(j, j + 2));
+				} else {
+					break;
+				}
+				if (rowIds == null) {
+					return EMPTY;
+				}
+				result = (result == null) ? rowIds : intersect(result, rowIds);
+				if (result.length == 0) {
+					return EMPTY;
+				}
+			}
+		}
+		return result;
+	}
+
+	private static int[] intersect(int[] source, int[] target) {
+		int[] result = new int[Math.min(source.length, target.length)];
+		int size = 0;
+		for (int i = 0, j = 0; i < source.length && j < target.length;) {
+			if (source[i] == target[j]) {
+				result[size++] = source[i];
+				i++;
+				j++;
+			} else if (source[i] < target[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return (size == result.length) ? result : Arrays.copyOf(result, size);
+	}
+
+	private List<Object[]> toRows(final BitSet candidates) {
+		final int[] rowIds = candidates.stream().toArray();
+		return new AbstractList<Object[]>() {
+			@Override
+			public Object[] get(int index) {
+				return rows[rowIds[index]];
+			}
+
+			@Override
+			public int size() {
+				return rowIds.length;
+			}
+		};
+	}
+
+	private static void add(Map<String, IntBuffer> indexMap, String key, int rowId) {
+		IntBuffer buffer = indexMap.get(key);
+		if (buffer == null) {
+			buffer = new IntBuffer();
+			indexMap.put(key, buffer);
+		}
+		buffer.add(rowId);
+	}
+
+	private static Map<String, int[]> compact(Map<String, IntBuffer> indexMap) {
+		Map<String, int[]> result = new HashMap<String, int[]>(indexMap.size() * 4 / 3 + 1);
+		for (Map.Entry<String, IntBuffer> entry : indexMap.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().toArray());
+		}
+		return result;
+	}
+
+	/**
+	 * 升序且去重的记录序号集合
+	 */
+	private static class IntBuffer {
+		private int[] values = new int[2];
+		private int size = 0;
+
+		void add(int value) {
+			// 记录按顺序写入,同一记录多次出现只保留一次
+			if (size > 0 && values[size - 1] == value) {
+				return;
+			}
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
@@ -2,7 +2,9 @@ package org.sagacity.sqltoy.translate;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -26,6 +28,9 @@ import org.slf4j.LoggerFactory;
  * @modify {Date:2019-1-22,修改检测时间格式为yyyy-MM-dd HH:mm:ss 避免时间对比精度差异}
  * @modify {Date:2019-10-14,增加集群节点的时间差异参数,便于包容性检测缓存更新}
  * @modify {Date:2020-3-26,增加缓存增量更新机制,而不是清除缓存}
+ * @modify {Date:2024-04-25,增量更新统一通过TranslateCacheManager.putCacheValues写入,适配按key存储的缓存}
+ * @modify {Date:2024-05-23,增量更新后重建缓存名称匹配的倒排索引}
+ * @modify {Date:2024-06-01,增量更新后倒排索引只标记失效,不再每次全量重建}
  */
 public class CacheUpdateWatcher extends Thread {
 	/**
@@ -208,32 +213,32 @@ public class CacheUpdateWatcher extends Thread {
 				return;
 			}
 			logger.debug("检测到缓存cacheName:{} 发生:{} 条记录更新!", cacheName, results.size());
-			HashMap<String, Object[]> cacheData;
 			int count = 0;
 			try {
-				// 内部不存在分组的缓存
-				if (!checkerConfig.isHasInsideGroup()) {
-					cacheData = translateCacheManager.getCache(cacheName, null);
-					if (cacheData != null) {
-						for (CacheCheckResult result : results) {
-							// key不能为null
-							if (result.getItem() != null && result.getItem()[0] != null) {
-								cacheData.put(result.getItem()[0].toString(), result.getItem());
-								count++;
-							}
+				// 按cacheType分组后通过缓存管理器增量写入(按key存储的缓存不能直接修改获取的缓存对象)
+				LinkedHashMap<String, HashMap<String, Object[]>> groupDatas = new LinkedHashMap<String, HashMap<String, Object[]>>();
+				String cacheType;
+				HashMap<String, Object[]> cacheData;
+				for (CacheCheckResult result : results) {
+					// key不能为null
+					if (result.getItem() != null && result.getItem()[0] != null) {
+						// 内部不存在分组的缓存cacheType为null(内部存在分组的缓存如数据字典)
+						cacheType = checkerConfig.isHasInsideGroup() ? result.getCacheType() : null;
+						cacheData = groupDatas.get(cacheType);
+						if (cacheData == null) {
+							cacheData = new HashMap<String, Object[]>();
+							groupDatas.put(cacheType, cacheData);
 						}
+						cacheData.put(result.getItem()[0].toString(), result.getItem());
 					}
-				} // 内部存在分组的缓存(如数据字典)
-				else {
-					for (CacheCheckResult result : results) {
-						if (result.getItem() != null && result.getItem()[0] != null) {
-							cacheData = translateCacheManager.getCache(cacheName, result.getCacheType());
-							// 为null则等待首次调用加载
-							if (cacheData != null) {
-								cacheData.put(result.getItem()[0].toString(), result.getItem());
-								count++;
-							}
-						}
+				}
+				for (Map.Entry<String, HashMap<String, Object[]>> entry : groupDatas.entrySet()) {
+					// 缓存未加载则等待首次调用加载
+					if (translateCacheManager.putCacheValues(translateConfig, cacheName, entry.getKey(),
+							entry.getValue())) {
+						count = count + entry.getValue().size();
+						// 增量更新直接修改了缓存数据,标记名称匹配索引失效,下次使用时再重建
+						sqlToyContext.getTranslateManager().markMatchIndexStale(cacheName, entry.getKey());
 					}
 				}
 			} catch (Exception e) {
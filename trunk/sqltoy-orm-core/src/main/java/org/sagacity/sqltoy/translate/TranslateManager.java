@@ -1,20 +1,22 @@
 package org.sagacity.sqltoy.translate;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
-import org.sagacity.sqltoy.SqlExecuteStat;
 import org.sagacity.sqltoy.SqlToyContext;
-import org.sagacity.sqltoy.config.model.SqlExecuteTrace;
 import org.sagacity.sqltoy.config.model.Translate;
 import org.sagacity.sqltoy.model.IgnoreKeyCaseMap;
 import org.sagacity.sqltoy.model.inner.TranslateExtend;
 import org.sagacity.sqltoy.translate.cache.TranslateCacheManager;
+import org.sagacity.sqltoy.translate.cache.TranslateCacheView;
 import org.sagacity.sqltoy.translate.cache.impl.TranslateEhcacheManager;
 import org.sagacity.sqltoy.translate.model.CheckerConfigModel;
 import org.sagacity.sqltoy.translate.model.DefaultConfig;
@@ -30,6 +32,11 @@ import org.slf4j.LoggerFactory;
  * @version v1.0,Date:2013年4月8日
  * @modify {Date:2018-1-5,增强缓存更新检测机制}
  * @modify {Date:2022-06-11,支持多个缓存翻译定义文件}
+ * @modify {Date:2024-04-25,支持按key存储的缓存,翻译时只获取实际用到的key}
+ * @modify {Date:2024-04-28,缓存加载改为同一缓存只由一个线程加载,其他线程等待其结果;支持stale-while-revalidate}
+ * @modify {Date:2024-05-23,配置match-index的缓存为名称反向匹配维护倒排索引,缓存加载和更新后重建替换}
+ * @modify {Date:2024-06-01,嵌套执行的sql日志由SqlExecuteStat自动恢复,获取缓存前后不再手工保存和放回}
+ * @modify {Date:2024-06-01,缓存增量更新后倒排索引只标记失效,下次匹配时只重建一次}
  */
 public class TranslateManager {
 	/**
@@ -77,6 +84,26 @@ public class TranslateManager {
 	 */
 	private CacheUpdateWatcher cacheUpdateWatcher;
 
+	/**
+	 * 按key存储的缓存已经加载过的标记
+	 */
+	private final static HashMap<String, Object[]> EMPTY_LOADED = new HashMap<String, Object[]>(1);
+
+	/**
+	 * 正在加载中的缓存(同一缓存同时只允许一个线程执行加载,其他线程等待加载结果)
+	 */
+	private final ConcurrentHashMap<String, CompletableFuture<HashMap<String, Object[]>>> loadingCaches = new ConcurrentHashMap<String, CompletableFuture<HashMap<String, Object[]>>>();
+
+	/**
+	 * 配置了stale-while-revalidate的缓存最近一次加载的数据,缓存失效时先返回此数据并后台刷新
+	 */
+	private final ConcurrentHashMap<String, HashMap<String, Object[]>> staleCaches = new ConcurrentHashMap<String, HashMap<String, Object[]>>();
+
+	/**
+	 * 缓存名称反向匹配的倒排索引(cacheName+cacheType+匹配列 对应 索引)
+	 */
+	private final ConcurrentHashMap<String, CacheMatchIndex> matchIndexes = new ConcurrentHashMap<String, CacheMatchIndex>();
+
 	private SqlToyContext sqlToyContext;
 
 	/**
@@ -152,8 +179,6 @@ public class TranslateManager {
 	 * @return
 	 */
 	public HashMap<String, HashMap<String, Object[]>> getTranslates(HashMap<String, Translate> translates) {
-		// 获得当前线程中的sql执行日志，后续缓存获取会覆盖掉日志
-		SqlExecuteTrace sqlTrace = SqlExecuteStat.get();
 		HashMap<String, HashMap<String, Object[]>> result = new HashMap<String, HashMap<String, Object[]>>();
 		HashMap<String, Object[]> cache;
 		TranslateConfigModel cacheModel;
@@ -163,7 +188,16 @@ public class TranslateManager {
 			extend = entry.getValue().getExtend();
 			if (translateMap.containsKey(extend.cache)) {
 				cacheModel = translateMap.get(extend.cache);
-				cache = getCacheData(cacheModel, extend.cacheType);
+				// 按key存储的缓存,确保已经加载后提供按需取key的视图,避免获取整个缓存
+				if (translateCacheManager.isKeyStorage(cacheModel.getCache())) {
+					final TranslateConfigModel viewModel = cacheModel;
+					final String viewCacheType = extend.cacheType;
+					cache = (loadCacheData(cacheModel, extend.cacheType) == null) ? null
+							: new TranslateCacheView(translateCacheManager, cacheModel.getCache(), extend.cacheType,
+									() -> loadCacheData(viewModel, viewCacheType));
+				} else {
+					cache = getCacheData(cacheModel, extend.cacheType);
+				}
 				if (cache != null) {
 					// update 2022-1-4 增加缓存使用时cache-index 合法性校验
 					if (cache.size() > 0) {
@@ -189,10 +223,6 @@ public class TranslateManager {
 				logger.error("cacheName:{} 没有配置,请检查缓存配置文件!", extend.cache);
 			}
 		}
-		// 将调用获取缓存之前的日志放回线程中
-		if (sqlTrace != null) {
-			SqlExecuteStat.set(sqlTrace);
-		}
 		return result;
 	}
 
@@ -203,14 +233,260 @@ public class TranslateManager {
 	 * @return
 	 */
 	private HashMap<String, Object[]> getCacheData(TranslateConfigModel cacheModel, String cacheType) {
+		// 按key存储的缓存,未加载时直接返回加载的结果,避免再从缓存中组装
+		if (translateCacheManager.isKeyStorage(cacheModel.getCache())) {
+			HashMap<String, Object[]> loadData = loadCacheData(cacheModel, cacheType);
+			if (loadData == null || loadData != EMPTY_LOADED) {
+				return loadData;
+			}
+		}
 		// 从缓存中提取数据
 		HashMap<String, Object[]> result = translateCacheManager.getCache(cacheModel.getCache(), cacheType);
 		// 数据为空则执行调用逻辑提取数据放入缓存，否则直接返回
 		if (result == null || result.isEmpty()) {
+			// 存在上一次加载的数据,则直接返回并在后台刷新缓存
+			if (cacheModel.isStaleWhileRevalidate()) {
+				HashMap<String, Object[]> staleData = staleCaches.get(getLoadKey(cacheModel.getCache(), cacheType));
+				if (staleData != null && refreshCacheData(cacheModel, cacheType)) {
+					return staleData;
+				}
+			}
+			result = loadCacheData(cacheModel, cacheType, false);
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 后台异步刷新缓存(已经有线程在加载则不再重复提交)
+	 * @param cacheModel
+	 * @param cacheType
+	 * @return 是否已经在刷新
+	 */
+	private boolean refreshCacheData(final TranslateConfigModel cacheModel, final String cacheType) {
+		if (loadingCaches.containsKey(getLoadKey(cacheModel.getCache(), cacheType))) {
+			return true;
+		}
+		try {
+			sqlToyContext.getTaskExecutor().execute(() -> {
+				loadCacheData(cacheModel, cacheType, false);
+			});
+			return true;
+		} catch (Exception e) {
+			logger.warn("缓存cacheName={} 提交后台刷新失败,改为同步加载:{}", cacheModel.getCache(), e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * @TODO 加载缓存数据并放入缓存,同一缓存同时只由一个线程执行加载,其他线程等待并共享其结果
+	 * @param cacheModel
+	 * @param cacheType
+	 * @param keyStorage 是否按key存储的缓存
+	 * @return 本次加载的数据(按key存储且已经加载过返回EMPTY_LOADED),加载失败返回null
+	 */
+	private HashMap<String, Object[]> loadCacheData(TranslateConfigModel cacheModel, String cacheType,
+			boolean keyStorage) {
+		String loadKey = getLoadKey(cacheModel.getCache(), cacheType);
+		CompletableFuture<HashMap<String, Object[]>> future = new CompletableFuture<HashMap<String, Object[]>>();
+		CompletableFuture<HashMap<String, Object[]>> loading = loadingCaches.putIfAbsent(loadKey, future);
+		// 其他线程正在加载,等待其加载结果
+		if (loading != null) {
+			try {
+				return loading.join();
+			} catch (Exception e) {
+				logger.error("等待缓存cacheName={} 加载失败:{}", cacheModel.getCache(), e.getMessage());
+				return null;
+			}
+		}
+		HashMap<String, Object[]> result = null;
+		try {
+			// 再次检查,避免等待期间缓存已经被其他线程加载完成后重复加载
+			if (keyStorage) {
+				if (translateCacheManager.hasCacheData(cacheModel.getCache(), cacheType)) {
+					result = EMPTY_LOADED;
+					return result;
+				}
+			} else {
+				result = translateCacheManager.getCache(cacheModel.getCache(), cacheType);
+				if (result != null && !result.isEmpty()) {
+					return result;
+				}
+			}
 			result = TranslateFactory.getCacheData(sqlToyContext, cacheModel, cacheType);
 			// 放入缓存
 			if (result != null && !result.isEmpty()) {
 				translateCacheManager.put(cacheModel, cacheModel.getCache(), cacheType, result);
+				if (cacheModel.isStaleWhileRevalidate() && !keyStorage) {
+					staleCaches.put(loadKey, result);
+				}
+				if (!keyStorage) {
+					refreshMatchIndex(cacheModel.getCache(), cacheType, result);
+				}
+			} else if (keyStorage) {
+				result = null;
+			}
+			return result;
+		} finally {
+			// 先移除再通知等待线程,确保后续调用能够重新发起加载
+			loadingCaches.remove(loadKey, future);
+			future.complete(result);
+		}
+	}
+
+	/**
+	 * @TODO 主动清除缓存时同时清除保留的上一次数据
+	 * @param cacheName
+	 * @param cacheType 为null时清除整个缓存
+	 */
+	private void removeStaleCache(String cacheName, String cacheType) {
+		if (staleCaches.isEmpty()) {
+			return;
+		}
+		if (cacheType == null) {
+			String prefix = cacheName.concat("\u0001");
+			staleCaches.keySet().removeIf(key -> key.equals(cacheName) || key.startsWith(prefix));
+		} else {
+			staleCaches.remove(getLoadKey(cacheName, cacheType));
+		}
+	}
+
+	/**
+	 * @TODO 获取缓存名称反向匹配的倒排索引,索引不存在或缓存数据已经被替换则重新建立
+	 *       <li>未配置match-index或按key存储的缓存返回null,由调用方全量扫描</li>
+	 * @param cacheName
+	 * @param cacheType
+	 * @param cacheData    当前用于匹配的缓存数据
+	 * @param keyIndex     缓存key所在列
+	 * @param matchIndexes 名称匹配的列
+	 * @return
+	 */
+	public CacheMatchIndex getMatchIndex(String cacheName, String cacheType, HashMap<String, Object[]> cacheData,
+			int keyIndex, int[] matchIndexes) {
+		TranslateConfigModel cacheModel = translateMap.get(cacheName);
+		if (cacheModel == null || !cacheModel.isMatchIndex() || cacheData == null || cacheData.isEmpty()
+				|| translateCacheManager == null || translateCacheManager.isKeyStorage(cacheModel.getCache())) {
+			return null;
+		}
+		String indexKey = getLoadKey(cacheModel.getCache(), cacheType).concat("\u0002").concat(keyIndex + "")
+				.concat(Arrays.toString(matchIndexes));
+		CacheMatchIndex matchIndex = this.matchIndexes.get(indexKey);
+		if (matchIndex != null && matchIndex.isValid(cacheData)) {
+			return matchIndex;
+		}
+		// 同一索引只由一个线程建立
+		return this.matchIndexes.compute(indexKey, (key, old) -> (old != null && old.isValid(cacheData)) ? old
+				: new CacheMatchIndex(cacheData, keyIndex, matchIndexes));
+	}
+
+	/**
+	 * @TODO 缓存加载或更新后重建已经使用过的倒排索引并替换,避免查询时再建立
+	 * @param cacheName
+	 * @param cacheType
+	 * @param cacheData 为null则从缓存中获取
+	 */
+	public void refreshMatchIndex(String cacheName, String cacheType, HashMap<String, Object[]> cacheData) {
+		if (matchIndexes.isEmpty()) {
+			return;
+		}
+		String prefix = getLoadKey(cacheName, cacheType).concat("\u0002");
+		HashMap<String, Object[]> realData = null;
+		for (Map.Entry<String, CacheMatchIndex> entry : matchIndexes.entrySet()) {
+			if (entry.getKey().startsWith(prefix)) {
+				if (realData == null) {
+					realData = (cacheData == null) ? translateCacheManager.getCache(cacheName, cacheType) : cacheData;
+					if (realData == null || realData.isEmpty()) {
+						removeMatchIndex(cacheName, cacheType);
+						return;
+					}
+				}
+				CacheMatchIndex old = entry.getValue();
+				matchIndexes.replace(entry.getKey(), old,
+						new CacheMatchIndex(realData, old.getKeyIndex(), old.getMatchIndexes()));
+			}
+		}
+	}
+
+	/**
+	 * @TODO 缓存增量更新后标记对应的倒排索引失效,由下次getMatchIndex重建(多次增量更新只重建一次)
+	 * @param cacheName
+	 * @param cacheType
+	 */
+	public void markMatchIndexStale(String cacheName, String cacheType) {
+		if (matchIndexes.isEmpty()) {
+			return;
+		}
+		String prefix = getLoadKey(cacheName, cacheType).concat("\u0002");
+		for (Map.Entry<String, CacheMatchIndex> entry : matchIndexes.entrySet()) {
+			if (entry.getKey().startsWith(prefix)) {
+				entry.getValue().markStale();
+			}
+		}
+	}
+
+	/**
+	 * @TODO 清除缓存时移除对应的倒排索引
+	 * @param cacheName
+	 * @param cacheType 为null时移除整个缓存的索引
+	 */
+	private void removeMatchIndex(String cacheName, String cacheType) {
+		if (matchIndexes.isEmpty()) {
+			return;
+		}
+		if (cacheType == null) {
+			String prefix = cacheName.concat("\u0001");
+			String indexPrefix = cacheName.concat("\u0002");
+			matchIndexes.keySet().removeIf(key -> key.startsWith(prefix) || key.startsWith(indexPrefix));
+		} else {
+			String prefix = getLoadKey(cacheName, cacheType).concat("\u0002");
+			matchIndexes.keySet().removeIf(key -> key.startsWith(prefix));
+		}
+	}
+
+	private String getLoadKey(String cacheName, String cacheType) {
+		return (cacheType == null) ? cacheName : cacheName.concat("\u0001").concat(cacheType);
+	}
+
+	/**
+	 * @TODO 按key存储的缓存:未加载则执行加载并放入缓存
+	 * @param cacheModel
+	 * @param cacheType
+	 * @return 本次加载的数据,已经加载过则返回EMPTY_LOADED,加载失败返回null
+	 */
+	private HashMap<String, Object[]> loadCacheData(TranslateConfigModel cacheModel, String cacheType) {
+		if (translateCacheManager.hasCacheData(cacheModel.getCache(), cacheType)) {
+			return EMPTY_LOADED;
+		}
+		return loadCacheData(cacheModel, cacheType, true);
+	}
+
+	/**
+	 * @TODO 根据key批量获取缓存数据,只返回存在的key(用于一页数据中需要翻译的key,避免获取整个缓存)
+	 * @param cacheName
+	 * @param cacheType (一般为null,不为空时一般用于数据字典等同于dictType)
+	 * @param keys
+	 * @return
+	 */
+	public HashMap<String, Object[]> getCacheValues(String cacheName, String cacheType, Collection<String> keys) {
+		TranslateConfigModel cacheModel = translateMap.get(cacheName);
+		if (cacheModel == null) {
+			logger.error("cacheName:{} 没有配置,请检查缓存配置文件!", cacheName);
+			return null;
+		}
+		HashMap<String, Object[]> result;
+		if (translateCacheManager.isKeyStorage(cacheModel.getCache())) {
+			loadCacheData(cacheModel, cacheType);
+			result = translateCacheManager.getCacheValues(cacheModel.getCache(), cacheType, keys);
+		} else {
+			HashMap<String, Object[]> cacheData = getCacheData(cacheModel, cacheType);
+			result = new HashMap<String, Object[]>();
+			if (cacheData != null && keys != null) {
+				Object[] cacheValue;
+				for (String key : keys) {
+					cacheValue = cacheData.get(key);
+					if (cacheValue != null) {
+						result.put(key, cacheValue);
+					}
+				}
 			}
 		}
 		return result;
@@ -218,6 +494,7 @@ public class TranslateManager {
 
 	/**
 	 * @todo 提供对外的访问(如要做增量更新可以对这里的数据进行修改即可达到缓存的更新作用)
+	 *       <li>按key存储的缓存(配置了offHeap或diskSize)返回的是组装后的副本,修改不会作用到缓存</li>
 	 * @param cacheName
 	 * @param cacheType (一般为null,不为空时一般用于数据字典等同于dictType)
 	 * @return
@@ -228,13 +505,7 @@ public class TranslateManager {
 			logger.error("cacheName:{} 没有配置,请检查缓存配置文件!", cacheName);
 			return null;
 		}
-		// 获得当前线程中的sql执行日志，后续缓存获取会覆盖掉日志
-		SqlExecuteTrace sqlTrace = SqlExecuteStat.get();
 		HashMap<String, Object[]> result = getCacheData(cacheModel, cacheType);
-		// 将调用获取缓存之前的日志放回线程中
-		if (sqlTrace != null) {
-			SqlExecuteStat.set(sqlTrace);
-		}
 		return result;
 	}
 
@@ -252,6 +523,7 @@ public class TranslateManager {
 				return;
 			}
 			translateCacheManager.put(cacheModel, cacheModel.getCache(), cacheType, cacheValue);
+			refreshMatchIndex(cacheModel.getCache(), cacheType, cacheValue);
 		} else {
 			logger.error("因没有定义缓存翻译的配置文件(可不定义具体缓存)，则没有启用缓存翻译,无法设置缓存数据!");
 		}
@@ -267,6 +539,8 @@ public class TranslateManager {
 			TranslateConfigModel cacheModel = translateMap.get(cacheName);
 			if (cacheModel != null) {
 				translateCacheManager.clear(cacheModel.getCache(), cacheType);
+				removeStaleCache(cacheModel.getCache(), cacheType);
+				removeMatchIndex(cacheModel.getCache(), cacheType);
 			}
 		}
 	}
@@ -314,6 +588,8 @@ public class TranslateManager {
 			// 清除缓存数据
 			translateCacheManager.clear(cacheModel.getCache(), null);
 		}
+		removeStaleCache(cacheModel.getCache(), null);
+		removeMatchIndex(cacheModel.getCache(), null);
 		// 移除对应缓存更新检测
 		CheckerConfigModel checker;
 		for (int i = 0; i < updateCheckers.size(); i++) {
@@ -1,5 +1,6 @@
 package org.sagacity.sqltoy.translate.cache;
 
+import java.util.Collection;
 import java.util.HashMap;
 
 import org.sagacity.sqltoy.model.IgnoreKeyCaseMap;
@@ -10,6 +11,7 @@ import org.sagacity.sqltoy.translate.model.TranslateConfigModel;
  * @description translate 翻译缓存管理接口定义，为基于其他缓存框架的实现提供接口规范
  * @author zhongxuchen
  * @version v1.0,Date:2013-4-14
+ * @modify {Date:2024-04-25,增加按key存储模式的接口定义:isKeyStorage、hasCacheData、getCacheValues、putCacheValues}
  */
 public abstract class TranslateCacheManager {
 	protected IgnoreKeyCaseMap<String, TranslateConfigModel> translateMap = new IgnoreKeyCaseMap<String, TranslateConfigModel>();
@@ -58,6 +60,68 @@ public abstract class TranslateCacheManager {
 	public abstract void put(TranslateConfigModel cacheModel, String cacheName, String cacheType,
 			HashMap<String, Object[]> cacheValue);
 
+	/**
+	 * @TODO 缓存是否以单个key为单位存储(数据量大且存在offHeap、disk存储时,避免每次获取整个缓存带来的反序列化开销)
+	 *       <li>返回true时,翻译通过getCacheValues按key获取,getCache 仅用于获取整个缓存的场景</li>
+	 * @param cacheName
+	 * @return
+	 */
+	public boolean isKeyStorage(String cacheName) {
+		return false;
+	}
+
+	/**
+	 * @TODO 判断缓存数据是否已经加载
+	 * @param cacheName
+	 * @param cacheType (默认为null，针对诸如数据字典类型的，对应字典类型)
+	 * @return
+	 */
+	public boolean hasCacheData(String cacheName, String cacheType) {
+		HashMap<String, Object[]> cacheData = getCache(cacheName, cacheType);
+		return cacheData != null && !cacheData.isEmpty();
+	}
+
+	/**
+	 * @TODO 根据key批量获取缓存数据(只返回存在的key)
+	 * @param cacheName
+	 * @param cacheType (默认为null，针对诸如数据字典类型的，对应字典类型)
+	 * @param keys
+	 * @return
+	 */
+	public HashMap<String, Object[]> getCacheValues(String cacheName, String cacheType, Collection<String> keys) {
+		HashMap<String, Object[]> result = new HashMap<String, Object[]>();
+		HashMap<String, Object[]> cacheData = getCache(cacheName, cacheType);
+		if (cacheData == null || keys == null) {
+			return result;
+		}
+		Object[] cacheValue;
+		for (String key : keys) {
+			cacheValue = cacheData.get(key);
+			if (cacheValue != null) {
+				result.put(key, cacheValue);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 对已经加载的缓存做增量更新(缓存未加载则忽略,等待首次使用时全量加载)
+	 * @param cacheModel
+	 * @param cacheName
+	 * @param cacheType   (默认为null，针对诸如数据字典类型的，对应字典类型)
+	 * @param cacheValues
+	 * @return 是否完成更新
+	 */
+	public boolean putCacheValues(TranslateConfigModel cacheModel, String cacheName, String cacheType,
+			HashMap<String, Object[]> cacheValues) {
+		HashMap<String, Object[]> cacheData = getCache(cacheName, cacheType);
+		if (cacheData == null) {
+			return false;
+		}
+		cacheData.putAll(cacheValues);
+		return true;
+	}
+
 	/**
 	 * @todo 清空缓存
 	 * @param cacheName
@@ -0,0 +1,132 @@
+package org.sagacity.sqltoy.translate.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 按key存储的缓存在单次查询翻译过程中的视图:只获取实际需要翻译的key,获取后在本次查询中复用
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-04-25
+ * @modify {Date:2024-06-01,未命中的key且缓存已加载标记失效(部分key被淘汰或过期)时重新加载后再获取一次}
+ */
+public class TranslateCacheView extends HashMap<String, Object[]> {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -3250617745316483327L;
+
+	private final transient TranslateCacheManager translateCacheManager;
+
+	private final String cacheName;
+
+	private final String cacheType;
+
+	/**
+	 * 缓存数据不完整时的重新加载(本视图内最多执行一次)
+	 */
+	private transient Runnable reloader;
+
+	/**
+	 * 缓存中不存在的key,避免重复获取
+	 */
+	private final Set<String> missKeys = new HashSet<String>();
+
+	public TranslateCacheView(TranslateCacheManager translateCacheManager, String cacheName, String cacheType) {
+		this(translateCacheManager, cacheName, cacheType, null);
+	}
+
+	public TranslateCacheView(TranslateCacheManager translateCacheManager, String cacheName, String cacheType,
+			Runnable reloader) {
+		super();
+		this.translateCacheManager = translateCacheManager;
+		this.cacheName = cacheName;
+		this.cacheType = cacheType;
+		this.reloader = reloader;
+	}
+
+	@Override
+	public Object[] get(Object key) {
+		if (key == null) {
+			return null;
+		}
+		Object[] result = super.get(key);
+		if (result != null) {
+			return result;
+		}
+		String keyStr = key.toString();
+		if (missKeys.contains(keyStr)) {
+			return null;
+		}
+		fetch(Collections.singletonList(keyStr));
+		return super.get(keyStr);
+	}
+
+	@Override
+	public Object[] getOrDefault(Object key, Object[] defaultValue) {
+		Object[] result = get(key);
+		return (result == null) ? defaultValue : result;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * @TODO 批量预先获取一批key(如一页结果中需要翻译的key),减少逐个获取的开销
+	 * @param keys
+	 */
+	public void prefetch(Collection<String> keys) {
+		if (keys == null || keys.isEmpty()) {
+			return;
+		}
+		Set<String> fetchKeys = new HashSet<String>();
+		for (String key : keys) {
+			if (key != null && !super.containsKey(key) && !missKeys.contains(key)) {
+				fetchKeys.add(key);
+			}
+		}
+		if (fetchKeys.isEmpty()) {
+			return;
+		}
+		fetch(fetchKeys);
+	}
+
+	/**
+	 * @TODO 从缓存中获取一批key,存在未命中且缓存已加载标记失效时,重新加载后再获取未命中的key
+	 * @param keys
+	 */
+	private void fetch(Collection<String> keys) {
+		HashMap<String, Object[]> values = translateCacheManager.getCacheValues(cacheName, cacheType, keys);
+		super.putAll(values);
+		if (values.size() == keys.size()) {
+			return;
+		}
+		List<String> unmatchKeys = new ArrayList<String>();
+		for (String key : keys) {
+			if (!values.containsKey(key)) {
+				unmatchKeys.add(key);
+			}
+		}
+		// 部分key被淘汰或过期,已加载标记同时被清除
+		if (reloader != null && !translateCacheManager.hasCacheData(cacheName, cacheType)) {
+			Runnable reload = reloader;
+			reloader = null;
+			reload.run();
+			values = translateCacheManager.getCacheValues(cacheName, cacheType, unmatchKeys);
+			super.putAll(values);
+		}
+		for (String key : unmatchKeys) {
+			if (!super.containsKey(key)) {
+				missKeys.add(key);
+			}
+		}
+	}
+}
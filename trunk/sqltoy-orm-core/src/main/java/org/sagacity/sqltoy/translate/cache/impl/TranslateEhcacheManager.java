@@ -1,16 +1,28 @@
 package org.sagacity.sqltoy.translate.cache.impl;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
+import org.ehcache.config.CacheConfiguration;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheEventListenerConfigurationBuilder;
 import org.ehcache.config.builders.CacheManagerBuilder;
 import org.ehcache.config.builders.ExpiryPolicyBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.ehcache.config.units.EntryUnit;
 import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+import org.ehcache.event.EventType;
 import org.sagacity.sqltoy.translate.cache.TranslateCacheManager;
 import org.sagacity.sqltoy.translate.model.TranslateConfigModel;
 import org.sagacity.sqltoy.utils.IdUtil;
@@ -23,6 +35,8 @@ import org.slf4j.LoggerFactory;
  * @description 基于ehcache缓存实现translate 提取缓存数据和存放缓存
  * @author zhongxuchen
  * @version v1.0,Date:2013-4-14
+ * @modify {Date:2024-04-25,配置了offHeap或diskSize的缓存改为按key存储,翻译时按key获取,避免每次反序列化整个缓存}
+ * @modify {Date:2024-06-01,按key存储的缓存有记录被淘汰或过期时标记为数据不完整,等同未加载,避免部分key丢失后翻译不出且无任何提示}
  */
 @SuppressWarnings("unchecked")
 public class TranslateEhcacheManager extends TranslateCacheManager {
@@ -45,11 +59,46 @@ public class TranslateEhcacheManager extends TranslateCacheManager {
 
 	protected static CacheManager cacheManager;
 
+	/**
+	 * 按key存储的缓存名称后缀(跟整体存储的缓存区分开,避免ehcache中缓存类型冲突)
+	 */
+	private final static String KEY_STORAGE_SUFFIX = "#keys";
+
+	/**
+	 * 按key存储时cacheType和key之间的分隔符
+	 */
+	private final static char KEY_SPLIT = '\u0001';
+
+	/**
+	 * 按key存储时缓存(cacheType)已经加载的标记
+	 */
+	private final static String LOADED_FLAG = "\u0002";
+
+	/**
+	 * 按key存储且有key被淘汰或过期的缓存(cacheName+cacheType),数据已经不完整,需整体重新加载
+	 */
+	private final static Set<String> STALE_GROUPS = ConcurrentHashMap.newKeySet();
+
 	@Override
 	public HashMap<String, Object[]> getCache(String cacheName, String cacheType) {
 		if (cacheManager == null) {
 			return null;
 		}
+		// 按key存储,组装成完整的缓存(仅用于获取整个缓存的场景,翻译走getCacheValues)
+		if (isKeyStorage(cacheName)) {
+			if (!hasCacheData(cacheName, cacheType)) {
+				return null;
+			}
+			Cache<String, Object[]> keyCache = getKeyCache(cacheName);
+			String prefix = getKeyGroup(cacheType) + KEY_SPLIT;
+			HashMap<String, Object[]> result = new HashMap<String, Object[]>();
+			for (Cache.Entry<String, Object[]> entry : keyCache) {
+				if (entry.getKey().startsWith(prefix)) {
+					result.put(entry.getKey().substring(prefix.length()), entry.getValue());
+				}
+			}
+			return result;
+		}
 		Cache<String, HashMap> cache = cacheManager.getCache(cacheName, String.class, HashMap.class);
 		if (cache == null) {
 			return null;
@@ -63,6 +112,9 @@ public class TranslateEhcacheManager extends TranslateCacheManager {
 
 	@Override
 	public boolean hasCache(String cacheName) {
+		if (isKeyStorage(cacheName)) {
+			return getKeyCache(cacheName) != null;
+		}
 		Cache<String, HashMap> cache = cacheManager.getCache(cacheName, String.class, HashMap.class);
 		if (null == cache) {
 			return false;
@@ -76,27 +128,15 @@ public class TranslateEhcacheManager extends TranslateCacheManager {
 		if (cacheManager == null) {
 			return;
 		}
+		if (isKeyStorage(cacheName)) {
+			putKeyCache(cacheConfig, cacheName, cacheKey, cacheValue);
+			return;
+		}
 		synchronized (cacheName.intern()) {
 			Cache<String, HashMap> cache = cacheManager.getCache(cacheName, String.class, HashMap.class);
 			// 缓存没有配置,自动创建缓存(不建议使用)
 			if (cache == null) {
-				ResourcePoolsBuilder resBuilder = ResourcePoolsBuilder.newResourcePoolsBuilder();
-				// 堆内内存大小(20000条)
-				resBuilder = resBuilder.heap((cacheConfig.getHeap() < 1) ? 1000 : cacheConfig.getHeap(),
-						EntryUnit.ENTRIES);
-				if (cacheConfig.getOffHeap() > 0) {
-					resBuilder = resBuilder.offheap(cacheConfig.getOffHeap(), MemoryUnit.MB);
-				}
-				if (cacheConfig.getDiskSize() > 0) {
-					resBuilder = resBuilder.disk(cacheConfig.getDiskSize(), MemoryUnit.MB, true);
-				}
-				cache = cacheManager.createCache(cacheName,
-						CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, HashMap.class, resBuilder)
-								.withExpiry(cacheConfig.getKeepAlive() > 0
-										? ExpiryPolicyBuilder
-												.timeToLiveExpiration(Duration.ofSeconds(cacheConfig.getKeepAlive()))
-										: ExpiryPolicyBuilder.noExpiration())
-								.build());
+				cache = cacheManager.createCache(cacheName, wrapCacheConfig(cacheConfig, HashMap.class, null));
 			}
 			// 清除缓存(一般不会执行,即缓存值被设置为null表示清除缓存)
 			if (cacheValue == null) {
@@ -126,6 +166,18 @@ public class TranslateEhcacheManager extends TranslateCacheManager {
 			return;
 		}
 		synchronized (cacheName.intern()) {
+			if (isKeyStorage(cacheName)) {
+				Cache<String, Object[]> keyCache = getKeyCache(cacheName);
+				if (keyCache != null) {
+					if (StringUtil.isBlank(cacheType)) {
+						keyCache.clear();
+					} else {
+						removeKeyGroup(keyCache, cacheType);
+					}
+				}
+				clearStale(cacheName, cacheType);
+				return;
+			}
 			Cache<String, HashMap> cache = cacheManager.getCache(cacheName, String.class, HashMap.class);
 			if (cache != null) {
 				if (StringUtil.isBlank(cacheType)) {
@@ -137,6 +189,219 @@ public class TranslateEhcacheManager extends TranslateCacheManager {
 		}
 	}
 
+	/**
+	 * 配置了offHeap或diskSize(数据量大需要堆外或磁盘存储)的缓存按key存储
+	 */
+	@Override
+	public boolean isKeyStorage(String cacheName) {
+		TranslateConfigModel cacheConfig = translateMap.get(cacheName);
+		if (cacheConfig == null) {
+			return false;
+		}
+		return cacheConfig.getOffHeap() > 0 || cacheConfig.getDiskSize() > 0;
+	}
+
+	@Override
+	public boolean hasCacheData(String cacheName, String cacheType) {
+		if (cacheManager == null) {
+			return false;
+		}
+		if (!isKeyStorage(cacheName)) {
+			return super.hasCacheData(cacheName, cacheType);
+		}
+		Cache<String, Object[]> keyCache = getKeyCache(cacheName);
+		return keyCache != null && !STALE_GROUPS.contains(getStaleKey(cacheName, getKeyGroup(cacheType)))
+				&& keyCache.get(LOADED_FLAG.concat(getKeyGroup(cacheType))) != null;
+	}
+
+	@Override
+	public HashMap<String, Object[]> getCacheValues(String cacheName, String cacheType, Collection<String> keys) {
+		if (cacheManager == null || !isKeyStorage(cacheName)) {
+			return super.getCacheValues(cacheName, cacheType, keys);
+		}
+		HashMap<String, Object[]> result = new HashMap<String, Object[]>();
+		Cache<String, Object[]> keyCache = getKeyCache(cacheName);
+		if (keyCache == null || keys == null || keys.isEmpty()) {
+			return result;
+		}
+		String prefix = getKeyGroup(cacheType) + KEY_SPLIT;
+		Set<String> realKeys = new HashSet<String>();
+		for (String key : keys) {
+			if (key != null) {
+				realKeys.add(prefix.concat(key));
+			}
+		}
+		for (Map.Entry<String, Object[]> entry : keyCache.getAll(realKeys).entrySet()) {
+			if (entry.getValue() != null) {
+				result.put(entry.getKey().substring(prefix.length()), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean putCacheValues(TranslateConfigModel cacheConfig, String cacheName, String cacheType,
+			HashMap<String, Object[]> cacheValues) {
+		if (cacheManager == null) {
+			return false;
+		}
+		if (!isKeyStorage(cacheName)) {
+			return super.putCacheValues(cacheConfig, cacheName, cacheType, cacheValues);
+		}
+		synchronized (cacheName.intern()) {
+			// 未加载或数据已经不完整则等待下次调用全量加载
+			if (!hasCacheData(cacheName, cacheType)) {
+				return false;
+			}
+			getKeyCache(cacheName).putAll(wrapKeyEntries(cacheType, cacheValues));
+		}
+		return true;
+	}
+
+	/**
+	 * @TODO 按key存储缓存数据(整体覆盖)
+	 * @param cacheConfig
+	 * @param cacheName
+	 * @param cacheType
+	 * @param cacheValue
+	 */
+	private void putKeyCache(TranslateConfigModel cacheConfig, String cacheName, String cacheType,
+			HashMap<String, Object[]> cacheValue) {
+		synchronized (cacheName.intern()) {
+			Cache<String, Object[]> keyCache = getKeyCache(cacheName);
+			if (keyCache == null) {
+				keyCache = cacheManager.createCache(cacheName.concat(KEY_STORAGE_SUFFIX),
+						wrapCacheConfig(cacheConfig, Object[].class, new KeyEvictListener(cacheName)));
+			}
+			// 先清除原有的数据,避免已经删除的key残留
+			if (StringUtil.isBlank(cacheType)) {
+				keyCache.clear();
+			} else {
+				removeKeyGroup(keyCache, cacheType);
+			}
+			// 整体覆盖后数据完整(写入过程中再被淘汰会重新标记)
+			clearStale(cacheName, cacheType);
+			if (cacheValue != null) {
+				Map<String, Object[]> entries = wrapKeyEntries(cacheType, cacheValue);
+				entries.put(LOADED_FLAG.concat(getKeyGroup(cacheType)), new Object[0]);
+				keyCache.putAll(entries);
+			}
+		}
+	}
+
+	/**
+	 * @TODO 移除按key存储的某个cacheType的全部数据
+	 * @param keyCache
+	 * @param cacheType
+	 */
+	private void removeKeyGroup(Cache<String, Object[]> keyCache, String cacheType) {
+		String prefix = getKeyGroup(cacheType) + KEY_SPLIT;
+		List<String> removeKeys = new ArrayList<String>();
+		for (Cache.Entry<String, Object[]> entry : keyCache) {
+			if (entry.getKey().startsWith(prefix)) {
+				removeKeys.add(entry.getKey());
+			}
+		}
+		removeKeys.add(LOADED_FLAG.concat(getKeyGroup(cacheType)));
+		keyCache.removeAll(new HashSet<String>(removeKeys));
+	}
+
+	private Map<String, Object[]> wrapKeyEntries(String cacheType, HashMap<String, Object[]> cacheValues) {
+		String prefix = getKeyGroup(cacheType) + KEY_SPLIT;
+		Map<String, Object[]> result = new HashMap<String, Object[]>(cacheValues.size() * 4 / 3 + 1);
+		for (Map.Entry<String, Object[]> entry : cacheValues.entrySet()) {
+			if (entry.getKey() != null && entry.getValue() != null) {
+				result.put(prefix.concat(entry.getKey()), entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 清除数据不完整的标记,cacheType为空表示清除整个缓存的
+	 * @param cacheName
+	 * @param cacheType
+	 */
+	private void clearStale(String cacheName, String cacheType) {
+		if (STALE_GROUPS.isEmpty()) {
+			return;
+		}
+		if (StringUtil.isBlank(cacheType)) {
+			String prefix = cacheName + KEY_SPLIT;
+			STALE_GROUPS.removeIf((staleKey) -> staleKey.startsWith(prefix));
+		} else {
+			STALE_GROUPS.remove(getStaleKey(cacheName, cacheType));
+		}
+	}
+
+	private String getStaleKey(String cacheName, String keyGroup) {
+		return cacheName + KEY_SPLIT + keyGroup;
+	}
+
+	private String getKeyGroup(String cacheType) {
+		return StringUtil.isBlank(cacheType) ? "" : cacheType;
+	}
+
+	private Cache<String, Object[]> getKeyCache(String cacheName) {
+		return cacheManager.getCache(cacheName.concat(KEY_STORAGE_SUFFIX), String.class, Object[].class);
+	}
+
+	/**
+	 * @TODO 根据缓存配置构造ehcache的缓存定义
+	 * @param cacheConfig
+	 * @param valueType
+	 * @param listener  记录被淘汰或过期的监听(按key存储时使用)
+	 * @return
+	 */
+	private <V> CacheConfiguration<String, V> wrapCacheConfig(TranslateConfigModel cacheConfig, Class<V> valueType,
+			CacheEventListener<String, V> listener) {
+		ResourcePoolsBuilder resBuilder = ResourcePoolsBuilder.newResourcePoolsBuilder();
+		// 堆内内存大小(20000条)
+		resBuilder = resBuilder.heap((cacheConfig.getHeap() < 1) ? 1000 : cacheConfig.getHeap(), EntryUnit.ENTRIES);
+		if (cacheConfig.getOffHeap() > 0) {
+			resBuilder = resBuilder.offheap(cacheConfig.getOffHeap(), MemoryUnit.MB);
+		}
+		if (cacheConfig.getDiskSize() > 0) {
+			resBuilder = resBuilder.disk(cacheConfig.getDiskSize(), MemoryUnit.MB, true);
+		}
+		CacheConfigurationBuilder<String, V> builder = CacheConfigurationBuilder
+				.newCacheConfigurationBuilder(String.class, valueType, resBuilder)
+				.withExpiry(cacheConfig.getKeepAlive() > 0
+						? ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(cacheConfig.getKeepAlive()))
+						: ExpiryPolicyBuilder.noExpiration());
+		if (listener != null) {
+			// 同步执行,保证获取key未命中时数据不完整的标记已经存在
+			builder = builder.withService(CacheEventListenerConfigurationBuilder
+					.newEventListenerConfiguration(listener, EventType.EVICTED, EventType.EXPIRED).synchronous()
+					.unordered());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * 按key存储的缓存某个key被淘汰(超出heap/offHeap/disk容量)或过期后,该cacheType的数据已经不完整,
+	 * 标记为不完整(等同于未加载),下次使用时整体重新加载
+	 */
+	private class KeyEvictListener implements CacheEventListener<String, Object[]> {
+		private final String cacheName;
+
+		KeyEvictListener(String cacheName) {
+			this.cacheName = cacheName;
+		}
+
+		@Override
+		public void onEvent(CacheEvent<? extends String, ? extends Object[]> event) {
+			String key = event.getKey();
+			if (key == null) {
+				return;
+			}
+			// 同步监听中不能再操作缓存本身,只做标记
+			int index = key.indexOf(KEY_SPLIT);
+			String keyGroup = (index < 0) ? key.substring(LOADED_FLAG.length()) : key.substring(0, index);
+			STALE_GROUPS.add(getStaleKey(cacheName, keyGroup));
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -188,5 +453,6 @@ public class TranslateEhcacheManager extends TranslateCacheManager {
 			cacheManager.close();
 			cacheManager = null;
 		}
+		STALE_GROUPS.clear();
 	}
 }
@@ -15,6 +15,8 @@ import java.util.Set;
  * @author zhongxuchen
  * @version v1.0,Date:2013-4-8
  * @modify {Date:2020-3-8 修改heap\offheap\diskSize的默认策略}
+ * @modify {Date:2024-04-28 增加staleWhileRevalidate,缓存失效时先返回上次数据并后台刷新}
+ * @modify {Date:2024-05-23 增加matchIndex,为缓存名称反向匹配建立倒排索引}
  */
 public class TranslateConfigModel implements Serializable {
 	/**
@@ -99,6 +101,16 @@ public class TranslateConfigModel implements Serializable {
 	 */
 	private boolean dynamicCache = false;
 
+	/**
+	 * 缓存失效(过期或被清除)时是否先返回上一次加载的数据,同时后台异步刷新缓存
+	 */
+	private boolean staleWhileRevalidate = false;
+
+	/**
+	 * 是否为缓存名称反向匹配(cacheMatchKeys、cache-arg)建立倒排索引
+	 */
+	private boolean matchIndex = false;
+
 	/**
 	 * 国际化
 	 */
@@ -345,6 +357,22 @@ public class TranslateConfigModel implements Serializable {
 		this.dynamicCache = dynamicCache;
 	}
 
+	public boolean isStaleWhileRevalidate() {
+		return staleWhileRevalidate;
+	}
+
+	public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+		this.staleWhileRevalidate = staleWhileRevalidate;
+	}
+
+	public boolean isMatchIndex() {
+		return matchIndex;
+	}
+
+	public void setMatchIndex(boolean matchIndex) {
+		this.matchIndex = matchIndex;
+	}
+
 	/**
 	 * @return the sid
 	 */
@@ -5,6 +5,11 @@ import static java.lang.System.err;
 import java.io.BufferedReader;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -27,8 +32,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import java.util.regex.Pattern;
 
+import org.sagacity.sqltoy.SqlToyConstants;
 import org.sagacity.sqltoy.callback.ReflectPropsHandler;
 import org.sagacity.sqltoy.config.annotation.Entity;
 import org.sagacity.sqltoy.config.annotation.OneToMany;
@@ -39,6 +46,7 @@ import org.sagacity.sqltoy.config.model.EntityMeta;
 import org.sagacity.sqltoy.config.model.KeyAndIndex;
 import org.sagacity.sqltoy.config.model.TableCascadeModel;
 import org.sagacity.sqltoy.exception.DataAccessException;
+import org.sagacity.sqltoy.model.BoundedCache;
 import org.sagacity.sqltoy.model.IgnoreKeyCaseMap;
 import org.sagacity.sqltoy.plugins.TypeHandler;
 import org.slf4j.Logger;
@@ -56,6 +64,8 @@ import org.slf4j.LoggerFactory;
  * @modify data:2022-10-19
  *         convertType类型匹配改成int类型的匹配,通过DataType将TypeName转化为int，批量时效率大幅提升
  * @modify data:2023-08-06 增加对枚举类型的处理
+ * @modify data:2024-04-22 增加基于LambdaMetafactory生成set方法调用器,供查询结果直接映射VO使用
+ * @modify data:2024-05-30 set、get方法缓存改为按class查找的有界缓存,避免每次拼接字符串key
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class BeanUtil {
@@ -67,14 +77,21 @@ public class BeanUtil {
 	public final static Pattern ARRAY_PATTERN = Pattern.compile("\\[\\d+\\]$");
 
 	/**
-	 * 保存set方法
+	 * 保存set方法(class 对应 {属性:方法},按class查找无需拼接字符串key)
 	 */
-	private static ConcurrentHashMap<String, Method> setMethods = new ConcurrentHashMap<String, Method>();
+	private static BoundedCache<Class, ConcurrentHashMap<String, Method>> setMethods = new BoundedCache<Class, ConcurrentHashMap<String, Method>>(
+			"beanSetMethods", SqlToyConstants::getMaxBeanMethodCount);
 
 	/**
-	 * 保存get方法
+	 * 保存get方法(class 对应 {属性:方法})
 	 */
-	private static ConcurrentHashMap<String, Method> getMethods = new ConcurrentHashMap<String, Method>();
+	private static BoundedCache<Class, ConcurrentHashMap<String, Method>> getMethods = new BoundedCache<Class, ConcurrentHashMap<String, Method>>(
+			"beanGetMethods", SqlToyConstants::getMaxBeanMethodCount);
+
+	/**
+	 * 保存set方法对应的调用器(LambdaMetafactory生成,避免Method.invoke反射)
+	 */
+	private static ConcurrentHashMap<Method, BiConsumer> setInvokers = new ConcurrentHashMap<Method, BiConsumer>();
 
 	// 保存pojo的级联关系
 	private static ConcurrentHashMap<String, List> cascadeModels = new ConcurrentHashMap<String, List>();
@@ -195,6 +212,65 @@ public class BeanUtil {
 		return null;
 	}
 
+	/**
+	 * @TODO 获取set方法对应的调用器,一个set方法只生成一次,供大批量数据映射VO时替代Method.invoke
+	 * @param setMethods matchSetMethods 获取的方法,允许存在null
+	 * @return
+	 */
+	public static BiConsumer[] getSetInvokers(Method[] setMethods) {
+		BiConsumer[] result = new BiConsumer[setMethods.length];
+		for (int i = 0; i < setMethods.length; i++) {
+			if (setMethods[i] != null) {
+				result[i] = setInvokers.computeIfAbsent(setMethods[i], BeanUtil::createSetInvoker);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 通过LambdaMetafactory生成set方法的调用器,当类加载器不同等原因无法生成时退化为MethodHandle调用
+	 * @param method
+	 * @return
+	 */
+	private static BiConsumer createSetInvoker(Method method) {
+		Class beanClass = method.getDeclaringClass();
+		// 原生类型参数以包装类型传入,由调用器完成拆箱
+		Class paramType = MethodType.methodType(method.getParameterTypes()[0]).wrap().returnType();
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(beanClass, MethodHandles.lookup());
+			MethodHandle setHandle = lookup.unreflect(method);
+			CallSite callSite = LambdaMetafactory.metafactory(lookup, "accept",
+					MethodType.methodType(BiConsumer.class), MethodType.methodType(void.class, Object.class, Object.class),
+					setHandle, MethodType.methodType(void.class, beanClass, paramType));
+			return (BiConsumer) callSite.getTarget().invoke();
+		} catch (Throwable e) {
+			logger.debug("类:{} 方法:{} 无法通过LambdaMetafactory生成调用器,改用MethodHandle!{}", beanClass.getName(),
+					method.getName(), e.getMessage());
+		}
+		try {
+			final MethodHandle setHandle = MethodHandles.publicLookup().unreflect(method)
+					.asType(MethodType.methodType(void.class, Object.class, Object.class));
+			return (bean, value) -> {
+				try {
+					setHandle.invokeExact(bean, value);
+				} catch (RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new RuntimeException(e);
+				}
+			};
+		} catch (Exception e) {
+			// 最终采用反射调用
+			return (bean, value) -> {
+				try {
+					method.invoke(bean, value);
+				} catch (Exception ex) {
+					throw new RuntimeException(ex);
+				}
+			};
+		}
+	}
+
 	/**
 	 * <p>
 	 * <li>update 2019-09-05 优化匹配方式，修复setIsXXX的错误</li>
@@ -1858,15 +1934,16 @@ public class BeanUtil {
 	 * @throws RuntimeException
 	 */
 	public static void setProperty(Object bean, String property, Object value) throws RuntimeException {
-		String key = bean.getClass().getName().concat(":set").concat(property);
 		// 利用缓存提升方法匹配效率
-		Method method = setMethods.get(key);
+		ConcurrentHashMap<String, Method> classMethods = setMethods.computeIfAbsent(bean.getClass(),
+				(k) -> new ConcurrentHashMap<String, Method>());
+		Method method = classMethods.get(property);
 		if (method == null) {
 			method = matchSetMethods(bean.getClass(), new String[] { property })[0];
 			if (method == null) {
 				throw new RuntimeException(bean.getClass().getName() + " 没有对应的:" + property);
 			}
-			setMethods.put(key, method);
+			classMethods.put(property, method);
 		}
 		// 将数据类型进行转换再赋值
 		String typeName = method.getParameterTypes()[0].getTypeName();
@@ -1897,15 +1974,16 @@ public class BeanUtil {
 		if (bean instanceof Map) {
 			return ((Map) bean).get(property);
 		}
-		String key = bean.getClass().getName().concat(":get").concat(property);
 		// 利用缓存提升方法匹配效率
-		Method method = getMethods.get(key);
+		ConcurrentHashMap<String, Method> classMethods = getMethods.computeIfAbsent(bean.getClass(),
+				(k) -> new ConcurrentHashMap<String, Method>());
+		Method method = classMethods.get(property);
 		if (method == null) {
 			method = matchGetMethods(bean.getClass(), new String[] { property })[0];
 			if (method == null) {
 				return null;
 			}
-			getMethods.put(key, method);
+			classMethods.put(property, method);
 		}
 		Object result = null;
 		try {
@@ -1935,15 +2013,16 @@ public class BeanUtil {
 			}
 			return result;
 		}
-		String key = bean.getClass().getName().concat(":get").concat(realProperty);
 		// 利用缓存提升方法匹配效率
-		Method method = getMethods.get(key);
+		ConcurrentHashMap<String, Method> classMethods = getMethods.computeIfAbsent(bean.getClass(),
+				(k) -> new ConcurrentHashMap<String, Method>());
+		Method method = classMethods.get(realProperty);
 		if (method == null) {
 			method = matchGetMethods(bean.getClass(), new String[] { realProperty })[0];
 			if (method == null) {
 				return null;
 			}
-			getMethods.put(key, method);
+			classMethods.put(realProperty, method);
 		}
 		try {
 			result = method.invoke(bean);
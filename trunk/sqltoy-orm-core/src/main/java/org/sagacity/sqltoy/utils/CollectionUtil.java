@@ -11,6 +11,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -21,6 +22,7 @@ import java.util.Set;
 import org.sagacity.sqltoy.callback.TreeIdAndPidGet;
 import org.sagacity.sqltoy.config.model.SummaryColMeta;
 import org.sagacity.sqltoy.config.model.SummaryGroupMeta;
+import org.sagacity.sqltoy.plugins.calculator.PivotList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +32,8 @@ import org.slf4j.LoggerFactory;
  * @author zhongxuchen
  * @version v1.0,Date:2008-10-22
  * @modify Date:2011-8-11 {修复了pivotList设置旋转数据的初始值错误}
+ * @modify Date:2024-05-21 {sortTreeList改为先建立父子索引再深度优先输出,避免逐个扫描和List的remove、add(index)}
+ * @modify Date:2024-05-22 {pivotList改为hash分组,不再要求数据按分组列排序}
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class CollectionUtil {
@@ -254,48 +258,89 @@ public class CollectionUtil {
 		if (treeList == null || treeList.isEmpty() || pids == null || pids.length == 0) {
 			return treeList;
 		}
-		int totalRecord = treeList.size();
 		// 支持多根节点
-		List result = new ArrayList();
-		Object row;
-		Object pid;
-		for (int i = 0; i < treeList.size(); i++) {
-			row = treeList.get(i);
-			pid = treeIdAndPidGet.getIdAndPid(row)[1];
-			if (any(pid, pids)) {
-				result.add(row);
-				treeList.remove(i);
-				i--;
+		Set rootPids = new HashSet();
+		for (Object pid : pids) {
+			if (pid != null) {
+				rootPids.add(pid);
 			}
 		}
+		List unreachedRows = new ArrayList();
+		List result = sortTreeByRoots(treeList, treeIdAndPidGet, rootPids, null, unreachedRows);
 		if (result.isEmpty()) {
 			throw new IllegalArgumentException("排序树形数据集合中没有对应的父ids:" + StringUtil.linkAry(",", false, pids));
 		}
-		int beginIndex = 0;
-		int addCount = 0;
-		Object idValue, pidValue;
-		while (treeList.size() != 0) {
-			addCount = 0;
-			// id
-			idValue = treeIdAndPidGet.getIdAndPid(result.get(beginIndex))[0];
-			for (int i = 0; i < treeList.size(); i++) {
-				pidValue = treeIdAndPidGet.getIdAndPid(treeList.get(i))[1];
-				if (idValue.equals(pidValue)) {
-					result.add(beginIndex + addCount + 1, treeList.get(i));
-					treeList.remove(i);
-					addCount++;
-					i--;
-				}
+		if (!unreachedRows.isEmpty()) {
+			logger.error("sortTreeList操作发现{}条数据不在指定父ids下或存在循环引用,不符合树形结构规则,请检查!", unreachedRows.size());
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 按父子关系将树形数据组织成深度优先顺序(子节点紧靠父节点):先一次建立父id->子节点索引,再一次遍历输出,时间复杂度O(n)
+	 * @param treeList
+	 * @param treeIdAndPidGet
+	 * @param rootPids          根节点的父id集合
+	 * @param siblingComparator 同一父节点下的节点排序,为null则保持在原集合中的顺序
+	 * @param unreachedRows     存放无法挂接到根节点下的数据(父节点不存在或循环引用),可以为null
+	 * @return
+	 */
+	public static List sortTreeByRoots(List treeList, TreeIdAndPidGet treeIdAndPidGet, Set rootPids,
+			Comparator siblingComparator, List unreachedRows) {
+		int size = treeList.size();
+		Object[] ids = new Object[size];
+		List<Integer> roots = new ArrayList<Integer>();
+		// 父id对应的子节点索引(按原集合顺序)
+		Map<Object, List<Integer>> childrenMap = new HashMap<Object, List<Integer>>(size * 4 / 3 + 1);
+		Object[] idAndPid;
+		for (int i = 0; i < size; i++) {
+			idAndPid = treeIdAndPidGet.getIdAndPid(treeList.get(i));
+			ids[i] = idAndPid[0];
+			if (rootPids.contains(idAndPid[1])) {
+				roots.add(i);
+			} else {
+				childrenMap.computeIfAbsent(idAndPid[1], (key) -> new ArrayList<Integer>(4)).add(i);
 			}
-			// 下一个
-			beginIndex++;
-			// 防止因数据不符合规则造成的死循环
-			if (beginIndex + 1 > result.size()) {
-				break;
+		}
+		Comparator<Integer> indexComparator = null;
+		if (siblingComparator != null) {
+			indexComparator = (a, b) -> siblingComparator.compare(treeList.get(a), treeList.get(b));
+			roots.sort(indexComparator);
+		}
+		List result = new ArrayList(size);
+		boolean[] visited = new boolean[size];
+		// 深度优先遍历,入栈时标记避免重复id和循环引用造成重复输出
+		int[] stack = new int[size];
+		int top = 0;
+		for (int i = roots.size() - 1; i >= 0; i--) {
+			visited[roots.get(i)] = true;
+			stack[top++] = roots.get(i);
+		}
+		int index;
+		List<Integer> children;
+		while (top > 0) {
+			index = stack[--top];
+			result.add(treeList.get(index));
+			// 子节点只挂接一次(重复id时挂在首个输出的节点下)
+			children = childrenMap.remove(ids[index]);
+			if (children != null) {
+				if (indexComparator != null && children.size() > 1) {
+					children.sort(indexComparator);
+				}
+				for (int i = children.size() - 1; i >= 0; i--) {
+					if (!visited[children.get(i)]) {
+						visited[children.get(i)] = true;
+						stack[top++] = children.get(i);
+					}
+				}
 			}
 		}
-		if (result.size() != totalRecord) {
-			logger.error("sortTreeList操作发现部分数据不符合树形结构规则,请检查!");
+		if (unreachedRows != null && result.size() < size) {
+			for (int i = 0; i < size; i++) {
+				if (!visited[i]) {
+					unreachedRows.add(treeList.get(i));
+				}
+			}
 		}
 		return result;
 	}
@@ -412,7 +457,7 @@ public class CollectionUtil {
 	}
 
 	/**
-	 * @todo 集合进行数据旋转
+	 * @todo 集合进行数据旋转(基于hash分组,数据无需按pkColumns预先排序)
 	 * @param data
 	 * @param categorys
 	 * @param categoryCol
@@ -425,144 +470,8 @@ public class CollectionUtil {
 	 */
 	public static List pivotList(List data, List categorys, Integer[] categoryCol, Integer[] pkColumns,
 			Integer[] categCompareCol, int startCol, int endCol, Object defaultValue) {
-		if (data == null || data.isEmpty()) {
-			return data;
-		}
-		Integer[] categCol;
-		if (categoryCol == null) {
-			categCol = new Integer[categCompareCol.length];
-			for (int i = 0; i < categCompareCol.length; i++) {
-				categCol[i] = i;
-			}
-		} else {
-			categCol = categoryCol;
-		}
-		boolean isTwoDimensionCategory = (categorys.get(0) instanceof Collection
-				|| categorys.get(0).getClass().isArray());
-		// 多维旋转参照数据行数跟参照列的数量要一致
-		if (isTwoDimensionCategory
-				&& (categCompareCol.length > categorys.size() || categCompareCol.length != categCol.length)) {
-			throw new IllegalArgumentException("多维旋转参照数据行数跟参照列的数量要一致,categCol.length == categCompareCol.length!");
-		}
-		List result = new ArrayList();
-		// 数据宽度
-		int dataWidth = ((List) data.get(0)).size();
-		int cateItemSize = isTwoDimensionCategory ? ((Collection) categorys.get(0)).size() : categorys.size();
-		int rotateWith = endCol - startCol + 1;
-		int lastRowWidth = dataWidth - categCompareCol.length + (cateItemSize - 1) * rotateWith;
-		int rotateTotalCount = cateItemSize * rotateWith;
-		int count = 0;
-		boolean isRotaCol = false;
-		Object[] rowData = null;
-		int indexLength = pkColumns.length;
-		boolean categoryColEqual = false;
-		int categColSize = categCompareCol.length;
-		// 主键列是否相等
-		boolean pkColumnsEqual = false;
-		List compareRow = null;
-		List rowList;
-		int rowSize = data.size();
-		Object pkColValue;
-		Object compareValue;
-		for (int i = 0; i < rowSize; i++) {
-			rowList = (List) data.get(i);
-			pkColumnsEqual = true;
-			if (i == 0) {
-				pkColumnsEqual = false;
-			} else {
-				for (int k = 0; k < indexLength; k++) {
-					pkColValue = rowList.get(pkColumns[k]);
-					if (pkColValue == null) {
-						pkColValue = "null";
-					}
-					compareValue = compareRow.get(pkColumns[k]);
-					if (compareValue == null) {
-						compareValue = "null";
-					}
-					pkColumnsEqual = pkColumnsEqual && BeanUtil.equalsIgnoreType(pkColValue, compareValue, false);
-					if (!pkColumnsEqual) {
-						break;
-					}
-				}
-			}
-
-			// 不同指标，构建新的行数据
-			if (!pkColumnsEqual) {
-				compareRow = rowList;
-				if (i != 0) {
-					result.add(rowData);
-				}
-				rowData = new Object[lastRowWidth];
-				// 设置旋转部分的数据的默认值
-				if (defaultValue != null) {
-					for (int j = 0; j < rotateTotalCount; j++) {
-						rowData[dataWidth - rotateWith - categCompareCol.length + j] = defaultValue;
-					}
-				}
-				count = 0;
-				for (int k = 0; k < dataWidth; k++) {
-					isRotaCol = false;
-					for (int m = 0; m < categColSize; m++) {
-						if (k == categCompareCol[m]) {
-							isRotaCol = true;
-							break;
-						}
-					}
-					if (k >= startCol && k <= endCol) {
-						isRotaCol = true;
-					}
-					if (!isRotaCol) {
-						rowData[count] = rowList.get(k);
-						count++;
-					}
-				}
-			}
-			for (int j = 0; j < cateItemSize; j++) {
-				// 单个数据
-				if (categColSize == 1) {
-					pkColValue = rowList.get(categCompareCol[0]);
-					if (pkColValue == null) {
-						pkColValue = "null";
-					}
-					compareValue = isTwoDimensionCategory ? ((List) categorys.get(categCol[0])).get(j)
-							: categorys.get(j);
-					if (compareValue == null) {
-						compareValue = "null";
-					}
-					if (BeanUtil.equalsIgnoreType(pkColValue, compareValue, false)) {
-						for (int t = 0; t < rotateWith; t++) {
-							rowData[count + j * rotateWith + t] = rowList.get(startCol + t);
-						}
-					}
-				} else {
-					categoryColEqual = true;
-					for (int k = 0; k < categColSize; k++) {
-						pkColValue = rowList.get(categCompareCol[k]);
-						if (pkColValue == null) {
-							pkColValue = "null";
-						}
-						compareValue = isTwoDimensionCategory ? ((List) categorys.get(categCol[k])).get(j)
-								: categorys.get(j);
-						if (compareValue == null) {
-							compareValue = "null";
-						}
-						categoryColEqual = categoryColEqual
-								&& BeanUtil.equalsIgnoreType(pkColValue, compareValue, false);
-					}
-					if (categoryColEqual) {
-						for (int t = 0; t < rotateWith; t++) {
-							rowData[count + j * rotateWith + t] = rowList.get(startCol + t);
-						}
-					}
-				}
-			}
-			// 最后一行
-			if (i == rowSize - 1) {
-				result.add(rowData);
-			}
-		}
-		innerArrayToList(result);
-		return result;
+		return PivotList.process(data, categorys, categoryCol, pkColumns, categCompareCol, startCol, endCol,
+				defaultValue);
 	}
 
 	/**
@@ -694,8 +603,7 @@ public class CollectionUtil {
 				for (int j = 0, k = rowAry.length; j < k; j++) {
 					rowList.add(rowAry[j]);
 				}
-				source.remove(i);
-				source.add(i, rowList);
+				source.set(i, rowList);
 			}
 		}
 	}
@@ -1263,13 +1171,24 @@ public class CollectionUtil {
 			return sortList;
 		}
 		List subList = sortList.subList(start, end + 1);
-		Collections.sort(subList, new Comparator<List>() {
+		Collections.sort(subList, getListComparator(orderCol, dataType, ascend));
+		return sortList;
+	}
+
+	/**
+	 * @TODO 按List某列的值进行比较的排序器
+	 * @param orderCol
+	 * @param dataType 通过getSortDataType获取
+	 * @param ascend
+	 * @return
+	 */
+	public static Comparator<List> getListComparator(int orderCol, int dataType, boolean ascend) {
+		return new Comparator<List>() {
 			@Override
 			public int compare(List o1, List o2) {
 				return compareValue(o1.get(orderCol), o2.get(orderCol), dataType, ascend);
 			}
-		});
-		return sortList;
+		};
 	}
 
 	/**
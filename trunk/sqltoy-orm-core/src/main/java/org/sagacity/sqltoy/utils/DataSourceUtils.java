@@ -1,15 +1,22 @@
 package org.sagacity.sqltoy.utils;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sql.DataSource;
 
+import org.sagacity.sqltoy.SqlExecuteStat;
 import org.sagacity.sqltoy.SqlToyConstants;
 import org.sagacity.sqltoy.SqlToyContext;
 import org.sagacity.sqltoy.callback.DataSourceCallbackHandler;
+import org.sagacity.sqltoy.model.DataSourceMeta;
 import org.sagacity.sqltoy.model.IgnoreKeyCaseMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +30,10 @@ import org.slf4j.LoggerFactory;
  * @modify data:2022-08-29 增加h2数据库的支持
  * @modify data:2022-09-29 getDialect(DataSource)和getDBType(DataSource)
  *         增加缓存机制，避免获取connection来判断
+ * @modify data:2024-05-25 按DataSource实例缓存数据库类型、方言、版本等信息(DataSourceMeta),
+ *         processDataSource不再每次通过connection.getMetaData()判断
+ * @modify data:2024-06-01 路由类DataSource(AbstractRoutingDataSource、dynamic-datasource等)不缓存,按每次获取的连接判断
+ * @modify data:2024-06-01 判断路由前先剥离DelegatingDataSource等代理,缓存改为弱引用key,可通过sqltoy.datasource.meta.cache关闭
  */
 public class DataSourceUtils {
 	/**
@@ -34,12 +45,20 @@ public class DataSourceUtils {
 
 	}
 
-	// 存放数据库方言(dataSource.toString(),dialect)
-	public static ConcurrentHashMap<String, String> DBDialectMap = new ConcurrentHashMap<String, String>();
-	// 存放数据库方言类型(dataSource.toString(),dbType)
-	public static ConcurrentHashMap<String, Integer> DBTypeMap = new ConcurrentHashMap<String, Integer>();
 	public static ConcurrentHashMap<String, Integer> DBNameTypeMap = new ConcurrentHashMap<String, Integer>();
 	public static IgnoreKeyCaseMap<String, String> dialectMap = new IgnoreKeyCaseMap<String, String>();
+	// 存放DataSource实例对应的数据库信息(按实例判断,不依赖dataSource的hashCode和equals,弱引用key不阻止dataSource被回收)
+	private static ConcurrentHashMap<DataSourceKey, DataSourceMeta> dataSourceMetas = new ConcurrentHashMap<DataSourceKey, DataSourceMeta>();
+	// 已经被回收的dataSource对应的key
+	private static ReferenceQueue<DataSource> releasedDataSources = new ReferenceQueue<DataSource>();
+	// 路由类DataSource的占位信息(表示每次按连接判断)
+	private static final DataSourceMeta ROUTING_META = new DataSourceMeta();
+	// DataSource类型是否是路由类(每次获取的连接可能对应不同数据库)
+	private static ConcurrentHashMap<Class, Boolean> routingDataSourceTypes = new ConcurrentHashMap<Class, Boolean>();
+	// DataSource代理类获取被代理dataSource的方法(如spring的DelegatingDataSource.getTargetDataSource())
+	private static ConcurrentHashMap<Class, Method[]> targetDataSourceMethods = new ConcurrentHashMap<Class, Method[]>();
+	// 代理嵌套的最大层级,避免循环代理导致死循环
+	private static final int MAX_WRAP_LEVEL = 10;
 
 	/**
 	 * 数据库方言定义
@@ -293,11 +312,23 @@ public class DataSourceUtils {
 	 * @throws SQLException
 	 */
 	public static String getCurrentDBDialect(final Connection conn) throws SQLException {
+		if (null == conn) {
+			return getCurrentDBDialect((String) null);
+		}
+		return getCurrentDBDialect(conn.getMetaData().getDatabaseProductName());
+	}
+
+	/**
+	 * @todo 根据数据库产品名称获取数据库方言
+	 * @param productName
+	 * @return
+	 */
+	private static String getCurrentDBDialect(final String productName) {
 		String dilectName = Dialect.UNDEFINE;
 		// 从hashMap中获取
-		if (null != conn) {
+		if (null != productName) {
 			// 剔除空白
-			String dbDialect = conn.getMetaData().getDatabaseProductName().replaceAll("\\s+", "");
+			String dbDialect = productName.replaceAll("\\s+", "");
 			// oracle
 			if (StringUtil.indexOfIgnoreCase(dbDialect, Dialect.ORACLE) != -1) {
 				dilectName = Dialect.ORACLE;
@@ -377,11 +408,15 @@ public class DataSourceUtils {
 	 * @throws SQLException
 	 */
 	private static int getDBVersion(final Connection conn) throws SQLException {
+		return getDBVersion(conn.getMetaData());
+	}
+
+	private static int getDBVersion(final DatabaseMetaData metaData) {
 		// -1表示版本不确定
 		int result = -1;
 		// 部分数据库驱动还不支持此方法
 		try {
-			result = conn.getMetaData().getDatabaseMajorVersion();
+			result = metaData.getDatabaseMajorVersion();
 		} catch (Exception e) {
 			// e.printStackTrace();
 		}
@@ -395,12 +430,21 @@ public class DataSourceUtils {
 	 * @throws SQLException
 	 */
 	public static int getDBType(final Connection conn) throws SQLException {
+		DatabaseMetaData metaData = conn.getMetaData();
+		return getDBType(metaData.getDatabaseProductName(), getDBVersion(metaData));
+	}
+
+	/**
+	 * @todo 根据数据库产品名称和主版本获取数据库类型
+	 * @param productName
+	 * @param majorVersion
+	 * @return
+	 */
+	private static int getDBType(final String productName, final int majorVersion) {
 		// 从hashMap中获取
-		String productName = conn.getMetaData().getDatabaseProductName();
-		int majorVersion = getDBVersion(conn);
 		String dbKey = productName + majorVersion;
 		if (!DBNameTypeMap.containsKey(dbKey)) {
-			String dbDialect = getCurrentDBDialect(conn);
+			String dbDialect = getCurrentDBDialect(productName);
 			int dbType = DBType.UNDEFINE;
 			// oracle12+
 			if (dbDialect.equals(Dialect.ORACLE)) {
@@ -542,7 +586,10 @@ public class DataSourceUtils {
 			throw new IllegalArgumentException(
 					"dataSource为null,异常原因参考:\n 1、多数据源场景未配置spring.sqltoy.defaultDataSoure=xxx 默认数据源;\n 2、dao中指定的dataSource名称不存在!");
 		}
+		long waitStart = System.nanoTime();
 		Connection conn = sqltoyContext.getConnection(datasource);
+		// 登记获取连接的等待时长
+		SqlExecuteStat.addConnectionWait(System.nanoTime() - waitStart);
 		Integer dbType;
 		String dialect;
 		try {
@@ -551,8 +598,10 @@ public class DataSourceUtils {
 				dialect = sqltoyContext.getDialect();
 				dbType = getDBType(dialect);
 			} else {
-				dbType = getDBType(conn);
-				dialect = getDialect(dbType);
+				// 按dataSource缓存,避免每次通过conn.getMetaData()判断
+				DataSourceMeta dataSourceMeta = getDataSourceMeta(datasource, conn);
+				dbType = dataSourceMeta.getDbType();
+				dialect = dataSourceMeta.getDialect();
 			}
 			// 调试显示数据库信息,便于在多数据库场景下辨别查询对应的数据库
 			if (SqlToyConstants.showDatasourceInfo()) {
@@ -563,7 +612,7 @@ public class DataSourceUtils {
 			// 调用反调，传入conn和数据库类型进行实际业务处理(数据库类型主要便于DialectFactory获取对应方言处理类)
 			handler.doConnection(conn, dbType, dialect);
 		} catch (Exception e) {
-			e.printStackTrace();
+			logger.error("执行数据库操作发生异常:{}", e.getMessage(), e);
 			sqltoyContext.releaseConnection(conn, datasource);
 			conn = null;
 			throw new RuntimeException(e);
@@ -585,26 +634,7 @@ public class DataSourceUtils {
 		if (datasource == null) {
 			return DBType.UNDEFINE;
 		}
-		String dsKey = "dataSource&" + datasource.hashCode();
-		Integer dbType = DBTypeMap.get(dsKey);
-		if (dbType != null) {
-			return dbType;
-		}
-		Connection conn = sqltoyContext.getConnection(datasource);
-		dbType = DBType.UNDEFINE;
-		try {
-			dbType = getDBType(conn);
-			DBTypeMap.put(dsKey, dbType);
-		} catch (Exception e) {
-			e.printStackTrace();
-			sqltoyContext.releaseConnection(conn, datasource);
-			conn = null;
-			throw new RuntimeException(e);
-		} finally {
-			// 释放连接,连接池实际是归还连接，未必一定关闭
-			sqltoyContext.releaseConnection(conn, datasource);
-		}
-		return dbType;
+		return getDataSourceMeta(sqltoyContext, datasource).getDbType();
 	}
 
 	/**
@@ -618,17 +648,25 @@ public class DataSourceUtils {
 			return "";
 		}
 		// update 2022-9-30 增加缓存避免通过connection获取数据库方言
-		String dsKey = "dataSource&" + datasource.hashCode();
-		String dialect = DBDialectMap.get(dsKey);
-		if (dialect != null) {
-			return dialect;
+		return getBaseDialect(getDataSourceMeta(sqltoyContext, datasource).getDbType());
+	}
+
+	/**
+	 * @TODO 获取dataSource对应的数据库信息(首次获取connection判断,之后从缓存获取,路由类DataSource每次通过connection判断)
+	 * @param sqltoyContext
+	 * @param datasource
+	 * @return
+	 */
+	public static DataSourceMeta getDataSourceMeta(SqlToyContext sqltoyContext, DataSource datasource) {
+		DataSourceMeta dataSourceMeta = dataSourceMetas.get(new DataSourceKey(datasource, null));
+		if (dataSourceMeta != null && dataSourceMeta != ROUTING_META) {
+			return dataSourceMeta;
 		}
 		Connection conn = sqltoyContext.getConnection(datasource);
 		try {
-			dialect = getDialect(conn);
-			DBDialectMap.put(dsKey, dialect);
+			dataSourceMeta = getDataSourceMeta(datasource, conn);
 		} catch (Exception e) {
-			e.printStackTrace();
+			logger.error("获取dataSource:{}对应的数据库信息失败:{}", datasource, e.getMessage(), e);
 			sqltoyContext.releaseConnection(conn, datasource);
 			conn = null;
 			throw new RuntimeException(e);
@@ -636,20 +674,222 @@ public class DataSourceUtils {
 			// 释放连接,连接池实际是归还连接，未必一定关闭
 			sqltoyContext.releaseConnection(conn, datasource);
 		}
-		return dialect;
+		return dataSourceMeta;
 	}
 
 	/**
-	 * @TODO 根据连接获取数据库方言
+	 * @TODO 通过已经获取的connection得到dataSource对应的数据库信息
+	 * @param datasource
 	 * @param conn
 	 * @return
-	 * @throws Exception
+	 * @throws SQLException
 	 */
-	private static String getDialect(Connection conn) throws Exception {
-		if (conn == null) {
-			return "";
+	public static DataSourceMeta getDataSourceMeta(DataSource datasource, Connection conn) throws SQLException {
+		// 关闭了缓存,每次通过连接判断
+		if (datasource == null || !SqlToyConstants.cacheDataSourceMeta()) {
+			return createDataSourceMeta(conn);
+		}
+		DataSourceKey dsKey = new DataSourceKey(datasource, null);
+		DataSourceMeta dataSourceMeta = dataSourceMetas.get(dsKey);
+		if (dataSourceMeta == null) {
+			expungeReleasedDataSources();
+			// 路由类DataSource实际连接的数据库不固定,登记占位信息,之后每次按连接判断
+			dataSourceMeta = isRoutingDataSource(datasource) ? ROUTING_META : createDataSourceMeta(conn);
+			DataSourceMeta preMeta = dataSourceMetas.putIfAbsent(new DataSourceKey(datasource, releasedDataSources),
+					dataSourceMeta);
+			if (preMeta != null) {
+				dataSourceMeta = preMeta;
+			}
 		}
-		int dbType = getDBType(conn);
+		if (dataSourceMeta == ROUTING_META) {
+			return createDataSourceMeta(conn);
+		}
+		return dataSourceMeta;
+	}
+
+	/**
+	 * @TODO 一次性提取数据库类型、版本、引号、批量等信息
+	 * @param conn
+	 * @return
+	 * @throws SQLException
+	 */
+	private static DataSourceMeta createDataSourceMeta(Connection conn) throws SQLException {
+		DatabaseMetaData metaData = conn.getMetaData();
+		DataSourceMeta dataSourceMeta = new DataSourceMeta();
+		String productName = metaData.getDatabaseProductName();
+		int majorVersion = getDBVersion(metaData);
+		int dbType = getDBType(productName, majorVersion);
+		dataSourceMeta.setProductName(productName);
+		dataSourceMeta.setMajorVersion(majorVersion);
+		dataSourceMeta.setDbType(dbType);
+		dataSourceMeta.setDialect(getDialect(dbType));
+		// 部分数据库驱动不支持以下方法
+		try {
+			String quote = metaData.getIdentifierQuoteString();
+			dataSourceMeta.setIdentifierQuote((quote == null || quote.trim().isEmpty()) ? null : quote.trim());
+		} catch (Exception e) {
+		}
+		try {
+			dataSourceMeta.setSupportBatch(metaData.supportsBatchUpdates());
+		} catch (Exception e) {
+		}
+		dataSourceMeta.setSupportMerge(isSupportMerge(dbType));
+		return dataSourceMeta;
+	}
+
+	/**
+	 * @TODO 数据库是否支持merge into(或on conflict/on duplicate key/upsert)形式的saveOrUpdate
+	 * @param dbType
+	 * @return
+	 */
+	private static boolean isSupportMerge(int dbType) {
+		switch (dbType) {
+		case DBType.ORACLE:
+		case DBType.ORACLE11:
+		case DBType.DB2:
+		case DBType.SQLSERVER:
+		case DBType.POSTGRESQL:
+		case DBType.POSTGRESQL15:
+		case DBType.GAUSSDB:
+		case DBType.OSCAR:
+		case DBType.MYSQL:
+		case DBType.MYSQL57:
+		case DBType.TIDB:
+		case DBType.OCEANBASE:
+		case DBType.DM:
+		case DBType.KINGBASE:
+		case DBType.SQLITE:
+		case DBType.H2:
+		case DBType.IMPALA:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @TODO 是否是路由类DataSource(如spring的AbstractRoutingDataSource、dynamic-datasource的DynamicRoutingDataSource),
+	 *       每次获取的连接可能对应不同的数据库,不能按DataSource缓存数据库信息(先剥离DelegatingDataSource、
+	 *       TransactionAwareDataSourceProxy、LazyConnectionDataSourceProxy等代理再判断)
+	 * @param datasource
+	 * @return
+	 */
+	public static boolean isRoutingDataSource(DataSource datasource) {
+		if (datasource == null) {
+			return false;
+		}
+		DataSource target = datasource;
+		int level = 0;
+		while (target != null && level < MAX_WRAP_LEVEL) {
+			if (isRoutingType(target.getClass())) {
+				return true;
+			}
+			target = getTargetDataSource(target);
+			level++;
+		}
+		return false;
+	}
+
+	/**
+	 * @TODO 类名判断是否是路由类DataSource
+	 * @param dataSourceType
+	 * @return
+	 */
+	private static boolean isRoutingType(Class dataSourceType) {
+		return routingDataSourceTypes.computeIfAbsent(dataSourceType, (type) -> {
+			Class parentClass = type;
+			String className;
+			while (parentClass != null && !parentClass.equals(Object.class)) {
+				className = parentClass.getSimpleName();
+				if (className.contains("Routing") || className.contains("DynamicDataSource")) {
+					return true;
+				}
+				parentClass = parentClass.getSuperclass();
+			}
+			return false;
+		});
+	}
+
+	/**
+	 * @TODO 获取代理类DataSource所代理的dataSource(getTargetDataSource()/getTargetObject(),或jdbc规范的unwrap)
+	 * @param datasource
+	 * @return 非代理类返回null
+	 */
+	private static DataSource getTargetDataSource(DataSource datasource) {
+		Method[] targetMethods = targetDataSourceMethods.computeIfAbsent(datasource.getClass(), (type) -> {
+			for (String methodName : new String[] { "getTargetDataSource", "getTargetObject" }) {
+				try {
+					Method method = type.getMethod(methodName);
+					if (DataSource.class.isAssignableFrom(method.getReturnType())
+							|| Object.class.equals(method.getReturnType())) {
+						return new Method[] { method };
+					}
+				} catch (Exception e) {
+				}
+			}
+			return new Method[0];
+		});
+		DataSource target = null;
+		try {
+			if (targetMethods.length > 0) {
+				Object result = targetMethods[0].invoke(datasource);
+				if (result instanceof DataSource) {
+					target = (DataSource) result;
+				}
+			} else if (datasource.isWrapperFor(DataSource.class)) {
+				target = datasource.unwrap(DataSource.class);
+			}
+		} catch (Throwable e) {
+			// 部分实现不支持unwrap,视为非代理类
+		}
+		return (target == datasource) ? null : target;
+	}
+
+	/**
+	 * @TODO 清除已经被回收的dataSource对应的数据库信息
+	 */
+	private static void expungeReleasedDataSources() {
+		Reference<? extends DataSource> released;
+		while ((released = releasedDataSources.poll()) != null) {
+			dataSourceMetas.remove(released);
+		}
+	}
+
+	/**
+	 * @TODO 预先加载dataSource对应的数据库信息(启动时调用,失败不影响启动,路由类DataSource不做预加载)
+	 * @param sqltoyContext
+	 * @param datasource
+	 */
+	public static void warmDataSourceMeta(SqlToyContext sqltoyContext, DataSource datasource) {
+		if (datasource == null || isRoutingDataSource(datasource)) {
+			return;
+		}
+		try {
+			DataSourceMeta dataSourceMeta = getDataSourceMeta(sqltoyContext, datasource);
+			logger.debug("dataSource:{} 对应数据库:{},版本:{},方言:{}", datasource, dataSourceMeta.getProductName(),
+					dataSourceMeta.getMajorVersion(), dataSourceMeta.getDialect());
+		} catch (Exception e) {
+			logger.warn("预先获取dataSource:{}对应的数据库信息失败:{}", datasource, e.getMessage());
+		}
+	}
+
+	/**
+	 * @TODO dataSource重新注册或移除时清除其数据库信息
+	 * @param datasource
+	 */
+	public static void removeDataSourceMeta(DataSource datasource) {
+		if (datasource != null) {
+			dataSourceMetas.remove(new DataSourceKey(datasource, null));
+		}
+		expungeReleasedDataSources();
+	}
+
+	/**
+	 * @TODO 根据数据库类型获取基础方言名称(不区分版本)
+	 * @param dbType
+	 * @return
+	 */
+	private static String getBaseDialect(int dbType) {
 		switch (dbType) {
 		case DBType.DB2:
 			return Dialect.DB2;
@@ -734,4 +974,33 @@ public class DataSourceUtils {
 			return "nvl";
 		}
 	}
+
+	/**
+	 * 按DataSource实例进行比较的缓存key(弱引用,dataSource被回收后自动失效)
+	 */
+	private static final class DataSourceKey extends WeakReference<DataSource> {
+		private final int hashCode;
+
+		DataSourceKey(DataSource dataSource, ReferenceQueue<DataSource> queue) {
+			super(dataSource, queue);
+			this.hashCode = System.identityHashCode(dataSource);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof DataSourceKey)) {
+				return false;
+			}
+			DataSource dataSource = get();
+			return dataSource != null && ((DataSourceKey) obj).get() == dataSource;
+		}
+	}
 }
@@ -1,32 +1,34 @@
 package org.sagacity.sqltoy.utils;
 
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
-import org.elasticsearch.client.RestClient;
 import org.sagacity.sqltoy.SqlToyContext;
 import org.sagacity.sqltoy.config.model.ElasticEndpoint;
 import org.sagacity.sqltoy.config.model.NoSqlConfigModel;
 import org.sagacity.sqltoy.exception.DataAccessException;
+import org.sagacity.sqltoy.model.HttpPoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +40,9 @@ import com.alibaba.fastjson2.JSONObject;
  * @description 提供基于http请求的工具类
  * @author zhongxuchen
  * @version v1.0,Date:2018年1月7日
+ * @modify Date:2024-05-16 {使用可复用的连接池替代每次请求创建httpclient,支持请求gzip压缩}
+ * @modify Date:2024-05-18 {增加doRequest,以输入流方式读取返回结果,支持es流式查询}
+ * @modify Date:2024-06-01 {共享连接池获取改为public,供sql中直接指定url的es查询按服务地址共享}
  */
 public class HttpClientUtils {
 	/**
@@ -59,50 +64,112 @@ public class HttpClientUtils {
 
 	private final static String POST = "POST";
 
+	/**
+	 * 共享连接池参数(缓存rest检测等)
+	 */
+	private final static int SHARED_MAX_CONNECTIONS = 20;
+
+	private final static int SHARED_MAX_PER_ROUTE = 10;
+
+	private final static long SHARED_KEEP_ALIVE = 60000;
+
+	/**
+	 * 按服务地址共享的连接池
+	 */
+	private final static ConcurrentHashMap<String, HttpConnectionPool> sharedPools = new ConcurrentHashMap<String, HttpConnectionPool>();
+
 	private HttpClientUtils() {
 	}
 
 	public static String doPost(SqlToyContext sqltoyContext, final String url, String username, String password,
 			String[] paramName, String[] paramValue) throws Exception {
 		HttpPost httpPost = new HttpPost(url);
-		// 设置connection是否自动关闭
-		httpPost.setHeader("Connection", "close");
 		httpPost.setConfig(requestConfig);
-		CloseableHttpClient client = null;
-		try {
-			if (StringUtil.isNotBlank(username) && StringUtil.isNotBlank(password)) {
-				// 凭据提供器
-				CredentialsProvider credsProvider = new BasicCredentialsProvider();
-				credsProvider.setCredentials(AuthScope.ANY,
-						// 认证用户名和密码
-						new UsernamePasswordCredentials(username, password));
-				client = HttpClients.custom().setDefaultCredentialsProvider(credsProvider).build();
-			} else {
-				client = HttpClients.createDefault();
-			}
-			if (paramValue != null && paramValue.length > 0) {
-				List<NameValuePair> nvps = new ArrayList<NameValuePair>();
-				for (int i = 0; i < paramValue.length; i++) {
-					if (paramValue[i] != null) {
-						nvps.add(new BasicNameValuePair(paramName[i], paramValue[i]));
-					}
+		if (paramValue != null && paramValue.length > 0) {
+			List<NameValuePair> nvps = new ArrayList<NameValuePair>();
+			for (int i = 0; i < paramValue.length; i++) {
+				if (paramValue[i] != null) {
+					nvps.add(new BasicNameValuePair(paramName[i], paramValue[i]));
 				}
-				HttpEntity httpEntity = new UrlEncodedFormEntity(nvps, CHARSET);
-				((UrlEncodedFormEntity) httpEntity).setContentType(CONTENT_TYPE);
-				httpPost.setEntity(httpEntity);
 			}
-			HttpResponse response = client.execute(httpPost);
+			HttpEntity httpEntity = new UrlEncodedFormEntity(nvps, CHARSET);
+			((UrlEncodedFormEntity) httpEntity).setContentType(CONTENT_TYPE);
+			httpPost.setEntity(httpEntity);
+		}
+		// update 2024-05-16 按服务地址共享连接池,复用keep-alive连接,不再每次创建httpclient
+		return execute(getSharedPool(url, username, password).getHttpClient(), httpPost, CHARSET);
+	}
+
+	/**
+	 * @TODO 执行请求并读取返回结果(读取后连接归还连接池)
+	 * @param client
+	 * @param request
+	 * @param charset
+	 * @return
+	 * @throws Exception
+	 */
+	private static String execute(CloseableHttpClient client, HttpUriRequest request, String charset)
+			throws Exception {
+		try (CloseableHttpResponse response = client.execute(request)) {
 			// 返回结果
 			HttpEntity reponseEntity = response.getEntity();
 			if (reponseEntity != null) {
-				return EntityUtils.toString(reponseEntity, CHARSET);
+				return EntityUtils.toString(reponseEntity, charset);
 			}
-		} catch (Exception e) {
-			throw e;
 		}
 		return null;
 	}
 
+	/**
+	 * @TODO 按服务地址(协议+host+端口)和用户获取共享连接池,连接池数量以服务地址数量为上限
+	 * @param url
+	 * @param username
+	 * @param password
+	 * @return
+	 */
+	public static HttpConnectionPool getSharedPool(String url, String username, String password) {
+		URL realUrl;
+		try {
+			realUrl = new URL(url);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("url:" + url + " 格式不正确:" + e.getMessage(), e);
+		}
+		String key = realUrl.getProtocol().concat("://").concat(realUrl.getHost()).concat(":")
+				.concat(Integer.toString(realUrl.getPort())).concat("|").concat((username == null) ? "" : username)
+				.concat("|").concat((password == null) ? "" : Integer.toString(password.hashCode()));
+		HttpConnectionPool pool = sharedPools.get(key);
+		if (pool == null) {
+			pool = sharedPools.computeIfAbsent(key,
+					(k) -> new HttpConnectionPool(realUrl.getProtocol() + "://" + realUrl.getAuthority(),
+							SHARED_MAX_CONNECTIONS, SHARED_MAX_PER_ROUTE, SHARED_KEEP_ALIVE,
+							requestConfig.getConnectionRequestTimeout(), requestConfig.getConnectTimeout(),
+							requestConfig.getSocketTimeout(), username, password, null));
+		}
+		return pool;
+	}
+
+	/**
+	 * @TODO 获取共享连接池的使用情况
+	 * @return
+	 */
+	public static List<HttpPoolStats> getSharedPoolStats() {
+		List<HttpPoolStats> result = new ArrayList<HttpPoolStats>();
+		for (HttpConnectionPool pool : sharedPools.values()) {
+			result.add(pool.getStats());
+		}
+		return result;
+	}
+
+	/**
+	 * @TODO 关闭共享连接池
+	 */
+	public static void closeSharedPools() {
+		for (HttpConnectionPool pool : sharedPools.values()) {
+			pool.close();
+		}
+		sharedPools.clear();
+	}
+
 	/**
 	 * @todo 执行post请求
 	 * @param sqltoyContext
@@ -136,7 +203,7 @@ public class HttpClientUtils {
 		((StringEntity) httpEntity).setContentType(CONTENT_TYPE);
 		String realUrl;
 		// 返回结果
-		HttpEntity reponseEntity = null;
+		String result = null;
 		// 使用elastic rest client(默认)
 		if (esConfig.getRestClient() != null) {
 			realUrl = wrapUrl(esConfig, nosqlConfig);
@@ -144,20 +211,12 @@ public class HttpClientUtils {
 				logger.debug("esRestClient执行:URL=[{}],Path={},执行的JSON=[{}]", esConfig.getUrl(), realUrl,
 						JSON.toJSONString(postValue));
 			}
-			// 默认采用post请求
-			RestClient restClient = null;
-			try {
-				restClient = esConfig.getRestClient();
-				Request request = new Request(POST, realUrl);
-				request.setEntity(httpEntity);
-				Response response = restClient.performRequest(request);
-				reponseEntity = response.getEntity();
-			} catch (Exception e) {
-				throw e;
-			} finally {
-				if (restClient != null) {
-					restClient.close();
-				}
+			// 默认采用post请求,restClient为共享连接池,请求完成后不能关闭
+			Request request = new Request(POST, realUrl);
+			request.setEntity(httpEntity);
+			Response response = esConfig.getRestClient().performRequest(request);
+			if (response.getEntity() != null) {
+				result = EntityUtils.toString(response.getEntity(), charset);
 			}
 		} // 组织httpclient模式调用(此种模式不推荐使用)
 		else {
@@ -166,43 +225,24 @@ public class HttpClientUtils {
 			if (sqltoyContext.isDebug()) {
 				logger.debug("httpClient执行URL=[{}],执行的JSON=[{}]", realUrl, JSON.toJSONString(postValue));
 			}
-			httpPost.setEntity(httpEntity);
-
-			// 设置connection是否自动关闭
-			httpPost.setHeader("Connection", "close");
+			// 请求内容gzip压缩
+			if (esConfig.isGzipRequest()) {
+				httpPost.setEntity(new GzipCompressingEntity(httpEntity));
+			} else {
+				httpPost.setEntity(httpEntity);
+			}
 			// 自定义超时
 			if (nosqlConfig.getRequestTimeout() != 30000 || nosqlConfig.getConnectTimeout() != 10000
 					|| nosqlConfig.getSocketTimeout() != 180000) {
 				httpPost.setConfig(RequestConfig.custom().setConnectionRequestTimeout(nosqlConfig.getRequestTimeout())
 						.setConnectTimeout(nosqlConfig.getConnectTimeout())
 						.setSocketTimeout(nosqlConfig.getSocketTimeout()).build());
-			} else {
-				httpPost.setConfig(requestConfig);
-			}
-			CloseableHttpClient client = null;
-			try {
-				if (StringUtil.isNotBlank(esConfig.getUsername()) && StringUtil.isNotBlank(esConfig.getPassword())) {
-					// 凭据提供器
-					CredentialsProvider credsProvider = new BasicCredentialsProvider();
-					credsProvider.setCredentials(AuthScope.ANY,
-							// 认证用户名和密码
-							new UsernamePasswordCredentials(esConfig.getUsername(), esConfig.getPassword()));
-					client = HttpClients.custom().setDefaultCredentialsProvider(credsProvider).build();
-				} else {
-					client = HttpClients.createDefault();
-				}
-				HttpResponse response = client.execute(httpPost);
-				reponseEntity = response.getEntity();
-			} catch (Exception e) {
-				throw e;
 			}
+			// update 2024-05-16 使用endpoint的连接池,复用keep-alive连接
+			result = execute(esConfig.getHttpPool().getHttpClient(), httpPost, charset);
 		}
-		String result = null;
-		if (reponseEntity != null) {
-			result = EntityUtils.toString(reponseEntity, nosqlConfig.getCharset());
-			if (sqltoyContext.isDebug()) {
-				logger.debug("result={}", result);
-			}
+		if (result != null && sqltoyContext.isDebug()) {
+			logger.debug("result={}", result);
 		}
 		if (StringUtil.isBlank(result)) {
 			return null;
@@ -218,6 +258,96 @@ public class HttpClientUtils {
 		return json;
 	}
 
+	/**
+	 * @TODO 执行es请求,并以输入流方式交给reader读取返回结果(不整体转成字符串和JSON对象),用于流式查询
+	 * @param <T>
+	 * @param sqltoyContext
+	 * @param nosqlConfig
+	 * @param esConfig
+	 * @param method        POST、DELETE等
+	 * @param path          相对服务地址的路径,如:/index/_pit?keep_alive=1m
+	 * @param postValue     请求内容,为null表示无请求体
+	 * @param reader
+	 * @return
+	 * @throws Exception
+	 */
+	public static <T> T doRequest(SqlToyContext sqltoyContext, NoSqlConfigModel nosqlConfig, ElasticEndpoint esConfig,
+			String method, String path, Object postValue, ResponseReader<T> reader) throws Exception {
+		if (esConfig.getUrl() == null) {
+			throw new IllegalArgumentException("请正确配置sqltoyContext elasticConfigs 指定es的服务地址!");
+		}
+		String charset = (nosqlConfig.getCharset() == null) ? CHARSET : nosqlConfig.getCharset();
+		StringEntity httpEntity = null;
+		if (postValue != null) {
+			httpEntity = new StringEntity(JSON.toJSONString(postValue), charset);
+			httpEntity.setContentEncoding(charset);
+			httpEntity.setContentType(CONTENT_TYPE);
+		}
+		// 使用elastic rest client(默认)
+		if (esConfig.getRestClient() != null) {
+			if (sqltoyContext.isDebug()) {
+				logger.debug("esRestClient执行:URL=[{}],Method={},Path={},执行的JSON=[{}]", esConfig.getUrl(), method, path,
+						(httpEntity == null) ? "" : JSON.toJSONString(postValue));
+			}
+			Request request = new Request(method, path);
+			if (httpEntity != null) {
+				request.setEntity(httpEntity);
+			}
+			// 返回状态异常时restClient直接抛出ResponseException
+			Response response = esConfig.getRestClient().performRequest(request);
+			HttpEntity reponseEntity = response.getEntity();
+			if (reponseEntity == null) {
+				return null;
+			}
+			try (InputStream input = reponseEntity.getContent()) {
+				return reader.read(input, charset);
+			}
+		}
+		// 多个地址时httpclient模式取第一个
+		URL baseUrl = new URL(esConfig.getUrl().split("[,;]")[0].trim());
+		String realUrl = baseUrl.getProtocol().concat("://").concat(baseUrl.getAuthority()).concat(path);
+		if (sqltoyContext.isDebug()) {
+			logger.debug("httpClient执行URL=[{}],Method={},执行的JSON=[{}]", realUrl, method,
+					(httpEntity == null) ? "" : JSON.toJSONString(postValue));
+		}
+		RequestBuilder builder = RequestBuilder.create(method).setUri(realUrl);
+		if (httpEntity != null) {
+			builder.setEntity(esConfig.isGzipRequest() ? new GzipCompressingEntity(httpEntity) : httpEntity);
+		}
+		// 自定义超时
+		if (nosqlConfig.getRequestTimeout() != 30000 || nosqlConfig.getConnectTimeout() != 10000
+				|| nosqlConfig.getSocketTimeout() != 180000) {
+			builder.setConfig(RequestConfig.custom().setConnectionRequestTimeout(nosqlConfig.getRequestTimeout())
+					.setConnectTimeout(nosqlConfig.getConnectTimeout()).setSocketTimeout(nosqlConfig.getSocketTimeout())
+					.build());
+		}
+		try (CloseableHttpResponse response = esConfig.getHttpPool().getHttpClient().execute(builder.build())) {
+			HttpEntity reponseEntity = response.getEntity();
+			int status = response.getStatusLine().getStatusCode();
+			if (status >= 300) {
+				String errorMessage = (reponseEntity == null) ? "" : EntityUtils.toString(reponseEntity, charset);
+				logger.error("elastic请求失败,endpoint:[{}],status:{},错误信息:[{}]", nosqlConfig.getEndpoint(), status,
+						errorMessage);
+				throw new DataAccessException("ElasticSearch请求失败,status:" + status + ",错误信息:" + errorMessage);
+			}
+			if (reponseEntity == null) {
+				return null;
+			}
+			// 读取完输入流后连接归还连接池
+			try (InputStream input = reponseEntity.getContent()) {
+				return reader.read(input, charset);
+			}
+		}
+	}
+
+	/**
+	 * 以输入流方式读取请求返回结果
+	 */
+	@FunctionalInterface
+	public interface ResponseReader<T> {
+		public T read(InputStream input, String charset) throws Exception;
+	}
+
 	/**
 	 * @todo 重新组织url
 	 * @param esConfig
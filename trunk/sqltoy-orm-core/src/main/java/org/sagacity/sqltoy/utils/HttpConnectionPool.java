@@ -0,0 +1,259 @@
+package org.sagacity.sqltoy.utils;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.sagacity.sqltoy.model.HttpPoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 可复用的http连接池:按路由限制连接数、keep-alive复用连接、响应自动gzip解压,并统计获取连接的次数和等待时长
+ *              <li>ElasticEndpoint 每个配置一个连接池,缓存rest检测等按服务地址共享连接池</li>
+ *              <li>全部连接池共用一个后台线程定时清理过期和空闲连接,不再每个连接池各自启动清理线程</li>
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-16
+ * @modify {Date:2024-06-01,过期和空闲连接改由共享的清理线程统一处理}
+ */
+public class HttpConnectionPool {
+	/**
+	 * 定义日志
+	 */
+	protected final static Logger logger = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+	/**
+	 * 清理过期和空闲连接的间隔(毫秒)
+	 */
+	private final static long EVICT_INTERVAL = 5000;
+
+	/**
+	 * 未关闭的连接池,由共享清理线程定时清理
+	 */
+	private final static Set<HttpConnectionPool> ACTIVE_POOLS = ConcurrentHashMap.newKeySet();
+
+	private static ScheduledExecutorService evictor;
+
+	private final String name;
+
+	/**
+	 * 空闲超过此时长的连接被关闭(毫秒)
+	 */
+	private final long keepAlive;
+
+	private final MeteredConnectionManager connectionManager;
+
+	private final CloseableHttpClient httpClient;
+
+	private final RequestConfig requestConfig;
+
+	/**
+	 * @param name           连接池名称
+	 * @param maxTotal       最大连接数
+	 * @param maxPerRoute    单个路由(host)最大连接数
+	 * @param keepAlive      服务端未返回Keep-Alive时连接保持时长(毫秒)
+	 * @param requestTimeout 从连接池获取连接超时(毫秒)
+	 * @param connectTimeout 建立连接超时(毫秒)
+	 * @param socketTimeout  读取数据超时(毫秒)
+	 * @param username
+	 * @param password
+	 * @param sslContext     为null则使用jdk默认证书
+	 */
+	public HttpConnectionPool(String name, int maxTotal, int maxPerRoute, final long keepAlive, int requestTimeout,
+			int connectTimeout, int socketTimeout, String username, String password, SSLContext sslContext) {
+		this.name = name;
+		this.keepAlive = keepAlive;
+		RegistryBuilder<ConnectionSocketFactory> registryBuilder = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory());
+		registryBuilder.register("https", (sslContext == null) ? SSLConnectionSocketFactory.getSocketFactory()
+				: new SSLConnectionSocketFactory(sslContext));
+		connectionManager = new MeteredConnectionManager(registryBuilder);
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		// 复用前校验空闲超过2秒的连接,避免使用服务端已关闭的连接
+		connectionManager.setValidateAfterInactivity(2000);
+		requestConfig = RequestConfig.custom().setConnectionRequestTimeout(requestTimeout)
+				.setConnectTimeout(connectTimeout).setSocketTimeout(socketTimeout).build();
+		// HttpClientBuilder默认开启Accept-Encoding:gzip和响应自动解压
+		HttpClientBuilder builder = HttpClients.custom().setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig).setKeepAliveStrategy((response, context) -> {
+					long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response,
+							context);
+					return (duration > 0) ? duration : keepAlive;
+				});
+		if (StringUtil.isNotBlank(username) && StringUtil.isNotBlank(password)) {
+			// 凭据提供器
+			CredentialsProvider credsProvider = new BasicCredentialsProvider();
+			credsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
+			builder.setDefaultCredentialsProvider(credsProvider);
+		}
+		httpClient = builder.build();
+		register(this);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public CloseableHttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	public RequestConfig getRequestConfig() {
+		return requestConfig;
+	}
+
+	/**
+	 * @TODO 获取连接池使用情况
+	 * @return
+	 */
+	public HttpPoolStats getStats() {
+		PoolStats poolStats = connectionManager.getTotalStats();
+		HttpPoolStats result = new HttpPoolStats();
+		result.setName(name);
+		result.setLeased(poolStats.getLeased());
+		result.setPending(poolStats.getPending());
+		result.setAvailable(poolStats.getAvailable());
+		result.setMax(poolStats.getMax());
+		long count = connectionManager.leaseCount.sum();
+		result.setLeaseCount(count);
+		if (count > 0) {
+			result.setAveLeaseWaitTime(toMillis(connectionManager.leaseWaitNanos.sum() / (double) count));
+		}
+		result.setMaxLeaseWaitTime(toMillis(connectionManager.maxLeaseWaitNanos.get()));
+		return result;
+	}
+
+	public void close() {
+		unregister(this);
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+		}
+		connectionManager.shutdown();
+	}
+
+	/**
+	 * @TODO 关闭过期和空闲超时的连接
+	 */
+	void evict() {
+		connectionManager.closeExpiredConnections();
+		connectionManager.closeIdleConnections(keepAlive, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @TODO 当前未关闭的连接池数量
+	 * @return
+	 */
+	public static int getActivePoolCount() {
+		return ACTIVE_POOLS.size();
+	}
+
+	/**
+	 * @TODO 登记连接池,首个连接池创建时启动共享清理线程
+	 * @param pool
+	 */
+	private static synchronized void register(HttpConnectionPool pool) {
+		ACTIVE_POOLS.add(pool);
+		if (evictor == null) {
+			evictor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+				Thread thread = new Thread(runnable, "sqltoy-http-pool-evictor");
+				thread.setDaemon(true);
+				return thread;
+			});
+			evictor.scheduleWithFixedDelay(() -> {
+				for (HttpConnectionPool item : ACTIVE_POOLS) {
+					try {
+						item.evict();
+					} catch (Exception e) {
+						logger.warn("清理http连接池:{} 空闲连接发生异常:{}", item.getName(), e.getMessage());
+					}
+				}
+			}, EVICT_INTERVAL, EVICT_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @TODO 注销连接池,全部关闭后停止共享清理线程
+	 * @param pool
+	 */
+	private static synchronized void unregister(HttpConnectionPool pool) {
+		ACTIVE_POOLS.remove(pool);
+		if (ACTIVE_POOLS.isEmpty() && evictor != null) {
+			evictor.shutdownNow();
+			evictor = null;
+		}
+	}
+
+	private static double toMillis(double nanos) {
+		return Math.round(nanos / 1000d) / 1000d;
+	}
+
+	/**
+	 * 统计获取连接次数和等待时长的连接管理器
+	 */
+	private static class MeteredConnectionManager extends PoolingHttpClientConnectionManager {
+		private final LongAdder leaseCount = new LongAdder();
+
+		private final LongAdder leaseWaitNanos = new LongAdder();
+
+		private final LongAccumulator maxLeaseWaitNanos = new LongAccumulator(Math::max, 0);
+
+		MeteredConnectionManager(RegistryBuilder<ConnectionSocketFactory> registryBuilder) {
+			super(registryBuilder.build());
+		}
+
+		@Override
+		public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+			final ConnectionRequest request = super.requestConnection(route, state);
+			return new ConnectionRequest() {
+				@Override
+				public boolean cancel() {
+					return request.cancel();
+				}
+
+				@Override
+				public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+						throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+					long start = System.nanoTime();
+					try {
+						return request.get(timeout, timeUnit);
+					} finally {
+						long waitNanos = System.nanoTime() - start;
+						leaseCount.increment();
+						leaseWaitNanos.add(waitNanos);
+						maxLeaseWaitNanos.accumulate(waitNanos);
+					}
+				}
+			};
+		}
+	}
+}
@@ -4,12 +4,14 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
-import org.sagacity.sqltoy.config.SqlConfigParseUtils;
+import org.sagacity.sqltoy.SqlToyConstants;
+import org.sagacity.sqltoy.model.BoundedCache;
 
 /**
  * @project sagacity-sqltoy
@@ -23,15 +25,42 @@ import org.sagacity.sqltoy.config.SqlConfigParseUtils;
  * @modify {Date:2022-05-10 支持@if(1==1)无参数模式}
  * @modify {Date:2023-05-6 支持@if(:param==:param || 1==:flage)
  *         对比双方都是变量、变量可以在右边的场景}
+ * @modify {Date:2024-05-24 表达式一次编译成语法树并缓存,常量预先解析,支持&&和||混合及括号分组}
  */
 @SuppressWarnings("rawtypes")
 public class MacroIfLogic {
+	/**
+	 * 比较符号(等于用==,最后用=进行容错处理),<>符号统一规范成!=
+	 */
+	private final static String[] COMPARE_STR = { "!=", "==", ">=", "<=", ">", "<", "=", " include ", " in ", " out ",
+			" startswith ", " endswith " };
+
+	/**
+	 * 对应COMPARE_STR的切割表达式
+	 */
+	private final static String[] SPLIT_REG = { "\\!\\=", "\\=\\=", "\\>\\=", "\\<\\=", "\\>", "\\<", "\\=",
+			"\\s+include\\s+", "\\s+in\\s+", "\\s+out\\s+", "\\s+startswith\\s+", "\\s+endswith\\s+" };
+
+	private final static CompareValue TRUE_VALUE = CompareValue.parse("true");
+
+	private final static CompareValue FALSE_VALUE = CompareValue.parse("false");
+
+	/**
+	 * 无法解析的表达式,与之前一致按@if()不起作用处理
+	 */
+	private final static IfNode UNDEFINE = (paramValues, preCount) -> true;
+
+	/**
+	 * 编译后的表达式缓存(表达式来源于sql配置,数量有限)
+	 */
+	private static BoundedCache<String, IfNode> compiledExpressions = new BoundedCache<String, IfNode>(
+			"macroIfExpression", SqlToyConstants::getMaxMacroExpressionCount);
 
 	private MacroIfLogic() {
 	}
 
 	/**
-	 * @todo 简单逻辑判断,只支持2个逻辑,update 2017-12-4 剔除freemarker复杂逻辑判断,减少框架依赖性
+	 * @todo 逻辑判断,支持&&、||混合及括号分组(&&优先于||)
 	 * @param evalExpression 表达式
 	 * @param paramValues
 	 * @param preCount
@@ -50,148 +79,48 @@ public class MacroIfLogic {
 				}
 			}
 		}
-		// 规范判断符号标准(<>转为!=)
-		evalExpression = evalExpression.replaceAll("\\<\\>", "!=").replaceAll("\r|\t|\n", " ").trim();
-		// 先通过简单表达式进行计算,格式如:@if(:name>=xxx || :name<=xxx)
-		String simpleResult = evalSimpleExpress(evalExpression, (logicParamCnt == 0) ? null : paramValues, preCount);
-		if (!"undefine".equals(simpleResult)) {
-			return Boolean.parseBoolean(simpleResult);
+		try {
+			return compile(evalExpression).eval((logicParamCnt == 0) ? null : paramValues, preCount);
+		} catch (Exception e) {
+			e.printStackTrace();
 		}
 		// 默认返回true，表示@if()模式不起作用
 		return true;
 	}
 
 	/**
-	 * @todo 简单表达式(单独列出来便于做容错性处理)
+	 * @TODO 获取编译后的表达式
 	 * @param evalExpression
-	 * @param paramValues
-	 * @param preCount
 	 * @return
 	 */
-	private static String evalSimpleExpress(String evalExpression, List paramValues, int preCount) {
-		// 不能超过两个运算符
-		if (evalExpression.indexOf("||") != -1 && evalExpression.indexOf("&&") != -1) {
-			return "undefine";
-		}
-		// 2020-08-25 增加include场景
-		// 比较符号(等于用==,最后用=进行容错处理),<>符号前面已经统一规范成!=
-		String[] compareStr = { "!=", "==", ">=", "<=", ">", "<", "=", " include ", " in ", " out ", " startswith ",
-				" endswith " };
-		// 增加对应compareStr的切割表达式(2020-10-21 修改为正则表达式，修复split错误)
-		String[] splitReg = { "\\!\\=", "\\=\\=", "\\>\\=", "\\<\\=", "\\>", "\\<", "\\=", "\\s+include\\s+",
-				"\\s+in\\s+", "\\s+out\\s+", "\\s+startswith\\s+", "\\s+endswith\\s+" };
-		String splitStr = "==";
-		String logicStr = "\\&\\&";
-		String[] expressions;
+	private static IfNode compile(String evalExpression) {
+		IfNode node = compiledExpressions.get(evalExpression);
+		if (node != null) {
+			return node;
+		}
+		// 规范判断符号标准(<>转为!=)
+		String expression = evalExpression.replace("<>", "!=").replaceAll("\r|\t|\n", " ").trim();
 		try {
-			if (evalExpression.indexOf("||") != -1) {
-				logicStr = "\\|\\|";
-			}
-			expressions = evalExpression.split(logicStr);
-			boolean[] expressResult = new boolean[expressions.length];
-			String express;
-			String expressLow;
-			String[] params;
-			Object leftValue;
-			String leftParamLow;
-			String rightValue;
-			Object rightObj;
-			String compareType = "==";
-			// 参数量计数器
-			int meter = 0;
-			// 表达式左边参数中是否包含？动态参数
-			boolean hasArg = true;
-			boolean isNegate = false;
-			for (int i = 0; i < expressions.length; i++) {
-				hasArg = false;
-				express = expressions[i].trim();
-				expressLow = express.toLowerCase();
-				// 匹配对应的判断逻辑符号
-				for (int j = 0; j < compareStr.length; j++) {
-					if (expressLow.indexOf(compareStr[j]) != -1) {
-						compareType = compareStr[j].trim();
-						splitStr = splitReg[j];
-						break;
-					}
-				}
-				params = express.split(splitStr);
-				// 对比的参照参数名称
-				leftParamLow = params[0].trim().toLowerCase();
-				// 判断左边是否有?参数
-				if (paramValues != null) {
-					hasArg = StringUtil.matches(leftParamLow, SqlConfigParseUtils.ARG_NAME_PATTERN);
-				}
-				// 取出实际参数值
-				isNegate = false;
-				if (hasArg) {
-					leftValue = paramValues.get(preCount + meter);
-					// 支持枚举类型
-					if (leftValue != null && leftValue instanceof Enum) {
-						leftValue = BeanUtil.getEnumValue(leftValue);
-					}
-					// !:paramName 取反
-					if (leftParamLow.startsWith("!")) {
-						isNegate = true;
-					}
-					meter++;
-				} else {
-					leftValue = params[0].trim();
-				}
-				// update 2018-3-29,去除空格增强容错性
-				if (params.length > 1) {
-					rightValue = params[1].trim();
-				} else {
-					if (isNegate) {
-						rightValue = "false";
-					} else {
-						rightValue = "true";
-					}
-				}
-				// 对比值也是动态参数(update 2023-05-05)
-				if (paramValues != null && "?".equals(rightValue)) {
-					rightObj = paramValues.get(preCount + meter);
-					if (rightObj == null) {
-						rightValue = "null";
-					} else {
-						// 支持枚举类型
-						if (rightObj instanceof Enum) {
-							rightValue = BeanUtil.getEnumValue(rightObj).toString();
-						} else {
-							rightValue = rightObj.toString();
-						}
-					}
-					meter++;
-				}
-				// 计算单个比较的结果(update 2020-09-24 增加数组长度的提取)
-				if (hasArg && (leftParamLow.startsWith("size(") || leftParamLow.startsWith("length("))) {
-					expressResult[i] = compare((leftValue == null) ? 0 : CollectionUtil.convertArray(leftValue).length,
-							compareType, rightValue);
-				} else {
-					expressResult[i] = compare(leftValue, compareType, rightValue);
-				}
-			}
-
-			// 只支持&& 和||
-			// 与运算
-			if ("\\&\\&".equals(logicStr) || "&&".equals(logicStr)) {
-				for (int i = 0; i < expressions.length; i++) {
-					if (!expressResult[i]) {
-						return "false";
-					}
-				}
-				return "true";
-			}
-			// 或运算
-			for (int i = 0; i < expressions.length; i++) {
-				if (expressResult[i]) {
-					return "true";
-				}
+			IfParser parser = new IfParser(expression);
+			node = parser.parseOr();
+			// 存在多余的")"等无法解析的内容
+			if (parser.skipBlank() < expression.length()) {
+				node = UNDEFINE;
 			}
-			return "false";
 		} catch (Exception e) {
 			e.printStackTrace();
+			node = UNDEFINE;
 		}
-		return "undefine";
+		// 有界缓存,代码中拼接的动态sql超出数量后淘汰最少使用的
+		compiledExpressions.put(evalExpression, node);
+		return node;
+	}
+
+	/**
+	 * @TODO 清空编译后的表达式缓存
+	 */
+	public static void clearCompiledExpressions() {
+		compiledExpressions.clear();
 	}
 
 	/**
@@ -202,49 +131,34 @@ public class MacroIfLogic {
 	 * @return
 	 */
 	public static boolean compare(Object value, String compareType, String compareValue) {
-		// 剔除首尾字符串标志符号
-		compareValue = clearChar(compareValue);
-		// 只支持加减运算
-		String append = "0";
-		String[] calculateStr = { "+", "-" };
-		String[] tmpAry;
-		// 判断是否有加减运算
-		for (String calculate : calculateStr) {
-			if (compareValue.trim().indexOf(calculate) > 0) {
-				tmpAry = compareValue.split("+".equals(calculate) ? "\\+" : "\\-");
-				// 正负数字
-				append = calculate + tmpAry[1].trim();
-				compareValue = tmpAry[0].trim();
-				break;
-			}
-		}
-		String type = "string";
-		String dayTimeFmt = "yyyy-MM-dd HH:mm:ss";
-		String dayFmt = "yyyy-MM-dd";
-		String lowCompareValue = compareValue.toLowerCase();
-		if ("now()".equals(lowCompareValue) || ".now".equals(lowCompareValue) || "${.now}".equals(lowCompareValue)
-				|| "nowtime()".equals(lowCompareValue)) {
-			compareValue = DateUtil.formatDate(DateUtil.addSecond(new Date(), Double.parseDouble(append)), dayTimeFmt);
-			type = "time";
-		} else if ("day()".equals(lowCompareValue) || "sysdate()".equals(lowCompareValue)
-				|| ".day".equals(lowCompareValue) || ".day()".equals(lowCompareValue)
-				|| "${.day}".equals(lowCompareValue)) {
-			compareValue = DateUtil.formatDate(DateUtil.addSecond(new Date(), Double.parseDouble(append)), dayFmt);
-			type = "date";
-		}
+		return compare(value, compareType, CompareValue.parse(compareValue));
+	}
+
+	/**
+	 * @todo 参数值与预先解析好的对比值进行比较
+	 * @param value
+	 * @param compareType
+	 * @param compareValue
+	 * @return
+	 */
+	private static boolean compare(Object value, String compareType, CompareValue compareValue) {
+		String type = compareValue.type;
+		String compare = compareValue.value;
 		String valueStr = (value == null) ? "null" : clearChar(value.toString());
 		if ("time".equals(type)) {
-			valueStr = DateUtil.formatDate(value, dayTimeFmt);
+			compare = DateUtil.formatDate(DateUtil.addSecond(new Date(), compareValue.append), "yyyy-MM-dd HH:mm:ss");
+			valueStr = DateUtil.formatDate(value, "yyyy-MM-dd HH:mm:ss");
 		} else if ("date".equals(type)) {
-			valueStr = DateUtil.formatDate(value, dayFmt);
+			compare = DateUtil.formatDate(DateUtil.addSecond(new Date(), compareValue.append), "yyyy-MM-dd");
+			valueStr = DateUtil.formatDate(value, "yyyy-MM-dd");
 		}
 		// 等于(兼容等于号非法)
 		if ("==".equals(compareType) || "=".equals(compareType)) {
-			return valueStr.equalsIgnoreCase(compareValue);
+			return valueStr.equalsIgnoreCase(compare);
 		}
 		// 不等于
 		if ("!=".equals(compareType)) {
-			return !valueStr.equalsIgnoreCase(compareValue);
+			return !valueStr.equalsIgnoreCase(compare);
 		}
 		// 为null时只参与等于或不等于逻辑判断
 		if (value == null) {
@@ -252,43 +166,43 @@ public class MacroIfLogic {
 		}
 		// 大于等于
 		if (">=".equals(compareType)) {
-			return moreEqual(value, valueStr, compareValue, type);
+			return moreEqual(value, valueStr, compare, type, compareValue);
 		}
 		// 小于等于
 		if ("<=".equals(compareType)) {
-			return lessEqual(value, valueStr, compareValue, type);
+			return lessEqual(value, valueStr, compare, type, compareValue);
 		}
 		// 大于
 		if (">".equals(compareType)) {
-			return more(value, valueStr, compareValue, type);
+			return more(value, valueStr, compare, type, compareValue);
 		}
 		// 小于
 		if ("<".equals(compareType)) {
-			return less(value, valueStr, compareValue, type);
+			return less(value, valueStr, compare, type, compareValue);
 		}
 		// 包含
 		if ("include".equals(compareType)) {
-			return include(value, valueStr, compareValue, type);
+			return include(value, valueStr, compare, type);
 		}
 		// 在数组范围内
 		if ("in".equals(compareType)) {
-			return in(value, valueStr, compareValue, type);
+			return in(value, valueStr, compareValue.getLowItems(compare), type);
 		}
 		// 在数组范围外
 		if ("out".equals(compareType)) {
-			return out(value, valueStr, compareValue, type);
+			return out(value, valueStr, compareValue.getLowItems(compare), type);
 		}
 		// 以xxx字符开始
 		if ("startswith".equals(compareType)) {
-			return valueStr.startsWith(compareValue);
+			return valueStr.startsWith(compare);
 		}
 		// 以xxx字符结束
 		if ("endswith".equals(compareType)) {
-			return valueStr.endsWith(compareValue);
+			return valueStr.endsWith(compare);
 		}
 		// between
 		if ("between".equals(compareType)) {
-			String[] compareValues = compareValue.split("\\,");
+			String[] compareValues = compareValue.getItems(compare);
 			if (compareValues.length == 2) {
 				return between(value, valueStr, compareValues[0], compareValues[1]);
 			}
@@ -296,21 +210,46 @@ public class MacroIfLogic {
 		return true;
 	}
 
+	/**
+	 * @TODO 判断两个数字字符串
+	 * @param valueStr
+	 * @param compare
+	 * @param compareValue
+	 * @return 非数字返回null
+	 */
+	private static Double[] numbers(String valueStr, String compare, CompareValue compareValue) {
+		if (!NumberUtil.isNumber(valueStr)) {
+			return null;
+		}
+		// 常量已经预先解析
+		if (compare == compareValue.value) {
+			return compareValue.isNumber ? new Double[] { Double.parseDouble(valueStr), compareValue.number }
+					: null;
+		}
+		if (NumberUtil.isNumber(compare)) {
+			return new Double[] { Double.parseDouble(valueStr), Double.parseDouble(compare) };
+		}
+		return null;
+	}
+
 	/**
 	 * @todo 大于等于
 	 * @param value
 	 * @param valueStr
 	 * @param compare
 	 * @param type
+	 * @param compareValue
 	 * @return
 	 */
-	private static boolean moreEqual(Object value, String valueStr, String compare, String type) {
+	private static boolean moreEqual(Object value, String valueStr, String compare, String type,
+			CompareValue compareValue) {
 		if ("time".equals(type) || "date".equals(type)) {
 			return DateUtil.convertDateObject(valueStr).compareTo(DateUtil.convertDateObject(compare)) >= 0;
 		}
 		// 数字
-		if (NumberUtil.isNumber(valueStr) && NumberUtil.isNumber(compare)) {
-			return Double.parseDouble(valueStr) >= Double.parseDouble(compare);
+		Double[] numbers = numbers(valueStr, compare, compareValue);
+		if (numbers != null) {
+			return numbers[0] >= numbers[1];
 		}
 		return valueStr.compareTo(compare) >= 0;
 	}
@@ -321,15 +260,18 @@ public class MacroIfLogic {
 	 * @param valueStr
 	 * @param compare
 	 * @param type
+	 * @param compareValue
 	 * @return
 	 */
-	private static boolean lessEqual(Object value, String valueStr, String compare, String type) {
+	private static boolean lessEqual(Object value, String valueStr, String compare, String type,
+			CompareValue compareValue) {
 		if ("time".equals(type) || "date".equals(type)) {
 			return DateUtil.convertDateObject(valueStr).compareTo(DateUtil.convertDateObject(compare)) <= 0;
 		}
 		// 数字
-		if (NumberUtil.isNumber(valueStr) && NumberUtil.isNumber(compare)) {
-			return Double.parseDouble(valueStr) <= Double.parseDouble(compare);
+		Double[] numbers = numbers(valueStr, compare, compareValue);
+		if (numbers != null) {
+			return numbers[0] <= numbers[1];
 		}
 		return valueStr.compareTo(compare) <= 0;
 	}
@@ -340,15 +282,18 @@ public class MacroIfLogic {
 	 * @param valueStr
 	 * @param compare
 	 * @param type
+	 * @param compareValue
 	 * @return
 	 */
-	private static boolean more(Object value, String valueStr, String compare, String type) {
+	private static boolean more(Object value, String valueStr, String compare, String type,
+			CompareValue compareValue) {
 		if ("time".equals(type) || "date".equals(type)) {
 			return DateUtil.convertDateObject(valueStr).compareTo(DateUtil.convertDateObject(compare)) > 0;
 		}
 		// 数字
-		if (NumberUtil.isNumber(valueStr) && NumberUtil.isNumber(compare)) {
-			return Double.parseDouble(valueStr) > Double.parseDouble(compare);
+		Double[] numbers = numbers(valueStr, compare, compareValue);
+		if (numbers != null) {
+			return numbers[0] > numbers[1];
 		}
 		return valueStr.compareTo(compare) > 0;
 	}
@@ -359,15 +304,18 @@ public class MacroIfLogic {
 	 * @param valueStr
 	 * @param compare
 	 * @param type
+	 * @param compareValue
 	 * @return
 	 */
-	private static boolean less(Object value, String valueStr, String compare, String type) {
+	private static boolean less(Object value, String valueStr, String compare, String type,
+			CompareValue compareValue) {
 		if ("time".equals(type) || "date".equals(type)) {
 			return DateUtil.convertDateObject(valueStr).compareTo(DateUtil.convertDateObject(compare)) < 0;
 		}
 		// 数字
-		if (NumberUtil.isNumber(valueStr) && NumberUtil.isNumber(compare)) {
-			return Double.parseDouble(valueStr) < Double.parseDouble(compare);
+		Double[] numbers = numbers(valueStr, compare, compareValue);
+		if (numbers != null) {
+			return numbers[0] < numbers[1];
 		}
 		return valueStr.compareTo(compare) < 0;
 	}
@@ -417,15 +365,14 @@ public class MacroIfLogic {
 	 * @TODO 在数组范围内
 	 * @param value
 	 * @param valueStr
-	 * @param compare
+	 * @param compareAry 已经转小写并切割的对比值
 	 * @param type
 	 * @return
 	 */
-	private static boolean in(Object value, String valueStr, String compare, String type) {
+	private static boolean in(Object value, String valueStr, String[] compareAry, String type) {
 		if (value == null) {
 			return false;
 		}
-		String[] compareAry = compare.toLowerCase().split("\\,");
 		String compareLow = valueStr.toLowerCase();
 		if (compareAry.length == 1) {
 			return compareAry[0].contains(compareLow);
@@ -442,15 +389,14 @@ public class MacroIfLogic {
 	 * @TODO 在数组范围外
 	 * @param value
 	 * @param valueStr
-	 * @param compare
+	 * @param compareAry 已经转小写并切割的对比值
 	 * @param type
 	 * @return
 	 */
-	private static boolean out(Object value, String valueStr, String compare, String type) {
+	private static boolean out(Object value, String valueStr, String[] compareAry, String type) {
 		if (value == null) {
 			return true;
 		}
-		String[] compareAry = compare.toLowerCase().split("\\,");
 		String compareLow = valueStr.toLowerCase();
 		if (compareAry.length == 1) {
 			return !compareAry[0].contains(compareLow);
@@ -509,4 +455,308 @@ public class MacroIfLogic {
 		}
 		return source;
 	}
+
+	/**
+	 * 编译后的逻辑表达式节点
+	 */
+	@FunctionalInterface
+	private interface IfNode {
+		boolean eval(List paramValues, int preCount);
+	}
+
+	/**
+	 * &&或||逻辑节点(短路计算)
+	 */
+	private static class LogicNode implements IfNode {
+		private final boolean isAnd;
+		private final IfNode[] nodes;
+
+		LogicNode(boolean isAnd, List<IfNode> nodes) {
+			this.isAnd = isAnd;
+			this.nodes = nodes.toArray(new IfNode[nodes.size()]);
+		}
+
+		@Override
+		public boolean eval(List paramValues, int preCount) {
+			for (IfNode node : nodes) {
+				if (node.eval(paramValues, preCount) != isAnd) {
+					return !isAnd;
+				}
+			}
+			return isAnd;
+		}
+	}
+
+	/**
+	 * 单个比较,如:?>=value、size(?)>3、?==?、1==1
+	 */
+	private static class CompareNode implements IfNode {
+		private String compareType = "==";
+
+		// 左边是否是?参数
+		private boolean leftArg;
+
+		private int leftIndex;
+
+		private String leftText;
+
+		// size(?)、length(?) 取数组长度
+		private boolean lengthOf;
+
+		// 右边是否是?参数
+		private boolean rightArg;
+
+		private int rightIndex;
+
+		// 没有对比值 :flag 或 !:flag
+		private boolean noRight;
+
+		private CompareValue rightValue;
+
+		@Override
+		public boolean eval(List paramValues, int preCount) {
+			boolean hasArg = leftArg && paramValues != null;
+			Object leftValue;
+			if (hasArg) {
+				leftValue = paramValues.get(preCount + leftIndex);
+				// 支持枚举类型
+				if (leftValue != null && leftValue instanceof Enum) {
+					leftValue = BeanUtil.getEnumValue(leftValue);
+				}
+			} else {
+				leftValue = leftText;
+			}
+			CompareValue compareValue = rightValue;
+			if (noRight && !hasArg) {
+				compareValue = TRUE_VALUE;
+			}
+			// 对比值也是动态参数(update 2023-05-05)
+			else if (rightArg && paramValues != null) {
+				Object rightObj = paramValues.get(preCount + rightIndex);
+				if (rightObj == null) {
+					compareValue = CompareValue.parse("null");
+				} else {
+					compareValue = CompareValue.parse(
+							(rightObj instanceof Enum) ? BeanUtil.getEnumValue(rightObj).toString() : rightObj.toString());
+				}
+			}
+			// 计算单个比较的结果(update 2020-09-24 增加数组长度的提取)
+			if (hasArg && lengthOf) {
+				return compare((leftValue == null) ? 0 : CollectionUtil.convertArray(leftValue).length, compareType,
+						compareValue);
+			}
+			return compare(leftValue, compareType, compareValue);
+		}
+	}
+
+	/**
+	 * 表达式解析器:or := and (|| and)*; and := primary (&& primary)*; primary := (or) | 比较
+	 */
+	private static class IfParser {
+		private final String expression;
+
+		private int pos = 0;
+
+		// ?参数的计数器
+		private int argIndex = 0;
+
+		IfParser(String expression) {
+			this.expression = expression;
+		}
+
+		IfNode parseOr() {
+			List<IfNode> nodes = new ArrayList<IfNode>();
+			nodes.add(parseAnd());
+			while (skipBlank() < expression.length() && expression.startsWith("||", pos)) {
+				pos += 2;
+				nodes.add(parseAnd());
+			}
+			return (nodes.size() == 1) ? nodes.get(0) : new LogicNode(false, nodes);
+		}
+
+		IfNode parseAnd() {
+			List<IfNode> nodes = new ArrayList<IfNode>();
+			nodes.add(parsePrimary());
+			while (skipBlank() < expression.length() && expression.startsWith("&&", pos)) {
+				pos += 2;
+				nodes.add(parsePrimary());
+			}
+			return (nodes.size() == 1) ? nodes.get(0) : new LogicNode(true, nodes);
+		}
+
+		IfNode parsePrimary() {
+			skipBlank();
+			// 括号分组(区别于size(?)以及 (?)>1 这类比较内的括号)
+			if (pos < expression.length() && expression.charAt(pos) == '(') {
+				int end = scan(pos + 1, true);
+				if (end < expression.length() && isGroupEnd(end + 1)) {
+					pos++;
+					IfNode node = parseOr();
+					if (skipBlank() >= expression.length() || expression.charAt(pos) != ')') {
+						throw new IllegalArgumentException("@if(" + expression + ") 括号不对称!");
+					}
+					pos++;
+					return node;
+				}
+			}
+			int start = pos;
+			pos = scan(pos, false);
+			return compileCompare(expression.substring(start, pos).trim());
+		}
+
+		/**
+		 * @TODO 跳过引号和函数括号,找到比较结束的位置(顶层的&&、||或不对称的")")
+		 * @param index
+		 * @param toClose 为true时只找不对称的")"
+		 * @return
+		 */
+		private int scan(int index, boolean toClose) {
+			int depth = 0;
+			char c;
+			int quoteEnd;
+			while (index < expression.length()) {
+				c = expression.charAt(index);
+				if (c == '\'' || c == '"') {
+					quoteEnd = expression.indexOf(c, index + 1);
+					// 引号成对出现才作为字符串处理
+					if (quoteEnd != -1) {
+						index = quoteEnd;
+					}
+				} else if (c == '(') {
+					depth++;
+				} else if (c == ')') {
+					if (depth == 0) {
+						return index;
+					}
+					depth--;
+				} else if (!toClose && depth == 0
+						&& (expression.startsWith("&&", index) || expression.startsWith("||", index))) {
+					return index;
+				}
+				index++;
+			}
+			return index;
+		}
+
+		private boolean isGroupEnd(int index) {
+			while (index < expression.length() && expression.charAt(index) == ' ') {
+				index++;
+			}
+			return index == expression.length() || expression.charAt(index) == ')'
+					|| expression.startsWith("&&", index) || expression.startsWith("||", index);
+		}
+
+		int skipBlank() {
+			while (pos < expression.length() && expression.charAt(pos) == ' ') {
+				pos++;
+			}
+			return pos;
+		}
+
+		private CompareNode compileCompare(String express) {
+			CompareNode node = new CompareNode();
+			String expressLow = express.toLowerCase();
+			String splitStr = "==";
+			// 匹配对应的判断逻辑符号
+			for (int j = 0; j < COMPARE_STR.length; j++) {
+				if (expressLow.indexOf(COMPARE_STR[j]) != -1) {
+					node.compareType = COMPARE_STR[j].trim();
+					splitStr = SPLIT_REG[j];
+					break;
+				}
+			}
+			String[] params = express.split(splitStr);
+			// 对比的参照参数名称
+			String leftParamLow = params[0].trim().toLowerCase();
+			node.leftText = params[0].trim();
+			node.leftArg = leftParamLow.indexOf('?') != -1;
+			boolean isNegate = false;
+			if (node.leftArg) {
+				node.leftIndex = argIndex++;
+				// !:paramName 取反
+				isNegate = leftParamLow.startsWith("!");
+				node.lengthOf = leftParamLow.startsWith("size(") || leftParamLow.startsWith("length(");
+			}
+			// update 2018-3-29,去除空格增强容错性
+			if (params.length > 1) {
+				String rightValue = params[1].trim();
+				if ("?".equals(rightValue)) {
+					node.rightArg = true;
+					node.rightIndex = argIndex++;
+				}
+				node.rightValue = CompareValue.parse(rightValue);
+			} else {
+				node.noRight = true;
+				node.rightValue = isNegate ? FALSE_VALUE : TRUE_VALUE;
+			}
+			return node;
+		}
+	}
+
+	/**
+	 * 预先解析的对比值(剔除引号、识别now()/day()及加减运算、数字和in/out的值列表)
+	 */
+	private static class CompareValue {
+		private String value;
+
+		private String type = "string";
+
+		private double append = 0;
+
+		private boolean isNumber;
+
+		private double number;
+
+		private String[] lowItems;
+
+		private String[] items;
+
+		static CompareValue parse(String source) {
+			CompareValue result = new CompareValue();
+			// 剔除首尾字符串标志符号
+			String compareValue = clearChar(source);
+			// 只支持加减运算
+			String append = "0";
+			String[] calculateStr = { "+", "-" };
+			String[] tmpAry;
+			// 判断是否有加减运算
+			for (String calculate : calculateStr) {
+				if (compareValue.trim().indexOf(calculate) > 0) {
+					tmpAry = compareValue.split("+".equals(calculate) ? "\\+" : "\\-");
+					// 正负数字
+					append = calculate + tmpAry[1].trim();
+					compareValue = tmpAry[0].trim();
+					break;
+				}
+			}
+			String lowCompareValue = compareValue.toLowerCase();
+			if ("now()".equals(lowCompareValue) || ".now".equals(lowCompareValue) || "${.now}".equals(lowCompareValue)
+					|| "nowtime()".equals(lowCompareValue)) {
+				result.type = "time";
+				result.append = Double.parseDouble(append);
+			} else if ("day()".equals(lowCompareValue) || "sysdate()".equals(lowCompareValue)
+					|| ".day".equals(lowCompareValue) || ".day()".equals(lowCompareValue)
+					|| "${.day}".equals(lowCompareValue)) {
+				result.type = "date";
+				result.append = Double.parseDouble(append);
+			}
+			result.value = compareValue;
+			result.isNumber = NumberUtil.isNumber(compareValue);
+			if (result.isNumber) {
+				result.number = Double.parseDouble(compareValue);
+			}
+			result.lowItems = compareValue.toLowerCase().split("\\,");
+			result.items = compareValue.split("\\,");
+			return result;
+		}
+
+		// 日期类对比值在执行时才确定
+		String[] getLowItems(String compare) {
+			return (compare == value) ? lowItems : compare.toLowerCase().split("\\,");
+		}
+
+		String[] getItems(String compare) {
+			return (compare == value) ? items : compare.split("\\,");
+		}
+	}
 }
@@ -6,10 +6,6 @@ package org.sagacity.sqltoy.utils;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
@@ -28,6 +24,7 @@ import org.sagacity.sqltoy.plugins.sharding.ShardingUtils;
  * @description sqltoy对象集合相关操作、sharding策略分组以及并行提交相关数据库进行执行
  * @author zhongxuchen
  * @version v1.0,Date:2017年11月3日
+ * @modify {Date:2024-04-30,改为使用SqlToyContext共享的并行执行器,maxConcurrents作为单次调用的并发数量}
  */
 @SuppressWarnings("rawtypes")
 public class ParallelUtils {
@@ -63,33 +60,27 @@ public class ParallelUtils {
 		// 开始多线程并行执行
 		ShardingConfig shardingConfig = entityMeta.getShardingConfig();
 		List results = new ArrayList();
-		// 并行线程数量
+		// 并行数量
 		int threads = shardingGroups.size();
 		// 是否全局异常回滚
 		boolean globalRollback = shardingConfig.isGlobalRollback();
-		// 如果额外策略配置了线程数量,则按照指定的线程数量执行
+		// 如果额外策略配置了并发数量,则按照指定的并发数量执行
 		if (threads > shardingConfig.getMaxConcurrents() && shardingConfig.getMaxConcurrents() > 1) {
 			threads = shardingConfig.getMaxConcurrents();
 		}
-		ExecutorService pool = Executors.newFixedThreadPool(threads);
-		List<Future<ShardingResult>> futureResults = new ArrayList<Future<ShardingResult>>();
-		Future<ShardingResult> future;
+		List<DialectExecutor> tasks = new ArrayList<DialectExecutor>(shardingGroups.size());
+		List<DataSource> dataSources = new ArrayList<DataSource>(shardingGroups.size());
 		for (ShardingGroupModel group : shardingGroups) {
-			future = pool.submit(new DialectExecutor(sqlToyContext, group, handler));
-			futureResults.add(future);
-		}
-		pool.shutdown();
-		// 设置最大等待时长
-		if (shardingConfig.getMaxWaitSeconds() > 0) {
-			pool.awaitTermination(shardingConfig.getMaxWaitSeconds(), TimeUnit.SECONDS);
-		} else {
-			pool.awaitTermination(SqlToyConstants.PARALLEL_MAXWAIT_SECONDS, TimeUnit.SECONDS);
+			tasks.add(new DialectExecutor(sqlToyContext, group, handler));
+			dataSources.add(group.getShardingModel().getDataSource());
 		}
 		// 提取各个线程返回的结果进行合并
 		try {
-			ShardingResult item;
-			for (Future<ShardingResult> futureResult : futureResults) {
-				item = futureResult.get();
+			// 由共享的并行执行器执行,maxConcurrents作为本次调用的并发数量,超时则取消未完成的任务
+			List<ShardingResult> shardingResults = sqlToyContext.getParallelExecutor().invokeAll(tasks, dataSources,
+					threads, (shardingConfig.getMaxWaitSeconds() > 0) ? shardingConfig.getMaxWaitSeconds()
+							: SqlToyConstants.PARALLEL_MAXWAIT_SECONDS);
+			for (ShardingResult item : shardingResults) {
 				// 全局异常则抛出,让事务进行全部回滚。
 				if (item != null && !item.isSuccess() && globalRollback) {
 					throw new RuntimeException(item.getMessage());
@@ -101,8 +92,6 @@ public class ParallelUtils {
 		} catch (Exception e) {
 			e.printStackTrace();
 			throw e;
-		} finally {
-			pool.shutdownNow();
 		}
 		return results;
 	}
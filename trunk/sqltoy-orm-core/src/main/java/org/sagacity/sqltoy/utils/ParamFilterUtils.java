@@ -26,6 +26,7 @@ import org.sagacity.sqltoy.model.CacheArg;
 import org.sagacity.sqltoy.model.DataAuthFilterConfig;
 import org.sagacity.sqltoy.model.ParamsFilter;
 import org.sagacity.sqltoy.plugins.IUnifyFieldsHandler;
+import org.sagacity.sqltoy.translate.CacheMatchIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +38,7 @@ import org.slf4j.LoggerFactory;
  * @modify Date:2020-7-15 {增加l-like,r-like为参数单边补充%从而不破坏索引,默认是两边}
  * @modify Date:2023-4-18 {增加to-string}
  * @modify Date:2023-05-01 {优化cache-arg,修复priorMatchEqual存在的bug}
+ * @modify Date:2024-05-23 {cache-arg对配置了match-index的缓存通过倒排索引获取候选记录}
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class ParamFilterUtils {
@@ -246,10 +248,16 @@ public class ParamFilterUtils {
 			// key 值
 			Object keyCode;
 			Object compareValue;
+			// 配置了match-index的缓存通过倒排索引获取候选记录,避免全量扫描
+			CacheMatchIndex cacheMatchIndex = sqlToyContext.getTranslateManager().getMatchIndex(
+					paramFilterModel.getCacheName(), paramFilterModel.getCacheType(), cacheDataMap, cacheKeyIndex,
+					matchIndexes);
+			Collection<Object[]> cacheRows;
 			// 优先匹配查询参数跟缓存名称等直接相等，精准匹配
 			if (priorMatchEqual) {
 				String keyLow;
-				for (Object[] cacheRow : cacheDataMap.values()) {
+				cacheRows = (cacheMatchIndex == null) ? cacheDataMap.values() : cacheMatchIndex.equalCandidates(matchLowAry);
+				for (Object[] cacheRow : cacheRows) {
 					keyCode = cacheRow[cacheKeyIndex];
 					include = true;
 					// 对缓存进行过滤(比如过滤本人授权访问机构下面的员工或当期状态为生效的员工)
@@ -300,7 +308,9 @@ public class ParamFilterUtils {
 				for (int i = 0; i < likeArgSize; i++) {
 					paramsMatchWords.add(matchLowAry.get(i).split("\\s+"));
 				}
-				for (Object[] cacheRow : cacheDataMap.values()) {
+				cacheRows = (cacheMatchIndex == null) ? cacheDataMap.values()
+						: cacheMatchIndex.likeCandidates(paramsMatchWords);
+				for (Object[] cacheRow : cacheRows) {
 					keyCode = cacheRow[cacheKeyIndex];
 					include = true;
 					// 已经存在无需再比较
@@ -1,6 +1,8 @@
 package org.sagacity.sqltoy.utils;
 
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
@@ -19,6 +21,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
 
 import org.sagacity.sqltoy.SqlExecuteStat;
 import org.sagacity.sqltoy.SqlToyConstants;
@@ -56,15 +59,18 @@ import org.sagacity.sqltoy.model.inner.DataSetResult;
 import org.sagacity.sqltoy.model.inner.QueryExecutorExtend;
 import org.sagacity.sqltoy.model.inner.TranslateExtend;
 import org.sagacity.sqltoy.plugins.I18nThreadHolder;
+import org.sagacity.sqltoy.plugins.TypeHandler;
 import org.sagacity.sqltoy.plugins.calculator.ColsChainRelative;
 import org.sagacity.sqltoy.plugins.calculator.GroupSummary;
 import org.sagacity.sqltoy.plugins.calculator.ReverseList;
 import org.sagacity.sqltoy.plugins.calculator.RowsChainRelative;
 import org.sagacity.sqltoy.plugins.calculator.TreeDataSort;
+import org.sagacity.sqltoy.plugins.calculator.PivotList;
 import org.sagacity.sqltoy.plugins.calculator.UnpivotList;
 import org.sagacity.sqltoy.plugins.secure.DesensitizeProvider;
 import org.sagacity.sqltoy.translate.TranslateConfigParse;
 import org.sagacity.sqltoy.translate.TranslateManager;
+import org.sagacity.sqltoy.translate.cache.TranslateCacheView;
 import org.sagacity.sqltoy.translate.model.TranslateConfigModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -77,6 +83,13 @@ import org.slf4j.LoggerFactory;
  * @modify Date:2016-12-13 {对行转列分类参照集合进行了排序}
  * @modify Date:2020-05-29 {将脱敏和格式化转到calculate中,便于elastic和mongo查询提供同样的功能}
  * @modify Date:2024-03-15 {由俊华反馈，优化hiberarchySet支持逻辑业务主子关系，如单据中的创建人，审批人分别映射员工表}
+ * @modify Date:2024-04-22 {返回VO且无旋转、汇总等计算时,遍历ResultSet直接映射成VO,避免二维List中间结果和Method.invoke反射}
+ * @modify Date:2024-05-14 {普通查询结果提取完成后按列批量解密,不再逐个单元格解密}
+ * @modify Date:2024-05-20 {流式查询的行转换抽取为StreamRowMapper,供fetchStream和ResultCursor共用}
+ * @modify Date:2024-05-22 {数据旋转改为基于hash分组的PivotList,不再要求查询按分组列排序}
+ * @modify Date:2024-06-01 {存在按key存储的缓存翻译时,结果提取完成后按缓存批量获取key再统一翻译}
+ * @modify Date:2024-06-01 {查询结果提取完成后统一登记sql执行统计的记录数量}
+ * @modify Date:2024-06-01 {增加isRowCountPreserved,判断结果记录数是否等于数据库返回的记录数}
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class ResultUtils {
@@ -157,8 +170,15 @@ public class ResultUtils {
 			result.setLabelTypes(labelTypes);
 			// 返回结果为非VO class时才可以应用旋转和汇总合计功能
 			try {
-				result.setRows(getResultSet(queryExecutorExtend, sqlToyConfig, sqlToyContext, conn, rs,
-						updateRowHandler, realDecryptHandler, rowCnt, labelIndexMap, labelNames, startColIndex));
+				// 返回VO且不存在link、旋转、汇总等计算时,遍历结果集直接映射成VO对象,避免先组装二维List再反射
+				if (updateRowHandler == null && isDirectMapping(sqlToyConfig, queryExecutorExtend)) {
+					result.setRows(getBeanResultSet(queryExecutorExtend, sqlToyConfig, sqlToyContext, rs,
+							realDecryptHandler, labelNames));
+					result.setMappedResult(true);
+				} else {
+					result.setRows(getResultSet(queryExecutorExtend, sqlToyConfig, sqlToyContext, conn, rs,
+							updateRowHandler, realDecryptHandler, rowCnt, labelIndexMap, labelNames, startColIndex));
+				}
 			} // update 2019-09-11 此处增加数组溢出异常是因为经常有开发设置缓存cache-indexs时写错误，为了增加错误提示信息的友好性增加此处理
 			catch (Exception oie) {
 				logger.error("sql={} 提取结果发生异常:{}!", sqlToyConfig.getId(), oie.getMessage());
@@ -168,6 +188,9 @@ public class ResultUtils {
 		// 填充记录数
 		if (result.getRows() != null) {
 			result.setRecordCount(Long.valueOf(result.getRows().size()));
+			SqlExecuteStat.addRowCount(result.getRows().size());
+		} else if (index > 0 && queryExecutorExtend != null && queryExecutorExtend.rowCallbackHandler != null) {
+			SqlExecuteStat.addRowCount(index);
 		}
 		return result;
 	}
@@ -189,196 +212,283 @@ public class ResultUtils {
 			final SqlToyConfig sqlToyConfig, Connection conn, ResultSet rs,
 			final StreamResultHandler streamResultHandler, Class resultType, Boolean humpMapLabel,
 			Map<Class, IgnoreKeyCaseMap<String, String>> fieldsMap) throws Exception {
-		// 重新组合解密字段(entityMeta中的和sql自定义的合并)
-		IgnoreCaseSet decryptColumns = sqlToyConfig.getDecryptColumns();
-		DecryptHandler realDecryptHandler = null;
-		if (decryptColumns != null && !decryptColumns.isEmpty()) {
-			realDecryptHandler = new DecryptHandler(sqlToyContext.getFieldsSecureProvider(), decryptColumns);
-		}
-		// 取得字段列数
-		int columnSize = rs.getMetaData().getColumnCount();
-		// 类型转成string的列
-		Set<String> strTypeCols = getStringColumns(sqlToyConfig);
-		boolean hasToStrCols = !strTypeCols.isEmpty();
-		String[] labelNames = new String[columnSize];
-		String[] labelTypes = new String[columnSize];
-		String labeNameLow;
-		String colLabelUpperOrLower = sqlToyContext.getColumnLabelUpperOrLower();
+		StreamRowMapper rowMapper = new StreamRowMapper(sqlToyContext, extend, sqlToyConfig, rs, resultType,
+				humpMapLabel, fieldsMap);
+		// 执行开始
+		streamResultHandler.start(rowMapper.getLabelNames(), rowMapper.getLabelTypes());
 		int index = 0;
-		for (int i = 0; i < columnSize; i++) {
-			labelNames[index] = rs.getMetaData().getColumnLabel(i + 1);
-			labeNameLow = labelNames[index].toLowerCase();
-			if ("lower".equals(colLabelUpperOrLower)) {
-				labelNames[index] = labelNames[index].toLowerCase();
-			} else if ("upper".equals(colLabelUpperOrLower)) {
-				labelNames[index] = labelNames[index].toUpperCase();
-			}
-			labelTypes[index] = rs.getMetaData().getColumnTypeName(i + 1);
-			// 类型因缓存翻译、格式化转为string
-			if (hasToStrCols && strTypeCols.contains(labeNameLow)) {
-				labelTypes[index] = "VARCHAR";
-			}
-			index++;
-		}
-		// 判断是否有缓存翻译器定义
-		Boolean hasTranslate = (sqlToyConfig.getTranslateMap().isEmpty()) ? false : true;
-		HashMap<String, Translate> translateMap = sqlToyConfig.getTranslateMap();
-		HashMap<String, HashMap<String, Object[]>> translateCache = null;
-		if (hasTranslate) {
-			translateCache = sqlToyContext.getTranslateManager().getTranslates(translateMap);
-			if (translateCache == null || translateCache.isEmpty()) {
-				hasTranslate = false;
-				logger.debug("通过缓存配置未获取到缓存数据,请正确配置TranslateManager!");
-			}
-			// i18n国际化处理
-			if (hasTranslate) {
-				translateMap = wrapI18nIndex(sqlToyContext.getTranslateManager(), translateMap);
+		Object row;
+		while (rs.next()) {
+			row = rowMapper.mapRow(rs);
+			if (row != null) {
+				// 消费每行数据
+				streamResultHandler.consume(row, index);
+				index++;
 			}
 		}
+		// 完成消费
+		streamResultHandler.end();
+		SqlExecuteStat.addRowCount(index);
+		SqlExecuteStat.debug("操作提示", "流式查询累计获取:{} 条记录!", index);
+	}
+
+	/**
+	 * 流式查询的行数据映射:列信息、缓存翻译、解密、脱敏、格式化和结果类型映射只准备一次,之后逐行转换
+	 * (fetchStream 推送模式和 ResultCursor 拉取模式共用)
+	 */
+	public static class StreamRowMapper {
+		private final SqlToyContext sqlToyContext;
+
+		private final QueryExecutorExtend extend;
+
+		private final Class resultType;
+
+		private final int columnSize;
+
+		private final String[] labelNames;
+
+		private final String[] labelTypes;
+
+		private DecryptHandler decryptHandler;
+
+		private boolean hasTranslate;
+
+		private HashMap<String, Translate> translateMap;
+
+		private HashMap<String, HashMap<String, Object[]>> translateCache;
+
+		private final LabelIndexModel labelIndexModel;
+
+		private final boolean ignoreAllEmpty;
+
+		private final List<SecureMask> secureMasks;
+
+		private final List<FormatModel> formatModels;
+
+		private final boolean sqlSecure;
+
+		private final boolean sqlFormat;
+
+		private final boolean extSecure;
+
+		private final boolean extFormat;
+
+		private final DesensitizeProvider desensitizeProvider;
 
-		LabelIndexModel labelIndexModel = wrapLabelIndexMap(labelNames);
-		// 是否判断全部为null的行记录
-		boolean ignoreAllEmpty = sqlToyConfig.isIgnoreEmpty();
-		List<SecureMask> secureMasks = sqlToyConfig.getSecureMasks();
-		List<FormatModel> formatModels = sqlToyConfig.getFormatModels();
-		boolean sqlSecure = !secureMasks.isEmpty();
-		boolean sqlFormat = !formatModels.isEmpty();
-		boolean extSecure = (extend != null && !extend.secureMask.isEmpty());
-		boolean extFormat = (extend != null && !extend.colsFormat.isEmpty());
-		DesensitizeProvider desensitizeProvider = sqlToyContext.getDesensitizeProvider();
 		// 1:List；2：array;3:map;4:voClass
-		int type = 1;
-		boolean isMap = false;
-		boolean isConMap = false;
-		HashMap<String, String> columnFieldMap = null;
-		Method[] realMethods = null;
-		String[] methodTypes = null;
-		int[] methodTypeValues = null;
-		Class[] genericTypes = null;
-		String[] realProps = null;
-		int[] indexs = null;
-		HashMap<String, HashMap<String, Object[]>> cacheDatas = null;
-		HashMap<String, Translate> translateConfig = null;
-		String[] mapLabelNames = labelNames;
-		if (resultType != null && resultType != ArrayList.class && resultType != Collection.class
-				&& resultType != List.class && !BeanUtil.isBaseDataType(resultType)) {
-			if (resultType == Array.class) {
-				type = 2;
-			} else if (Map.class.isAssignableFrom(resultType)) {
-				type = 3;
-				isMap = resultType.equals(Map.class);
-				isConMap = resultType.equals(ConcurrentMap.class);
-				boolean isHumpLabel = (humpMapLabel == null ? sqlToyContext.isHumpMapResultTypeLabel() : humpMapLabel);
-				// 驼峰处理
-				if (isHumpLabel) {
-					mapLabelNames = humpFieldNames(labelNames, null);
+		private int type = 1;
+
+		private boolean isMap = false;
+
+		private boolean isConMap = false;
+
+		private Method[] realMethods;
+
+		private String[] methodTypes;
+
+		private int[] methodTypeValues;
+
+		private Class[] genericTypes;
+
+		private String[] realProps;
+
+		private int[] indexs;
+
+		private HashMap<String, HashMap<String, Object[]>> cacheDatas;
+
+		private HashMap<String, Translate> translateConfig;
+
+		private String[] mapLabelNames;
+
+		public StreamRowMapper(final SqlToyContext sqlToyContext, final QueryExecutorExtend extend,
+				final SqlToyConfig sqlToyConfig, ResultSet rs, Class resultType, Boolean humpMapLabel,
+				Map<Class, IgnoreKeyCaseMap<String, String>> fieldsMap) throws Exception {
+			this.sqlToyContext = sqlToyContext;
+			this.extend = extend;
+			this.resultType = resultType;
+			// 重新组合解密字段(entityMeta中的和sql自定义的合并)
+			IgnoreCaseSet decryptColumns = sqlToyConfig.getDecryptColumns();
+			if (decryptColumns != null && !decryptColumns.isEmpty()) {
+				decryptHandler = new DecryptHandler(sqlToyContext.getFieldsSecureProvider(), decryptColumns);
+			}
+			// 取得字段列数
+			columnSize = rs.getMetaData().getColumnCount();
+			// 类型转成string的列
+			Set<String> strTypeCols = getStringColumns(sqlToyConfig);
+			boolean hasToStrCols = !strTypeCols.isEmpty();
+			labelNames = new String[columnSize];
+			labelTypes = new String[columnSize];
+			String labeNameLow;
+			String colLabelUpperOrLower = sqlToyContext.getColumnLabelUpperOrLower();
+			for (int i = 0; i < columnSize; i++) {
+				labelNames[i] = rs.getMetaData().getColumnLabel(i + 1);
+				labeNameLow = labelNames[i].toLowerCase();
+				if ("lower".equals(colLabelUpperOrLower)) {
+					labelNames[i] = labelNames[i].toLowerCase();
+				} else if ("upper".equals(colLabelUpperOrLower)) {
+					labelNames[i] = labelNames[i].toUpperCase();
 				}
-			} else {
-				type = 4;
-				if (Modifier.isAbstract(resultType.getModifiers()) || Modifier.isInterface(resultType.getModifiers())) {
-					throw new IllegalArgumentException("resultType:" + resultType.getName() + " 是抽象类或接口,非法参数!");
-				}
-				if (sqlToyContext.isEntity(resultType)) {
-					EntityMeta entityMeta = sqlToyContext.getEntityMeta(resultType);
-					columnFieldMap = entityMeta.getColumnFieldMap();
-				}
-				realProps = convertRealProps(wrapMapFields(labelNames, fieldsMap, resultType), columnFieldMap);
-				realMethods = BeanUtil.matchSetMethods(resultType, realProps);
-				methodTypes = new String[columnSize];
-				methodTypeValues = new int[columnSize];
-				genericTypes = new Class[columnSize];
-				indexs = new int[columnSize];
-				Type[] types;
-				Class methodType;
-				// 自动适配属性的数据类型
-				for (int i = 0; i < columnSize; i++) {
-					indexs[i] = i;
-					if (null != realMethods[i]) {
-						methodType = realMethods[i].getParameterTypes()[0];
-						methodTypes[i] = methodType.getTypeName();
-						methodTypeValues[i] = DataType.getType(methodType);
-						types = realMethods[i].getGenericParameterTypes();
-						if (types.length > 0) {
-							if (types[0] instanceof ParameterizedType) {
-								genericTypes[i] = (Class) ((ParameterizedType) types[0]).getActualTypeArguments()[0];
+				labelTypes[i] = rs.getMetaData().getColumnTypeName(i + 1);
+				// 类型因缓存翻译、格式化转为string
+				if (hasToStrCols && strTypeCols.contains(labeNameLow)) {
+					labelTypes[i] = "VARCHAR";
+				}
+			}
+			// 判断是否有缓存翻译器定义
+			hasTranslate = (sqlToyConfig.getTranslateMap().isEmpty()) ? false : true;
+			translateMap = sqlToyConfig.getTranslateMap();
+			if (hasTranslate) {
+				translateCache = sqlToyContext.getTranslateManager().getTranslates(translateMap);
+				if (translateCache == null || translateCache.isEmpty()) {
+					hasTranslate = false;
+					logger.debug("通过缓存配置未获取到缓存数据,请正确配置TranslateManager!");
+				}
+				// i18n国际化处理
+				if (hasTranslate) {
+					translateMap = wrapI18nIndex(sqlToyContext.getTranslateManager(), translateMap);
+				}
+			}
+			labelIndexModel = wrapLabelIndexMap(labelNames);
+			// 是否判断全部为null的行记录
+			ignoreAllEmpty = sqlToyConfig.isIgnoreEmpty();
+			secureMasks = sqlToyConfig.getSecureMasks();
+			formatModels = sqlToyConfig.getFormatModels();
+			sqlSecure = !secureMasks.isEmpty();
+			sqlFormat = !formatModels.isEmpty();
+			extSecure = (extend != null && !extend.secureMask.isEmpty());
+			extFormat = (extend != null && !extend.colsFormat.isEmpty());
+			desensitizeProvider = sqlToyContext.getDesensitizeProvider();
+			mapLabelNames = labelNames;
+			if (resultType != null && resultType != ArrayList.class && resultType != Collection.class
+					&& resultType != List.class && !BeanUtil.isBaseDataType(resultType)) {
+				if (resultType == Array.class) {
+					type = 2;
+				} else if (Map.class.isAssignableFrom(resultType)) {
+					type = 3;
+					isMap = resultType.equals(Map.class);
+					isConMap = resultType.equals(ConcurrentMap.class);
+					boolean isHumpLabel = (humpMapLabel == null ? sqlToyContext.isHumpMapResultTypeLabel()
+							: humpMapLabel);
+					// 驼峰处理
+					if (isHumpLabel) {
+						mapLabelNames = humpFieldNames(labelNames, null);
+					}
+				} else {
+					type = 4;
+					if (Modifier.isAbstract(resultType.getModifiers())
+							|| Modifier.isInterface(resultType.getModifiers())) {
+						throw new IllegalArgumentException("resultType:" + resultType.getName() + " 是抽象类或接口,非法参数!");
+					}
+					HashMap<String, String> columnFieldMap = null;
+					if (sqlToyContext.isEntity(resultType)) {
+						EntityMeta entityMeta = sqlToyContext.getEntityMeta(resultType);
+						columnFieldMap = entityMeta.getColumnFieldMap();
+					}
+					realProps = convertRealProps(wrapMapFields(labelNames, fieldsMap, resultType), columnFieldMap);
+					realMethods = BeanUtil.matchSetMethods(resultType, realProps);
+					methodTypes = new String[columnSize];
+					methodTypeValues = new int[columnSize];
+					genericTypes = new Class[columnSize];
+					indexs = new int[columnSize];
+					Type[] types;
+					Class methodType;
+					// 自动适配属性的数据类型
+					for (int i = 0; i < columnSize; i++) {
+						indexs[i] = i;
+						if (null != realMethods[i]) {
+							methodType = realMethods[i].getParameterTypes()[0];
+							methodTypes[i] = methodType.getTypeName();
+							methodTypeValues[i] = DataType.getType(methodType);
+							types = realMethods[i].getGenericParameterTypes();
+							if (types.length > 0) {
+								if (types[0] instanceof ParameterizedType) {
+									genericTypes[i] = (Class) ((ParameterizedType) types[0])
+											.getActualTypeArguments()[0];
+								}
 							}
 						}
 					}
-				}
-				translateConfig = TranslateConfigParse.getClassTranslates(resultType);
-				if (translateConfig != null && !translateConfig.isEmpty()) {
-					cacheDatas = sqlToyContext.getTranslateManager().getTranslates(translateConfig);
+					translateConfig = TranslateConfigParse.getClassTranslates(resultType);
+					if (translateConfig != null && !translateConfig.isEmpty()) {
+						cacheDatas = sqlToyContext.getTranslateManager().getTranslates(translateConfig);
+					}
 				}
 			}
 		}
 
-		// 执行开始
-		streamResultHandler.start(labelNames, labelTypes);
-		index = 0;
-		List rowTemp;
-		while (rs.next()) {
+		public String[] getLabelNames() {
+			return labelNames;
+		}
+
+		public String[] getLabelTypes() {
+			return labelTypes;
+		}
+
+		/**
+		 * @TODO 将ResultSet当前行转换成结果类型
+		 * @param rs
+		 * @return 忽略全部为null的行时返回null
+		 * @throws Exception
+		 */
+		public Object mapRow(ResultSet rs) throws Exception {
+			List rowTemp;
 			if (hasTranslate) {
 				rowTemp = processResultRowWithTranslate(translateMap, translateCache, labelNames, rs, columnSize,
-						realDecryptHandler, ignoreAllEmpty);
+						decryptHandler, ignoreAllEmpty);
 			} else {
-				rowTemp = processResultRow(rs, labelNames, columnSize, realDecryptHandler, ignoreAllEmpty);
-			}
-			if (rowTemp != null) {
-				// 字段脱敏
-				if (sqlSecure) {
-					secureMaskRow(desensitizeProvider, rowTemp, secureMasks.iterator(), labelIndexModel);
-				}
-				// 自动格式化
-				if (sqlFormat) {
-					formatRowColumn(rowTemp, formatModels.iterator(), labelIndexModel);
-				}
-				// 扩展脱敏和格式化处理
-				if (extSecure) {
-					secureMaskRow(desensitizeProvider, rowTemp, extend.secureMask.values().iterator(), labelIndexModel);
-				}
-				if (extFormat) {
-					formatRowColumn(rowTemp, extend.colsFormat.values().iterator(), labelIndexModel);
+				rowTemp = processResultRow(rs, labelNames, columnSize, decryptHandler, ignoreAllEmpty);
+			}
+			if (rowTemp == null) {
+				return null;
+			}
+			// 字段脱敏
+			if (sqlSecure) {
+				secureMaskRow(desensitizeProvider, rowTemp, secureMasks.iterator(), labelIndexModel);
+			}
+			// 自动格式化
+			if (sqlFormat) {
+				formatRowColumn(rowTemp, formatModels.iterator(), labelIndexModel);
+			}
+			// 扩展脱敏和格式化处理
+			if (extSecure) {
+				secureMaskRow(desensitizeProvider, rowTemp, extend.secureMask.values().iterator(), labelIndexModel);
+			}
+			if (extFormat) {
+				formatRowColumn(rowTemp, extend.colsFormat.values().iterator(), labelIndexModel);
+			}
+			if (type == 1) {
+				return rowTemp;
+			} // 数组
+			else if (type == 2) {
+				Object[] rowAry = new Object[rowTemp.size()];
+				rowTemp.toArray(rowAry);
+				return rowAry;
+			} // map
+			else if (type == 3) {
+				Map rowMap;
+				if (isMap) {
+					rowMap = new HashMap();
+				} else if (isConMap) {
+					rowMap = new ConcurrentHashMap();
+				} else {
+					rowMap = (Map) resultType.getDeclaredConstructor().newInstance();
 				}
-				// 消费每行数据
-				if (type == 1) {
-					streamResultHandler.consume(rowTemp, index);
-				} // 数组
-				else if (type == 2) {
-					Object[] rowAry = new Object[rowTemp.size()];
-					rowTemp.toArray(rowAry);
-					streamResultHandler.consume(rowAry, index);
-				} // map
-				else if (type == 3) {
-					Map rowMap;
-					if (isMap) {
-						rowMap = new HashMap();
-					} else if (isConMap) {
-						rowMap = new ConcurrentHashMap();
-					} else {
-						rowMap = (Map) resultType.getDeclaredConstructor().newInstance();
-					}
-					for (int j = 0; j < columnSize; j++) {
-						rowMap.put(mapLabelNames[j], rowTemp.get(j));
-					}
-					streamResultHandler.consume(rowMap, index);
-				} // 封装成VO对象形式
-				else {
-					Object bean = BeanUtil.reflectRowToBean(sqlToyContext.getTypeHandler(), realMethods,
-							methodTypeValues, methodTypes, genericTypes, rowTemp, indexs, realProps, resultType);
-					// 有基于注解@Translate的缓存翻译
-					if (cacheDatas != null) {
-						// i18n国际化处理
-						translateConfig = wrapI18nIndex(sqlToyContext.getTranslateManager(), translateConfig);
-						wrapBeanTranslate(sqlToyContext, cacheDatas, translateConfig, bean);
-					}
-					streamResultHandler.consume(bean, index);
+				for (int j = 0; j < columnSize; j++) {
+					rowMap.put(mapLabelNames[j], rowTemp.get(j));
 				}
-				index++;
+				return rowMap;
+			}
+			// 封装成VO对象形式
+			Object bean = BeanUtil.reflectRowToBean(sqlToyContext.getTypeHandler(), realMethods, methodTypeValues,
+					methodTypes, genericTypes, rowTemp, indexs, realProps, resultType);
+			// 有基于注解@Translate的缓存翻译
+			if (cacheDatas != null) {
+				// i18n国际化处理
+				translateConfig = wrapI18nIndex(sqlToyContext.getTranslateManager(), translateConfig);
+				wrapBeanTranslate(sqlToyContext, cacheDatas, translateConfig, bean);
 			}
+			return bean;
 		}
-		// 完成消费
-		streamResultHandler.end();
-		SqlExecuteStat.debug("操作提示", "流式查询累计获取:{} 条记录!", index);
 	}
 
 	/**
@@ -689,14 +799,20 @@ public class ResultUtils {
 			}
 			// 循环通过java reflection将rs中的值映射到VO中
 			if (hasTranslate) {
+				// 存在按key存储的缓存,先提取数据,再按缓存批量获取需要翻译的key统一翻译
+				boolean viewTranslate = hasCacheView(translateCache);
 				while (rs.next()) {
 					// 先修改后再获取最终值
 					if (isUpdate) {
 						updateRowHandler.updateRow(rs, index);
 						rs.updateRow();
 					}
-					rowTemp = processResultRowWithTranslate(translateMap, translateCache, labelNames, rs, columnSize,
-							decryptHandler, ignoreAllEmpty);
+					if (viewTranslate) {
+						rowTemp = processResultRow(rs, labelNames, columnSize, decryptHandler, ignoreAllEmpty);
+					} else {
+						rowTemp = processResultRowWithTranslate(translateMap, translateCache, labelNames, rs,
+								columnSize, decryptHandler, ignoreAllEmpty);
+					}
 					if (rowTemp != null) {
 						items.add(rowTemp);
 					}
@@ -711,13 +827,17 @@ public class ResultUtils {
 						break;
 					}
 				}
+				if (viewTranslate) {
+					translateRows(items, translateMap, translateCache, labelNames, columnSize);
+				}
 			} else {
 				while (rs.next()) {
 					if (isUpdate) {
 						updateRowHandler.updateRow(rs, index);
 						rs.updateRow();
 					}
-					rowTemp = processResultRow(rs, labelNames, columnSize, decryptHandler, ignoreAllEmpty);
+					// 解密在提取完成后按列批量执行
+					rowTemp = processResultRow(rs, labelNames, columnSize, null, ignoreAllEmpty);
 					if (rowTemp != null) {
 						items.add(rowTemp);
 					}
@@ -732,6 +852,9 @@ public class ResultUtils {
 						break;
 					}
 				}
+				if (decryptHandler != null) {
+					decryptHandler.decrypt(items, labelNames);
+				}
 			}
 		}
 		// 超出警告阀值
@@ -747,6 +870,230 @@ public class ResultUtils {
 		return items;
 	}
 
+	/**
+	 * @TODO 判断分页查询结果的记录数是否等于数据库实际返回的记录数(第一页不足一页时据此作为总记录数)
+	 *       <li>link合并、忽略全为空的行、旋转、汇总、层次化封装、自定义行处理都会改变记录数</li>
+	 *       <li>最大提取记录阀值或maxRows小于pageSize时记录会被截断</li>
+	 * @param sqlToyConfig
+	 * @param extend
+	 * @param pageSize
+	 * @return
+	 */
+	public static boolean isRowCountPreserved(SqlToyConfig sqlToyConfig, QueryExecutorExtend extend, int pageSize) {
+		if (sqlToyConfig.getLinkModel() != null || sqlToyConfig.isIgnoreEmpty()
+				|| !sqlToyConfig.getResultProcessor().isEmpty()) {
+			return false;
+		}
+		if (extend != null && (extend.linkModel != null || extend.rowCallbackHandler != null || extend.hiberarchy
+				|| !extend.calculators.isEmpty() || (extend.maxRows > 0 && extend.maxRows < pageSize))) {
+			return false;
+		}
+		long maxThresholds = SqlToyConstants.getMaxThresholds();
+		int warnThresholds = SqlToyConstants.getWarnThresholds();
+		if (maxThresholds > 1 && maxThresholds <= warnThresholds) {
+			maxThresholds = warnThresholds;
+		}
+		if (maxThresholds > 0 && pageSize > maxThresholds) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @TODO 判断查询结果是否可以在遍历结果集时直接映射成resultType对象
+	 *       <li>resultType为VO(非List、数组、Map、基本类型)</li>
+	 *       <li>不存在link、旋转、汇总、环比等改变结果结构的计算</li>
+	 *       <li>非层次化(hiberarchy)对象封装</li>
+	 * @param sqlToyConfig
+	 * @param extend
+	 * @return
+	 */
+	private static boolean isDirectMapping(SqlToyConfig sqlToyConfig, QueryExecutorExtend extend) {
+		if (extend == null || extend.rowCallbackHandler != null || extend.hiberarchy || extend.shardingScatter
+				|| !(extend.resultType instanceof Class)) {
+			return false;
+		}
+		Class resultType = (Class) extend.resultType;
+		if (resultType.isArray() || resultType.isPrimitive() || resultType.isEnum() || resultType == Array.class
+				|| Collection.class.isAssignableFrom(resultType) || Map.class.isAssignableFrom(resultType)
+				|| BeanUtil.isBaseDataType(resultType) || Modifier.isAbstract(resultType.getModifiers())
+				|| Modifier.isInterface(resultType.getModifiers())) {
+			return false;
+		}
+		if (sqlToyConfig.getLinkModel() != null || extend.linkModel != null
+				|| !sqlToyConfig.getResultProcessor().isEmpty() || !extend.calculators.isEmpty()) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @TODO 遍历结果集直接映射成VO对象(单行数据复用同一个List完成解密、缓存翻译、脱敏和格式化)
+	 * @param extend
+	 * @param sqlToyConfig
+	 * @param sqlToyContext
+	 * @param rs
+	 * @param decryptHandler
+	 * @param labelNames
+	 * @return
+	 * @throws Exception
+	 */
+	private static List getBeanResultSet(QueryExecutorExtend extend, SqlToyConfig sqlToyConfig,
+			SqlToyContext sqlToyContext, ResultSet rs, DecryptHandler decryptHandler, String[] labelNames)
+			throws Exception {
+		Class resultType = (Class) extend.resultType;
+		int columnSize = labelNames.length;
+		// 判断是否有缓存翻译器定义
+		boolean hasTranslate = !sqlToyConfig.getTranslateMap().isEmpty();
+		HashMap<String, Translate> translateMap = sqlToyConfig.getTranslateMap();
+		HashMap<String, HashMap<String, Object[]>> translateCache = null;
+		if (hasTranslate) {
+			translateCache = sqlToyContext.getTranslateManager().getTranslates(translateMap);
+			if (translateCache == null || translateCache.isEmpty()) {
+				hasTranslate = false;
+				logger.debug("通过缓存配置未获取到缓存数据,请正确配置TranslateManager!");
+			}
+			// i18n国际化处理
+			if (hasTranslate) {
+				translateMap = wrapI18nIndex(sqlToyContext.getTranslateManager(), translateMap);
+			}
+		}
+		// 脱敏和格式化
+		List<SecureMask> secureMasks = sqlToyConfig.getSecureMasks();
+		List<FormatModel> formatModels = sqlToyConfig.getFormatModels();
+		boolean sqlSecure = !secureMasks.isEmpty();
+		boolean sqlFormat = !formatModels.isEmpty();
+		boolean extSecure = !extend.secureMask.isEmpty();
+		boolean extFormat = !extend.colsFormat.isEmpty();
+		LabelIndexModel labelIndexModel = null;
+		if (sqlSecure || sqlFormat || extSecure || extFormat) {
+			labelIndexModel = wrapLabelIndexMap(labelNames);
+		}
+		DesensitizeProvider desensitizeProvider = sqlToyContext.getDesensitizeProvider();
+		// 列跟VO属性的映射,set方法调用器一次生成缓存复用
+		HashMap<String, String> columnFieldMap = null;
+		if (sqlToyContext.isEntity(resultType)) {
+			columnFieldMap = sqlToyContext.getEntityMeta(resultType).getColumnFieldMap();
+		}
+		String[] realProps = convertRealProps(wrapMapFields(labelNames, extend.fieldsMap, resultType),
+				columnFieldMap);
+		Method[] realMethods = BeanUtil.matchSetMethods(resultType, realProps);
+		BiConsumer[] setInvokers = BeanUtil.getSetInvokers(realMethods);
+		// 预先确定每列的转换方式:值类型跟属性类型一致直接设置,否则通过convertType转换
+		Class[] directTypes = new Class[columnSize];
+		String[] methodTypes = new String[columnSize];
+		int[] methodTypeValues = new int[columnSize];
+		Class[] genericTypes = new Class[columnSize];
+		Class methodType;
+		Type[] types;
+		for (int i = 0; i < columnSize; i++) {
+			if (realMethods[i] != null) {
+				methodType = realMethods[i].getParameterTypes()[0];
+				directTypes[i] = MethodType.methodType(methodType).wrap().returnType();
+				methodTypes[i] = methodType.getTypeName();
+				methodTypeValues[i] = DataType.getType(methodType);
+				types = realMethods[i].getGenericParameterTypes();
+				if (types.length > 0 && types[0] instanceof ParameterizedType) {
+					genericTypes[i] = (Class) ((ParameterizedType) types[0]).getActualTypeArguments()[0];
+				}
+			}
+		}
+		Constructor constructor = resultType.getDeclaredConstructor();
+		TypeHandler typeHandler = sqlToyContext.getTypeHandler();
+		// 警告阀值
+		int warnThresholds = SqlToyConstants.getWarnThresholds();
+		boolean warnLimit = false;
+		// 最大阀值
+		long maxThresholds = SqlToyConstants.getMaxThresholds();
+		boolean maxLimit = false;
+		// 是否判断全部为null的行记录
+		boolean ignoreAllEmpty = sqlToyConfig.isIgnoreEmpty();
+		// 最大值要大于等于警告阀值
+		if (maxThresholds > 1 && maxThresholds <= warnThresholds) {
+			maxThresholds = warnThresholds;
+		}
+		List items = new ArrayList();
+		List rowData = new ArrayList(columnSize);
+		List rowTemp;
+		Object bean;
+		Object cellData;
+		int index = 0;
+		int propIndex = -1;
+		try {
+			while (rs.next()) {
+				rowData.clear();
+				if (hasTranslate) {
+					rowTemp = processResultRowWithTranslate(rowData, translateMap, translateCache, labelNames, rs,
+							columnSize, decryptHandler, ignoreAllEmpty);
+				} else {
+					rowTemp = processResultRow(rowData, rs, labelNames, columnSize, decryptHandler, ignoreAllEmpty);
+				}
+				if (rowTemp != null) {
+					// 字段脱敏
+					if (sqlSecure) {
+						secureMaskRow(desensitizeProvider, rowTemp, secureMasks.iterator(), labelIndexModel);
+					}
+					// 自动格式化
+					if (sqlFormat) {
+						formatRowColumn(rowTemp, formatModels.iterator(), labelIndexModel);
+					}
+					// 扩展脱敏和格式化处理
+					if (extSecure) {
+						secureMaskRow(desensitizeProvider, rowTemp, extend.secureMask.values().iterator(),
+								labelIndexModel);
+					}
+					if (extFormat) {
+						formatRowColumn(rowTemp, extend.colsFormat.values().iterator(), labelIndexModel);
+					}
+					bean = constructor.newInstance();
+					for (propIndex = 0; propIndex < columnSize; propIndex++) {
+						cellData = rowTemp.get(propIndex);
+						if (cellData != null && setInvokers[propIndex] != null) {
+							if (cellData.getClass() == directTypes[propIndex]) {
+								setInvokers[propIndex].accept(bean, cellData);
+							} else {
+								setInvokers[propIndex].accept(bean,
+										BeanUtil.convertType(typeHandler, cellData, methodTypeValues[propIndex],
+												methodTypes[propIndex], genericTypes[propIndex]));
+							}
+						}
+					}
+					propIndex = -1;
+					items.add(bean);
+				}
+				index++;
+				// 存在超出警告规模级的数据查询
+				if (index == warnThresholds) {
+					warnLimit = true;
+				}
+				// 提取数据超过上限(-1表示不限制)
+				if (index == maxThresholds) {
+					maxLimit = true;
+					break;
+				}
+			}
+		} catch (Exception e) {
+			if (propIndex >= 0 && propIndex < columnSize && realMethods[propIndex] != null) {
+				logger.error("将查询结果映射到类:{} 的属性:{} 过程异常!{}", resultType.getName(),
+						realMethods[propIndex].getName(), e.getMessage());
+			}
+			throw e;
+		}
+		// 超出警告阀值
+		if (warnLimit) {
+			warnLog(sqlToyConfig, index);
+		}
+		// 超过最大提取数据阀值
+		if (maxLimit) {
+			logger.error(
+					"MaxLargeResult:执行sql提取数据超出最大阀值限制{}(可通过[spring.sqltoy.pageFetchSizeLimit]参数调整),sqlId={},具体语句={}",
+					index, sqlToyConfig.getId(), sqlToyConfig.getSql(null));
+		}
+		// 支持VO或POJO 属性上@Translate注解,进行缓存翻译
+		wrapResultTranslate(sqlToyContext, items, resultType);
+		return items;
+	}
+
 	/**
 	 * @TODO 组合link 多列值作为对比值
 	 * @param rs
@@ -995,7 +1342,8 @@ public class ResultUtils {
 		Integer[] groupCols = mappingLabelIndex(pivotModel.getGroupCols(), labelIndexMap);
 		// update 2016-12-13 提取category后进行了排序
 		List categoryList = (pivotCategorySet == null) ? extractCategory(result, categoryCols) : pivotCategorySet;
-		return CollectionUtil.pivotList(result, categoryList, null, groupCols, categoryCols, pivotCols[0],
+		// 基于hash分组旋转,查询无需按分组列排序
+		return PivotList.process(result, categoryList, null, groupCols, categoryCols, pivotCols[0],
 				pivotCols[pivotCols.length - 1], pivotModel.getDefaultValue());
 	}
 
@@ -1163,7 +1511,22 @@ public class ResultUtils {
 
 	public static List processResultRow(ResultSet rs, String[] labelNames, int size, DecryptHandler decryptHandler,
 			boolean ignoreAllEmptySet) throws Exception {
-		List rowData = new ArrayList();
+		return processResultRow(new ArrayList(), rs, labelNames, size, decryptHandler, ignoreAllEmptySet);
+	}
+
+	/**
+	 * @todo 将ResultSet的单行数据填充到rowData中(rowData可以被多行循环复用)
+	 * @param rowData
+	 * @param rs
+	 * @param labelNames
+	 * @param size
+	 * @param decryptHandler
+	 * @param ignoreAllEmptySet
+	 * @return
+	 * @throws Exception
+	 */
+	private static List processResultRow(List rowData, ResultSet rs, String[] labelNames, int size,
+			DecryptHandler decryptHandler, boolean ignoreAllEmptySet) throws Exception {
 		Object fieldValue;
 		// 单行所有字段结果为null
 		boolean allNull = true;
@@ -1209,7 +1572,13 @@ public class ResultUtils {
 	private static List processResultRowWithTranslate(HashMap<String, Translate> translateMap,
 			HashMap<String, HashMap<String, Object[]>> translateCaches, String[] labelNames, ResultSet rs, int size,
 			DecryptHandler decryptHandler, boolean ignoreAllEmptySet) throws Exception {
-		List rowData = new ArrayList();
+		return processResultRowWithTranslate(new ArrayList(), translateMap, translateCaches, labelNames, rs, size,
+				decryptHandler, ignoreAllEmptySet);
+	}
+
+	private static List processResultRowWithTranslate(List rowData, HashMap<String, Translate> translateMap,
+			HashMap<String, HashMap<String, Object[]>> translateCaches, String[] labelNames, ResultSet rs, int size,
+			DecryptHandler decryptHandler, boolean ignoreAllEmptySet) throws Exception {
 		Object fieldValue;
 		TranslateExtend extend;
 		String label;
@@ -1248,6 +1617,76 @@ public class ResultUtils {
 		return rowData;
 	}
 
+	/**
+	 * @TODO 是否存在按key存储的缓存视图
+	 * @param translateCaches
+	 * @return
+	 */
+	private static boolean hasCacheView(HashMap<String, HashMap<String, Object[]>> translateCaches) {
+		for (HashMap<String, Object[]> cacheData : translateCaches.values()) {
+			if (cacheData instanceof TranslateCacheView) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @TODO 对已经提取的结果统一进行缓存翻译,按key存储的缓存按列一次性获取全部需要翻译的key
+	 * @param rows
+	 * @param translateMap
+	 * @param translateCaches
+	 * @param labelNames
+	 * @param size
+	 */
+	private static void translateRows(List<List> rows, HashMap<String, Translate> translateMap,
+			HashMap<String, HashMap<String, Object[]>> translateCaches, String[] labelNames, int size) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		TranslateExtend[] extendArray = new TranslateExtend[size];
+		HashMap<String, Object[]>[] cacheArray = new HashMap[size];
+		Translate translate;
+		Set<String> keys;
+		Object value;
+		String keyStr;
+		for (int i = 0; i < size; i++) {
+			translate = translateMap.get(labelNames[i].toLowerCase());
+			if (translate == null) {
+				translate = translateMap.get(Integer.toString(i));
+			}
+			if (translate == null) {
+				continue;
+			}
+			extendArray[i] = translate.getExtend();
+			cacheArray[i] = translateCaches.get(extendArray[i].column);
+			// 分隔的多个key逐个获取
+			if (!(cacheArray[i] instanceof TranslateCacheView) || extendArray[i].splitRegex != null) {
+				continue;
+			}
+			keys = new HashSet<String>();
+			for (List row : rows) {
+				value = row.get(i);
+				if (value != null) {
+					keyStr = value.toString();
+					keys.add((extendArray[i].keyTemplate == null) ? keyStr
+							: extendArray[i].keyTemplate.replace("{}", keyStr));
+				}
+			}
+			((TranslateCacheView) cacheArray[i]).prefetch(keys);
+		}
+		for (List row : rows) {
+			for (int i = 0; i < size; i++) {
+				if (extendArray[i] != null) {
+					value = row.get(i);
+					if (value != null) {
+						row.set(i, translateKey(extendArray[i], cacheArray[i], value));
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * @date 2018-5-26 优化缓存翻译，提供keyCode1,keyCode2,keyCode3 形式的多代码翻译
 	 * @todo 统一对key进行缓存翻译
@@ -1383,8 +1822,8 @@ public class ResultUtils {
 	public static boolean calculate(DesensitizeProvider desensitizeProvider, SqlToyConfig sqlToyConfig,
 			DataSetResult dataSetResult, List pivotCategorySet, QueryExecutorExtend extend) {
 		List items = dataSetResult.getRows();
-		// 数据为空直接跳出处理
-		if (items == null || items.isEmpty()) {
+		// 数据为空或已经在结果集遍历时完成了脱敏、格式化并映射成了对象,直接跳出处理
+		if (items == null || items.isEmpty() || dataSetResult.isMappedResult()) {
 			return false;
 		}
 		// 是否会导致列名称和数据完全不对应,导致无法映射到pojo或map
@@ -2025,6 +2464,8 @@ public class ResultUtils {
 		Object fieldValue;
 		HashMap<String, Object[]> cacheData;
 		try {
+			// 按key存储的缓存,批量获取本批数据需要翻译的key
+			prefetchTranslateKeys(cacheDatas, translateConfig, voList);
 			for (int i = 0; i < voList.size(); i++) {
 				item = voList.get(i);
 				for (Map.Entry<String, Translate> entry : translateConfig.entrySet()) {
@@ -2045,6 +2486,38 @@ public class ResultUtils {
 		}
 	}
 
+	/**
+	 * @TODO 针对按key存储的缓存,将一批对象中需要翻译的key一次性获取,避免逐个获取
+	 * @param cacheDatas
+	 * @param translateConfig
+	 * @param voList
+	 */
+	private static void prefetchTranslateKeys(HashMap<String, HashMap<String, Object[]>> cacheDatas,
+			HashMap<String, Translate> translateConfig, List voList) {
+		TranslateExtend trans;
+		HashMap<String, Object[]> cacheData;
+		Set<String> keys;
+		Object keyValue;
+		String keyStr;
+		for (Translate translate : translateConfig.values()) {
+			trans = translate.getExtend();
+			cacheData = cacheDatas.get(trans.column);
+			// 分隔的多个key逐个获取
+			if (!(cacheData instanceof TranslateCacheView) || trans.splitRegex != null) {
+				continue;
+			}
+			keys = new HashSet<String>();
+			for (Object item : voList) {
+				keyValue = (item == null) ? null : BeanUtil.getProperty(item, trans.keyColumn);
+				if (keyValue != null) {
+					keyStr = keyValue.toString();
+					keys.add((trans.keyTemplate == null) ? keyStr : trans.keyTemplate.replace("{}", keyStr));
+				}
+			}
+			((TranslateCacheView) cacheData).prefetch(keys);
+		}
+	}
+
 	/**
 	 * @TODO 根据是否存在国际化，重新组织缓存对应实际翻译名称列
 	 * @param translateManager
@@ -25,14 +25,18 @@ import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.sagacity.sqltoy.SqlExecuteStat;
@@ -49,6 +53,7 @@ import org.sagacity.sqltoy.config.model.EntityMeta;
 import org.sagacity.sqltoy.config.model.FieldMeta;
 import org.sagacity.sqltoy.config.model.SqlWithAnalysis;
 import org.sagacity.sqltoy.exception.DataAccessException;
+import org.sagacity.sqltoy.model.BoundedCache;
 import org.sagacity.sqltoy.model.IgnoreCaseSet;
 import org.sagacity.sqltoy.model.TreeTableModel;
 import org.sagacity.sqltoy.plugins.TypeHandler;
@@ -71,6 +76,10 @@ import org.slf4j.LoggerFactory;
  * @modify Date:2017-6-14 {修复针对阿里的druid数据库datasource针对clob类型处理的错误}
  * @modify Date:2019-7-5 剔除对druid clob bug的支持(druid 1.1.10 已经修复)
  * @modify Date:2020-06-18 用BeanUtil代替BeanInfo中getWriteMethod,完成对象属性赋值
+ * @modify Date:2024-05-29 wrapTreeTableRoute增加内存计算模式,一次读取id、pid计算层级、路径、叶子节点后批量回写
+ * @modify Date:2024-05-30 convertFieldsToColumns缓存改为有界缓存,避免EntityQuery拼接条件值的sql无限增长
+ * @modify Date:2024-06-01 树形表递归查询增加层级上限防止环路无限递归,sqlserver增加option (maxrecursion 0)
+ * @modify Date:2024-06-01 batchUpdateByJdbc批次量小于等于1时逐条执行(驱动不支持批处理)
  */
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class SqlUtil {
@@ -108,10 +117,17 @@ public class SqlUtil {
 	public static final Pattern UNION_PATTERN = Pattern.compile("(?i)\\W+union\\W+");
 	public final static String BLANK = " ";
 
+	/**
+	 * 树形表递归查询子树的最大深度(mysql cte_max_recursion_depth默认1000),超出则读取全表计算
+	 */
+	private final static int TREE_RECURSIVE_MAX_LEVEL = 500;
+
 	/**
 	 * 存放转换后的sql
 	 */
-	private static ConcurrentHashMap<String, String> convertSqlMap = new ConcurrentHashMap<String, String>();
+	private static BoundedCache<String, String> convertSqlMap = new BoundedCache<String, String>("convertFieldsSql",
+			SqlToyConstants::getMaxConvertSqlCount, SqlToyConstants::getMaxSqlCacheWeight,
+			(key, value) -> key.length() + value.length());
 
 	// sql 注释过滤器
 	private static HashMap sqlCommentfilters = new HashMap();
@@ -1142,7 +1158,8 @@ public class SqlUtil {
 			}
 			pst = conn.prepareStatement(updateSql);
 			int totalRows = rowDatas.size();
-			boolean useBatch = (totalRows > 1) ? true : false;
+			// 批次量小于等于1(如驱动不支持批处理)逐条执行
+			boolean useBatch = (totalRows > 1 && batchSize > 1) ? true : false;
 			Object rowData;
 			int index = 0;
 			// 批处理计数器
@@ -1198,7 +1215,7 @@ public class SqlUtil {
 						}
 					} // 单条执行
 					else {
-						updateCount = pst.executeUpdate();
+						updateCount = updateCount + pst.executeUpdate();
 					}
 				}
 			}
@@ -1219,6 +1236,7 @@ public class SqlUtil {
 				logger.error(se.getMessage(), se);
 			}
 		}
+		SqlExecuteStat.addRowCount(updateCount);
 		return updateCount;
 	}
 
@@ -1238,6 +1256,10 @@ public class SqlUtil {
 			logger.error("请设置树形表的table名称、id字段名称、pid字段名称!");
 			throw new IllegalArgumentException("没有对应的table名称、id字段名称、pid字段名称");
 		}
+		// 内存计算模式
+		if (treeTableModel.isInMemory()) {
+			return wrapTreeTableRouteInMemory(typeHandler, treeTableModel, conn, dbType);
+		}
 		String flag = "";
 		// 判断是否字符串类型
 		if (treeTableModel.isChar()) {
@@ -1362,6 +1384,289 @@ public class SqlUtil {
 		return true;
 	}
 
+	/**
+	 * @todo 内存模式计算树形表节点层级、路径、是否叶子节点
+	 *       <li>一次读取全表(或递归查询pidValue、idValue下的子树)的id、pid</li>
+	 *       <li>内存中一次遍历计算,结果通过参数绑定的方式大批量回写</li>
+	 * @param typeHandler
+	 * @param treeTableModel
+	 * @param conn
+	 * @param dbType
+	 * @return
+	 * @throws Exception
+	 */
+	private static boolean wrapTreeTableRouteInMemory(TypeHandler typeHandler, final TreeTableModel treeTableModel,
+			final Connection conn, final Integer dbType) throws Exception {
+		String nodeRouteField = ReservedWordsUtil.convertWord(treeTableModel.getNodeRouteField(), dbType);
+		String nodeLevelField = ReservedWordsUtil.convertWord(treeTableModel.getNodeLevelField(), dbType);
+		String idField = ReservedWordsUtil.convertWord(treeTableModel.getIdField(), dbType);
+		String pidField = ReservedWordsUtil.convertWord(treeTableModel.getPidField(), dbType);
+		String tableName = ReservedWordsUtil.convertSimpleSql(treeTableModel.getTableName(), dbType);
+		String conditions = ReservedWordsUtil.convertWord(treeTableModel.getConditions(), dbType);
+		String leafField = ReservedWordsUtil.convertWord(treeTableModel.getLeafField(), dbType);
+		boolean hasConditions = StringUtil.isNotBlank(conditions);
+		boolean hasRoute = StringUtil.isNotBlank(nodeRouteField) && StringUtil.isNotBlank(nodeLevelField);
+		boolean hasLeaf = StringUtil.isNotBlank(leafField);
+		String pidValue = treeTableModel.getPidValue().toString();
+		boolean hasIdValue = StringUtil.isNotBlank(treeTableModel.getIdValue());
+		// 父节点的层级和路径
+		int nodeLevel = 0;
+		String nodeRoute = "";
+		if (hasRoute) {
+			String idInfoSql = "select ".concat(nodeLevelField).concat(",").concat(nodeRouteField).concat(" from ")
+					.concat(tableName).concat(" where ").concat(idField).concat("=?");
+			if (hasConditions) {
+				idInfoSql = idInfoSql.concat(" and ").concat(conditions);
+			}
+			List idInfo = findByJdbcQuery(typeHandler, idInfoSql, new Object[] { treeTableModel.getPidValue() }, null,
+					null, null, conn, dbType, false, null, SqlToyConstants.FETCH_SIZE, -1);
+			if (idInfo != null && !idInfo.isEmpty()) {
+				List row = (List) idInfo.get(0);
+				nodeLevel = (row.get(0) == null) ? 0 : Integer.parseInt(row.get(0).toString());
+				nodeRoute = (row.get(1) == null) ? "" : row.get(1).toString();
+			}
+		}
+		// 读取id、pid:支持递归查询的只读取子树,否则读取全表
+		String recursiveWith = treeTableModel.isRecursive() ? getRecursiveWith(dbType) : null;
+		boolean isSubTree = (recursiveWith != null);
+		// id 对应 pid(保持读取顺序)
+		final Map<String, String> pidMap = new LinkedHashMap<String, String>();
+		// pid 对应 下级节点
+		final Map<String, List<String>> childrenMap = new HashMap<String, List<String>>();
+		if (isSubTree) {
+			StringBuilder treeSql = new StringBuilder();
+			// tree_level 限制递归深度,避免pid数据形成环路时无限递归(postgresql等)或超出数据库递归深度上限报错
+			treeSql.append(recursiveWith).append(" t_tree_route (tree_id,tree_pid,tree_level) as (select ")
+					.append(idField).append(",").append(pidField).append(",1 from ").append(tableName)
+					.append(" where ").append(hasIdValue ? idField : pidField).append("=?");
+			if (hasConditions) {
+				treeSql.append(" and ").append(conditions);
+			}
+			treeSql.append(" union all select c.").append(idField).append(",c.").append(pidField)
+					.append(",p.tree_level+1 from ").append(tableName).append(" c inner join t_tree_route p on c.")
+					.append(pidField).append("=p.tree_id where p.tree_level<").append(TREE_RECURSIVE_MAX_LEVEL);
+			if (hasConditions) {
+				treeSql.append(" and ").append(conditions);
+			}
+			treeSql.append(") select tree_id,tree_pid,tree_level from t_tree_route");
+			// sqlserver 默认递归上限为100层,由tree_level控制深度
+			if (dbType == DBType.SQLSERVER) {
+				treeSql.append(" option (maxrecursion 0)");
+			}
+			int maxLevel = readTreeNodes(typeHandler, treeSql.toString(),
+					new Object[] { hasIdValue ? treeTableModel.getIdValue() : treeTableModel.getPidValue() }, true,
+					pidMap, childrenMap, conn, dbType);
+			// 达到递归深度上限(层级过深或数据存在环路),改为读取全表在内存中计算
+			if (maxLevel >= TREE_RECURSIVE_MAX_LEVEL) {
+				logger.warn("树形表:{} 递归查询达到最大深度:{},改为读取全表计算节点路径!", tableName, TREE_RECURSIVE_MAX_LEVEL);
+				pidMap.clear();
+				childrenMap.clear();
+				isSubTree = false;
+			}
+		}
+		if (!isSubTree) {
+			String treeSql = "select ".concat(idField).concat(",").concat(pidField).concat(" from ").concat(tableName);
+			if (hasConditions) {
+				treeSql = treeSql.concat(" where ").concat(conditions);
+			}
+			readTreeNodes(typeHandler, treeSql, null, false, pidMap, childrenMap, conn, dbType);
+		}
+		// 起始节点
+		List<String> startIds;
+		if (hasIdValue) {
+			String idValue = treeTableModel.getIdValue().toString();
+			startIds = pidMap.containsKey(idValue) ? Collections.singletonList(idValue) : Collections.emptyList();
+		} else {
+			startIds = childrenMap.getOrDefault(pidValue, Collections.emptyList());
+		}
+		// 逐层遍历:{id,上级节点路径,节点层级}
+		int idLength = treeTableModel.getIdLength();
+		String splitSign = treeTableModel.getSplitSign();
+		ArrayDeque<Object[]> queue = new ArrayDeque<Object[]>();
+		for (String id : startIds) {
+			queue.add(new Object[] { id, pidValue.equals(pidMap.get(id)) ? nodeRoute : "", nodeLevel + 1 });
+		}
+		Set<String> visited = new HashSet<String>();
+		List<Object[]> routeRows = new ArrayList<Object[]>();
+		Object[] node;
+		String id;
+		String route;
+		List<String> children;
+		int level;
+		while (!queue.isEmpty()) {
+			node = queue.poll();
+			id = (String) node[0];
+			// 避免数据错误形成环路
+			if (!visited.add(id)) {
+				continue;
+			}
+			route = (String) node[1];
+			level = (Integer) node[2];
+			children = childrenMap.get(id);
+			if (hasRoute) {
+				route = getTreeNodeRoute(treeTableModel, route, pidMap.get(id), id);
+				if (hasLeaf) {
+					routeRows.add(new Object[] { level, route + ((idLength < 2) ? splitSign : ""),
+							(children == null) ? 1 : 0, getTreeIdValue(treeTableModel, id) });
+				} else {
+					routeRows.add(new Object[] { level, route + ((idLength < 2) ? splitSign : ""),
+							getTreeIdValue(treeTableModel, id) });
+				}
+			}
+			if (children != null) {
+				for (String childId : children) {
+					queue.add(new Object[] { childId, route, level + 1 });
+				}
+			}
+		}
+		// 遍历范围之外的节点只修改是否叶子节点
+		List<Object[]> leafRows = new ArrayList<Object[]>();
+		if (hasLeaf) {
+			for (String nodeId : pidMap.keySet()) {
+				if (!hasRoute || !visited.contains(nodeId)) {
+					leafRows.add(new Object[] { childrenMap.containsKey(nodeId) ? 0 : 1,
+							getTreeIdValue(treeTableModel, nodeId) });
+				}
+			}
+			// 子树模式下父节点未被读取
+			if (isSubTree && !startIds.isEmpty() && !pidMap.containsKey(pidValue)) {
+				leafRows.add(new Object[] { 0, getTreeIdValue(treeTableModel, pidValue) });
+			}
+		}
+		// 大批量参数绑定方式回写
+		int batchSize = 5000;
+		String whereSql = " where ".concat(idField).concat("=?").concat(hasConditions ? " and ".concat(conditions) : "");
+		if (!routeRows.isEmpty()) {
+			String updateSql = "update ".concat(tableName).concat(" set ").concat(nodeLevelField).concat("=?,")
+					.concat(nodeRouteField).concat("=?").concat(hasLeaf ? ",".concat(leafField).concat("=?") : "")
+					.concat(whereSql);
+			SqlExecuteStat.showSql("树形表批量修改节点层级、路径[" + routeRows.size() + "]条", updateSql, null);
+			batchUpdateByJdbc(typeHandler, updateSql, routeRows, batchSize, null, null, null, conn, dbType);
+		}
+		if (!leafRows.isEmpty()) {
+			String updateSql = "update ".concat(tableName).concat(" set ").concat(leafField).concat("=?")
+					.concat(whereSql);
+			SqlExecuteStat.showSql("树形表批量修改是否叶子节点[" + leafRows.size() + "]条", updateSql, null);
+			batchUpdateByJdbc(typeHandler, updateSql, leafRows, batchSize, null, null, null, conn, dbType);
+		}
+		return true;
+	}
+
+	/**
+	 * @TODO 计算节点路径,规则与processNextLevel一致(上级路径为空则以补齐后的pid开始)
+	 * @param treeTableModel
+	 * @param parentRoute
+	 * @param pid
+	 * @param id
+	 * @return
+	 */
+	private static String getTreeNodeRoute(TreeTableModel treeTableModel, String parentRoute, String pid,
+			String id) {
+		int size = treeTableModel.getIdLength();
+		boolean appendZero = !treeTableModel.isChar() || treeTableModel.isAppendZero();
+		String nodeRoute;
+		if (parentRoute == null || "".equals(parentRoute.trim())) {
+			pid = (pid == null) ? "" : pid;
+			if (appendZero) {
+				// 负数
+				if (NumberUtil.isInteger(pid) && pid.indexOf("-") == 0) {
+					nodeRoute = "-".concat(StringUtil.addLeftZero2Len(pid.substring(1), size - 1));
+				} else {
+					nodeRoute = StringUtil.addLeftZero2Len(pid, size);
+				}
+			} else {
+				nodeRoute = StringUtil.addRightBlank2Len(pid, size);
+			}
+		} else {
+			nodeRoute = parentRoute.trim();
+		}
+		if (!nodeRoute.endsWith(treeTableModel.getSplitSign())) {
+			nodeRoute = nodeRoute.concat(treeTableModel.getSplitSign());
+		}
+		if (appendZero) {
+			return nodeRoute.concat(StringUtil.addLeftZero2Len(id, size));
+		}
+		return nodeRoute.concat(StringUtil.addRightBlank2Len(id, size));
+	}
+
+	private static Object getTreeIdValue(TreeTableModel treeTableModel, String id) {
+		return treeTableModel.isChar() ? id : Long.valueOf(id);
+	}
+
+	/**
+	 * @TODO 读取树形表的id、pid
+	 * @param typeHandler
+	 * @param treeSql
+	 * @param params
+	 * @param hasLevel    第三列为递归查询的层级
+	 * @param pidMap      id 对应 pid
+	 * @param childrenMap pid 对应 下级节点
+	 * @param conn
+	 * @param dbType
+	 * @return 读取到的最大层级(非递归查询为0)
+	 * @throws Exception
+	 */
+	private static int readTreeNodes(TypeHandler typeHandler, String treeSql, Object[] params, boolean hasLevel,
+			Map<String, String> pidMap, Map<String, List<String>> childrenMap, Connection conn, Integer dbType)
+			throws Exception {
+		SqlExecuteStat.showSql("树形表读取节点id、pid", treeSql, params);
+		PreparedStatement pst = conn.prepareStatement(treeSql, ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY);
+		pst.setFetchSize(SqlToyConstants.FETCH_SIZE);
+		Object result = preparedStatementProcess(null, pst, null, new PreparedStatementResultHandler() {
+			@Override
+			public void execute(Object obj, PreparedStatement pst, ResultSet rs) throws Exception {
+				setParamsValue(typeHandler, conn, dbType, pst, params, null, 0);
+				rs = pst.executeQuery();
+				String id;
+				String pid;
+				int maxLevel = 0;
+				while (rs.next()) {
+					if (hasLevel) {
+						maxLevel = Math.max(maxLevel, rs.getInt(3));
+					}
+					id = rs.getString(1);
+					// 环路数据递归查询会重复读取
+					if (id == null || pidMap.containsKey(id)) {
+						continue;
+					}
+					pid = rs.getString(2);
+					pidMap.put(id, pid);
+					if (pid != null) {
+						childrenMap.computeIfAbsent(pid, (k) -> new ArrayList<String>()).add(id);
+					}
+				}
+				rs.close();
+				this.setResult(maxLevel);
+			}
+		});
+		return (result == null) ? 0 : (Integer) result;
+	}
+
+	/**
+	 * @TODO 支持递归查询(with recursive)的数据库对应的语法前缀
+	 * @param dbType
+	 * @return 不支持返回null
+	 */
+	private static String getRecursiveWith(Integer dbType) {
+		switch (dbType) {
+		case DBType.MYSQL:
+		case DBType.POSTGRESQL:
+		case DBType.POSTGRESQL15:
+		case DBType.GAUSSDB:
+		case DBType.SQLITE:
+		case DBType.H2:
+			return "with recursive";
+		case DBType.ORACLE:
+		case DBType.ORACLE11:
+		case DBType.SQLSERVER:
+		case DBType.DB2:
+			return "with";
+		default:
+			return null;
+		}
+	}
+
 	/**
 	 * @todo TreeTableRoute中处理下一层级的递归方法，逐层计算下一级节点的节点层次和路径
 	 * @param typeHandler
@@ -1612,8 +1917,10 @@ public class SqlUtil {
 					setParamsValue(typeHandler, conn, dbType, pst, params, paramsType, 0);
 				}
 				pst.executeUpdate();
+				long updateCount = pst.getUpdateCount();
+				SqlExecuteStat.addRowCount(updateCount);
 				// 返回update的记录数量
-				this.setResult(Long.valueOf(pst.getUpdateCount()));
+				this.setResult(Long.valueOf(updateCount));
 			}
 		});
 		if (result != null) {
@@ -1749,8 +2056,9 @@ public class SqlUtil {
 		}
 		String key = entityMeta.getTableName() + "_" + sql;
 		// 从缓存中直接获取,避免每次都处理提升效率
-		if (convertSqlMap.containsKey(key)) {
-			return convertSqlMap.get(key);
+		String cacheSql = convertSqlMap.get(key);
+		if (cacheSql != null) {
+			return cacheSql;
 		}
 		String[] fields = entityMeta.getFieldsArray();
 		StringBuilder sqlBuff = new StringBuilder();
@@ -1808,7 +2116,7 @@ public class SqlUtil {
 				}
 			}
 		}
-		// 放入缓存
+		// 放入有界缓存(EntityQuery中拼接了条件值的sql超出上限后淘汰)
 		convertSqlMap.put(key, realSql);
 		return realSql;
 	}
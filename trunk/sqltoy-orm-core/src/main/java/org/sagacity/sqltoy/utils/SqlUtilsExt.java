@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
  * @description 提供针对SqlUtil类的扩展,提供更有针对性的操作,提升性能
  * @author zhongxuchen
  * @version v1.0,Date:2015年4月22日
+ * @modify Date:2024-06-01 批次量小于等于1时逐条执行(驱动不支持批处理)
  */
 public class SqlUtilsExt {
 	/**
@@ -71,8 +72,8 @@ public class SqlUtilsExt {
 			}
 			pst = conn.prepareStatement(updateSql);
 			int totalRows = rowDatas.size();
-			// 只有一条记录不采用批量
-			boolean useBatch = (totalRows > 1) ? true : false;
+			// 只有一条记录或批次量小于等于1(如驱动不支持批处理)不采用批量
+			boolean useBatch = (totalRows > 1 && batchSize > 1) ? true : false;
 			Object[] rowData;
 			// 批处理计数器
 			int meter = 0;
@@ -114,7 +115,7 @@ public class SqlUtilsExt {
 							pst.clearBatch();
 						}
 					} else {
-						updateCount = pst.executeUpdate();
+						updateCount = updateCount + pst.executeUpdate();
 					}
 				}
 			}
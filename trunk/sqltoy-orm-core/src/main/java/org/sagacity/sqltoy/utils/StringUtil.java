@@ -551,6 +551,27 @@ public class StringUtil {
 		return matchCnt(source.substring(beginIndex, endIndex), Pattern.compile(regex), offset);
 	}
 
+	/**
+	 * @todo 获取字符在指定区间出现的次数(单字符场景替代正则匹配计数)
+	 * @param source
+	 * @param matchChar
+	 * @param beginIndex
+	 * @param endIndex
+	 * @return
+	 */
+	public static int charCnt(String source, char matchChar, int beginIndex, int endIndex) {
+		if (source == null) {
+			return 0;
+		}
+		int count = 0;
+		for (int i = beginIndex; i < endIndex; i++) {
+			if (source.charAt(i) == matchChar) {
+				count++;
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * @todo 获取字符指定次数的位置
 	 * @param source
@@ -7,9 +7,14 @@ import java.util.List;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import org.junit.jupiter.api.Test;
 import org.sagacity.sqltoy.SqlToyConstants;
 import org.sagacity.sqltoy.config.model.LinkModel;
+import org.sagacity.sqltoy.config.model.SqlParsePlan;
+import org.sagacity.sqltoy.config.model.SqlPseudoBlock;
 import org.sagacity.sqltoy.config.model.SqlToyConfig;
 import org.sagacity.sqltoy.config.model.SqlToyResult;
 import org.sagacity.sqltoy.model.MapKit;
@@ -452,4 +457,49 @@ public class SqlConfigParseUtilsTest {
 				new Object[] { "a", null });
 		System.err.println(result.getSql());
 	}
+
+	@Test
+	public void testSqlParsePlan() throws Exception {
+		String sql = "select * from table t where #[t.id=:id] #[and t.name like :name] #[and t.status in (:status)] and t.json ?? 'x'";
+		SqlParsePlan parsePlan = SqlConfigParseUtils.getSqlParsePlan(sql);
+		// 同一个sql只编译一次
+		assertTrue(parsePlan == SqlConfigParseUtils.getSqlParsePlan(sql));
+		assertTrue(parsePlan.isNamedArgs());
+		assertTrue(parsePlan.isHasPseudo() && parsePlan.isHasLike() && parsePlan.isHasIn());
+		assertTrue(!parsePlan.isHasBlank() && !parsePlan.isHasValue() && !parsePlan.isHasLoop());
+		SqlToyResult result = SqlConfigParseUtils.processSql(sql, new String[] { "id", "name", "status" },
+				new Object[] { null, "chen", new Object[] { 1, 2 } });
+		assertEquals(result.getParamsValue().length, 3);
+		assertEquals(result.getParamsValue()[0], "%chen%");
+		assertTrue(result.getSql().contains("??"));
+		System.err.println(result.getSql());
+	}
+
+	// 预编译的#[]、@if()与逐次解析的结果一致
+	@Test
+	public void testPseudoBlocks() throws Exception {
+		String[] sqls = { "select * from table where #[id=:id ] #[and status=:status] order by id",
+				"select * from table where 1=1 #[and id=:id and name like :name] #[and status=:status] limit 10",
+				"where name=1 #[ @if(:flag==1||:flag==:status) and #[status=:status]] #[and t.id is not :id]",
+				"select * from (select * from t where #[a=:id] #[and #[b=:name] #[or c=:status]]) t1 where #[t1.x=:flag]",
+				"update table set name=:name #[,status=:status] #[,flag=@if(:flag==2):flag] where id=:id",
+				"select * from table where #[@if(:name!=null) id in [arraystringconcat(name)] and id=:id ]#[and status=:status]" };
+		String[] paramNames = { "id", "name", "status", "flag" };
+		Object[][] paramValues = { { null, null, null, null }, { "1", null, "2", 1 }, { null, "chen", null, 2 },
+				{ "1", "chen", "2", 2 }, { true, null, "1", 1 } };
+		for (String sql : sqls) {
+			SqlParsePlan parsePlan = SqlConfigParseUtils.getSqlParsePlan(sql);
+			assertTrue(parsePlan.getPseudoBlocks() != null);
+			for (Object[] values : paramValues) {
+				SqlToyResult result = SqlConfigParseUtils.processSql(sql, paramNames, values.clone());
+				SqlPseudoBlock[] pseudoBlocks = parsePlan.getPseudoBlocks();
+				// 去除预编译结果,按逐次解析方式处理
+				parsePlan.setPseudoBlocks(null);
+				SqlToyResult compareResult = SqlConfigParseUtils.processSql(sql, paramNames, values.clone());
+				parsePlan.setPseudoBlocks(pseudoBlocks);
+				assertEquals(compareResult.getSql(), result.getSql());
+				assertEquals(JSON.toJSONString(compareResult.getParamsValue()), JSON.toJSONString(result.getParamsValue()));
+			}
+		}
+	}
 }
@@ -0,0 +1,69 @@
+package org.sagacity.sqltoy.demo.domain;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sagacity.sqltoy.config.annotation.Column;
+import org.sagacity.sqltoy.config.annotation.Entity;
+import org.sagacity.sqltoy.config.annotation.Id;
+import org.sagacity.sqltoy.config.annotation.OneToMany;
+import org.sagacity.sqltoy.config.annotation.Tenant;
+
+/**
+ * @project sagacity-sqltoy
+ * @version 1.0.0 Table: sqltoy_order_info,Remark:订单(级联批量操作测试)
+ */
+@Entity(tableName = "sqltoy_order_info", pk_constraint = "PRIMARY")
+public class OrderInfo implements Serializable {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -3521964851247125493L;
+
+	@Id(strategy = "generator", generator = "org.sagacity.sqltoy.plugins.id.impl.DefaultIdGenerator")
+	@Column(name = "ORDER_ID", length = 22L, type = java.sql.Types.VARCHAR, nullable = false)
+	private String orderId;
+
+	@Column(name = "ORDER_NAME", length = 100L, type = java.sql.Types.VARCHAR, nullable = true)
+	private String orderName;
+
+	@Tenant
+	@Column(name = "TENANT_ID", length = 22L, type = java.sql.Types.VARCHAR, nullable = true)
+	private String tenantId;
+
+	@OneToMany(fields = { "orderId" }, mappedFields = { "orderId" }, delete = true, update = "delete")
+	private List<OrderItem> orderItems = new ArrayList<OrderItem>();
+
+	public String getOrderId() {
+		return orderId;
+	}
+
+	public void setOrderId(String orderId) {
+		this.orderId = orderId;
+	}
+
+	public String getOrderName() {
+		return orderName;
+	}
+
+	public void setOrderName(String orderName) {
+		this.orderName = orderName;
+	}
+
+	public String getTenantId() {
+		return tenantId;
+	}
+
+	public void setTenantId(String tenantId) {
+		this.tenantId = tenantId;
+	}
+
+	public List<OrderItem> getOrderItems() {
+		return orderItems;
+	}
+
+	public void setOrderItems(List<OrderItem> orderItems) {
+		this.orderItems = orderItems;
+	}
+}
@@ -0,0 +1,60 @@
+package org.sagacity.sqltoy.demo.domain;
+
+import java.io.Serializable;
+
+import org.sagacity.sqltoy.config.annotation.Column;
+import org.sagacity.sqltoy.config.annotation.Entity;
+import org.sagacity.sqltoy.config.annotation.Id;
+
+/**
+ * @project sagacity-sqltoy
+ * @version 1.0.0 Table: sqltoy_order_item,Remark:订单明细(级联批量操作测试)
+ */
+@Entity(tableName = "sqltoy_order_item", pk_constraint = "PRIMARY")
+public class OrderItem implements Serializable {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 6126480219553271903L;
+
+	@Id(strategy = "generator", generator = "org.sagacity.sqltoy.plugins.id.impl.DefaultIdGenerator")
+	@Column(name = "ITEM_ID", length = 22L, type = java.sql.Types.VARCHAR, nullable = false)
+	private String itemId;
+
+	@Column(name = "ORDER_ID", length = 22L, type = java.sql.Types.VARCHAR, nullable = false)
+	private String orderId;
+
+	@Column(name = "PRODUCT_NAME", length = 100L, type = java.sql.Types.VARCHAR, nullable = true)
+	private String productName;
+
+	public OrderItem() {
+	}
+
+	public OrderItem(String productName) {
+		this.productName = productName;
+	}
+
+	public String getItemId() {
+		return itemId;
+	}
+
+	public void setItemId(String itemId) {
+		this.itemId = itemId;
+	}
+
+	public String getOrderId() {
+		return orderId;
+	}
+
+	public void setOrderId(String orderId) {
+		this.orderId = orderId;
+	}
+
+	public String getProductName() {
+		return productName;
+	}
+
+	public void setProductName(String productName) {
+		this.productName = productName;
+	}
+}
@@ -0,0 +1,115 @@
+package org.sagacity.sqltoy.dialect;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.config.model.SqlToyResult;
+import org.sagacity.sqltoy.dialect.utils.KeysetPageUtils;
+import org.sagacity.sqltoy.utils.DataSourceUtils.DBType;
+
+import com.alibaba.fastjson.JSON;
+
+public class KeysetPageTest {
+	private String sql = "select t.staff_id,t.create_time,t.status from sys_staff t where t.status=? order by t.create_time";
+
+	@Test
+	public void testRowValueKeyset() {
+		SqlToyResult result = KeysetPageUtils.wrapKeysetSql(sql, new Object[] { 1 },
+				new String[] { "t.create_time", "staff_id" }, false, new Object[] { "2024-05-01", "S0010" }, 20,
+				DBType.MYSQL);
+		System.err.println(result.getSql());
+		System.err.println(JSON.toJSONString(result.getParamsValue()));
+		assertTrue(result.getSql().contains(
+				"(SAG_INTERMEDIATE_TABLE.create_time,SAG_INTERMEDIATE_TABLE.staff_id) > (?,?) order by SAG_INTERMEDIATE_TABLE.create_time,SAG_INTERMEDIATE_TABLE.staff_id limit 20"));
+		// 内部order by 被剔除
+		assertTrue(!result.getSql().contains("order by t.create_time"));
+		assertEquals(3, result.getParamsValue().length);
+	}
+
+	@Test
+	public void testExpandKeyset() {
+		SqlToyResult result = KeysetPageUtils.wrapKeysetSql(sql, new Object[] { 1 },
+				new String[] { "create_time", "staff_id" }, true, new Object[] { "2024-05-01", "S0010" }, 20,
+				DBType.SQLSERVER);
+		System.err.println(result.getSql());
+		System.err.println(JSON.toJSONString(result.getParamsValue()));
+		assertTrue(result.getSql().startsWith("select top 20 "));
+		assertTrue(result.getSql().contains(
+				"((SAG_INTERMEDIATE_TABLE.create_time<?) or (SAG_INTERMEDIATE_TABLE.create_time=? and SAG_INTERMEDIATE_TABLE.staff_id<?))"));
+		assertEquals("[1,\"2024-05-01\",\"2024-05-01\",\"S0010\"]", JSON.toJSONString(result.getParamsValue()));
+	}
+
+	@Test
+	public void testFirstPage() {
+		SqlToyResult result = KeysetPageUtils.wrapKeysetSql(sql, new Object[] { 1 }, new String[] { "staff_id" },
+				false, null, 10, DBType.ORACLE11);
+		System.err.println(result.getSql());
+		assertTrue(!result.getSql().contains(" where SAG_INTERMEDIATE_TABLE"));
+		assertTrue(result.getSql().endsWith(") where rownum<=10"));
+		assertEquals(1, result.getParamsValue().length);
+	}
+
+	// sqlserver子查询中不允许order by,最外层order by(含表达式和参数)完整剔除
+	@Test
+	public void testRemoveOrderBy() {
+		String orderSql = "select t.staff_id,t.create_time from sys_staff t where t.status=? order by nvl(t.create_time,?),t.staff_id";
+		SqlToyResult result = KeysetPageUtils.wrapKeysetSql(orderSql, new Object[] { 1, "2024-01-01" },
+				new String[] { "staff_id" }, false, new Object[] { "S0010" }, 20, DBType.SQLSERVER);
+		System.err.println(result.getSql());
+		assertTrue(!result.getSql().contains("nvl("));
+		assertEquals("[1,\"S0010\"]", JSON.toJSONString(result.getParamsValue()));
+		// 子查询中的order by 保留
+		result = KeysetPageUtils.wrapKeysetSql(
+				"select * from (select staff_id from sys_staff order by staff_id) t where t.status=?",
+				new Object[] { 1 }, new String[] { "staff_id" }, false, null, 20, DBType.MYSQL);
+		assertTrue(result.getSql().contains("order by staff_id)"));
+		// order by 之后的limit无法剔除
+		assertThrows(IllegalArgumentException.class,
+				() -> KeysetPageUtils.wrapKeysetSql(sql + " limit 100", new Object[] { 1 },
+						new String[] { "staff_id" }, false, null, 20, DBType.MYSQL));
+	}
+
+	// 混合升降序按展开形式逐列比较
+	@Test
+	public void testMixedDirection() {
+		SqlToyResult result = KeysetPageUtils.wrapKeysetSql(sql, new Object[] { 1 },
+				new String[] { "t.create_time desc", "staff_id" }, false, new Object[] { "2024-05-01", "S0010" }, 20,
+				DBType.POSTGRESQL);
+		System.err.println(result.getSql());
+		assertTrue(result.getSql().contains(
+				"((SAG_INTERMEDIATE_TABLE.create_time<?) or (SAG_INTERMEDIATE_TABLE.create_time=? and SAG_INTERMEDIATE_TABLE.staff_id>?))"));
+		assertTrue(result.getSql().endsWith(
+				"order by SAG_INTERMEDIATE_TABLE.create_time desc,SAG_INTERMEDIATE_TABLE.staff_id limit 20"));
+		assertEquals("[1,\"2024-05-01\",\"2024-05-01\",\"S0010\"]", JSON.toJSONString(result.getParamsValue()));
+		// 方向一致依然使用行值比较
+		result = KeysetPageUtils.wrapKeysetSql(sql, new Object[] { 1 },
+				new String[] { "create_time DESC", "staff_id" }, true, new Object[] { "2024-05-01", "S0010" }, 20,
+				DBType.POSTGRESQL);
+		assertTrue(result.getSql().contains(
+				"(SAG_INTERMEDIATE_TABLE.create_time,SAG_INTERMEDIATE_TABLE.staff_id) < (?,?)"));
+		assertThrows(IllegalArgumentException.class, () -> KeysetPageUtils.wrapKeysetSql(sql, new Object[] { 1 },
+				new String[] { "staff_id desc;drop" }, false, null, 20, DBType.MYSQL));
+		assertThrows(IllegalArgumentException.class, () -> KeysetPageUtils.wrapKeysetSql(sql, new Object[] { 1 },
+				new String[] { "staff_id" }, false, null, 0, DBType.MYSQL));
+	}
+
+	@Test
+	public void testNextKeysetValues() {
+		List rows = new ArrayList();
+		rows.add(Arrays.asList("S0001", "2024-05-01", 1));
+		rows.add(Arrays.asList("S0002", "2024-05-02", 1));
+		String[] labelNames = { "STAFF_ID", "CREATE_TIME", "STATUS" };
+		Object[] next = KeysetPageUtils.getNextKeysetValues(rows, labelNames,
+				new String[] { "t.create_time desc", "staffId" }, 2);
+		assertEquals("[\"2024-05-02\",\"S0002\"]", JSON.toJSONString(next));
+		// 不足一页表示已经到末尾
+		assertNull(KeysetPageUtils.getNextKeysetValues(rows, labelNames, new String[] { "staff_id" }, 3));
+	}
+}
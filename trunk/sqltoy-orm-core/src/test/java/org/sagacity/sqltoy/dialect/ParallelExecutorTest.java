@@ -0,0 +1,138 @@
+package org.sagacity.sqltoy.dialect;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.dialect.executor.ParallelExecutor;
+
+import com.alibaba.ttl.TransmittableThreadLocal;
+
+public class ParallelExecutorTest {
+	// 单次调用的并发数量受maxConcurrents限制,结果按任务顺序返回
+	@Test
+	public void testInvokeAll() throws Exception {
+		ParallelExecutor executor = new ParallelExecutor(8, 100, 0);
+		try {
+			AtomicInteger running = new AtomicInteger(0);
+			AtomicInteger maxRunning = new AtomicInteger(0);
+			List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+			for (int i = 0; i < 20; i++) {
+				final int index = i;
+				tasks.add(() -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					Thread.sleep(20);
+					running.decrementAndGet();
+					return index;
+				});
+			}
+			List<Integer> result = executor.invokeAll(tasks, null, 3, 10);
+			assertEquals(20, result.size());
+			for (int i = 0; i < 20; i++) {
+				assertEquals(Integer.valueOf(i), result.get(i));
+			}
+			assertTrue(maxRunning.get() <= 3);
+			assertEquals(20, executor.getSubmittedCount());
+			assertEquals(20, executor.getCompletedCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// 超时取消未完成的任务
+	@Test
+	public void testTimeout() throws Exception {
+		ParallelExecutor executor = new ParallelExecutor(2, 100, 0);
+		try {
+			List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+			for (int i = 0; i < 4; i++) {
+				tasks.add(() -> {
+					Thread.sleep(5000);
+					return 1;
+				});
+			}
+			long start = System.currentTimeMillis();
+			assertThrows(TimeoutException.class, () -> executor.invokeAll(tasks, null, 4, 1));
+			assertTrue(System.currentTimeMillis() - start < 3000);
+			assertEquals(1, executor.getTimeoutCount());
+			Thread.sleep(100);
+			assertEquals(0, executor.getActiveCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// 取消执行中的任务时,数据源许可在任务真正结束后才释放
+	@Test
+	public void testCancelHoldPermit() throws Exception {
+		ParallelExecutor executor = new ParallelExecutor(2, 100, 1);
+		DataSource dataSource = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+				new Class[] { DataSource.class }, (proxy, method, args) -> {
+					if ("hashCode".equals(method.getName())) {
+						return System.identityHashCode(proxy);
+					}
+					if ("equals".equals(method.getName())) {
+						return proxy == args[0];
+					}
+					return null;
+				});
+		try {
+			CountDownLatch finished = new CountDownLatch(1);
+			List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+			tasks.add(() -> {
+				// 模拟不响应中断的jdbc调用
+				long end = System.currentTimeMillis() + 1500;
+				while (System.currentTimeMillis() < end) {
+					try {
+						Thread.sleep(50);
+					} catch (InterruptedException e) {
+					}
+				}
+				finished.countDown();
+				return 1;
+			});
+			List<DataSource> dataSources = new ArrayList<DataSource>();
+			dataSources.add(dataSource);
+			assertThrows(TimeoutException.class, () -> executor.invokeAll(tasks, dataSources, 1, 1));
+			assertEquals(1, executor.getDataSourceActiveCount(dataSource));
+			assertTrue(finished.await(5, TimeUnit.SECONDS));
+			Thread.sleep(100);
+			assertEquals(0, executor.getDataSourceActiveCount(dataSource));
+			assertEquals(1, executor.getCompletedCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// 调用线程的TransmittableThreadLocal传递到工作线程
+	@Test
+	public void testTtlContext() throws Exception {
+		ParallelExecutor executor = new ParallelExecutor(2, 100, 0);
+		TransmittableThreadLocal<String> context = new TransmittableThreadLocal<String>();
+		try {
+			List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+			for (int i = 0; i < 4; i++) {
+				tasks.add(() -> context.get());
+			}
+			context.set("tenant1");
+			assertEquals("[tenant1, tenant1, tenant1, tenant1]", executor.invokeAll(tasks, null, 2, 10).toString());
+			context.set("tenant2");
+			assertEquals("[tenant2, tenant2, tenant2, tenant2]", executor.invokeAll(tasks, null, 2, 10).toString());
+		} finally {
+			context.remove();
+			executor.shutdown();
+		}
+	}
+}
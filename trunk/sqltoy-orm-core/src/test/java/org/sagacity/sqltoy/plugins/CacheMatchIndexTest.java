@@ -0,0 +1,154 @@
+package org.sagacity.sqltoy.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.integration.AppContext;
+import org.sagacity.sqltoy.translate.CacheMatchIndex;
+import org.sagacity.sqltoy.translate.TranslateManager;
+import org.sagacity.sqltoy.utils.StringUtil;
+
+public class CacheMatchIndexTest {
+	private final static String[] WORDS = { "张", "王", "李", "赵", "明", "华", "科技", "贸易", "有限", "公司", "ab", "Tom",
+			"jerry" };
+
+	// 索引候选记录再进行精确比较,结果与全量扫描一致且顺序相同
+	@Test
+	public void testLikeCandidates() {
+		Random random = new Random(1);
+		HashMap<String, Object[]> cacheData = new HashMap<String, Object[]>();
+		for (int i = 0; i < 200000; i++) {
+			cacheData.put("C" + i, new Object[] { "C" + i, randomName(random), randomName(random) });
+		}
+		int[] matchIndexes = { 1, 2 };
+		long start = System.currentTimeMillis();
+		CacheMatchIndex matchIndex = new CacheMatchIndex(cacheData, 0, matchIndexes);
+		System.err.println("建立" + cacheData.size() + "条缓存的索引耗时:" + (System.currentTimeMillis() - start) + "ms");
+		String[] params = { "张明", "科技 公司", "tom", "华", "李 贸易 有限", "c1234", "不存在", " ab" };
+		long scanTime = 0;
+		long indexTime = 0;
+		for (String param : params) {
+			List<String[]> paramsMatchWords = new ArrayList<String[]>();
+			paramsMatchWords.add(param.toLowerCase().split("\\s+"));
+			start = System.nanoTime();
+			List<String> scanKeys = likeMatch(cacheData.values(), paramsMatchWords, matchIndexes);
+			scanTime += System.nanoTime() - start;
+			start = System.nanoTime();
+			List<String> indexKeys = likeMatch(matchIndex.likeCandidates(paramsMatchWords), paramsMatchWords,
+					matchIndexes);
+			indexTime += System.nanoTime() - start;
+			assertEquals(scanKeys, indexKeys);
+		}
+		System.err.println("全量扫描耗时:" + scanTime / 1000000 + "ms,索引匹配耗时:" + indexTime / 1000000 + "ms");
+		// 精确匹配:key或名称相等
+		List<Object[]> rows = matchIndex.equalCandidates(Arrays.asList("c100", "不存在"));
+		assertEquals(1, rows.size());
+		assertEquals("C100", rows.get(0)[0]);
+	}
+
+	// 配置match-index的缓存,缓存数据更新后索引随之重建
+	@Test
+	public void testTranslateManager() throws Exception {
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		TranslateCacheManagerTest.StaffService staffService = new TranslateCacheManagerTest.StaffService();
+		sqlToyContext.setAppContext(new AppContext() {
+			@Override
+			public boolean containsBean(String beanName) {
+				return "staffService".equals(beanName);
+			}
+
+			@Override
+			public Object getBean(String beanName) {
+				return staffService;
+			}
+
+			@Override
+			public <T> T getBean(Class<T> requiredType) {
+				return null;
+			}
+
+			@Override
+			public <T> Map<String, T> getBeansOfType(Class<T> type) {
+				return null;
+			}
+		});
+		TranslateManager translateManager = new TranslateManager();
+		translateManager.setTranslateConfig("classpath:translates-test/sqltoy-translate.xml");
+		translateManager.initialize(sqlToyContext, null, 3600);
+		try {
+			int[] matchIndexes = { 1 };
+			HashMap<String, Object[]> cacheData = translateManager.getCacheData("staffMatchName", null);
+			CacheMatchIndex matchIndex = translateManager.getMatchIndex("staffMatchName", null, cacheData, 0,
+					matchIndexes);
+			assertSame(matchIndex, translateManager.getMatchIndex("staffMatchName", null, cacheData, 0, matchIndexes));
+			// 未配置match-index不建立索引
+			assertEquals(null, translateManager.getMatchIndex("staffIdName", null,
+					translateManager.getCacheData("staffIdName", null), 0, matchIndexes));
+			List<String[]> paramsMatchWords = new ArrayList<String[]>();
+			paramsMatchWords.add(new String[] { "staff9" });
+			assertEquals(11, likeMatch(matchIndex.likeCandidates(paramsMatchWords), paramsMatchWords, matchIndexes)
+					.size());
+			// 更新缓存
+			HashMap<String, Object[]> newData = new HashMap<String, Object[]>();
+			newData.put("S1", new Object[] { "S1", "newStaff9" });
+			translateManager.putCacheData("staffMatchName", null, newData);
+			CacheMatchIndex newIndex = translateManager.getMatchIndex("staffMatchName", null,
+					translateManager.getCacheData("staffMatchName", null), 0, matchIndexes);
+			assertNotSame(matchIndex, newIndex);
+			assertTrue(newIndex.isValid(newData));
+			assertEquals("S1", newIndex.likeCandidates(paramsMatchWords).get(0)[0]);
+			// 增量更新(直接修改缓存数据)只标记索引失效,下次获取时重建一次
+			newData.put("S1", new Object[] { "S1", "renamedStaff" });
+			translateManager.markMatchIndexStale("staffMatchName", null);
+			assertTrue(!newIndex.isValid(newData));
+			CacheMatchIndex staleRebuild = translateManager.getMatchIndex("staffMatchName", null, newData, 0,
+					matchIndexes);
+			assertNotSame(newIndex, staleRebuild);
+			assertSame(staleRebuild, translateManager.getMatchIndex("staffMatchName", null, newData, 0, matchIndexes));
+			assertEquals(0, staleRebuild.likeCandidates(paramsMatchWords).size());
+			List<String[]> renamedWords = new ArrayList<String[]>();
+			renamedWords.add(new String[] { "renamed" });
+			assertEquals("S1", staleRebuild.likeCandidates(renamedWords).get(0)[0]);
+		} finally {
+			translateManager.destroy();
+		}
+	}
+
+	private String randomName(Random random) {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0, size = random.nextInt(4) + 1; i < size; i++) {
+			name.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return name.toString();
+	}
+
+	// 与cacheMatchKeys中like匹配相同的比较逻辑
+	private static List<String> likeMatch(Iterable<Object[]> rows, List<String[]> paramsMatchWords,
+			int[] matchIndexes) {
+		List<String> result = new ArrayList<String>();
+		Object compareValue;
+		for (Object[] row : rows) {
+			skipLoop: for (String[] matchWords : paramsMatchWords) {
+				for (int index : matchIndexes) {
+					compareValue = row[index];
+					if (compareValue != null && StringUtil.like(compareValue.toString().toLowerCase(), matchWords)) {
+						result.add(row[0].toString());
+						break skipLoop;
+					}
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,64 @@
+package org.sagacity.sqltoy.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.exception.DataAccessException;
+import org.sagacity.sqltoy.plugins.nosql.ElasticSearchUtils;
+
+import com.alibaba.fastjson.JSON;
+
+public class ElasticStreamTest {
+	@Test
+	public void testReadHits() {
+		String json = "{\"pit_id\":\"pit-2\",\"took\":3,\"timed_out\":false,\"_shards\":{\"total\":1,\"failed\":0},"
+				+ "\"hits\":{\"total\":{\"value\":2,\"relation\":\"eq\"},\"max_score\":null,\"hits\":["
+				+ "{\"_index\":\"sys_staff\",\"_id\":\"1\",\"_source\":{\"staffId\":\"S0001\",\"staffName\":\"张三\",\"status\":{\"value\":1}},\"sort\":[1,10]},"
+				+ "{\"_index\":\"sys_staff\",\"_id\":\"2\",\"_source\":{\"staffId\":\"S0002\",\"staffName\":\"李四\"},\"sort\":[2,11]}]}}";
+		List<Map<String, Object>> hits = new ArrayList<Map<String, Object>>();
+		String pitId = ElasticSearchUtils.readHits(
+				new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), "UTF-8", hits);
+		System.err.println(JSON.toJSONString(hits));
+		assertEquals("pit-2", pitId);
+		assertEquals(2, hits.size());
+		assertEquals("李四", ((Map) hits.get(1).get("_source")).get("staffName"));
+		assertEquals("[2,11]", JSON.toJSONString(hits.get(1).get("sort")));
+	}
+
+	@Test
+	public void testReadSqlRows() {
+		String json = "{\"columns\":[{\"name\":\"staff_id\",\"type\":\"keyword\"},{\"name\":\"age\",\"type\":\"integer\"}],"
+				+ "\"rows\":[[\"S0001\",20],[\"S0002\",null]],\"cursor\":\"c1\"}";
+		List<String> columns = new ArrayList<String>();
+		List<List<Object>> rows = new ArrayList<List<Object>>();
+		String cursor = ElasticSearchUtils.readSqlRows(
+				new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), "UTF-8", columns, rows);
+		assertEquals("c1", cursor);
+		assertEquals("[\"staff_id\",\"age\"]", JSON.toJSONString(columns));
+		assertEquals(2, rows.size());
+		assertNull(rows.get(1).get(1));
+		// 后续批次无columns,最后一批无cursor
+		rows.clear();
+		cursor = ElasticSearchUtils.readSqlRows(
+				new ByteArrayInputStream("{\"rows\":[[\"S0003\",30]]}".getBytes(StandardCharsets.UTF_8)), "UTF-8",
+				columns, rows);
+		assertNull(cursor);
+		assertEquals(1, rows.size());
+		assertEquals(2, columns.size());
+	}
+
+	@Test
+	public void testError() {
+		String json = "{\"error\":{\"root_cause\":[{\"type\":\"index_not_found_exception\",\"reason\":\"no such index\"}]},\"status\":404}";
+		assertThrows(DataAccessException.class, () -> ElasticSearchUtils.readHits(
+				new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), "UTF-8", new ArrayList<>()));
+	}
+}
@@ -1,12 +1,121 @@
 package org.sagacity.sqltoy.plugins;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.integration.AppContext;
+import org.sagacity.sqltoy.integration.DistributeIdGenerator;
+import org.sagacity.sqltoy.plugins.id.impl.RedisIdGenerator;
+import org.sagacity.sqltoy.plugins.id.impl.SegmentIdAllocator;
 import org.sagacity.sqltoy.utils.IdUtil;
 
+import com.alibaba.fastjson.JSON;
+
 public class IdGeneratorTest {
 	@Test
 	public void testDefaultId() {
 		String id = IdUtil.getShortNanoTimeId(null).toPlainString();
 		System.out.println(id);
 	}
+
+	@Test
+	public void testSegmentConcurrent() throws Exception {
+		MemoryIdGenerator generator = new MemoryIdGenerator();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		SegmentIdAllocator allocator = new SegmentIdAllocator(generator, 100, executor);
+		Set<Long> ids = ConcurrentHashMap.newKeySet();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			threads.add(new Thread(() -> {
+				for (int j = 0; j < 5000; j++) {
+					if (j % 10 == 0) {
+						for (long id : allocator.nextIds("SQLTOY_GL_ID:sys_order", 7)) {
+							ids.add(id);
+						}
+					} else {
+						ids.add(allocator.nextId("SQLTOY_GL_ID:sys_order"));
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		executor.shutdown();
+		// 8*(4500+500*7)=64000 个号全部不重复
+		assertEquals(64000, ids.size());
+		System.err.println("redis调用次数:" + generator.calls.get());
+		// 号段预取:远小于逐个获取的调用次数
+		assertTrue(generator.calls.get() <= 64000 / 100 + 20);
+	}
+
+	@Test
+	public void testBatchIds() {
+		MemoryIdGenerator generator = new MemoryIdGenerator();
+		RedisIdGenerator redisIdGenerator = new RedisIdGenerator();
+		// 号段为1:保持号码连续,批量只调用一次
+		redisIdGenerator.setDistributeIdGenerator(generator, 1, null);
+		Date bizDate = new Date(1715443200000L);
+		Object[] ids = redisIdGenerator.getIds("sys_order", "S", null, null, bizDate, "string", 15, 0, 50);
+		System.err.println(JSON.toJSONString(ids));
+		assertEquals(1, generator.calls.get());
+		assertEquals(50, ids.length);
+		assertEquals(15, ids[0].toString().length());
+		assertTrue(ids[0].toString().endsWith("00000001"));
+		assertTrue(ids[49].toString().endsWith("00000050"));
+		// 单个获取延续之前的号
+		Object id = redisIdGenerator.getId("sys_order", "S", null, null, bizDate, "string", 15, 0);
+		assertTrue(id.toString().endsWith("00000051"));
+		assertEquals(2, generator.calls.get());
+	}
+
+	@Test
+	public void testSegmentBatch() {
+		MemoryIdGenerator generator = new MemoryIdGenerator();
+		SegmentIdAllocator allocator = new SegmentIdAllocator(generator, 10, null);
+		assertEquals(1, allocator.nextId("key"));
+		// 号段内剩余9个,不够部分再取一个号段
+		long[] ids = allocator.nextIds("key", 12);
+		assertEquals(2, ids[0]);
+		assertEquals(13, ids[11]);
+		assertEquals(2, generator.calls.get());
+		// 超过号段大小的批量直接一次获取
+		ids = allocator.nextIds("key", 30);
+		assertEquals(30, ids.length);
+		assertEquals(14, ids[0]);
+		assertEquals(3, generator.calls.get());
+	}
+
+	/**
+	 * 模拟redis INCRBY的内存实现
+	 */
+	public static class MemoryIdGenerator implements DistributeIdGenerator {
+		private ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+		AtomicInteger calls = new AtomicInteger(0);
+
+		@Override
+		public long generateId(String key, int increment, Date expireTime) {
+			calls.incrementAndGet();
+			return counters.computeIfAbsent(key, (k) -> new AtomicLong(0)).addAndGet(increment);
+		}
+
+		@Override
+		public void initialize(AppContext appContext) {
+		}
+	}
 }
@@ -0,0 +1,71 @@
+package org.sagacity.sqltoy.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.plugins.calculator.PivotList;
+import org.sagacity.sqltoy.utils.CollectionUtil;
+
+import com.alibaba.fastjson.JSON;
+
+public class PivotListTest {
+	@Test
+	public void testUnsortedPivot() {
+		// 数据未按月份排序
+		Object[][] values = { { "5月", "香蕉", 2000, 1 }, { "6月", "苹果", 300, 2 }, { "5月", "苹果", 1000, 3 },
+				{ "6月", "香蕉", 2500, 4 }, { "5月", "梨", 50, 5 } };
+		List dataList = CollectionUtil.arrayToDeepList(values);
+		List categoryList = Arrays.asList("苹果", "香蕉", "梨");
+		List result = CollectionUtil.pivotList(dataList, categoryList, null, new Integer[] { 0 },
+				new Integer[] { 1 }, 2, 3, 0);
+		System.err.println(JSON.toJSONString(result));
+		assertEquals(2, result.size());
+		assertEquals("[\"5月\",1000,3,2000,1,50,5]", JSON.toJSONString(result.get(0)));
+		assertEquals("[\"6月\",300,2,2500,4,0,0]", JSON.toJSONString(result.get(1)));
+	}
+
+	@Test
+	public void testMultCategory() {
+		Object[][] values = { { "A", 2023, "Q1", 10 }, { "B", 2024, "Q1", 20 }, { "A", 2024, "Q2", 30 },
+				{ "B", 2023, "Q1", 40 }, { "A", "2023", "Q2", 50 } };
+		List dataList = CollectionUtil.arrayToDeepList(values);
+		// 多维参照:第一行年份,第二行季度
+		List categoryList = new ArrayList();
+		categoryList.add(Arrays.asList(2023, 2023, 2024, 2024));
+		categoryList.add(Arrays.asList("Q1", "Q2", "Q1", "Q2"));
+		List result = PivotList.process(dataList, categoryList, null, new Integer[] { 0 }, new Integer[] { 1, 2 },
+				3, 3, null);
+		System.err.println(JSON.toJSONString(result));
+		assertEquals("[\"A\",10,50,null,30]", JSON.toJSONString(result.get(0)));
+		assertEquals("[\"B\",40,null,20,null]", JSON.toJSONString(result.get(1)));
+	}
+
+	@Test
+	public void testParallel() {
+		Random random = new Random(1);
+		int size = 300000;
+		List dataList = new ArrayList(size);
+		List categoryList = new ArrayList();
+		for (int i = 0; i < 12; i++) {
+			categoryList.add("M" + i);
+		}
+		for (int i = 0; i < size; i++) {
+			dataList.add(new ArrayList(Arrays.asList("P" + random.nextInt(20000), "M" + random.nextInt(12), i)));
+		}
+		long start = System.currentTimeMillis();
+		List serial = PivotList.process(dataList, categoryList, null, new Integer[] { 0 }, new Integer[] { 1 }, 2, 2,
+				-1, 0);
+		System.err.println("单线程旋转" + size + "条记录耗时:" + (System.currentTimeMillis() - start) + "ms");
+		start = System.currentTimeMillis();
+		List parallel = PivotList.process(dataList, categoryList, null, new Integer[] { 0 }, new Integer[] { 1 }, 2,
+				2, -1, 50000);
+		System.err.println("并行旋转" + size + "条记录耗时:" + (System.currentTimeMillis() - start) + "ms");
+		assertEquals(serial.size(), parallel.size());
+		assertEquals(JSON.toJSONString(serial), JSON.toJSONString(parallel));
+	}
+}
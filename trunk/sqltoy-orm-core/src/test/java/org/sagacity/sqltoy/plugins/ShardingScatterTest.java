@@ -0,0 +1,94 @@
+package org.sagacity.sqltoy.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.config.model.ShardingDBModel;
+import org.sagacity.sqltoy.plugins.sharding.ShardingScatterUtils;
+import org.sagacity.sqltoy.plugins.sharding.impl.HashShardingStrategy;
+
+import com.alibaba.fastjson.JSON;
+
+public class ShardingScatterTest {
+	@Test
+	public void testParseOrderBy() {
+		String[] labelNames = { "ORDER_ID", "STAFF_NAME", "TOTAL_AMT", "CREATE_TIME" };
+		String sql = "select t.order_id,t.staff_name,(select sum(amt) from detail d where d.id=t.id order by d.amt) total_amt,t.create_time "
+				+ "from sag_order t where t.status=? order by t.create_time desc,2, `total_amt` asc nulls last limit 10";
+		int[][] orders = ShardingScatterUtils.parseOrderBy(sql, labelNames);
+		System.err.println(JSON.toJSONString(orders));
+		assertEquals(3, orders.length);
+		assertArrayEquals(new int[] { 3, 1, 0 }, orders[0]);
+		assertArrayEquals(new int[] { 1, 0, 0 }, orders[1]);
+		assertArrayEquals(new int[] { 2, 0, 1 }, orders[2]);
+		// 没有order by
+		assertEquals(0, ShardingScatterUtils.parseOrderBy("select * from sag_order where order_by=1", labelNames).length);
+		// 表达式无法对应结果列
+		assertNull(ShardingScatterUtils.parseOrderBy("select * from sag_order order by nvl(total_amt,0)", labelNames));
+	}
+
+	// 分页查询没有可用的order by直接报错
+	@Test
+	public void testParsePageOrderBy() {
+		String[] labelNames = { "ORDER_ID", "STAFF_NAME", "TOTAL_AMT", "CREATE_TIME" };
+		assertEquals(1, ShardingScatterUtils
+				.parsePageOrderBy("select * from sag_order order by create_time desc", labelNames).length);
+		assertThrows(IllegalArgumentException.class,
+				() -> ShardingScatterUtils.parsePageOrderBy("select * from sag_order where order_by=1", labelNames));
+		assertThrows(IllegalArgumentException.class, () -> ShardingScatterUtils
+				.parsePageOrderBy("select * from sag_order order by nvl(total_amt,0)", labelNames));
+	}
+
+	@Test
+	public void testMergeSorted() {
+		List<List> shard1 = new ArrayList<List>();
+		List<List> shard2 = new ArrayList<List>();
+		List<List> shard3 = new ArrayList<List>();
+		for (int i = 10; i > 0; i--) {
+			if (i % 3 == 0) {
+				shard1.add(Arrays.asList("S" + i, BigDecimal.valueOf(i)));
+			} else if (i % 3 == 1) {
+				shard2.add(Arrays.asList("S" + i, Long.valueOf(i)));
+			} else {
+				shard3.add(Arrays.asList("S" + i, Integer.valueOf(i)));
+			}
+		}
+		List<List> shardRows = new ArrayList<List>();
+		shardRows.add(shard1);
+		shardRows.add(shard2);
+		shardRows.add(shard3);
+		shardRows.add(null);
+		int[][] orders = { { 1, 1, 0 } };
+		List<List> result = ShardingScatterUtils.mergeSorted(shardRows, orders, 4);
+		System.err.println(JSON.toJSONString(result));
+		assertEquals(4, result.size());
+		assertEquals("S10", result.get(0).get(0));
+		assertEquals("S7", result.get(3).get(0));
+		result = ShardingScatterUtils.mergeSorted(shardRows, orders, -1);
+		assertEquals(10, result.size());
+		assertEquals("S1", result.get(9).get(0));
+	}
+
+	@Test
+	public void testAllShardingDBs() {
+		HashShardingStrategy strategy = new HashShardingStrategy();
+		HashMap<String, String> dataSourceMap = new HashMap<String, String>();
+		dataSourceMap.put("0", "ds0");
+		dataSourceMap.put("1", "ds1");
+		dataSourceMap.put("2", "ds0");
+		strategy.setDataSourceMap(dataSourceMap);
+		strategy.initialize();
+		List<ShardingDBModel> dbs = strategy.getAllShardingDBs(null, null, null, null);
+		assertEquals(2, dbs.size());
+		assertEquals("ds1", dbs.get(1).getDataSourceName());
+	}
+}
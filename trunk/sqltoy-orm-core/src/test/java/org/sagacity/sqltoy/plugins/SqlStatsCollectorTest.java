@@ -0,0 +1,206 @@
+package org.sagacity.sqltoy.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.SqlExecuteStat;
+import org.sagacity.sqltoy.SqlToyConstants;
+import org.sagacity.sqltoy.config.model.SqlExecuteTrace;
+import org.sagacity.sqltoy.model.SqlStats;
+import org.sagacity.sqltoy.plugins.stats.LatencyHistogram;
+import org.sagacity.sqltoy.plugins.stats.SqlStatsCollector;
+
+import com.alibaba.fastjson.JSON;
+
+public class SqlStatsCollectorTest {
+	@Test
+	public void testPercentile() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		// 1..1000 毫秒各一次
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		long[] counts = histogram.getCounts();
+		long p50 = LatencyHistogram.getPercentile(counts, 50);
+		long p99 = LatencyHistogram.getPercentile(counts, 99);
+		System.err.println("p50=" + p50 + ",p99=" + p99);
+		// 分桶相对误差在12.5%以内
+		assertTrue(p50 >= 500000 && p50 <= 500000 * 1.125);
+		assertTrue(p99 >= 990000 && p99 <= 990000 * 1.125);
+		assertEquals(0, LatencyHistogram.getPercentile(new long[10], 99));
+	}
+
+	@Test
+	public void testConcurrentRecord() throws Exception {
+		SqlStatsCollector collector = new SqlStatsCollector(100);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			threads.add(new Thread(() -> {
+				for (int j = 0; j < 10000; j++) {
+					collector.record("sqltoy_query", "findPage", TimeUnit.MILLISECONDS.toNanos(j % 100), 10,
+							j % 1000 == 0, 1000);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		SqlStats stats = collector.getSnapshot("sqltoy_query", "findPage");
+		System.err.println(JSON.toJSONString(stats));
+		assertEquals(80000, stats.getExecuteCount());
+		assertEquals(800000, stats.getRowCount());
+		assertEquals(80, stats.getErrorCount());
+		assertEquals(99.0, stats.getMaxTakeTime());
+	}
+
+	@Test
+	public void testMaxKeysAndTrace() {
+		SqlStatsCollector collector = new SqlStatsCollector(2);
+		SqlExecuteStat.setSqlStatsCollector(collector);
+		try {
+			for (int i = 0; i < 5; i++) {
+				SqlExecuteStat.start("sql_" + i, "findByQuery", false);
+				SqlExecuteStat.addRowCount(3);
+				SqlExecuteStat.destroy();
+			}
+		} finally {
+			SqlExecuteStat.setSqlStatsCollector(null);
+		}
+		assertEquals(3, collector.getSqlCount());
+		assertEquals(3, collector.getSnapshot(SqlStatsCollector.OTHERS_KEY, "findByQuery").getExecuteCount());
+		assertEquals(3, collector.getSnapshot("sql_0", "findByQuery").getRowCount());
+	}
+
+	// 代码中直接写的sql按规整后的sql统计,仅常量不同的sql归为同一条
+	@Test
+	public void testNormalizeSql() {
+		String sql = SqlStatsCollector.normalizeSql(
+				"select * from  sys_staff t1\n where t1.staff_id in ('S0001','S0002', 'S''003') and t1.age>18 and t1.status=1");
+		System.err.println(sql);
+		assertEquals("select * from sys_staff t1 where t1.staff_id in (?) and t1.age>? and t1.status=?", sql);
+		assertEquals(sql, SqlStatsCollector.normalizeSql(
+				"select * from sys_staff t1 where t1.staff_id in ('S0009') and t1.age>60 and t1.status=0"));
+		SqlStatsCollector collector = new SqlStatsCollector(10);
+		SqlExecuteStat.setSqlStatsCollector(collector);
+		try {
+			for (int i = 0; i < 5; i++) {
+				SqlExecuteStat.start(null, "findByQuery", false);
+				SqlExecuteStat.showSql("执行查询", "select * from sys_staff where staff_id='S000" + i + "'", null);
+				SqlExecuteStat.addRowCount(1);
+				SqlExecuteStat.destroy();
+			}
+		} finally {
+			SqlExecuteStat.setSqlStatsCollector(null);
+		}
+		assertEquals(1, collector.getSqlCount());
+		SqlStats stats = collector.getSnapshot("select * from sys_staff where staff_id=?", "findByQuery");
+		assertEquals(5, stats.getExecuteCount());
+		assertEquals(5, stats.getRowCount());
+		// 游标查询关闭时补充记录数,不增加执行次数
+		collector.addRowCount("select * from sys_staff where staff_id=?", "findByQuery", 10);
+		stats = collector.getSnapshot("select * from sys_staff where staff_id=?", "findByQuery");
+		assertEquals(5, stats.getExecuteCount());
+		assertEquals(15, stats.getRowCount());
+	}
+
+	// sql执行统计默认不开启
+	@Test
+	public void testDefaultDisabled() {
+		assertFalse(SqlToyConstants.sqlStatsEnabled());
+	}
+
+	@Test
+	public void testReuseTrace() {
+		SqlExecuteStat.start("sqltoy_load", "load", false);
+		SqlExecuteTrace first = SqlExecuteStat.get();
+		SqlExecuteStat.debug("过程提示", "非输出模式不记录:{}", 1);
+		SqlExecuteStat.showSql("执行查询", "select * from sys_staff where id=?", new Object[] { "S0001" });
+		assertFalse(first.isCaptureLogs());
+		assertEquals("select * from sys_staff where id=?", first.getFirstSql());
+		// 嵌套执行使用新的对象,结束后放回外层日志
+		SqlExecuteStat.start("sqltoy_cache", "loadCache", false);
+		assertNotSame(first, SqlExecuteStat.get());
+		SqlExecuteStat.destroy();
+		SqlExecuteStat.set(first);
+		SqlExecuteStat.error(new RuntimeException("test error"));
+		// 发生错误时由最后一条sql和错误信息组装日志
+		assertEquals(2, first.getExecuteLogs().size());
+		SqlExecuteStat.destroy();
+		assertNull(SqlExecuteStat.get());
+		// 线程内复用
+		SqlExecuteStat.start("sqltoy_load", "load", false);
+		assertSame(first, SqlExecuteStat.get());
+		assertNull(first.getFirstSql());
+		assertFalse(first.isError());
+		SqlExecuteStat.destroy();
+	}
+
+	// 同一外层执行中先后两次嵌套执行(如一次翻译加载两个缓存),外层日志不能被替换
+	@Test
+	public void testSiblingNested() throws Exception {
+		SqlStatsCollector collector = new SqlStatsCollector(10);
+		SqlExecuteStat.setSqlStatsCollector(collector);
+		try {
+			SqlExecuteStat.start("sqltoy_outer", "findByQuery", false);
+			SqlExecuteTrace outer = SqlExecuteStat.get();
+			SqlExecuteStat.start("cache_a", "loadCache", false);
+			SqlExecuteStat.destroy();
+			assertSame(outer, SqlExecuteStat.get());
+			SqlExecuteStat.start("cache_b", "loadCache", false);
+			assertNotSame(outer, SqlExecuteStat.get());
+			SqlExecuteStat.destroy();
+			assertSame(outer, SqlExecuteStat.get());
+			assertEquals("sqltoy_outer", outer.getId());
+			assertEquals("findByQuery", outer.getType());
+			// 子线程中结束父线程传递过来的日志不做处理
+			Thread child = new Thread(() -> SqlExecuteStat.destroy());
+			child.start();
+			child.join();
+			assertSame(outer, SqlExecuteStat.get());
+			SqlExecuteStat.addRowCount(2);
+			SqlExecuteStat.destroy();
+			assertNull(SqlExecuteStat.get());
+			// 重复结束不影响
+			SqlExecuteStat.destroy();
+		} finally {
+			SqlExecuteStat.setSqlStatsCollector(null);
+		}
+		assertEquals(1, collector.getSnapshot("sqltoy_outer", "findByQuery").getExecuteCount());
+		assertEquals(2, collector.getSnapshot("sqltoy_outer", "findByQuery").getRowCount());
+		assertEquals(1, collector.getSnapshot("cache_a", "loadCache").getExecuteCount());
+		assertEquals(1, collector.getSnapshot("cache_b", "loadCache").getExecuteCount());
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		SqlStatsCollector collector = new SqlStatsCollector(10);
+		collector.record("sqltoy_jmx", "load", 2000000, 1, false, 0);
+		collector.registerMBean("test");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("org.sagacity.sqltoy:type=SqlStats,name=\"test\"");
+			assertEquals(1, server.getAttribute(name, "SqlCount"));
+			Object snapshots = server.getAttribute(name, "Snapshots");
+			System.err.println(JSON.toJSONString(snapshots));
+			assertEquals(1, ((Object[]) snapshots).length);
+		} finally {
+			collector.unregisterMBean();
+		}
+	}
+}
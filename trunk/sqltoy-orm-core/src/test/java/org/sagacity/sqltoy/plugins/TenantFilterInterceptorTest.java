@@ -0,0 +1,156 @@
+package org.sagacity.sqltoy.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.config.model.OperateType;
+import org.sagacity.sqltoy.config.model.SqlToyResult;
+import org.sagacity.sqltoy.demo.domain.OrderInfo;
+import org.sagacity.sqltoy.dialect.utils.DialectUtils;
+import org.sagacity.sqltoy.plugins.interceptors.TenantFilterInterceptor;
+import org.sagacity.sqltoy.utils.DataSourceUtils.DBType;
+
+import com.alibaba.fastjson.JSON;
+
+public class TenantFilterInterceptorTest {
+	private String[] tenants;
+
+	// 租户条件以?参数绑定,不同租户sql文本一致
+	@Test
+	public void testBindTenant() {
+		SqlToyContext sqlToyContext = tenantContext();
+		TenantFilterInterceptor interceptor = new TenantFilterInterceptor();
+		String sql = "update sqltoy_order_info set ORDER_NAME=? where ORDER_ID=?";
+		tenants = new String[] { "T1" };
+		SqlToyResult result = decorate(interceptor, sqlToyContext, OperateType.update, sql, "name", "O1");
+		assertEquals("update sqltoy_order_info set ORDER_NAME=? where TENANT_ID=? and ORDER_ID=?", result.getSql());
+		assertEquals("[\"name\",\"T1\",\"O1\"]", JSON.toJSONString(result.getParamsValue()));
+		tenants = new String[] { "T2" };
+		assertEquals(result.getSql(),
+				decorate(interceptor, sqlToyContext, OperateType.update, sql, "name", "O1").getSql());
+		// 多租户in列表按2的幂次补齐
+		tenants = new String[] { "T1", "T2", "T3" };
+		result = decorate(interceptor, sqlToyContext, OperateType.load, "select * from sqltoy_order_info where ORDER_ID=?",
+				"O1");
+		assertEquals("select * from sqltoy_order_info where TENANT_ID in (?,?,?,?) and ORDER_ID=?", result.getSql());
+		assertEquals("[\"T1\",\"T2\",\"T3\",\"T3\",\"O1\"]", JSON.toJSONString(result.getParamsValue()));
+		// 批量操作每行记录都插入租户参数
+		tenants = new String[] { "T1" };
+		result = decorate(interceptor, sqlToyContext, OperateType.updateAll, sql, new Object[] { "a", "O1" },
+				new Object[] { "b", "O2" });
+		assertEquals("[[\"a\",\"T1\",\"O1\"],[\"b\",\"T1\",\"O2\"]]", JSON.toJSONString(result.getParamsValue()));
+		// merge语句在on条件中加入租户
+		result = decorate(interceptor, sqlToyContext, OperateType.saveOrUpdate,
+				"merge into sqltoy_order_info ta using (select ? as ORDER_NAME,? as ORDER_ID from dual) tv on (ta.ORDER_ID=tv.ORDER_ID) when matched then update set ta.ORDER_NAME=tv.ORDER_NAME",
+				"name", "O1");
+		assertEquals(
+				"merge into sqltoy_order_info ta using (select ? as ORDER_NAME,? as ORDER_ID from dual) tv on (ta.TENANT_ID=? and ta.ORDER_ID=tv.ORDER_ID) when matched then update set ta.ORDER_NAME=tv.ORDER_NAME",
+				result.getSql());
+		assertEquals("[\"name\",\"O1\",\"T1\"]", JSON.toJSONString(result.getParamsValue()));
+		// 已经存在租户条件不做处理
+		sql = "select * from sqltoy_order_info where TENANT_ID=? and ORDER_ID=?";
+		assertEquals(sql, decorate(interceptor, sqlToyContext, OperateType.load, sql, "T1", "O1").getSql());
+	}
+
+	// 参数类型在租户参数相同位置插入租户字段类型
+	@Test
+	public void testParamsType() {
+		SqlToyContext sqlToyContext = tenantContext();
+		TenantFilterInterceptor interceptor = new TenantFilterInterceptor();
+		tenants = new String[] { "T1", "T2" };
+		SqlToyResult sqlToyResult = new SqlToyResult("update sqltoy_order_info set ORDER_NAME=? where ORDER_ID=?",
+				new Object[] { new Object[] { "a", 1 }, new Object[] { "b", 2 } });
+		sqlToyResult.setParamsType(new Integer[] { Types.VARCHAR, Types.INTEGER });
+		SqlToyResult result = interceptor.decorate(sqlToyContext, null, OperateType.updateAll, sqlToyResult,
+				OrderInfo.class, DBType.ORACLE);
+		assertEquals("[[\"a\",\"T1\",\"T2\",1],[\"b\",\"T1\",\"T2\",2]]",
+				JSON.toJSONString(result.getParamsValue()));
+		assertEquals("[12, 12, 12, 4]", Arrays.toString(result.getParamsType()));
+		// 参数数量与sql不一致,不能返回缺失租户条件的sql
+		assertThrows(IllegalArgumentException.class, () -> decorate(interceptor, sqlToyContext, OperateType.update,
+				"update sqltoy_order_info set ORDER_NAME=? where ORDER_ID=?", "name"));
+	}
+
+	// 开启租户拦截器执行实际的删除和批量修改
+	@Test
+	public void testDeleteAndUpdateAll() throws Exception {
+		SqlToyContext sqlToyContext = tenantContext();
+		sqlToyContext.setSqlInterceptors(Arrays.asList(new TenantFilterInterceptor()));
+		tenants = new String[] { "T1" };
+		List<String> sqls = new ArrayList<String>();
+		List<Object> params = new ArrayList<Object>();
+		Connection conn = recordConnection(sqls, params);
+		OrderInfo order = new OrderInfo();
+		order.setOrderId("O1");
+		DialectUtils.delete(sqlToyContext, order, conn, DBType.MYSQL, null);
+		System.err.println(sqls);
+		assertEquals("delete from sqltoy_order_info where TENANT_ID=? and ORDER_ID=?",
+				sqls.get(sqls.size() - 1).replaceAll("\\s+", " ").trim());
+		assertEquals("[O1, T1, O1]", params.toString());
+		sqls.clear();
+		params.clear();
+		OrderInfo second = new OrderInfo();
+		second.setOrderId("O2");
+		order.setOrderName("a");
+		second.setOrderName("b");
+		DialectUtils.updateAll(sqlToyContext, Arrays.asList(order, second), 100, null, null, "ifnull", conn,
+				DBType.MYSQL, null, null, false);
+		System.err.println(sqls);
+		assertEquals(1, sqls.size());
+		// TENANT_ID字段值为null通过setNull(index,VARCHAR)赋值,租户条件参数类型与位置对应
+		assertEquals("[a, 12, T1, O1, b, 12, T1, O2]", params.toString());
+	}
+
+	private Connection recordConnection(List<String> sqls, List<Object> params) {
+		PreparedStatement pst = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { PreparedStatement.class }, (proxy, method, args) -> {
+					if (method.getName().startsWith("set") && args.length >= 2) {
+						params.add(args[1]);
+					}
+					switch (method.getName()) {
+					case "executeBatch":
+						return new int[] { 1 };
+					case "executeUpdate":
+					case "getUpdateCount":
+						return 1;
+					default:
+						return null;
+					}
+				});
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Connection.class },
+				(proxy, method, args) -> {
+					if ("prepareStatement".equals(method.getName())) {
+						sqls.add((String) args[0]);
+						return pst;
+					}
+					return "getAutoCommit".equals(method.getName()) ? true : null;
+				});
+	}
+
+	private SqlToyResult decorate(TenantFilterInterceptor interceptor, SqlToyContext sqlToyContext,
+			OperateType operateType, String sql, Object... paramsValue) {
+		return interceptor.decorate(sqlToyContext, null, operateType,
+				new SqlToyResult(sql, Arrays.copyOf(paramsValue, paramsValue.length)), OrderInfo.class, DBType.ORACLE);
+	}
+
+	private SqlToyContext tenantContext() {
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		sqlToyContext.setUnifyFieldsHandler(new IUnifyFieldsHandler() {
+			@Override
+			public String[] authTenants(Class entityClass, OperateType operType) {
+				return tenants;
+			}
+		});
+		return sqlToyContext;
+	}
+}
@@ -0,0 +1,192 @@
+package org.sagacity.sqltoy.plugins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.integration.AppContext;
+import org.sagacity.sqltoy.model.IgnoreKeyCaseMap;
+import org.sagacity.sqltoy.translate.TranslateManager;
+import org.sagacity.sqltoy.translate.cache.TranslateCacheView;
+import org.sagacity.sqltoy.translate.cache.impl.TranslateEhcacheManager;
+import org.sagacity.sqltoy.translate.model.TranslateConfigModel;
+
+public class TranslateCacheManagerTest {
+	// 配置了offHeap的缓存按key存储
+	@Test
+	public void testKeyStorage() {
+		TranslateConfigModel staffCache = new TranslateConfigModel();
+		staffCache.setCache("staffIdName");
+		staffCache.setOffHeap(1);
+		IgnoreKeyCaseMap<String, TranslateConfigModel> translateMap = new IgnoreKeyCaseMap<String, TranslateConfigModel>();
+		translateMap.put(staffCache.getCache(), staffCache);
+		TranslateEhcacheManager cacheManager = new TranslateEhcacheManager();
+		cacheManager.setTranslateMap(translateMap);
+		cacheManager.init();
+		try {
+			assertTrue(cacheManager.isKeyStorage("staffIdName"));
+			assertFalse(cacheManager.hasCacheData("staffIdName", null));
+			HashMap<String, Object[]> staffs = new HashMap<String, Object[]>();
+			for (int i = 0; i < 1000; i++) {
+				staffs.put("S" + i, new Object[] { "S" + i, "staff" + i });
+			}
+			cacheManager.put(staffCache, "staffIdName", null, staffs);
+			assertTrue(cacheManager.hasCacheData("staffIdName", null));
+			HashMap<String, Object[]> result = cacheManager.getCacheValues("staffIdName", null,
+					Arrays.asList("S1", "S20", "S9999"));
+			assertEquals(2, result.size());
+			assertEquals("staff20", result.get("S20")[1]);
+			// 增量更新
+			HashMap<String, Object[]> changed = new HashMap<String, Object[]>();
+			changed.put("S1", new Object[] { "S1", "newStaff1" });
+			assertTrue(cacheManager.putCacheValues(staffCache, "staffIdName", null, changed));
+			TranslateCacheView cacheView = new TranslateCacheView(cacheManager, "staffIdName", null);
+			cacheView.prefetch(Arrays.asList("S1", "S2"));
+			assertEquals("newStaff1", cacheView.get("S1")[1]);
+			assertNull(cacheView.get("S9999"));
+			assertEquals(1000, cacheManager.getCache("staffIdName", null).size());
+			cacheManager.clear("staffIdName", null);
+			assertFalse(cacheManager.hasCacheData("staffIdName", null));
+		} finally {
+			cacheManager.destroy();
+		}
+	}
+
+	// 部分key被淘汰后标记为数据不完整,翻译视图未命中时重新加载
+	@Test
+	public void testKeyEvictReload() {
+		TranslateConfigModel staffCache = new TranslateConfigModel();
+		staffCache.setCache("staffEvict");
+		staffCache.setHeap(10);
+		staffCache.setOffHeap(1);
+		IgnoreKeyCaseMap<String, TranslateConfigModel> translateMap = new IgnoreKeyCaseMap<String, TranslateConfigModel>();
+		translateMap.put(staffCache.getCache(), staffCache);
+		TranslateEhcacheManager cacheManager = new TranslateEhcacheManager();
+		cacheManager.setTranslateMap(translateMap);
+		cacheManager.init();
+		try {
+			String remark = "x".repeat(2048);
+			HashMap<String, Object[]> staffs = new HashMap<String, Object[]>();
+			for (int i = 0; i < 2000; i++) {
+				staffs.put("S" + i, new Object[] { "S" + i, "staff" + i, remark });
+			}
+			// 超出offHeap容量,部分key被淘汰
+			cacheManager.put(staffCache, "staffEvict", null, staffs);
+			assertTrue(cacheManager.getCacheValues("staffEvict", null, staffs.keySet()).size() < 2000);
+			assertFalse(cacheManager.hasCacheData("staffEvict", null));
+			AtomicInteger reloadCount = new AtomicInteger(0);
+			TranslateCacheView cacheView = new TranslateCacheView(cacheManager, "staffEvict", null, () -> {
+				reloadCount.incrementAndGet();
+				HashMap<String, Object[]> reloadStaffs = new HashMap<String, Object[]>();
+				for (int i = 0; i < 10; i++) {
+					reloadStaffs.put("S" + i, new Object[] { "S" + i, "staff" + i });
+				}
+				cacheManager.put(staffCache, "staffEvict", null, reloadStaffs);
+			});
+			cacheView.prefetch(Arrays.asList("S1", "S2", "S9999"));
+			assertEquals("staff1", cacheView.get("S1")[1]);
+			assertEquals("staff2", cacheView.get("S2")[1]);
+			assertNull(cacheView.get("S9999"));
+			assertNull(cacheView.get("S8888"));
+			// 单次查询内最多重新加载一次
+			assertEquals(1, reloadCount.get());
+			assertTrue(cacheManager.hasCacheData("staffEvict", null));
+		} finally {
+			cacheManager.destroy();
+		}
+	}
+
+	// 并发获取缓存只加载一次,缓存失效后先返回上次数据并后台刷新
+	@Test
+	public void testSingleFlightLoad() throws Exception {
+		StaffService staffService = new StaffService();
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		sqlToyContext.setAppContext(new AppContext() {
+			@Override
+			public boolean containsBean(String beanName) {
+				return "staffService".equals(beanName);
+			}
+
+			@Override
+			public Object getBean(String beanName) {
+				return staffService;
+			}
+
+			@Override
+			public <T> T getBean(Class<T> requiredType) {
+				return null;
+			}
+
+			@Override
+			public <T> Map<String, T> getBeansOfType(Class<T> type) {
+				return null;
+			}
+		});
+		TranslateManager translateManager = new TranslateManager();
+		translateManager.setTranslateConfig("classpath:translates-test/sqltoy-translate.xml");
+		translateManager.initialize(sqlToyContext, null, 3600);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			assertTrue(translateManager.getCacheConfig("staffIdName").isStaleWhileRevalidate());
+			CountDownLatch startLatch = new CountDownLatch(1);
+			List<Future<HashMap<String, Object[]>>> futures = new ArrayList<Future<HashMap<String, Object[]>>>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(() -> {
+					startLatch.await();
+					return translateManager.getCacheData("staffIdName", null);
+				}));
+			}
+			startLatch.countDown();
+			for (Future<HashMap<String, Object[]>> future : futures) {
+				assertEquals(100, future.get(10, TimeUnit.SECONDS).size());
+			}
+			assertEquals(1, staffService.loadCount.get());
+			// 模拟缓存过期,直接返回上次数据,后台刷新
+			translateManager.getTranslateCacheManager().clear("staffIdName", null);
+			long start = System.currentTimeMillis();
+			assertEquals(100, translateManager.getCacheData("staffIdName", null).size());
+			assertTrue(System.currentTimeMillis() - start < 200);
+			// 刷新期间再次获取依然返回上次数据,且不会重复提交刷新
+			assertEquals(100, translateManager.getCacheData("staffIdName", null).size());
+			HashMap<String, Object[]> refreshed = null;
+			for (int i = 0; i < 100 && refreshed == null; i++) {
+				Thread.sleep(50);
+				refreshed = translateManager.getTranslateCacheManager().getCache("staffIdName", null);
+			}
+			assertEquals(100, refreshed.size());
+			assertEquals(2, staffService.loadCount.get());
+		} finally {
+			executor.shutdownNow();
+			translateManager.destroy();
+		}
+	}
+
+	public static class StaffService {
+		private AtomicInteger loadCount = new AtomicInteger(0);
+
+		public List<Object[]> getStaffs() throws Exception {
+			loadCount.incrementAndGet();
+			Thread.sleep(300);
+			List<Object[]> result = new ArrayList<Object[]>();
+			for (int i = 0; i < 100; i++) {
+				result.add(new Object[] { "S" + i, "staff" + i });
+			}
+			return result;
+		}
+	}
+}
@@ -3,8 +3,16 @@
  */
 package org.sagacity.sqltoy.plugins;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.jupiter.api.Test;
@@ -158,4 +166,75 @@ public class TreeTableSortTest {
 		System.err.println(JSON.toJSONString(item));
 		}
 	}
+
+	@Test
+	public void testProcess() {
+		Object[][] treeData = new Object[][] { { 38, 31, 3 }, { 2, 1, 1 }, { 1, -1, 0 }, { 9, -1, 0 }, { 5, 3, 1 },
+				{ 3, 1, 2 }, { 4, 3, 6 }, { 6, 5, 1 }, { 31, -1, 0 },
+				// 循环引用
+				{ 71, 72, 1 }, { 72, 71, 1 } };
+		List treeList = CollectionUtil.arrayToDeepList(treeData);
+		LabelIndexModel labelIndexModel = new LabelIndexModel();
+		labelIndexModel.put("id", 0);
+		labelIndexModel.put("pid", 1);
+		labelIndexModel.put("amt", 2);
+		TreeSortModel treeModel = new TreeSortModel().setIdColumn("id").setPidColumn("pid").setSumColumns("amt");
+		TreeDataSort.process(treeModel, labelIndexModel, treeList);
+		for (Object item : treeList) {
+			System.err.println(JSON.toJSONString(item));
+		}
+		assertEquals(11, treeList.size());
+		assertEquals("[1,2,3,5,6,4,9,31,38,71,72]", JSON.toJSONString(ids(treeList)));
+		// 1=2+3,3=2+1+6(5含6)
+		assertEquals(new BigDecimal(11), ((List) treeList.get(0)).get(2));
+		assertEquals(new BigDecimal(10), ((List) treeList.get(2)).get(2));
+		assertEquals(new BigDecimal(3), ((List) treeList.get(7)).get(2));
+
+		// 同层级按amt倒序
+		treeList = CollectionUtil.arrayToDeepList(treeData);
+		treeModel = new TreeSortModel().setIdColumn("id").setPidColumn("pid").setLevelOrderColumn("amt")
+				.setOrderWay("desc");
+		TreeDataSort.process(treeModel, labelIndexModel, treeList);
+		assertEquals("[1,3,4,5,6,2,9,31,38,71,72]", JSON.toJSONString(ids(treeList)));
+	}
+
+	@Test
+	public void testLargeTree() {
+		Random random = new Random(1);
+		LabelIndexModel labelIndexModel = new LabelIndexModel();
+		labelIndexModel.put("id", 0);
+		labelIndexModel.put("pid", 1);
+		labelIndexModel.put("amt", 2);
+		for (int size : new int[] { 10000, 100000, 1000000 }) {
+			List treeList = new ArrayList(size);
+			for (int i = 1; i <= size; i++) {
+				treeList.add(new ArrayList(List.of(i, (i == 1) ? 0 : random.nextInt(i - 1) + 1, 1)));
+			}
+			Collections.shuffle(treeList, random);
+			long start = System.currentTimeMillis();
+			TreeDataSort.process(new TreeSortModel().setIdColumn("id").setPidColumn("pid").setSumColumns("amt"),
+					labelIndexModel, treeList);
+			System.err.println("树节点数量:" + size + " 排序并汇总耗时:" + (System.currentTimeMillis() - start) + "ms");
+			assertEquals(size, treeList.size());
+			assertEquals(new BigDecimal(size), ((List) treeList.get(0)).get(2));
+			// 父节点都在子节点之前
+			Map<Object, Integer> indexMap = new HashMap<Object, Integer>();
+			List row;
+			for (int i = 0; i < treeList.size(); i++) {
+				row = (List) treeList.get(i);
+				indexMap.put(row.get(0), i);
+				if (i > 0) {
+					assertTrue(indexMap.containsKey(row.get(1)));
+				}
+			}
+		}
+	}
+
+	private List ids(List treeList) {
+		List result = new ArrayList();
+		for (Object row : treeList) {
+			result.add(((List) row).get(0));
+		}
+		return result;
+	}
 }
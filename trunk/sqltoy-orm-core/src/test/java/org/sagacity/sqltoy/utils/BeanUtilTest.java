@@ -1,5 +1,9 @@
 package org.sagacity.sqltoy.utils;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
@@ -13,6 +17,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.junit.jupiter.api.Test;
 import org.sagacity.sqltoy.SqlToyConstants;
@@ -441,4 +446,23 @@ public class BeanUtilTest {
 			System.err.println(JSON.toJSONString(treeModel));
 		}
 	}
+
+	@Test
+	public void testSetInvokers() {
+		Method[] methods = BeanUtil.matchSetMethods(TypeShowCase.class, "name", "count", "status", "money", "noProp");
+		BiConsumer[] invokers = BeanUtil.getSetInvokers(methods);
+		assertNull(invokers[4]);
+		TypeShowCase showCase = new TypeShowCase();
+		invokers[0].accept(showCase, "sqltoy");
+		invokers[1].accept(showCase, 10);
+		invokers[2].accept(showCase, 1);
+		invokers[3].accept(showCase, 100.5d);
+		assertEquals("sqltoy", showCase.getName());
+		assertEquals(10, showCase.getCount());
+		assertEquals(Integer.valueOf(1), showCase.getStatus());
+		assertEquals(100.5d, showCase.getMoney());
+		// 同一个set方法只生成一次调用器
+		assertSame(invokers[0], BeanUtil.getSetInvokers(BeanUtil.matchSetMethods(TypeShowCase.class, "name"))[0]);
+		System.err.println(JSON.toJSONString(showCase));
+	}
 }
@@ -0,0 +1,151 @@
+package org.sagacity.sqltoy.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.model.BoundedCache;
+import org.sagacity.sqltoy.model.CacheStats;
+import org.sagacity.sqltoy.plugins.stats.SqlStatsCollector;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 测试有界缓存的淘汰、权重限制和统计
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-05-30
+ */
+public class BoundedCacheTest {
+	// 常用的key多次命中后进入保护区,大量一次性的key不会将其淘汰
+	@Test
+	public void testEvict() {
+		BoundedCache<String, Integer> cache = new BoundedCache<String, Integer>("testEvict", () -> 100);
+		for (int i = 0; i < 10; i++) {
+			cache.put("hot" + i, i);
+			cache.get("hot" + i);
+		}
+		for (int i = 0; i < 10000; i++) {
+			cache.put("sql where id=" + i, i);
+		}
+		assertEquals(100, cache.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, cache.get("hot" + i));
+		}
+		// 超出上限后新的sql依然可以缓存
+		cache.put("new sql", 1);
+		assertEquals(1, cache.get("new sql"));
+		CacheStats stats = cache.getStats();
+		System.err.println("hit:" + stats.getHitCount() + " miss:" + stats.getMissCount() + " eviction:"
+				+ stats.getEvictionCount());
+		assertEquals(21, stats.getHitCount());
+		assertEquals(10010 - 100 + 1, stats.getEvictionCount());
+	}
+
+	@Test
+	public void testWeight() {
+		BoundedCache<String, String> cache = new BoundedCache<String, String>("testWeight", () -> 1000, () -> 100,
+				(key, value) -> key.length() + value.length());
+		for (int i = 0; i < 100; i++) {
+			cache.put("k" + i, "0123456789");
+		}
+		CacheStats stats = cache.getStats();
+		System.err.println("size:" + stats.getSize() + " weight:" + stats.getWeight());
+		assertTrue(stats.getSize() > 0 && stats.getWeight() <= 100);
+		// 单条超过上限的不缓存
+		cache.put("big", "x".repeat(200));
+		assertEquals(null, cache.get("big"));
+	}
+
+	// 同名缓存(如每个拦截器、SqlToyContext实例一份)合并统计,不相互覆盖
+	@Test
+	public void testSameName() {
+		BoundedCache<String, String> first = new BoundedCache<String, String>("testSameName", () -> 10);
+		BoundedCache<String, String> second = new BoundedCache<String, String>("testSameName", () -> 20);
+		first.put("a", "1");
+		first.get("a");
+		second.put("b", "2");
+		second.get("c");
+		CacheStats result = null;
+		for (CacheStats stats : BoundedCache.getAllStats()) {
+			if ("testSameName".equals(stats.getName())) {
+				assertEquals(null, result);
+				result = stats;
+			}
+		}
+		assertNotNull(result);
+		assertEquals(2, result.getSize());
+		assertEquals(30, result.getMaxSize());
+		assertEquals(1L, result.getHitCount());
+		assertEquals(1L, result.getMissCount());
+	}
+
+	// 多线程并发读写,读取不加锁,数量不超过上限
+	@Test
+	public void testConcurrent() throws Exception {
+		BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>("testConcurrent", () -> 1000);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < 8; t++) {
+			final int seed = t;
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < 20000; i++) {
+					int key = (i * 31 + seed) % 3000;
+					Integer value = cache.get(key);
+					if (value == null) {
+						cache.put(key, key);
+					} else {
+						assertEquals(key, value.intValue());
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		CacheStats stats = cache.getStats();
+		System.err.println("size:" + stats.getSize() + " hit:" + stats.getHitCount() + " eviction:"
+				+ stats.getEvictionCount());
+		assertTrue(stats.getSize() <= 1000);
+		assertEquals(160000L, stats.getHitCount() + stats.getMissCount());
+	}
+
+	// 通过sql执行统计的JMX输出缓存统计
+	@Test
+	public void testMBean() throws Exception {
+		BoundedCache<Class, String> cache = new BoundedCache<Class, String>("testMBean", () -> 10);
+		cache.computeIfAbsent(String.class, (k) -> k.getName());
+		cache.computeIfAbsent(String.class, (k) -> k.getName());
+		SqlStatsCollector collector = new SqlStatsCollector();
+		collector.registerMBean("cacheTest");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			CompositeData[] caches = (CompositeData[]) server.getAttribute(
+					new ObjectName("org.sagacity.sqltoy:type=SqlStats,name=" + ObjectName.quote("cacheTest")),
+					"CacheStats");
+			CompositeData result = null;
+			for (CompositeData item : caches) {
+				if ("testMBean".equals(item.get("name"))) {
+					result = item;
+				}
+			}
+			assertNotNull(result);
+			assertEquals(1L, result.get("hitCount"));
+			assertEquals(1L, result.get("missCount"));
+			assertEquals(0.5d, result.get("hitRate"));
+		} finally {
+			collector.unregisterMBean();
+		}
+	}
+}
@@ -3,11 +3,30 @@
  */
 package org.sagacity.sqltoy.utils;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
 
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.SqlToyConstants;
+import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.callback.DataSourceCallbackHandler;
+import org.sagacity.sqltoy.integration.ConnectionFactory;
+import org.sagacity.sqltoy.model.DataSourceMeta;
+import org.sagacity.sqltoy.utils.DataSourceUtils.DBType;
+import org.sagacity.sqltoy.utils.DataSourceUtils.Dialect;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -77,6 +96,276 @@ public class DataSourceUtilTest {
 		}
 	}
 
+	// 同一个dataSource只通过connection获取一次数据库信息
+	@Test
+	public void testDataSourceMeta() {
+		AtomicInteger metaCalls = new AtomicInteger(0);
+		DatabaseMetaData metaData = (DatabaseMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { DatabaseMetaData.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getDatabaseProductName":
+						metaCalls.incrementAndGet();
+						return "MySQL";
+					case "getDatabaseMajorVersion":
+						return 8;
+					case "getIdentifierQuoteString":
+						return "`";
+					case "supportsBatchUpdates":
+						return true;
+					default:
+						return null;
+					}
+				});
+		Connection conn = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { Connection.class }, (proxy, method, args) -> {
+					return "getMetaData".equals(method.getName()) ? metaData : null;
+				});
+		DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { DataSource.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "hashCode":
+						return 1;
+					case "equals":
+						return true;
+					default:
+						return null;
+					}
+				});
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		sqlToyContext.setConnectionFactory(new ConnectionFactory() {
+			@Override
+			public Connection getConnection(DataSource dataSource) {
+				return conn;
+			}
+
+			@Override
+			public void releaseConnection(Connection conn, DataSource datasource) {
+			}
+		});
+		for (int i = 0; i < 10; i++) {
+			DataSourceUtils.processDataSource(sqlToyContext, dataSource, new DataSourceCallbackHandler() {
+				@Override
+				public void doConnection(Connection conn, Integer dbType, String dialect) throws Exception {
+					assertEquals(DBType.MYSQL, dbType);
+					assertEquals(Dialect.MYSQL, dialect);
+				}
+			});
+		}
+		assertEquals(1, metaCalls.get());
+		DataSourceMeta dataSourceMeta = DataSourceUtils.getDataSourceMeta(sqlToyContext, dataSource);
+		assertEquals("MySQL", dataSourceMeta.getProductName());
+		assertEquals(DBType.MYSQL, dataSourceMeta.getDbType());
+		assertEquals(8, dataSourceMeta.getMajorVersion());
+		assertEquals("`", dataSourceMeta.getIdentifierQuote());
+		assertEquals(true, dataSourceMeta.isSupportBatch());
+		assertEquals(true, dataSourceMeta.isSupportMerge());
+		assertEquals(Dialect.MYSQL, DataSourceUtils.getDialect(sqlToyContext, dataSource));
+		// 重新注册后再次获取
+		sqlToyContext.setDefaultDataSource(dataSource);
+		DataSourceUtils.getDBType(sqlToyContext, dataSource);
+		assertEquals(2, metaCalls.get());
+	}
+
+	// 路由类DataSource每次按获取的连接判断数据库类型,不缓存
+	@Test
+	public void testRoutingDataSource() {
+		Connection mysqlConn = mockConnection("MySQL", 8);
+		Connection pgConn = mockConnection("PostgreSQL", 15);
+		AtomicInteger index = new AtomicInteger(0);
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		sqlToyContext.setConnectionFactory(new ConnectionFactory() {
+			@Override
+			public Connection getConnection(DataSource dataSource) {
+				return (index.getAndIncrement() % 2 == 0) ? mysqlConn : pgConn;
+			}
+
+			@Override
+			public void releaseConnection(Connection conn, DataSource datasource) {
+			}
+		});
+		DataSource dataSource = new TestRoutingDataSource();
+		assertEquals(true, DataSourceUtils.isRoutingDataSource(dataSource));
+		for (int i = 0; i < 4; i++) {
+			final int expectedType = (i % 2 == 0) ? DBType.MYSQL : DBType.POSTGRESQL15;
+			DataSourceUtils.processDataSource(sqlToyContext, dataSource, new DataSourceCallbackHandler() {
+				@Override
+				public void doConnection(Connection conn, Integer dbType, String dialect) throws Exception {
+					assertEquals(expectedType, dbType);
+				}
+			});
+		}
+		assertEquals(DBType.MYSQL, DataSourceUtils.getDBType(sqlToyContext, dataSource));
+		assertEquals(DBType.POSTGRESQL15, DataSourceUtils.getDBType(sqlToyContext, dataSource));
+	}
+
+	// DelegatingDataSource、TransactionAwareDataSourceProxy等代理包装的路由DataSource同样按连接判断
+	@Test
+	public void testWrappedRoutingDataSource() {
+		Connection mysqlConn = mockConnection("MySQL", 8);
+		Connection pgConn = mockConnection("PostgreSQL", 15);
+		AtomicInteger index = new AtomicInteger(0);
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		sqlToyContext.setConnectionFactory(new ConnectionFactory() {
+			@Override
+			public Connection getConnection(DataSource dataSource) {
+				return (index.getAndIncrement() % 2 == 0) ? mysqlConn : pgConn;
+			}
+
+			@Override
+			public void releaseConnection(Connection conn, DataSource datasource) {
+			}
+		});
+		// getTargetDataSource()方式的代理(多层)
+		DataSource dataSource = new TestDelegatingDataSource(new TestDelegatingDataSource(new TestRoutingDataSource()));
+		assertEquals(true, DataSourceUtils.isRoutingDataSource(dataSource));
+		assertEquals(DBType.MYSQL, DataSourceUtils.getDBType(sqlToyContext, dataSource));
+		assertEquals(DBType.POSTGRESQL15, DataSourceUtils.getDBType(sqlToyContext, dataSource));
+		// jdbc unwrap方式的代理
+		DataSource unwrapDataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { DataSource.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "isWrapperFor":
+						return true;
+					case "unwrap":
+						return new TestRoutingDataSource();
+					default:
+						return null;
+					}
+				});
+		assertEquals(true, DataSourceUtils.isRoutingDataSource(unwrapDataSource));
+		// 普通代理不是路由
+		assertEquals(false, DataSourceUtils.isRoutingDataSource(new TestDelegatingDataSource(null)));
+	}
+
+	// 关闭sqltoy.datasource.meta.cache后每次通过连接判断
+	@Test
+	public void testDisableMetaCache() {
+		AtomicInteger metaCalls = new AtomicInteger(0);
+		Connection conn = mockConnection("MySQL", 8, metaCalls);
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		sqlToyContext.setConnectionFactory(new ConnectionFactory() {
+			@Override
+			public Connection getConnection(DataSource dataSource) {
+				return conn;
+			}
+
+			@Override
+			public void releaseConnection(Connection conn, DataSource datasource) {
+			}
+		});
+		DataSource dataSource = new TestDelegatingDataSource(null);
+		Map<String, String> keyValues = new HashMap<String, String>();
+		keyValues.put("sqltoy.datasource.meta.cache", "false");
+		SqlToyConstants.loadProperties(keyValues);
+		try {
+			for (int i = 0; i < 3; i++) {
+				assertEquals(DBType.MYSQL, DataSourceUtils.getDBType(sqlToyContext, dataSource));
+			}
+			assertEquals(3, metaCalls.get());
+		} finally {
+			keyValues.put("sqltoy.datasource.meta.cache", "true");
+			SqlToyConstants.loadProperties(keyValues);
+		}
+		for (int i = 0; i < 3; i++) {
+			assertEquals(DBType.MYSQL, DataSourceUtils.getDBType(sqlToyContext, dataSource));
+		}
+		assertEquals(4, metaCalls.get());
+		// 替换默认数据源时,被替换的dataSource缓存一并清除
+		sqlToyContext.setDefaultDataSource(dataSource);
+		sqlToyContext.setDefaultDataSource(new TestDelegatingDataSource(null));
+		DataSourceUtils.getDBType(sqlToyContext, dataSource);
+		assertEquals(5, metaCalls.get());
+	}
+
+	private static Connection mockConnection(String productName, int majorVersion) {
+		return mockConnection(productName, majorVersion, new AtomicInteger(0));
+	}
+
+	private static Connection mockConnection(String productName, int majorVersion, AtomicInteger metaCalls) {
+		DatabaseMetaData metaData = (DatabaseMetaData) Proxy.newProxyInstance(DataSourceUtilTest.class.getClassLoader(),
+				new Class[] { DatabaseMetaData.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getDatabaseProductName":
+						metaCalls.incrementAndGet();
+						return productName;
+					case "getDatabaseMajorVersion":
+						return majorVersion;
+					default:
+						return null;
+					}
+				});
+		return (Connection) Proxy.newProxyInstance(DataSourceUtilTest.class.getClassLoader(),
+				new Class[] { Connection.class }, (proxy, method, args) -> {
+					return "getMetaData".equals(method.getName()) ? metaData : null;
+				});
+	}
+
+	/**
+	 * 模拟spring DelegatingDataSource,通过getTargetDataSource()获取被代理的dataSource
+	 */
+	public static class TestDelegatingDataSource extends TestBaseDataSource {
+		private final DataSource targetDataSource;
+
+		public TestDelegatingDataSource(DataSource targetDataSource) {
+			this.targetDataSource = targetDataSource;
+		}
+
+		public DataSource getTargetDataSource() {
+			return targetDataSource;
+		}
+	}
+
+	/**
+	 * 模拟AbstractRoutingDataSource,连接由ConnectionFactory提供
+	 */
+	public static class TestRoutingDataSource extends TestBaseDataSource {
+	}
+
+	public static class TestBaseDataSource implements DataSource {
+		@Override
+		public PrintWriter getLogWriter() {
+			return null;
+		}
+
+		@Override
+		public void setLogWriter(PrintWriter out) {
+		}
+
+		@Override
+		public void setLoginTimeout(int seconds) {
+		}
+
+		@Override
+		public int getLoginTimeout() {
+			return 0;
+		}
+
+		@Override
+		public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+
+		@Override
+		public <T> T unwrap(Class<T> iface) {
+			return null;
+		}
+
+		@Override
+		public boolean isWrapperFor(Class<?> iface) {
+			return false;
+		}
+
+		@Override
+		public Connection getConnection() {
+			return null;
+		}
+
+		@Override
+		public Connection getConnection(String username, String password) {
+			return null;
+		}
+	}
+
 	public static void main(String[] args) {
 		//DataSourceUtilTest.getPolarDBDialect();
 	}
@@ -1,8 +1,37 @@
 package org.sagacity.sqltoy.utils;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.config.model.EntityMeta;
+import org.sagacity.sqltoy.config.model.LinkModel;
+import org.sagacity.sqltoy.config.model.PKStrategy;
 import org.sagacity.sqltoy.config.model.SqlParamsModel;
+import org.sagacity.sqltoy.config.model.SqlToyConfig;
+import org.sagacity.sqltoy.demo.domain.OrderInfo;
+import org.sagacity.sqltoy.demo.domain.OrderItem;
+import org.sagacity.sqltoy.demo.domain.StaffInfo;
+import org.sagacity.sqltoy.dialect.Dialect;
+import org.sagacity.sqltoy.dialect.utils.DialectExtUtils;
 import org.sagacity.sqltoy.dialect.utils.DialectUtils;
+import org.sagacity.sqltoy.model.inner.QueryExecutorExtend;
+import org.sagacity.sqltoy.plugins.IUnifyFieldsHandler;
+import org.sagacity.sqltoy.utils.DataSourceUtils.DBType;
 
 /**
  * 增加对带问号查询转命名参数模式的校验测试
@@ -41,4 +70,192 @@ public class DialectUtilsTest {
 //		System.err.println("paramCnt=" + unifySqlParams.getParamCnt());
 	}
 
+
+	// count语句推导结果缓存后,再次执行得到相同的count语句和参数
+	@Test
+	public void testCountBySql() throws Exception {
+		List<String> sqls = new ArrayList<String>();
+		List<Object> params = new ArrayList<Object>();
+		Connection conn = countConnection(sqls, params);
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		String sql = "select t.id,(select name from dept where id=t.dept_id and status=?) deptName from staff t where t.type=? order by field(t.id,?)";
+		for (int i = 0; i < 2; i++) {
+			Long count = DialectUtils.getCountBySql(sqlToyContext, null, sql, new Object[] { "1", "A", "S1" }, false,
+					conn, DBType.MYSQL);
+			assertEquals(5L, count);
+		}
+		System.err.println(sqls.get(0));
+		assertEquals(sqls.get(0), sqls.get(1));
+		assertEquals("select  count(1)  from staff t where t.type=?", sqls.get(0).trim());
+		assertEquals("[A, A]", params.toString());
+	}
+
+	// 对象操作语句按对象、表、强制修改字段等缓存
+	@Test
+	public void testCrudSqlCache() {
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		EntityMeta entityMeta = sqlToyContext.getEntityMeta(StaffInfo.class);
+		String sql = DialectUtils.getSaveOrUpdateSql(null, DBType.ORACLE, entityMeta, PKStrategy.ASSIGN, null,
+				"dual", "nvl", null, true, null);
+		System.err.println(sql);
+		assertSame(sql, DialectUtils.getSaveOrUpdateSql(null, DBType.ORACLE, entityMeta, PKStrategy.ASSIGN, null,
+				"dual", "nvl", null, true, null));
+		String forceSql = DialectUtils.getSaveOrUpdateSql(null, DBType.ORACLE, entityMeta, PKStrategy.ASSIGN,
+				new String[] { "staffName" }, "dual", "nvl", null, true, null);
+		assertNotEquals(sql, forceSql);
+		assertSame(forceSql, DialectUtils.getSaveOrUpdateSql(null, DBType.ORACLE, entityMeta, PKStrategy.ASSIGN,
+				new String[] { "staffName" }, "dual", "nvl", null, true, null));
+		String insertSql = DialectExtUtils.generateInsertSql(null, DBType.MYSQL, entityMeta, PKStrategy.ASSIGN,
+				"ifnull", null, true, null);
+		assertSame(insertSql, DialectExtUtils.generateInsertSql(null, DBType.MYSQL, entityMeta, PKStrategy.ASSIGN,
+				"ifnull", null, true, null));
+		assertNotEquals(insertSql, DialectExtUtils.generateInsertSql(null, DBType.MYSQL, entityMeta,
+				PKStrategy.ASSIGN, "ifnull", null, true, "sqltoy_staff_info_1"));
+	}
+
+	// saveOrUpdate中创建人等统一赋值以默认值形式写入sql,不同用户的值不能通过缓存串用
+	@Test
+	public void testSaveOrUpdateUnifyValues() {
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		EntityMeta entityMeta = sqlToyContext.getEntityMeta(StaffInfo.class);
+		String firstSql = DialectUtils.getSaveOrUpdateSql(createUnifyHandler("user_a"), DBType.ORACLE, entityMeta,
+				PKStrategy.ASSIGN, null, "dual", "nvl", null, true, null);
+		String secondSql = DialectUtils.getSaveOrUpdateSql(createUnifyHandler("user_b"), DBType.ORACLE, entityMeta,
+				PKStrategy.ASSIGN, null, "dual", "nvl", null, true, null);
+		System.err.println(secondSql);
+		assertNotEquals(firstSql, secondSql);
+		assertTrue(firstSql.contains("'user_a'") && !firstSql.contains("'user_b'"));
+		assertTrue(secondSql.contains("'user_b'") && !secondSql.contains("'user_a'"));
+	}
+
+	private IUnifyFieldsHandler createUnifyHandler(String userId) {
+		return new IUnifyFieldsHandler() {
+			@Override
+			public Map<String, Object> createUnifyFields() {
+				Map<String, Object> result = new HashMap<String, Object>();
+				result.put("createBy", userId);
+				return result;
+			}
+		};
+	}
+
+	// 第一页不足一页省去count:只有结果记录数等于数据库返回记录数时才可以
+	@Test
+	public void testFirstPageSkipCount() {
+		SqlToyConfig sqlToyConfig = new SqlToyConfig("sqltoy_page", "select * from sys_staff");
+		QueryExecutorExtend extend = new QueryExecutorExtend();
+		assertTrue(ResultUtils.isRowCountPreserved(sqlToyConfig, extend, 10));
+		assertTrue(ResultUtils.isRowCountPreserved(sqlToyConfig, null, 10));
+		// 忽略全为空的行
+		sqlToyConfig.setIgnoreEmpty(true);
+		assertFalse(ResultUtils.isRowCountPreserved(sqlToyConfig, extend, 10));
+		sqlToyConfig.setIgnoreEmpty(false);
+		// link合并多行
+		sqlToyConfig.setLinkModel(new LinkModel());
+		assertFalse(ResultUtils.isRowCountPreserved(sqlToyConfig, extend, 10));
+		sqlToyConfig.setLinkModel(null);
+		// maxRows小于pageSize记录被截断
+		extend.maxRows = 5;
+		assertFalse(ResultUtils.isRowCountPreserved(sqlToyConfig, extend, 10));
+		assertTrue(ResultUtils.isRowCountPreserved(sqlToyConfig, extend, 5));
+		extend.maxRows = -1;
+		// 层次化封装
+		extend.hiberarchy = true;
+		assertFalse(ResultUtils.isRowCountPreserved(sqlToyConfig, extend, 10));
+	}
+
+	// 批量级联:全部主表记录的子表数据汇总后每个子表只执行一次批量操作
+	@Test
+	public void testCascadeAll() throws Exception {
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		EntityMeta entityMeta = sqlToyContext.getEntityMeta(OrderInfo.class);
+		List<OrderInfo> orders = new ArrayList<OrderInfo>();
+		for (int i = 1; i <= 3; i++) {
+			OrderInfo order = new OrderInfo();
+			order.setOrderId("O" + i);
+			orders.add(order);
+		}
+		orders.get(0).getOrderItems().addAll(Arrays.asList(new OrderItem("a"), new OrderItem("b")));
+		orders.get(1).getOrderItems().add(new OrderItem("c"));
+		List<String> calls = new ArrayList<String>();
+		List<OrderItem> items = new ArrayList<OrderItem>();
+		List<Object> autoCommits = new ArrayList<Object>();
+		Dialect dialect = (Dialect) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Dialect.class },
+				(proxy, method, args) -> {
+					calls.add(method.getName());
+					items.addAll((List) args[1]);
+					// 倒数第二个参数为autoCommit
+					autoCommits.add(args[args.length - 2]);
+					return Long.valueOf(((List) args[1]).size());
+				});
+		List<String> sqls = new ArrayList<String>();
+		List<Object> params = new ArrayList<Object>();
+		Connection conn = batchConnection(sqls, params);
+		assertEquals(3L, DialectUtils.cascadeAll(sqlToyContext, dialect, entityMeta, orders, false, null, null, 100,
+				conn, DBType.MYSQL, "mysql", true));
+		assertEquals("[saveAll]", calls.toString());
+		// 子表批量操作不做提交控制,由主表统一处理
+		assertEquals("[null]", autoCommits.toString());
+		assertEquals("O1,O1,O2", items.get(0).getOrderId() + "," + items.get(1).getOrderId() + ","
+				+ items.get(2).getOrderId());
+		assertEquals(0, sqls.size());
+		// 修改:子表存量数据按主表记录批量处理,强制级联的子表即使数据为空也处理
+		calls.clear();
+		items.clear();
+		DialectUtils.cascadeAll(sqlToyContext, dialect, entityMeta, orders, true, new Class[] { OrderItem.class },
+				null, 100, conn, DBType.MYSQL, "mysql", true);
+		assertEquals("[saveOrUpdateAll]", calls.toString());
+		assertEquals("[null, null]", autoCommits.toString());
+		assertEquals(3, items.size());
+		System.err.println(sqls);
+		assertEquals(1, sqls.size());
+		assertEquals("[O1, O2, O3]", params.toString());
+	}
+
+	private Connection batchConnection(List<String> sqls, List<Object> params) {
+		PreparedStatement pst = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { PreparedStatement.class }, (proxy, method, args) -> {
+					if (method.getName().startsWith("set") && args.length == 2) {
+						params.add(args[1]);
+					}
+					return "executeBatch".equals(method.getName()) ? new int[] { 1 } : null;
+				});
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Connection.class },
+				(proxy, method, args) -> {
+					if ("prepareStatement".equals(method.getName())) {
+						sqls.add((String) args[0]);
+						return pst;
+					}
+					return null;
+				});
+	}
+
+	private Connection countConnection(List<String> sqls, List<Object> params) {
+		ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ResultSet.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "next":
+						return true;
+					case "getLong":
+						return 5L;
+					default:
+						return null;
+					}
+				});
+		PreparedStatement pst = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { PreparedStatement.class }, (proxy, method, args) -> {
+					if (method.getName().startsWith("set") && args.length == 2) {
+						params.add(args[1]);
+					}
+					return "executeQuery".equals(method.getName()) ? rs : null;
+				});
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Connection.class },
+				(proxy, method, args) -> {
+					if ("prepareStatement".equals(method.getName())) {
+						sqls.add((String) args[0]);
+						return pst;
+					}
+					return null;
+				});
+	}
 }
@@ -0,0 +1,117 @@
+package org.sagacity.sqltoy.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.callback.DecryptHandler;
+import org.sagacity.sqltoy.model.IgnoreCaseSet;
+import org.sagacity.sqltoy.plugins.secure.impl.FieldsAESSecureProvider;
+import org.sagacity.sqltoy.plugins.secure.impl.FieldsRSASecureProvider;
+
+public class FieldsAESSecureProviderTest {
+	private FieldsAESSecureProvider aesProvider;
+
+	private FieldsRSASecureProvider rsaProvider;
+
+	private String privateKey = "classpath:mock/rsa_private.key";
+
+	private String publicKey = "classpath:mock/rsa_public.key";
+
+	@BeforeEach
+	public void init() throws Exception {
+		aesProvider = new FieldsAESSecureProvider();
+		aesProvider.initialize(null, privateKey, publicKey);
+		rsaProvider = new FieldsRSASecureProvider();
+		rsaProvider.initialize(null, privateKey, publicKey);
+	}
+
+	@Test
+	public void testEncrypt() {
+		String contents = "中国 江苏省 南京市 仙霞区 公道街区 高德小区429弄78号321室";
+		String secureCode = aesProvider.encrypt(contents);
+		System.err.println(secureCode);
+		// 随机iv,同一内容每次密文不同
+		assertNotEquals(secureCode, aesProvider.encrypt(contents));
+		assertEquals(contents, aesProvider.decrypt(secureCode));
+		// 兼容历史RSA密文
+		assertEquals("13918658756", aesProvider.decrypt(rsaProvider.encrypt("13918658756")));
+	}
+
+	@Test
+	public void testBatchDecrypt() {
+		List<List> rows = new ArrayList<List>();
+		for (int i = 0; i < 100; i++) {
+			List row = new ArrayList();
+			row.add("S" + i);
+			row.add(aesProvider.encrypt("1391865" + i));
+			row.add((i % 10 == 0) ? null : aesProvider.encrypt("address" + i));
+			rows.add(row);
+		}
+		IgnoreCaseSet columns = new IgnoreCaseSet();
+		columns.add("telNo");
+		columns.add("address");
+		new DecryptHandler(aesProvider, columns).decrypt(rows, new String[] { "STAFF_ID", "TEL_NO", "ADDRESS" });
+		assertEquals("S5", rows.get(5).get(0));
+		assertEquals("13918655", rows.get(5).get(1));
+		assertEquals("address5", rows.get(5).get(2));
+		assertNull(rows.get(10).get(2));
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 8; i++) {
+			final int thread = i;
+			futures.add(executor.submit(() -> {
+				int count = 0;
+				String contents;
+				for (int j = 0; j < 2000; j++) {
+					contents = "thread" + thread + "-" + j;
+					if (contents.equals(aesProvider.decrypt(aesProvider.encrypt(contents)))) {
+						count++;
+					}
+				}
+				return count;
+			}));
+		}
+		for (Future<Integer> future : futures) {
+			assertEquals(2000, future.get());
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * 对比RSA和AES-GCM解密一页(2000行)数据的耗时
+	 */
+	@Test
+	public void testCompareRSA() {
+		int size = 2000;
+		String[] rsaContents = new String[size];
+		String[] aesContents = new String[size];
+		for (int i = 0; i < size; i++) {
+			rsaContents[i] = rsaProvider.encrypt("1391865" + i);
+			aesContents[i] = aesProvider.encrypt("1391865" + i);
+		}
+		// 预热
+		aesProvider.decrypt(aesContents);
+		rsaProvider.decrypt(rsaContents);
+		long start = System.nanoTime();
+		rsaProvider.decrypt(rsaContents);
+		long rsaNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		String[] result = aesProvider.decrypt(aesContents);
+		long aesNanos = System.nanoTime() - start;
+		System.err.println("RSA解密耗时:" + rsaNanos / 1000000 + "ms,AES-GCM解密耗时:" + aesNanos / 1000000 + "ms");
+		assertEquals("13918651999", result[size - 1]);
+	}
+}
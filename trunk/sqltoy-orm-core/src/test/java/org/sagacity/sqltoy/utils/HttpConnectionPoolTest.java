@@ -0,0 +1,125 @@
+package org.sagacity.sqltoy.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.config.model.ElasticEndpoint;
+import org.sagacity.sqltoy.model.HttpPoolStats;
+
+import com.alibaba.fastjson.JSON;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @project sagacity-sqltoy
+ * @description 测试http连接池的共享清理线程、使用情况统计和证书配置错误处理
+ * @author zhongxuchen
+ * @version v1.0,Date:2024-06-01
+ */
+public class HttpConnectionPoolTest {
+	// 多个连接池共用一个清理线程
+	@Test
+	public void testSharedEvictor() {
+		int poolCount = HttpConnectionPool.getActivePoolCount();
+		HttpConnectionPool[] pools = new HttpConnectionPool[3];
+		for (int i = 0; i < pools.length; i++) {
+			pools[i] = new HttpConnectionPool("pool" + i, 10, 5, 60000, 3000, 3000, 3000, null, null, null);
+		}
+		assertEquals(poolCount + 3, HttpConnectionPool.getActivePoolCount());
+		int evictorCount = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("sqltoy-http-pool-evictor")) {
+				evictorCount++;
+			}
+			// httpclient自带的清理线程
+			if (thread.getName().startsWith("Connection evictor")) {
+				evictorCount += 100;
+			}
+		}
+		assertEquals(1, evictorCount);
+		for (HttpConnectionPool pool : pools) {
+			pool.close();
+		}
+		assertEquals(poolCount, HttpConnectionPool.getActivePoolCount());
+	}
+
+	// 空闲超时的连接被清理
+	@Test
+	public void testEvictIdle() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", (exchange) -> {
+			byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		HttpConnectionPool pool = new HttpConnectionPool("idle", 10, 5, 50, 3000, 3000, 3000, null, null, null);
+		try {
+			try (CloseableHttpResponse response = pool.getHttpClient()
+					.execute(new HttpGet("http://127.0.0.1:" + server.getAddress().getPort() + "/"))) {
+				assertEquals("ok", EntityUtils.toString(response.getEntity()));
+			}
+			HttpPoolStats stats = pool.getStats();
+			System.err.println(JSON.toJSONString(stats));
+			assertEquals(1, stats.getAvailable());
+			assertEquals(1, stats.getLeaseCount());
+			Thread.sleep(200);
+			pool.evict();
+			assertEquals(0, pool.getStats().getAvailable());
+		} finally {
+			pool.close();
+			server.stop(0);
+		}
+	}
+
+	// restClient模式或尚未使用连接池时返回空的使用情况
+	@Test
+	public void testEmptyStats() {
+		ElasticEndpoint endpoint = new ElasticEndpoint("http://127.0.0.1:9200,http://127.0.0.2:9200");
+		endpoint.setId("esCluster");
+		HttpPoolStats stats = endpoint.getHttpPoolStats();
+		assertNotNull(stats);
+		assertEquals("esCluster", stats.getName());
+		assertEquals(0, stats.getLeased());
+		assertEquals(0, stats.getLeaseCount());
+	}
+
+	// 证书加载失败直接报错,不退回jdk默认证书
+	@Test
+	public void testSslError() throws Exception {
+		File keyStore = File.createTempFile("sqltoy-es", ".jks");
+		keyStore.deleteOnExit();
+		Files.write(keyStore.toPath(), "not a keystore".getBytes(StandardCharsets.UTF_8));
+		ElasticEndpoint endpoint = new ElasticEndpoint("https://127.0.0.1:9200");
+		endpoint.setKeyStore(keyStore.getAbsolutePath());
+		endpoint.setKeyStorePass("changeit");
+		assertThrows(IllegalArgumentException.class, () -> endpoint.getHttpPool());
+	}
+
+	// sql中直接指定url时按服务地址共享连接池
+	@Test
+	public void testUrlSharedPool() {
+		ElasticEndpoint first = new ElasticEndpoint("http://127.0.0.1:9200/index_a/_sql");
+		first.setSharedPool(true);
+		ElasticEndpoint second = new ElasticEndpoint("http://127.0.0.1:9200/index_b/_sql");
+		second.setSharedPool(true);
+		try {
+			assertSame(first.getHttpPool(), second.getHttpPool());
+		} finally {
+			HttpClientUtils.closeSharedPools();
+		}
+	}
+}
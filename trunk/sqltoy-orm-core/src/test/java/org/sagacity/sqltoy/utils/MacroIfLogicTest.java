@@ -106,4 +106,37 @@ public class MacroIfLogicTest {
 		boolean result = MacroIfLogic.evalLogic(sql, params, 0, params.size());
 		assertEquals(result, true);
 	}
+
+	// &&优先于||,括号分组
+	@Test
+	public void testMixLogic() {
+		List params = new ArrayList();
+		params.add(1);
+		params.add(5);
+		params.add("b");
+		assertEquals(MacroIfLogic.evalLogic("? == 1 || ? > 10 && ? == 'a'", params, 0, 3), true);
+		assertEquals(MacroIfLogic.evalLogic("(? == 1 || ? > 10) && ? == 'a'", params, 0, 3), false);
+		assertEquals(MacroIfLogic.evalLogic("(? == 2 || (? >= 5 && ? in 'a,b')) && size(?)>0", mixParams(params), 0,
+				4), true);
+		// 引号中的&&作为字符串
+		params.clear();
+		params.add("a&&b");
+		params.add(null);
+		assertEquals(MacroIfLogic.evalLogic("? == 'a&&b' && ? == null", params, 0, 2), true);
+		// 对比值为参数、枚举
+		params.clear();
+		params.add(Thread.State.RUNNABLE);
+		params.add("RUNNABLE");
+		assertEquals(MacroIfLogic.evalLogic("? == ?", params, 0, 2), true);
+		params.set(1, Thread.State.BLOCKED);
+		assertEquals(MacroIfLogic.evalLogic("? != ?", params, 0, 2), true);
+		// 不对称的括号按@if()不起作用处理
+		assertEquals(MacroIfLogic.evalLogic("? == 'x')", params, 0, 2), true);
+	}
+
+	private List mixParams(List params) {
+		List result = new ArrayList(params);
+		result.add(new Object[] { 1 });
+		return result;
+	}
 }
@@ -0,0 +1,127 @@
+package org.sagacity.sqltoy.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.sagacity.sqltoy.SqlToyContext;
+import org.sagacity.sqltoy.config.model.SqlToyConfig;
+import org.sagacity.sqltoy.integration.ConnectionFactory;
+import org.sagacity.sqltoy.model.ResultCursor;
+import org.sagacity.sqltoy.model.inner.QueryExecutorExtend;
+
+import com.alibaba.fastjson.JSON;
+
+public class ResultCursorTest {
+	@Test
+	public void testPull() throws Exception {
+		AtomicInteger released = new AtomicInteger(0);
+		AtomicInteger fetched = new AtomicInteger(0);
+		ResultCursor<List> cursor = createCursor(1000, 0, fetched, released, null);
+		try (Stream<List> stream = cursor.stream()) {
+			List<List> rows = stream.limit(10).collect(Collectors.toList());
+			System.err.println(JSON.toJSONString(rows));
+			assertEquals(10, rows.size());
+			assertEquals("S0009", rows.get(9).get(0));
+		}
+		// 按需读取,没有读取全部记录
+		assertTrue(fetched.get() <= 11);
+		assertEquals(1, released.get());
+		// 全部读取完自动释放连接
+		cursor = createCursor(100, 0, fetched, released, null);
+		int count = 0;
+		while (cursor.hasNext()) {
+			cursor.next();
+			count++;
+		}
+		assertEquals(100, count);
+		assertEquals(2, released.get());
+		cursor.close();
+		assertEquals(2, released.get());
+	}
+
+	@Test
+	public void testPrefetch() throws Exception {
+		AtomicInteger released = new AtomicInteger(0);
+		AtomicInteger fetched = new AtomicInteger(0);
+		ResultCursor<Map> cursor = createCursor(10000, 50, fetched, released, Map.class);
+		Thread.sleep(200);
+		// 预读数量受队列限制
+		assertTrue(fetched.get() <= 52);
+		try (Stream<Map> stream = cursor.stream()) {
+			assertEquals(10000, stream.filter((row) -> row.get("staffName") != null).count());
+		}
+		assertEquals(1, released.get());
+		// 未读完提前关闭,等待预读线程结束并释放连接
+		cursor = createCursor(10000, 50, fetched, released, Map.class);
+		try (Stream<Map> stream = cursor.stream()) {
+			assertEquals("S0000", stream.findFirst().get().get("staffId"));
+		}
+		assertEquals(2, released.get());
+	}
+
+	private <T> ResultCursor<T> createCursor(int size, int prefetchSize, AtomicInteger fetched,
+			AtomicInteger released, Class resultType) throws Exception {
+		fetched.set(0);
+		SqlToyContext sqlToyContext = new SqlToyContext();
+		sqlToyContext.setConnectionFactory(new ConnectionFactory() {
+			@Override
+			public Connection getConnection(DataSource dataSource) {
+				return null;
+			}
+
+			@Override
+			public void releaseConnection(Connection conn, DataSource datasource) {
+				released.incrementAndGet();
+			}
+		});
+		String[] labels = { "STAFF_ID", "STAFF_NAME" };
+		ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { ResultSetMetaData.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getColumnCount":
+						return labels.length;
+					case "getColumnLabel":
+						return labels[(Integer) args[0] - 1];
+					default:
+						return "VARCHAR";
+					}
+				});
+		AtomicInteger index = new AtomicInteger(-1);
+		ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ResultSet.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getMetaData":
+						return metaData;
+					case "next":
+						if (index.incrementAndGet() < size) {
+							fetched.incrementAndGet();
+							return true;
+						}
+						return false;
+					case "getObject":
+						return "STAFF_ID".equals(args[0]) ? String.format("S%04d", index.get())
+								: "name" + index.get();
+					default:
+						return null;
+					}
+				});
+		Connection conn = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { Connection.class }, (proxy, method, args) -> null);
+		ResultUtils.StreamRowMapper rowMapper = new ResultUtils.StreamRowMapper(sqlToyContext,
+				new QueryExecutorExtend(), new SqlToyConfig("mysql"), rs, resultType, null, null);
+		return new ResultCursor<T>(sqlToyContext, null, conn, null, rs, rowMapper, prefetchSize);
+	}
+}
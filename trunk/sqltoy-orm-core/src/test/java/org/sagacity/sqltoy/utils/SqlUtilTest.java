@@ -2,12 +2,22 @@ package org.sagacity.sqltoy.utils;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 import org.sagacity.sqltoy.config.SqlConfigParseUtils;
 import org.sagacity.sqltoy.config.model.EntityMeta;
 import org.sagacity.sqltoy.config.model.FieldMeta;
+import org.sagacity.sqltoy.model.TreeTableModel;
+import org.sagacity.sqltoy.utils.DataSourceUtils.DBType;
 
 import com.alibaba.fastjson.JSON;
 
@@ -97,4 +107,109 @@ public class SqlUtilTest {
 		System.err.println(hasSqlKeyWord);
 		System.err.println(SqlUtil.validateInArg(argValue));
 	}
+
+	// 内存模式:一次读取id、pid,计算层级、路径、叶子节点后批量回写
+	@Test
+	public void testWrapTreeTableRouteInMemory() throws Exception {
+		List<String> sqls = new ArrayList<String>();
+		List<List<Object>> batchRows = new ArrayList<List<Object>>();
+		Object[][] nodes = { { "1", "0" }, { "2", "0" }, { "3", "1" }, { "4", "3" }, { "5", "9" } };
+		Connection conn = treeConnection(sqls, nodes, batchRows);
+		TreeTableModel treeModel = new TreeTableModel().table("org_info").idField("org_id").pidField("org_pid")
+				.nodeRouteField("node_route").nodeLevelField("node_level").isLeafField("is_leaf").idTypeIsChar(false)
+				.idLength(3).pidValue("0").inMemory(true);
+		SqlUtil.wrapTreeTableRoute(null, treeModel, conn, DBType.MYSQL);
+		System.err.println(sqls);
+		System.err.println(batchRows);
+		assertEquals("select org_id,org_pid from org_info", sqls.get(1));
+		assertEquals("[[1, 000,001, 0, 1], [1, 000,002, 1, 2], [2, 000,001,003, 0, 3], [3, 000,001,003,004, 1, 4], [1, 5]]",
+				batchRows.toString());
+		// 递归查询只读取子树
+		sqls.clear();
+		batchRows.clear();
+		SqlUtil.wrapTreeTableRoute(null, treeModel.recursive(true), conn, DBType.MYSQL);
+		assertEquals(true, sqls.get(1).startsWith("with recursive t_tree_route"));
+		assertEquals(5, batchRows.size());
+		// 子树的父节点不在读取范围内,单独修改为非叶子节点
+		assertEquals("[0, 0]", batchRows.get(4).toString());
+	}
+
+	// 递归查询限制层级,达到上限(数据存在环路)改为读取全表计算;sqlserver取消默认100层的递归限制
+	@Test
+	public void testWrapTreeTableRouteCycle() throws Exception {
+		List<String> sqls = new ArrayList<String>();
+		List<List<Object>> batchRows = new ArrayList<List<Object>>();
+		// 递归查询返回的层级达到上限
+		Object[][] nodes = { { "1", "0", 1 }, { "3", "1", 2 }, { "4", "3", 500 }, { "2", "0" } };
+		Connection conn = treeConnection(sqls, nodes, batchRows);
+		TreeTableModel treeModel = new TreeTableModel().table("org_info").idField("org_id").pidField("org_pid")
+				.nodeRouteField("node_route").nodeLevelField("node_level").isLeafField("is_leaf").idTypeIsChar(false)
+				.idLength(3).pidValue("0").inMemory(true).recursive(true);
+		SqlUtil.wrapTreeTableRoute(null, treeModel, conn, DBType.SQLSERVER);
+		System.err.println(sqls);
+		System.err.println(batchRows);
+		assertEquals(true, sqls.get(1).contains("p.tree_level<500"));
+		assertEquals(true, sqls.get(1).endsWith(" option (maxrecursion 0)"));
+		assertEquals("select org_id,org_pid from org_info", sqls.get(2));
+		assertEquals("[[1, 000,001, 0, 1], [1, 000,002, 1, 2], [2, 000,001,003, 0, 3], [3, 000,001,003,004, 1, 4]]",
+				batchRows.toString());
+	}
+
+	private Connection treeConnection(List<String> sqls, Object[][] nodes, List<List<Object>> batchRows) {
+		ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { ResultSetMetaData.class }, (proxy, method, args) -> {
+					return "getColumnCount".equals(method.getName()) ? 2 : null;
+				});
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { Connection.class },
+				(proxy, method, args) -> {
+					if (!"prepareStatement".equals(method.getName())) {
+						return null;
+					}
+					String sql = (String) args[0];
+					sqls.add(sql);
+					// 父节点层级路径查询无记录,递归查询返回子树节点,id、pid查询返回全部节点
+					Object[][] rows = sql.contains("node_level,node_route from") ? new Object[0][]
+							: (sql.startsWith("with") ? Arrays.copyOf(nodes, 4) : nodes);
+					int[] index = { -1 };
+					ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+							new Class[] { ResultSet.class }, (rsProxy, rsMethod, rsArgs) -> {
+								switch (rsMethod.getName()) {
+								case "next":
+									return ++index[0] < rows.length;
+								case "getString":
+									return rows[index[0]][(Integer) rsArgs[0] - 1];
+								case "getInt":
+									return (rows[index[0]].length > 2) ? rows[index[0]][2] : 1;
+								case "getMetaData":
+									return metaData;
+								default:
+									return null;
+								}
+							});
+					List<Object> row = new ArrayList<Object>();
+					return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+							new Class[] { PreparedStatement.class }, (pstProxy, pstMethod, pstArgs) -> {
+								switch (pstMethod.getName()) {
+								case "executeQuery":
+									return rs;
+								case "addBatch":
+									batchRows.add(new ArrayList<Object>(row));
+									row.clear();
+									return null;
+								case "executeUpdate":
+									batchRows.add(new ArrayList<Object>(row));
+									row.clear();
+									return 1;
+								case "executeBatch":
+									return new int[] { 1 };
+								default:
+									if (pstMethod.getName().startsWith("set") && pstArgs != null && pstArgs.length == 2
+											&& sql.startsWith("update")) {
+										row.add(pstArgs[1]);
+									}
+									return null;
+								}
+							});
+				});
+	}
 }
@@ -75,6 +75,26 @@ public class ElasticConfig implements Serializable {
      */
     private String charset;
 
+    /**
+     * 连接池最大连接数
+     */
+    private Integer maxConnections;
+
+    /**
+     * 单个路由(host)最大连接数
+     */
+    private Integer maxConnectionsPerRoute;
+
+    /**
+     * 连接保持时长(毫秒)
+     */
+    private Long keepAlive;
+
+    /**
+     * 请求内容是否gzip压缩
+     */
+    private boolean gzipRequest = false;
+
     public String getUrl() {
         return url;
     }
@@ -217,4 +237,36 @@ public class ElasticConfig implements Serializable {
         this.authCaching = authCaching;
     }
 
+    public Integer getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(Integer maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public Integer getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(Integer maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public Long getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(Long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public boolean isGzipRequest() {
+        return gzipRequest;
+    }
+
+    public void setGzipRequest(boolean gzipRequest) {
+        this.gzipRequest = gzipRequest;
+    }
+
 }
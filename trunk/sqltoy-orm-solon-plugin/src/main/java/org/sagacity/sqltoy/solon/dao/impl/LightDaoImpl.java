@@ -42,6 +42,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * @project sqltoy-orm
@@ -224,6 +225,11 @@ public class LightDaoImpl extends SolonDaoSupport implements LightDao {
 		super.fetchStream(queryExecutor, streamResultHandler);
 	}
 
+	@Override
+	public <T> Stream<T> stream(QueryExecutor queryExecutor) {
+		return super.stream(queryExecutor);
+	}
+
 	@Override
 	public Object save(Serializable entity) {
 		return super.save(entity);
@@ -42,6 +42,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * @author limliu
@@ -347,6 +348,11 @@ public class SqlToyLazyDaoImpl extends SolonDaoSupport implements SqlToyLazyDao
     public void fetchStream(QueryExecutor queryExecutor, StreamResultHandler streamResultHandler) {
         super.fetchStream(queryExecutor, streamResultHandler);
     }
+
+    @Override
+    public <T> Stream<T> stream(QueryExecutor queryExecutor) {
+        return super.stream(queryExecutor);
+    }
     
     /*
      * (non-Javadoc)
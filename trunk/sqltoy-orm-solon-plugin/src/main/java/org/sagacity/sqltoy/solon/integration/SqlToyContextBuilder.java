@@ -234,6 +234,16 @@ public class SqlToyContextBuilder {
                 ep.setKeyStorePass(esconfig.getKeyStorePass());
                 ep.setKeyStoreSelfSign(esconfig.isKeyStoreSelfSign());
                 ep.setKeyStoreType(esconfig.getKeyStoreType());
+                if (esconfig.getMaxConnections() != null) {
+                    ep.setMaxConnections(esconfig.getMaxConnections());
+                }
+                if (esconfig.getMaxConnectionsPerRoute() != null) {
+                    ep.setMaxConnectionsPerRoute(esconfig.getMaxConnectionsPerRoute());
+                }
+                if (esconfig.getKeepAlive() != null) {
+                    ep.setKeepAlive(esconfig.getKeepAlive());
+                }
+                ep.setGzipRequest(esconfig.isGzipRequest());
                 endpoints.add(ep);
             }
             // 这里已经完成了当没有设置默认节点时将第一个节点作为默认节点
@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
@@ -227,6 +228,11 @@ public class LightDaoImpl extends SpringDaoSupport implements LightDao {
 		super.fetchStream(queryExecutor, streamResultHandler);
 	}
 
+	@Override
+	public <T> Stream<T> stream(QueryExecutor queryExecutor) {
+		return super.stream(queryExecutor);
+	}
+
 	@Override
 	public Object save(Serializable entity) {
 		return super.save(entity);
@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.sql.DataSource;
 
@@ -351,6 +352,11 @@ public class SqlToyLazyDaoImpl extends SpringDaoSupport implements SqlToyLazyDao
 		super.fetchStream(queryExecutor, streamResultHandler);
 	}
 
+	@Override
+	public <T> Stream<T> stream(QueryExecutor queryExecutor) {
+		return super.stream(queryExecutor);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 